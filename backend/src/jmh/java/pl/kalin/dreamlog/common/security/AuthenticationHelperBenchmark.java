@@ -0,0 +1,64 @@
+package pl.kalin.dreamlog.common.security;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link AuthenticationHelper#extractEmail} for both principal types - runs on every authenticated request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthenticationHelperBenchmark {
+
+    private AuthenticationHelper helper;
+    private Authentication formLogin;
+    private Authentication oauthLogin;
+
+    @Setup
+    public void setUp() {
+        // extractEmail doesn't touch the user service or cache
+        helper = new AuthenticationHelper(null, null, null, new SimpleMeterRegistry());
+        List<SimpleGrantedAuthority> authorities = List.of(new SimpleGrantedAuthority("ROLE_USER"));
+        formLogin = UsernamePasswordAuthenticationToken.authenticated(
+            User.withUsername("dreamer@example.com").password("{noop}secret").authorities(authorities).build(),
+            null, authorities);
+        oauthLogin = new OAuth2AuthenticationToken(
+            new DefaultOAuth2User(authorities,
+                Map.of("sub", "google-123", "email", "dreamer@example.com", "name", "Dreamer"), "sub"),
+            authorities, "google");
+    }
+
+    @Benchmark
+    public String formLogin() {
+        return helper.extractEmail(formLogin);
+    }
+
+    @Benchmark
+    public String oauthLogin() {
+        return helper.extractEmail(oauthLogin);
+    }
+}
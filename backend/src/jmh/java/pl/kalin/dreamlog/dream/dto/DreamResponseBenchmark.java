@@ -0,0 +1,103 @@
+package pl.kalin.dreamlog.dream.dto;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import pl.kalin.dreamlog.dream.model.DreamEntry;
+import pl.kalin.dreamlog.dream.model.Mood;
+
+/**
+ * Mapping a page of dreams to {@link DreamResponse} and writing it as JSON - the {@code GET /api/dreams} path
+ * after the query. The mapper is configured like Spring Boot's; output goes to a discarding stream, so only
+ * serialization itself is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DreamResponseBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    private final OutputStream sink = new DiscardingOutputStream();
+    private ObjectMapper objectMapper;
+    private List<DreamEntry> entries;
+    private Page<DreamResponse> page;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+        entries = new ArrayList<>();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            entries.add(DreamEntry.builder()
+                .id(UUID.randomUUID())
+                .date(LocalDate.of(2025, 1, 1).plusDays(i))
+                .title("Dream " + i)
+                .content("I was walking through a forest that kept changing into my old school. ".repeat(10))
+                .moodInDream(Mood.values()[i % Mood.values().length])
+                .vividness(i % 11)
+                .lucid(i % 3 == 0)
+                .tags(new TreeSet<>(List.of("forest", "school", "tag" + i)))
+                .build());
+        }
+        page = toPage();
+    }
+
+    @Benchmark
+    public DreamResponse from() {
+        return DreamResponse.from(entries.getFirst());
+    }
+
+    @Benchmark
+    public Page<DreamResponse> mapPage() {
+        return toPage();
+    }
+
+    @Benchmark
+    public void serializePage() throws IOException {
+        objectMapper.writeValue(sink, page);
+    }
+
+    private Page<DreamResponse> toPage() {
+        return new PageImpl<>(entries, PageRequest.of(0, PAGE_SIZE), 1_000).map(DreamResponse::from);
+    }
+
+    // OutputStream.nullOutputStream() refuses writes once Jackson has closed it after the first value
+    private static final class DiscardingOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package pl.kalin.dreamlog.dream.model;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Title/preview generation and {@link DreamEntry#updateFrom} - run on every create and edit.
+ * {@code short} content ends its first sentence early; {@code long} is a 4 KB entry without sentence
+ * punctuation, the worst case for title extraction.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DreamEntryBenchmark {
+
+    @Param({"short", "long"})
+    public String contentLength;
+
+    private String content;
+    private DreamEntry entry;
+    private List<String> tags;
+
+    @Setup
+    public void setUp() {
+        content = "short".equals(contentLength)
+            ? "I was flying over the city. Then the sky turned green and I woke up."
+            : "I was walking through a forest that kept changing into my old school and back again ".repeat(50);
+        tags = List.of("flying", "city", "school", "forest", "recurring");
+        entry = DreamEntry.builder()
+            .id(UUID.randomUUID())
+            .date(LocalDate.of(2025, 1, 1))
+            .title("Flying")
+            .content(content)
+            .tags(new TreeSet<>(tags))
+            .build();
+    }
+
+    @Benchmark
+    public String generateTitleFromContent() {
+        return DreamEntry.generateTitleFromContent(content);
+    }
+
+    @Benchmark
+    public String generatePreviewFromContent() {
+        return DreamEntry.generatePreviewFromContent(content);
+    }
+
+    @Benchmark
+    public DreamEntry updateFrom() {
+        entry.updateFrom(LocalDate.of(2025, 1, 2), "Flying again", content,
+            Mood.POSITIVE, Mood.NEUTRAL, 7, true, tags);
+        return entry;
+    }
+}
@@ -0,0 +1,192 @@
+package pl.kalin.dreamlog.common.cache;
+
+import jakarta.annotation.PreDestroy;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Drops entries of node-local caches on every node, over PostgreSQL {@code LISTEN/NOTIFY}.
+ *
+ * <p>{@link #publish(String, String)} sends a notification in the caller's transaction: PostgreSQL delivers
+ * it to every listening node (the sender included) when the transaction commits, and never if it rolls back.
+ * Each node keeps one connection {@code LISTEN}ing on {@value #CHANNEL} from a virtual thread and hands the
+ * keys to the cache that subscribed under the notification's cache name.
+ *
+ * <p>Notifications sent while a node isn't listening (its connection broke) are lost, so after reconnecting
+ * every subscribed cache is cleared. A subscriber failing to drop a key is handled the same way. Polling for
+ * notifications doesn't talk to the server, so every {@code app.cache.invalidation.keepalive-polls} polls the
+ * connection is checked with a round trip: a half-open connection (dropped by NAT or a failover without a
+ * reset) would otherwise look like a quiet channel forever. The listening connection is taken from the pool
+ * for the node's lifetime and must be a session connection (not a transaction-mode pgbouncer).
+ *
+ * <p>Used by the current user cache. The search and tag suggestion caches check the user's dreams version
+ * instead. Still node-local: the in-memory search index (rebuilt on a schedule) and the similar dreams index
+ * (catches up on every flush).
+ *
+ * <p>Metric: {@code dreamlog.cache.invalidations} (tag {@code cache}) - keys received.
+ */
+@Component
+@Slf4j
+public class CacheInvalidationChannel implements SmartInitializingSingleton {
+
+    static final String CHANNEL = "dreamlog_cache_invalidation";
+    private static final char SEPARATOR = ':';
+    private static final int KEEPALIVE_TIMEOUT_SECONDS = 5;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final int pollMillis;
+    private final int keepalivePolls;
+    private final Duration retryDelay;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private volatile boolean running;
+    private volatile boolean listening;
+    private volatile Thread listener;
+
+    public CacheInvalidationChannel(
+        DataSource dataSource,
+        @Value("${app.cache.invalidation.poll:1s}") Duration poll,
+        @Value("${app.cache.invalidation.keepalive-polls:10}") int keepalivePolls,
+        @Value("${app.cache.invalidation.retry-delay:5s}") Duration retryDelay,
+        MeterRegistry meterRegistry
+    ) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.pollMillis = (int) poll.toMillis();
+        this.keepalivePolls = Math.max(1, keepalivePolls);
+        this.retryDelay = retryDelay;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Receive the keys published for a cache, on every node.
+     *
+     * @param cache         cache name, without {@code ':'}
+     * @param invalidate    drops one key; called from the listener thread
+     * @param invalidateAll drops everything, after notifications may have been missed
+     */
+    public void subscribe(String cache, Consumer<String> invalidate, Runnable invalidateAll) {
+        Counter received = Counter.builder("dreamlog.cache.invalidations")
+            .tag("cache", cache)
+            .description("Cache keys invalidated by notifications from any node")
+            .register(meterRegistry);
+        subscribers.put(cache, new Subscriber(invalidate, invalidateAll, received));
+    }
+
+    /**
+     * Invalidate the key on every node once the current transaction commits (at once without one).
+     *
+     * @param cache cache name the subscriber registered with
+     * @param key   key to drop, at most a few kilobytes (the payload limit is 8000 bytes)
+     */
+    public void publish(String cache, String key) {
+        jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> { }, CHANNEL, cache + SEPARATOR + key);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        running = true;
+        listener = Thread.ofVirtual().name("cache-invalidation").start(this::listen);
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        running = false;
+        Thread thread = listener;
+        if (thread != null) {
+            thread.interrupt();
+            thread.join(Duration.ofSeconds(5));
+        }
+    }
+
+    private void listen() {
+        boolean reconnecting = false;
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                PGConnection notifications = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                if (reconnecting) {
+                    log.info("Listening for cache invalidations again, clearing caches that may have missed some");
+                    subscribers.values().forEach(subscriber -> subscriber.invalidateAll().run());
+                }
+                reconnecting = false;
+                listening = true;
+                int polls = 0;
+                while (running) {
+                    if (++polls % keepalivePolls == 0 && !connection.isValid(KEEPALIVE_TIMEOUT_SECONDS)) {
+                        throw new SQLException("Listening connection did not answer within "
+                            + KEEPALIVE_TIMEOUT_SECONDS + " s");
+                    }
+                    PGNotification[] received = notifications.getNotifications(pollMillis);
+                    if (received != null) {
+                        for (PGNotification notification : received) {
+                            try {
+                                dispatch(notification.getParameter());
+                            } catch (RuntimeException e) {
+                                // The key may still be cached: start over, which clears every cache
+                                throw new IllegalStateException(
+                                    "Could not apply cache invalidation " + notification.getParameter(), e);
+                            }
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                // Anything else would end the thread and leave this node's caches stale for good
+                listening = false;
+                if (!running) {
+                    return;
+                }
+                log.warn("Lost the cache invalidation listener, reconnecting in {}", retryDelay, e);
+                reconnecting = true;
+                try {
+                    Thread.sleep(retryDelay);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether notifications published from now on reach this node
+     */
+    boolean isListening() {
+        return listening;
+    }
+
+    private void dispatch(String payload) {
+        int separator = payload.indexOf(SEPARATOR);
+        Subscriber subscriber = separator < 0 ? null : subscribers.get(payload.substring(0, separator));
+        if (subscriber == null) {
+            log.debug("Ignoring cache invalidation without subscriber: {}", payload);
+            return;
+        }
+        subscriber.received().increment();
+        subscriber.invalidate().accept(payload.substring(separator + 1));
+    }
+
+    private record Subscriber(Consumer<String> invalidate, Runnable invalidateAll, Counter received) {
+    }
+}
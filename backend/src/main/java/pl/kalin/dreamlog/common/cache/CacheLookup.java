@@ -0,0 +1,11 @@
+package pl.kalin.dreamlog.common.cache;
+
+/**
+ * A value read through a cache, and whether the cache already held it.
+ *
+ * @param value cached or freshly loaded value, {@code null} if the loader found nothing
+ * @param hit   {@code true} if served from the cache, {@code false} if the loader ran
+ * @param <V>   value type
+ */
+public record CacheLookup<V>(V value, boolean hit) {
+}
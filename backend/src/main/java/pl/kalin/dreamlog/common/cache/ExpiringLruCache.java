@@ -0,0 +1,180 @@
+package pl.kalin.dreamlog.common.cache;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Small in-process cache bounded by entry count and time-to-live.
+ *
+ * <p>Entries are kept in access order, so when the cache is full the least recently used entry is evicted.
+ * Each entry expires {@code ttl} after it was written, regardless of how often it is read.
+ *
+ * <p>Loaders passed to {@link #get(Object, Function)} run outside the lock, so a slow database lookup
+ * never blocks readers of other keys. Two threads missing on the same key may both call the loader;
+ * the last result wins. A loader returning {@code null} is treated as "not found" and nothing is cached.
+ *
+ * @param <K> key type
+ * @param <V> value type (should be immutable - the same instance is handed to every caller)
+ */
+public class ExpiringLruCache<K, V> {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier ticker;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ExpiringLruCache(int maxSize, Duration ttl) {
+        this(maxSize, ttl, System::nanoTime);
+    }
+
+    /**
+     * @param maxSize maximum number of entries (must be positive)
+     * @param ttl     time-to-live of each entry, measured from the moment it was written
+     * @param ticker  monotonic nanosecond clock (tests pass a fake one)
+     */
+    public ExpiringLruCache(int maxSize, Duration ttl, LongSupplier ticker) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.ticker = Objects.requireNonNull(ticker);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > ExpiringLruCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get a cached value without loading it.
+     *
+     * @return the value, or {@code null} if absent or expired
+     */
+    public V getIfPresent(K key) {
+        long now = ticker.getAsLong();
+        lock.lock();
+        try {
+            Entry<V> entry = entries.get(key);
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            if (entry.isExpired(now)) {
+                entries.remove(key);
+                evictions.increment();
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.value();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get a cached value, loading and caching it on a miss.
+     *
+     * @param key    cache key
+     * @param loader called on a miss; may return {@code null} if the value does not exist
+     * @return cached or freshly loaded value, {@code null} if the loader found nothing
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        return lookup(key, loader).value();
+    }
+
+    /**
+     * Like {@link #get(Object, Function)}, also telling whether the value came from the cache.
+     *
+     * @param key    cache key
+     * @param loader called on a miss; may return {@code null} if the value does not exist
+     * @return the value and whether it was a hit
+     */
+    public CacheLookup<V> lookup(K key, Function<? super K, ? extends V> loader) {
+        V cached = getIfPresent(key);
+        if (cached != null) {
+            return new CacheLookup<>(cached, true);
+        }
+        V loaded = loader.apply(key);
+        if (loaded != null) {
+            put(key, loaded);
+        }
+        return new CacheLookup<>(loaded, false);
+    }
+
+    public void put(K key, V value) {
+        Objects.requireNonNull(value, "value");
+        long expiresAt = ticker.getAsLong() + ttlNanos;
+        lock.lock();
+        try {
+            entries.put(key, new Entry<>(value, expiresAt));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(K key) {
+        lock.lock();
+        try {
+            entries.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of entries currently held (expired entries not yet evicted are included)
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    private record Entry<V>(V value, long expiresAtNanos) {
+        boolean isExpired(long now) {
+            return now - expiresAtNanos >= 0;
+        }
+    }
+}
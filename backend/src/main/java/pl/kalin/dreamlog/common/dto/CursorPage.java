@@ -0,0 +1,20 @@
+package pl.kalin.dreamlog.common.dto;
+
+import java.util.List;
+
+/**
+ * Slice of results for keyset (cursor) pagination.
+ * Unlike {@code Page}, carries no total count - fetching the next slice only needs {@code nextCursor}.
+ *
+ * @param content    items in this slice
+ * @param size       requested slice size
+ * @param nextCursor opaque cursor for the next slice, {@code null} when this is the last one
+ * @param hasNext    whether more items follow
+ */
+public record CursorPage<T>(
+    List<T> content,
+    int size,
+    String nextCursor,
+    boolean hasNext
+) {
+}
@@ -1,30 +1,76 @@
 package pl.kalin.dreamlog.common.security;
 
+import java.util.concurrent.TimeUnit;
+
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import pl.kalin.dreamlog.common.cache.CacheLookup;
 import pl.kalin.dreamlog.user.User;
 import pl.kalin.dreamlog.user.exception.AuthenticationRequiredException;
 import pl.kalin.dreamlog.user.exception.UserNotFoundException;
 import pl.kalin.dreamlog.user.service.UserService;
 
+/**
+ * Resolves the {@link User} behind a Spring Security {@link Authentication}.
+ *
+ * <p>Current user lookups are timed as {@code dreamlog.user.lookup} (tag {@code source}: {@code cache}
+ * or {@code database}).
+ */
 @Component
-@RequiredArgsConstructor
 public class AuthenticationHelper {
     private final UserService userService;
+    private final CurrentUserCache currentUserCache;
+    // Read-write, so never routed to the read replica
+    private final TransactionTemplate onPrimary;
+    private final Timer cachedLookups;
+    private final Timer databaseLookups;
+
+    public AuthenticationHelper(UserService userService, CurrentUserCache currentUserCache,
+                                PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.userService = userService;
+        this.currentUserCache = currentUserCache;
+        this.onPrimary = new TransactionTemplate(transactionManager);
+        this.cachedLookups = lookupTimer(meterRegistry, "cache");
+        this.databaseLookups = lookupTimer(meterRegistry, "database");
+    }
 
     /**
      * Get current authenticated user from Spring Security Authentication.
+     * Served from {@link CurrentUserCache}, so most requests don't hit the database.
      *
      * @param authentication Spring Security authentication object
-     * @return User entity from database
+     * @return detached User reference with id, email and name only (see {@link CurrentUser#toUserReference()})
      * @throws AuthenticationRequiredException if authentication is null or invalid (401)
      * @throws UserNotFoundException           if authenticated user doesn't exist in database (404)
      */
     public User getCurrentUser(Authentication authentication) {
+        String email = extractEmail(authentication);
+        long start = System.nanoTime();
+        CacheLookup<CurrentUser> lookup = currentUserCache.lookup(email, this::loadCurrentUser);
+        (lookup.hit() ? cachedLookups : databaseLookups).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (lookup.value() == null) {
+            throw new UserNotFoundException(email);
+        }
+        return lookup.value().toUserReference();
+    }
+
+    /**
+     * Get current authenticated user with credentials and federated identities loaded.
+     * Always goes to the database - use only where those associations are needed.
+     *
+     * @param authentication Spring Security authentication object
+     * @return User entity from database
+     * @throws AuthenticationRequiredException if authentication is null or invalid (401)
+     * @throws UserNotFoundException           if authenticated user doesn't exist in database (404)
+     */
+    public User getCurrentUserWithCredentials(Authentication authentication) {
         String email = extractEmail(authentication);
         return userService.findByEmailWithCredentials(email)
             .orElseThrow(() -> new UserNotFoundException(email));
@@ -61,4 +107,22 @@ public class AuthenticationHelper {
 
         throw new AuthenticationRequiredException("Unknown principal type: " + principal.getClass().getName());
     }
+
+    private static Timer lookupTimer(MeterRegistry meterRegistry, String source) {
+        return Timer.builder("dreamlog.user.lookup")
+            .tag("source", source)
+            .description("Time to resolve the current user of a request")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Loads on the primary: the replica may not have replayed the change that invalidated the entry yet,
+     * and a stale snapshot would then stay cached for the whole TTL.
+     */
+    private CurrentUser loadCurrentUser(String email) {
+        return onPrimary.execute(status -> userService.findByEmail(email)
+            .map(CurrentUser::from)
+            .orElse(null));
+    }
 }
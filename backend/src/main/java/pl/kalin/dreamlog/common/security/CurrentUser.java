@@ -0,0 +1,34 @@
+package pl.kalin.dreamlog.common.security;
+
+import java.util.UUID;
+
+import pl.kalin.dreamlog.user.User;
+
+/**
+ * Immutable snapshot of the authenticated user, safe to share between requests.
+ * Holds only the fields that request handling needs - never the JPA entity itself.
+ */
+public record CurrentUser(
+    UUID id,
+    String email,
+    String name
+) {
+    public static CurrentUser from(User user) {
+        return new CurrentUser(user.getId(), user.getEmail(), user.getName());
+    }
+
+    /**
+     * Build a detached {@link User} carrying only id, email and name.
+     * Good enough as an owner reference ({@code DreamEntry.user}) and for ID-based queries,
+     * but associations (credentials, federated identities) are empty - never save it.
+     *
+     * @return detached user reference
+     */
+    public User toUserReference() {
+        return User.builder()
+            .id(id)
+            .email(email)
+            .name(name)
+            .build();
+    }
+}
@@ -0,0 +1,84 @@
+package pl.kalin.dreamlog.common.security;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import pl.kalin.dreamlog.common.cache.CacheInvalidationChannel;
+import pl.kalin.dreamlog.common.cache.CacheLookup;
+import pl.kalin.dreamlog.common.cache.ExpiringLruCache;
+
+/**
+ * Principal (email) → {@link CurrentUser} cache used by {@link AuthenticationHelper}.
+ *
+ * <p>Saves the user lookup that otherwise runs on every authenticated request.
+ * Bounded by size and TTL, so a user deleted or changed behind our back is picked up
+ * after at most {@code app.security.user-cache.ttl}. {@code UserService} invalidates
+ * entries eagerly when it changes a user: on this node at once, and on every node (this one
+ * included) when its transaction commits, through the {@link CacheInvalidationChannel}.
+ *
+ * <p>Hits and misses are published as {@code dreamlog.user.cache.requests} (tag {@code result}).
+ */
+@Component
+public class CurrentUserCache {
+    static final String CACHE_NAME = "current-user";
+
+    private final ExpiringLruCache<String, CurrentUser> cache;
+    private final CacheInvalidationChannel invalidationChannel;
+
+    public CurrentUserCache(
+        @Value("${app.security.user-cache.max-size:10000}") int maxSize,
+        @Value("${app.security.user-cache.ttl:5m}") Duration ttl,
+        CacheInvalidationChannel invalidationChannel,
+        MeterRegistry meterRegistry
+    ) {
+        this.cache = new ExpiringLruCache<>(maxSize, ttl);
+        this.invalidationChannel = invalidationChannel;
+        invalidationChannel.subscribe(CACHE_NAME, cache::invalidate, cache::invalidateAll);
+
+        FunctionCounter.builder("dreamlog.user.cache.requests", cache, ExpiringLruCache::hitCount)
+            .tag("result", "hit")
+            .description("Current user lookups served from cache")
+            .register(meterRegistry);
+        FunctionCounter.builder("dreamlog.user.cache.requests", cache, ExpiringLruCache::missCount)
+            .tag("result", "miss")
+            .description("Current user lookups that went to the database")
+            .register(meterRegistry);
+        Gauge.builder("dreamlog.user.cache.size", cache, ExpiringLruCache::size)
+            .register(meterRegistry);
+    }
+
+    /**
+     * @param email  principal email
+     * @param loader database lookup, called on a miss (may return {@code null} if user doesn't exist)
+     * @return cached or loaded snapshot ({@code null} if the loader found nothing) and whether it was cached
+     */
+    public CacheLookup<CurrentUser> lookup(String email, Function<String, CurrentUser> loader) {
+        return cache.lookup(email, loader);
+    }
+
+    /**
+     * Drop the user's entry here now, and on every node once the current transaction commits.
+     *
+     * @param email principal email, ignored if {@code null}
+     */
+    public void invalidate(String email) {
+        if (email != null) {
+            cache.invalidate(email);
+            invalidationChannel.publish(CACHE_NAME, email);
+        }
+    }
+
+    public long hitCount() {
+        return cache.hitCount();
+    }
+
+    public long missCount() {
+        return cache.missCount();
+    }
+}
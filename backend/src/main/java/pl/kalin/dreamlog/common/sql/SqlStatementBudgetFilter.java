@@ -0,0 +1,130 @@
+package pl.kalin.dreamlog.common.sql;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.springframework.security.web.util.OnCommittedResponseWrapper;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Counts the SQL statements of each HTTP request ({@link SqlStatementCounter}) and reports requests that
+ * look like N+1 regressions:
+ * <ul>
+ *   <li>more statements than the budget - {@code dreamlog.sql.budget.exceeded} and a warning</li>
+ *   <li>one statement repeated at least the repeat threshold - {@code dreamlog.sql.repeated} and a warning
+ *       with the SQL</li>
+ * </ul>
+ * Statements per request are published as {@code dreamlog.sql.statements}. All meters are tagged with
+ * {@code method} and {@code uri} (the handler's URI template, never the raw path).
+ *
+ * <p>With {@code countHeader} the count is also returned as {@value #STATEMENT_COUNT_HEADER}, which
+ * integration tests assert on. The header is written when the response commits, so statements run while
+ * streaming a large body are logged and measured but not in the header.
+ */
+@Slf4j
+public class SqlStatementBudgetFilter extends OncePerRequestFilter {
+
+    public static final String STATEMENT_COUNT_HEADER = "X-Sql-Statement-Count";
+
+    private final int budget;
+    private final int repeatThreshold;
+    private final boolean countHeader;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * @param budget          statements per request before it's reported, 0 disables the check
+     * @param repeatThreshold runs of one statement in a request before it's reported, 0 disables the check
+     * @param countHeader     return the count in {@value #STATEMENT_COUNT_HEADER}
+     */
+    public SqlStatementBudgetFilter(int budget, int repeatThreshold, boolean countHeader, MeterRegistry meterRegistry) {
+        this.budget = budget;
+        this.repeatThreshold = repeatThreshold;
+        this.countHeader = countHeader;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+        throws ServletException, IOException {
+        SqlStatementCounter counter = SqlStatementCounter.start();
+        HttpServletResponse counted = countHeader ? new CountHeaderResponse(response, counter) : response;
+        try {
+            filterChain.doFilter(request, counted);
+        } finally {
+            counter.stop();
+            if (countHeader && !counted.isCommitted()) {
+                counted.setHeader(STATEMENT_COUNT_HEADER, Integer.toString(counter.total()));
+            }
+            report(request, counter);
+        }
+    }
+
+    private void report(HttpServletRequest request, SqlStatementCounter counter) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String method = request.getMethod();
+        String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+        int total = counter.total();
+
+        DistributionSummary.builder("dreamlog.sql.statements")
+            .tag("method", method)
+            .tag("uri", uri)
+            .description("SQL statements run by Hibernate per HTTP request")
+            .register(meterRegistry)
+            .record(total);
+
+        if (budget > 0 && total > budget) {
+            Counter.builder("dreamlog.sql.budget.exceeded")
+                .tag("method", method)
+                .tag("uri", uri)
+                .description("HTTP requests that ran more SQL statements than the budget")
+                .register(meterRegistry)
+                .increment();
+            log.warn("{} {} ran {} SQL statements (budget {})", method, uri, total, budget);
+        }
+
+        if (repeatThreshold > 0) {
+            counter.mostRepeated()
+                .filter(statement -> statement.getValue() >= repeatThreshold)
+                .ifPresent(statement -> reportRepeated(method, uri, statement));
+        }
+    }
+
+    private void reportRepeated(String method, String uri, Map.Entry<String, Integer> statement) {
+        Counter.builder("dreamlog.sql.repeated")
+            .tag("method", method)
+            .tag("uri", uri)
+            .description("HTTP requests that repeated one SQL statement at least the threshold (likely N+1)")
+            .register(meterRegistry)
+            .increment();
+        log.warn("{} {} ran the same SQL statement {} times (likely N+1): {}",
+            method, uri, statement.getValue(), statement.getKey());
+    }
+
+    /**
+     * Sets {@value #STATEMENT_COUNT_HEADER} just before the response commits, while headers can still be added.
+     */
+    private static class CountHeaderResponse extends OnCommittedResponseWrapper {
+        private final SqlStatementCounter counter;
+
+        CountHeaderResponse(HttpServletResponse response, SqlStatementCounter counter) {
+            super(response);
+            this.counter = counter;
+        }
+
+        @Override
+        protected void onResponseCommitted() {
+            setHeader(STATEMENT_COUNT_HEADER, Integer.toString(counter.total()));
+        }
+    }
+}
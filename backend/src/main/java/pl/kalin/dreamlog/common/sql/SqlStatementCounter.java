@@ -0,0 +1,74 @@
+package pl.kalin.dreamlog.common.sql;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Counts the SQL statements Hibernate prepares on the current thread, e.g. during one HTTP request
+ * ({@link SqlStatementBudgetFilter}). Fed by {@link SqlStatementInspector}; statements run outside
+ * {@link #start()} / {@link #stop()} are not counted.
+ *
+ * <p>Statements are also counted per SQL text, so a statement repeated with different parameters
+ * (an N+1 pattern, e.g. one lazy collection load per row) can be reported.
+ */
+public final class SqlStatementCounter {
+
+    private static final ThreadLocal<SqlStatementCounter> CURRENT = new ThreadLocal<>();
+
+    private final Map<String, Integer> countsBySql = new HashMap<>();
+    private int total;
+
+    private SqlStatementCounter() {
+    }
+
+    /**
+     * Start counting on the current thread.
+     *
+     * @return the new counter, current until {@link #stop()}
+     */
+    public static SqlStatementCounter start() {
+        SqlStatementCounter counter = new SqlStatementCounter();
+        CURRENT.set(counter);
+        return counter;
+    }
+
+    /**
+     * Stop counting on the current thread. The counter keeps its counts.
+     */
+    public void stop() {
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+    }
+
+    static void record(String sql) {
+        SqlStatementCounter counter = CURRENT.get();
+        if (counter != null) {
+            counter.total++;
+            counter.countsBySql.merge(sql, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * @return statements counted so far
+     */
+    public int total() {
+        return total;
+    }
+
+    /**
+     * @return how often each statement ran, by SQL text
+     */
+    public Map<String, Integer> countsBySql() {
+        return Collections.unmodifiableMap(countsBySql);
+    }
+
+    /**
+     * @return the statement run most often and how often, empty if nothing ran
+     */
+    public Optional<Map.Entry<String, Integer>> mostRepeated() {
+        return countsBySql.entrySet().stream().max(Map.Entry.comparingByValue());
+    }
+}
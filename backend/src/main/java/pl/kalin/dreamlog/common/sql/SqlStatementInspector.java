@@ -0,0 +1,16 @@
+package pl.kalin.dreamlog.common.sql;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Hibernate hook that sees every statement Hibernate prepares (JPQL, native and lazy loads) and
+ * passes it, unchanged, to {@link SqlStatementCounter}. Plain JDBC (JdbcTemplate) is not seen.
+ */
+public class SqlStatementInspector implements StatementInspector {
+
+    @Override
+    public String inspect(String sql) {
+        SqlStatementCounter.record(sql);
+        return sql;
+    }
+}
@@ -0,0 +1,75 @@
+package pl.kalin.dreamlog.common.text;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Text normalization equivalent to what search does in PostgreSQL ({@code unaccent} + {@code lower}):
+ * diacritics are stripped ("łódź" → "lodz", "Wisła" → "wisla") and text is lower-cased.
+ * Used where text is matched in the JVM so results agree with the database.
+ */
+public final class TextNormalizer {
+
+    private TextNormalizer() {
+    }
+
+    /**
+     * Lower-case and strip diacritics.
+     *
+     * @param text input text (may be {@code null})
+     * @return normalized text, empty for {@code null}
+     */
+    public static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        StringBuilder result = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            // Letters without a canonical decomposition, mapped like unaccent.rules does
+            switch (c) {
+                case 'ł' -> result.append('l');
+                case 'đ' -> result.append('d');
+                case 'ø' -> result.append('o');
+                case 'ħ' -> result.append('h');
+                case 'ß' -> result.append("ss");
+                case 'æ' -> result.append("ae");
+                case 'œ' -> result.append("oe");
+                default -> result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Normalize and split into words (runs of letters and digits).
+     *
+     * @param text input text (may be {@code null})
+     * @return normalized words in order of appearance
+     */
+    public static List<String> tokenize(String text) {
+        String normalized = normalize(text);
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < normalized.length(); i++) {
+            if (Character.isLetterOrDigit(normalized.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                tokens.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            tokens.add(normalized.substring(start));
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,79 @@
+package pl.kalin.dreamlog.config;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Admission limit in front of the connection pool: at most {@code maxWaiting} threads may be asking the pool
+ * for a connection at once, further callers fail immediately with {@link SQLTransientConnectionException}
+ * (answered with 503 by {@link GlobalExceptionHandler}).
+ *
+ * <p>With platform request threads Tomcat's thread limit bounds how many requests queue for a connection.
+ * Virtual threads remove that bound: under a burst of slow queries thousands of requests would line up in the
+ * pool, each waiting for the full connection timeout. The limit keeps that queue short and sheds the rest
+ * at once.
+ *
+ * <p>One limit per physical pool, metrics tagged with {@code pool}.
+ */
+public class ConnectionAdmissionDataSource extends DelegatingDataSource {
+
+    private final int maxWaiting;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Counter rejected;
+
+    public ConnectionAdmissionDataSource(DataSource target, String pool, int maxWaiting, MeterRegistry meterRegistry) {
+        super(target);
+        this.maxWaiting = maxWaiting;
+        this.rejected = Counter.builder("dreamlog.datasource.rejected")
+            .tag("pool", pool)
+            .description("Connection requests rejected because too many were already waiting")
+            .register(meterRegistry);
+        Gauge.builder("dreamlog.datasource.waiting", waiting, AtomicInteger::get)
+            .tag("pool", pool)
+            .description("Threads currently asking the pool for a connection")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        admit();
+        try {
+            return super.getConnection();
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        admit();
+        try {
+            return super.getConnection(username, password);
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    private void admit() throws SQLTransientConnectionException {
+        if (waiting.incrementAndGet() > maxWaiting) {
+            waiting.decrementAndGet();
+            rejected.increment();
+            throw new SQLTransientConnectionException(
+                "Too many requests waiting for a database connection (limit " + maxWaiting + ")");
+        }
+    }
+
+    int waiting() {
+        return waiting.get();
+    }
+}
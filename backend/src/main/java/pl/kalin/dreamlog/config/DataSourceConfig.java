@@ -0,0 +1,51 @@
+package pl.kalin.dreamlog.config;
+
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Puts {@link ConnectionAdmissionDataSource} in front of the application's connection pools
+ * ({@code app.datasource.max-waiting}, 0 disables it).
+ */
+@Configuration
+public class DataSourceConfig {
+
+    // Physical pools by bean name: the auto-configured one, or both pools of ReplicaDataSourceConfig
+    private static final Map<String, String> POOLS = Map.of(
+        "dataSource", "primary",
+        "primaryDataSource", "primary",
+        "replicaDataSource", "replica");
+
+    /**
+     * Wraps the pools, so JPA and JdbcTemplate both go through the limit (Flyway connects on its own).
+     * With a replica the {@code dataSource} bean is a {@link LazyConnectionDataSourceProxy} that hands out
+     * connection proxies without waiting; the limit goes on the pools behind it instead.
+     * Static and lazy about its dependencies: post-processors are created before regular beans.
+     */
+    @Bean
+    static BeanPostProcessor connectionAdmissionPostProcessor(Environment environment,
+                                                              ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                int maxWaiting = environment.getProperty("app.datasource.max-waiting", Integer.class, 100);
+                String pool = POOLS.get(beanName);
+                if (bean instanceof DataSource dataSource && !(bean instanceof LazyConnectionDataSourceProxy)
+                    && pool != null && maxWaiting > 0) {
+                    return new ConnectionAdmissionDataSource(dataSource, pool, maxWaiting, meterRegistry.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+}
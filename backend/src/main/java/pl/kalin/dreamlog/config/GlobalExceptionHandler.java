@@ -3,13 +3,24 @@ package pl.kalin.dreamlog.config;
 import java.util.Map;
 import java.util.stream.Collectors;
 
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.transaction.CannotCreateTransactionException;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import pl.kalin.dreamlog.dream.exception.DreamVersionConflictException;
+import pl.kalin.dreamlog.dream.exception.InvalidDreamPatchException;
+import pl.kalin.dreamlog.dream.exception.InvalidImportException;
+import pl.kalin.dreamlog.dream.exception.InvalidPaginationException;
+import pl.kalin.dreamlog.dream.exception.InvalidRequestParameterException;
 import pl.kalin.dreamlog.user.exception.AuthenticationRequiredException;
 import pl.kalin.dreamlog.user.exception.FederatedIdentityAlreadyLinkedException;
 import pl.kalin.dreamlog.user.exception.UserAlreadyExistsException;
@@ -48,6 +59,72 @@ public class GlobalExceptionHandler {
             .body(Map.of("error", ex.getMessage()));
     }
 
+    /**
+     * Handle unsupported paging parameters (sort key, page size, cursor).
+     */
+    @ExceptionHandler(InvalidPaginationException.class)
+    public ResponseEntity<Map<String, String>> handleInvalidPagination(InvalidPaginationException ex) {
+        return ResponseEntity
+            .badRequest()
+            .body(Map.of("error", ex.getMessage()));
+    }
+
+    /**
+     * Handle out-of-range query parameters other than paging (result limits, periods).
+     */
+    @ExceptionHandler(InvalidRequestParameterException.class)
+    public ResponseEntity<Map<String, String>> handleInvalidRequestParameter(InvalidRequestParameterException ex) {
+        return ResponseEntity
+            .badRequest()
+            .body(Map.of("error", ex.getMessage()));
+    }
+
+    /**
+     * Handle import files that can't be read at all (e.g. CSV without required columns).
+     */
+    @ExceptionHandler(InvalidImportException.class)
+    public ResponseEntity<Map<String, String>> handleInvalidImport(InvalidImportException ex) {
+        return ResponseEntity
+            .badRequest()
+            .body(Map.of("error", ex.getMessage()));
+    }
+
+    /**
+     * Handle a merge patch whose result isn't a valid dream (e.g. {@code "title": null}).
+     */
+    @ExceptionHandler(InvalidDreamPatchException.class)
+    public ResponseEntity<Map<String, String>> handleInvalidDreamPatch(InvalidDreamPatchException ex) {
+        return ResponseEntity
+            .badRequest()
+            .body(Map.of("error", ex.getMessage()));
+    }
+
+    /**
+     * Handle a merge patch rejected while it is read (an unknown member), which Jackson wraps;
+     * other unreadable bodies are left to Spring's default handling.
+     */
+    @ExceptionHandler(HttpMessageNotReadableException.class)
+    public ResponseEntity<Map<String, String>> handleNotReadable(HttpMessageNotReadableException ex) {
+        if (NestedExceptionUtils.getMostSpecificCause(ex) instanceof InvalidDreamPatchException patchException) {
+            return handleInvalidDreamPatch(patchException);
+        }
+        throw ex;
+    }
+
+    /**
+     * Handle an edit based on a stale version (409): the client's {@code If-Match} names an older version,
+     * or another transaction updated the row concurrently (Hibernate's version check at flush).
+     */
+    @ExceptionHandler({DreamVersionConflictException.class, OptimisticLockingFailureException.class})
+    public ResponseEntity<Map<String, String>> handleVersionConflict(RuntimeException ex) {
+        String message = ex instanceof DreamVersionConflictException
+            ? ex.getMessage()
+            : "Dream was modified concurrently, reload and retry";
+        return ResponseEntity
+            .status(HttpStatus.CONFLICT)
+            .body(Map.of("error", message));
+    }
+
     /**
      * Handle authentication required (401).
      * Triggered when user is not authenticated or authentication is invalid.
@@ -82,4 +159,15 @@ public class GlobalExceptionHandler {
             .body(Map.of("error", ex.getMessage()));
     }
 
+    /**
+     * Handle an exhausted or unreachable database (503): no connection within the pool's timeout,
+     * or rejected by {@link ConnectionAdmissionDataSource}. Clients may retry shortly.
+     */
+    @ExceptionHandler({CannotCreateTransactionException.class, DataAccessResourceFailureException.class})
+    public ResponseEntity<Map<String, String>> handleDatabaseUnavailable(RuntimeException ex) {
+        return ResponseEntity
+            .status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, "1")
+            .body(Map.of("error", "Service is busy, please retry"));
+    }
 }
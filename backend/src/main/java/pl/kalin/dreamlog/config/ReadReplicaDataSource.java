@@ -0,0 +1,73 @@
+package pl.kalin.dreamlog.config;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Source of connections for read-only transactions when a replica is configured ({@link ReplicaDataSourceConfig}):
+ * the replica pool, unless the current thread is pinned to the primary ({@link #pinToPrimary()}) because its user
+ * wrote recently and the replica may not have replayed that write yet.
+ *
+ * <p>Connections are counted as {@code dreamlog.datasource.reads} with tag {@code target} ({@code replica} or
+ * {@code primary}).
+ */
+public class ReadReplicaDataSource extends DelegatingDataSource {
+
+    private static final ThreadLocal<Boolean> PINNED = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final Counter replicaReads;
+    private final Counter primaryReads;
+
+    public ReadReplicaDataSource(DataSource replica, DataSource primary, MeterRegistry meterRegistry) {
+        super(replica);
+        this.primary = primary;
+        this.replicaReads = reads(meterRegistry, "replica");
+        this.primaryReads = reads(meterRegistry, "primary");
+    }
+
+    /**
+     * Send the current thread's read-only transactions to the primary until {@link #unpin()}.
+     */
+    public static void pinToPrimary() {
+        PINNED.set(Boolean.TRUE);
+    }
+
+    public static void unpin() {
+        PINNED.remove();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (PINNED.get() != null) {
+            primaryReads.increment();
+            return primary.getConnection();
+        }
+        replicaReads.increment();
+        return super.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        if (PINNED.get() != null) {
+            primaryReads.increment();
+            return primary.getConnection(username, password);
+        }
+        replicaReads.increment();
+        return super.getConnection(username, password);
+    }
+
+    private static Counter reads(MeterRegistry meterRegistry, String target) {
+        return Counter.builder("dreamlog.datasource.reads")
+            .tag("target", target)
+            .description("Connections of read-only transactions by the database that served them")
+            .register(meterRegistry);
+    }
+}
@@ -0,0 +1,95 @@
+package pl.kalin.dreamlog.config;
+
+import java.time.Clock;
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.session.web.http.SessionRepositoryFilter;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Optional read replica ({@code app.datasource.replica.url}): read-only transactions
+ * ({@code @Transactional(readOnly = true)}) run on a replica pool, everything else on the primary.
+ *
+ * <p>The {@code dataSource} is a {@link LazyConnectionDataSourceProxy}: the physical connection is taken on the
+ * first statement, after the transaction manager has marked the connection read-only, which picks the
+ * {@link ReadReplicaDataSource}. {@link ReplicaLagGuardFilter} keeps a user's reads on the primary shortly after
+ * their own writes. Without the property the single auto-configured pool is used.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "app.datasource.replica", name = "url")
+public class ReplicaDataSourceConfig {
+
+    /**
+     * The primary pool, configured like the auto-configured one ({@code spring.datasource.*}).
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    /**
+     * The replica pool ({@code app.datasource.replica.*}), credentials default to the primary's.
+     */
+    @Bean
+    @ConfigurationProperties("app.datasource.replica.hikari")
+    HikariDataSource replicaDataSource(
+        DataSourceProperties properties,
+        @Value("${app.datasource.replica.url}") String url,
+        @Value("${app.datasource.replica.username:}") String username,
+        @Value("${app.datasource.replica.password:}") String password
+    ) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+            .type(HikariDataSource.class)
+            .url(url)
+            .username(username.isEmpty() ? properties.determineUsername() : username)
+            .password(password.isEmpty() ? properties.determinePassword() : password)
+            .build();
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    @Primary
+    DataSource dataSource(
+        @Qualifier("primaryDataSource") DataSource primary,
+        @Qualifier("replicaDataSource") DataSource replica,
+        MeterRegistry meterRegistry
+    ) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primary);
+        dataSource.setReadOnlyDataSource(new ReadReplicaDataSource(replica, primary, meterRegistry));
+        return dataSource;
+    }
+
+    /**
+     * Runs right after the session filter, so it sees the shared session, and before anything reads.
+     */
+    @Bean
+    FilterRegistrationBean<ReplicaLagGuardFilter> replicaLagGuardFilter(
+        @Value("${app.datasource.replica.primary-after-write:5s}") Duration window
+    ) {
+        FilterRegistrationBean<ReplicaLagGuardFilter> registration = new FilterRegistrationBean<>(
+            new ReplicaLagGuardFilter(window, Clock.systemUTC()));
+        registration.setOrder(SessionRepositoryFilter.DEFAULT_ORDER + 1);
+        return registration;
+    }
+}
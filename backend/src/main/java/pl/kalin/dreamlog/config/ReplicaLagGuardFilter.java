@@ -0,0 +1,65 @@
+package pl.kalin.dreamlog.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Set;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Read-your-writes over an asynchronous replica: requests that may write (any method but GET, HEAD, OPTIONS,
+ * TRACE) run entirely on the primary and mark the session; the session's requests keep reading from the primary
+ * for {@code window} after its last write, which should exceed the usual replication lag.
+ *
+ * <p>The mark is a session attribute, so it holds on whichever node serves the next request (sessions are shared,
+ * {@link SessionConfig}). Work handed to other threads (e.g. streaming the journal export) is not pinned.
+ */
+public class ReplicaLagGuardFilter extends OncePerRequestFilter {
+
+    static final String PRIMARY_UNTIL_ATTRIBUTE = ReplicaLagGuardFilter.class.getName() + ".PRIMARY_UNTIL";
+
+    private static final Set<String> SAFE_METHODS = Set.of("GET", "HEAD", "OPTIONS", "TRACE");
+
+    private final Duration window;
+    private final Clock clock;
+
+    public ReplicaLagGuardFilter(Duration window, Clock clock) {
+        this.window = window;
+        this.clock = clock;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+        throws ServletException, IOException {
+        boolean write = !SAFE_METHODS.contains(request.getMethod());
+        if (!write && !recentlyWrote(request.getSession(false))) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        ReadReplicaDataSource.pinToPrimary();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReadReplicaDataSource.unpin();
+            // The session may have been created (login) or invalidated (logout) by the request
+            HttpSession session = request.getSession(false);
+            if (write && session != null) {
+                session.setAttribute(PRIMARY_UNTIL_ATTRIBUTE, clock.millis() + window.toMillis());
+            }
+        }
+    }
+
+    private boolean recentlyWrote(HttpSession session) {
+        return session != null
+            && session.getAttribute(PRIMARY_UNTIL_ATTRIBUTE) instanceof Long until
+            && until > clock.millis();
+    }
+}
@@ -0,0 +1,19 @@
+package pl.kalin.dreamlog.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables {@code @Scheduled} background jobs (e.g. stats reconciliation).
+ *
+ * <p>The jobs share Spring's scheduler, whose pool has a single thread by default. Some of them scan whole
+ * tables (stats reconciliation, search and similarity index rebuilds, tag stats rebuild) while the
+ * {@link pl.kalin.dreamlog.dream.analysis.DreamAnalysisWorker} poller must keep claiming every few seconds,
+ * so {@code spring.task.scheduling.pool.size} gives each task its own thread. Keep it at least the number
+ * of {@code @Scheduled} methods plus one for Spring Session's {@code cleanup-cron}, which runs on the same
+ * scheduler.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -1,14 +1,21 @@
 package pl.kalin.dreamlog.config;
 
+import java.util.UUID;
+
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.ProviderManager;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.session.SessionRegistry;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.AuthenticationSuccessHandler;
 import org.springframework.security.web.authentication.logout.LogoutSuccessHandler;
@@ -34,11 +41,13 @@ import pl.kalin.dreamlog.user.service.UserService;
  *
  * <p><b>Security Architecture:</b>
  * <ul>
- *   <li>Sessions stored server-side with JSESSIONID cookie (HttpOnly, Secure in prod)</li>
+ *   <li>Sessions stored server-side in Postgres, shared by all nodes ({@link SessionConfig}),
+ *       with JSESSIONID cookie (HttpOnly, Secure in prod)</li>
  *   <li>CSRF token in XSRF-TOKEN cookie (readable by JavaScript) + X-XSRF-TOKEN header</li>
- *   <li>Max 5 concurrent sessions per user</li>
+ *   <li>Max 5 concurrent sessions per user across all nodes (the oldest is expired)</li>
  *   <li>Public endpoints: /api/auth/register, /api/auth/login, /api/auth/csrf, /oauth2/**</li>
  *   <li>Protected endpoints: /api/** (requires authentication)</li>
+ *   <li>/actuator/prometheus: HTTP Basic as the scrape user ({@code app.metrics.scrape.*}), never a user session</li>
  * </ul>
  *
  * @see CustomUserDetailsService for form login authentication
@@ -50,6 +59,7 @@ public class SecurityConfig {
     private final CustomUserDetailsService userDetailsService;
     private final UserService userService;
     private final PasswordEncoder passwordEncoder;
+    private final SessionRegistry sessionRegistry;
 
     @Value("${app.frontend.url}")
     private String frontendUrl;
@@ -57,6 +67,8 @@ public class SecurityConfig {
     @Value("${app.frontend.oauth-success-path}")
     private String oauthSuccessPath;
 
+    private static final String METRICS_ROLE = "METRICS";
+
     private static final String[] PUBLIC_ENDPOINTS = {
         "/v3/api-docs/**",
         "/swagger-ui/**",
@@ -100,6 +112,42 @@ public class SecurityConfig {
         return new ProviderManager(provider);
     }
 
+    /**
+     * Prometheus scrape endpoint, ahead of the main chain: stateless HTTP Basic as a dedicated scrape user
+     * with role {@code METRICS}, so user sessions (and leaked user passwords) never grant access to metrics.
+     * Without {@code app.metrics.scrape.password} the endpoint is closed to everyone.
+     */
+    @Bean
+    @Order(1)
+    public SecurityFilterChain metricsSecurityFilterChain(
+        HttpSecurity http,
+        @Value("${app.metrics.scrape.username:prometheus}") String username,
+        @Value("${app.metrics.scrape.password:}") String password
+    ) throws Exception {
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+        provider.setUserDetailsService(new InMemoryUserDetailsManager(User.withUsername(username)
+            .password(passwordEncoder.encode(password.isEmpty() ? UUID.randomUUID().toString() : password))
+            .roles(METRICS_ROLE)
+            .build()));
+        provider.setPasswordEncoder(passwordEncoder);
+
+        http
+            .securityMatcher("/actuator/prometheus")
+            .authorizeHttpRequests(auth -> {
+                if (password.isEmpty()) {
+                    auth.anyRequest().denyAll();
+                } else {
+                    auth.anyRequest().hasRole(METRICS_ROLE);
+                }
+            })
+            .httpBasic(Customizer.withDefaults())
+            .authenticationManager(new ProviderManager(provider))
+            .sessionManagement(sm -> sm.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+            // No browser session is involved, so there is nothing to forge
+            .csrf(csrf -> csrf.disable());
+        return http.build();
+    }
+
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         // CSRF token handler for SPA - allows Angular to read XSRF-TOKEN cookie
@@ -111,6 +159,13 @@ public class SecurityConfig {
             .sessionManagement(sm -> sm
                 .sessionCreationPolicy(SessionCreationPolicy.IF_REQUIRED)
                 .maximumSessions(5) // Limit concurrent sessions to prevent abuse
+                .sessionRegistry(sessionRegistry) // Sessions of all nodes (SessionConfig)
+                .expiredSessionStrategy(event -> {
+                    // Session expired by a newer login over the limit
+                    event.getResponse().setStatus(401);
+                    event.getResponse().setContentType("application/json");
+                    event.getResponse().getWriter().write("{\"error\":\"Session expired\"}");
+                })
             )
             // CSRF protection: double-submit cookie pattern (cookie + header)
             .csrf(csrf -> csrf
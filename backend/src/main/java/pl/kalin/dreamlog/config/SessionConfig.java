@@ -0,0 +1,30 @@
+package pl.kalin.dreamlog.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.session.FindByIndexNameSessionRepository;
+import org.springframework.session.Session;
+import org.springframework.session.security.SpringSessionBackedSessionRegistry;
+
+/**
+ * HTTP sessions live in Postgres ({@code spring_session} tables, {@code spring.session.jdbc.*}) instead of
+ * one JVM's memory, so any node can serve any request and logins survive deploys. The store is Spring
+ * Session's {@code SessionRepository}: another implementation (e.g. Redis) only needs a different dependency.
+ *
+ * <p>Per request the store reads the session row with its attributes in one query (attributes are
+ * deserialized only when used), and writes back the access time plus only the attributes that were set.
+ */
+@Configuration
+public class SessionConfig {
+
+    /**
+     * Session registry for the concurrent-session limit ({@link SecurityConfig}): a user's sessions are
+     * found by principal name in the shared store, so the limit holds across all nodes.
+     */
+    @Bean
+    <S extends Session> SpringSessionBackedSessionRegistry<S> sessionRegistry(
+        FindByIndexNameSessionRepository<S> sessionRepository
+    ) {
+        return new SpringSessionBackedSessionRegistry<>(sessionRepository);
+    }
+}
@@ -0,0 +1,42 @@
+package pl.kalin.dreamlog.config;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import pl.kalin.dreamlog.common.sql.SqlStatementBudgetFilter;
+import pl.kalin.dreamlog.common.sql.SqlStatementInspector;
+
+/**
+ * Per-request SQL statement budget ({@code app.sql.*}): counts Hibernate statements of every HTTP request
+ * and reports requests over budget or repeating one statement (see {@link SqlStatementBudgetFilter}).
+ */
+@Configuration
+public class SqlStatementConfig {
+
+    @Bean
+    HibernatePropertiesCustomizer sqlStatementInspectorCustomizer() {
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, new SqlStatementInspector());
+    }
+
+    /**
+     * Runs before Spring Security, so statements of the security filters count too.
+     */
+    @Bean
+    FilterRegistrationBean<SqlStatementBudgetFilter> sqlStatementBudgetFilter(
+        @Value("${app.sql.statement-budget:25}") int budget,
+        @Value("${app.sql.repeated-statement-threshold:10}") int repeatThreshold,
+        @Value("${app.sql.statement-count-header:false}") boolean countHeader,
+        MeterRegistry meterRegistry
+    ) {
+        FilterRegistrationBean<SqlStatementBudgetFilter> registration = new FilterRegistrationBean<>(
+            new SqlStatementBudgetFilter(budget, repeatThreshold, countHeader, meterRegistry));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
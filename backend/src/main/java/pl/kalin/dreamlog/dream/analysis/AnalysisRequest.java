@@ -0,0 +1,28 @@
+package pl.kalin.dreamlog.dream.analysis;
+
+import java.util.List;
+import java.util.UUID;
+
+import pl.kalin.dreamlog.dream.model.Mood;
+
+/**
+ * Dream content handed to a {@link DreamAnalyzer}.
+ *
+ * @param dreamId        dream ID
+ * @param title          dream title
+ * @param content        dream content
+ * @param tags           user's tags
+ * @param moodInDream    mood in the dream (may be {@code null})
+ * @param moodAfterDream mood after waking (may be {@code null})
+ * @param lucid          whether the dream was lucid
+ */
+public record AnalysisRequest(
+    UUID dreamId,
+    String title,
+    String content,
+    List<String> tags,
+    Mood moodInDream,
+    Mood moodAfterDream,
+    boolean lucid
+) {
+}
@@ -0,0 +1,31 @@
+package pl.kalin.dreamlog.dream.analysis;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Analysis of one dream produced by a {@link DreamAnalyzer}, stored as a
+ * {@link pl.kalin.dreamlog.dream.model.DreamAnalysis}.
+ *
+ * @param summary        one-line summary (max 255 characters)
+ * @param tags           suggested tags
+ * @param entities       people, places and symbols found in the dream
+ * @param emotions       emotion scores in [0, 1] by emotion name
+ * @param interpretation free-text interpretation
+ * @param riskScore      how distressing the dream seems, in [0, 1]
+ * @param recurring      whether the dreamer describes it as recurring
+ * @param language       ISO 639-1 language code
+ * @param style          kind of dream, e.g. {@code nightmare}, {@code lucid}, {@code narrative}
+ */
+public record AnalysisResult(
+    String summary,
+    List<String> tags,
+    List<String> entities,
+    Map<String, Double> emotions,
+    String interpretation,
+    Double riskScore,
+    Boolean recurring,
+    String language,
+    String style
+) {
+}
@@ -0,0 +1,153 @@
+package pl.kalin.dreamlog.dream.analysis;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import pl.kalin.dreamlog.dream.repository.DreamRows;
+
+/**
+ * Access to {@code dream_analysis_outbox}, the queue of dreams waiting for analysis
+ * (see V10__create_dream_analysis_outbox.sql for the row life cycle).
+ *
+ * <p>{@link #enqueue} joins the caller's transaction, so a dream and its outbox row commit or roll back
+ * together. The worker methods run as single statements in their own transactions: a claim locks rows
+ * only while it runs ({@code FOR UPDATE SKIP LOCKED}) and then relies on the lease, so no transaction
+ * stays open while a batch is being analyzed.
+ */
+@Component
+@RequiredArgsConstructor
+public class DreamAnalysisOutbox {
+
+    private static final String ENQUEUE_SQL = """
+        INSERT INTO dream_analysis_outbox AS o (dream_id)
+        SELECT unnest(?::uuid[])
+        ON CONFLICT (dream_id) DO UPDATE
+            SET revision = o.revision + 1, attempts = 0, available_at = NOW(), last_error = NULL
+        """;
+
+    private static final String CLAIM_SQL = """
+        UPDATE dream_analysis_outbox o
+        SET available_at = NOW() + make_interval(secs => ?), attempts = o.attempts + 1
+        FROM (SELECT dream_id
+              FROM dream_analysis_outbox
+              WHERE available_at <= NOW()
+              ORDER BY available_at
+              LIMIT ?
+              FOR UPDATE SKIP LOCKED) due
+        WHERE o.dream_id = due.dream_id
+        RETURNING o.dream_id, o.revision, o.attempts
+        """;
+
+    private static final String LOAD_SQL = """
+        SELECT d.id, d.title, d.content, d.mood_in_dream, d.mood_after_dream, d.lucid,
+               %s
+        FROM dream_entry d
+        WHERE d.id = ANY(?)
+        """.formatted(DreamRows.TAGS_COLUMN);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * A claimed outbox row.
+     *
+     * @param dreamId  dream to analyze
+     * @param revision row revision at claim time; results of an older revision are discarded
+     * @param attempts attempts so far, including this one
+     */
+    public record Claim(UUID dreamId, int revision, int attempts) {
+    }
+
+    /**
+     * Queue dreams for (re-)analysis in the current transaction. A dream already waiting keeps one row,
+     * which becomes due immediately with a fresh attempt budget.
+     * The dreams must already be flushed, the outbox references {@code dream_entry}.
+     *
+     * @param dreamIds IDs of created or changed dreams
+     */
+    public void enqueue(Collection<UUID> dreamIds) {
+        // One statement for any number of dreams (bulk import queues whole batches)
+        jdbcTemplate.update(ENQUEUE_SQL, (Object) dreamIds.toArray(UUID[]::new));
+    }
+
+    /**
+     * Claim up to {@code limit} due rows, oldest first. Rows locked by a concurrent claim are skipped.
+     * Claimed rows become due again after {@code lease} unless completed or retried before.
+     *
+     * @param limit maximum number of rows
+     * @param lease how long the rows stay reserved for this worker
+     * @return claimed rows, empty if nothing is due
+     */
+    public List<Claim> claim(int limit, Duration lease) {
+        return jdbcTemplate.query(CLAIM_SQL,
+            (rs, rowNum) -> new Claim(rs.getObject("dream_id", UUID.class), rs.getInt("revision"), rs.getInt("attempts")),
+            lease.toMillis() / 1000.0, limit);
+    }
+
+    /**
+     * Load the content of claimed dreams. Dreams deleted in the meantime are missing from the result.
+     *
+     * @param dreamIds dream IDs
+     * @return analysis requests, in no particular order
+     */
+    public List<AnalysisRequest> load(Collection<UUID> dreamIds) {
+        return jdbcTemplate.query(LOAD_SQL, (rs, rowNum) -> mapRow(rs), (Object) dreamIds.toArray(UUID[]::new));
+    }
+
+    /**
+     * Remove a row whose analysis is done. Call in the transaction that stores the analysis.
+     *
+     * @param claim the claimed row
+     * @return false if the dream changed (or was deleted) since the claim - the result is stale and must be dropped
+     */
+    public boolean complete(Claim claim) {
+        return jdbcTemplate.update("DELETE FROM dream_analysis_outbox WHERE dream_id = ? AND revision = ?",
+            claim.dreamId(), claim.revision()) == 1;
+    }
+
+    /**
+     * Record a failed attempt. Does nothing if the dream changed since the claim (its row is already due again).
+     *
+     * @param claim the claimed row
+     * @param delay when to try again, {@code null} to park the row until the dream changes
+     * @param error error description
+     */
+    public void retry(Claim claim, Duration delay, String error) {
+        jdbcTemplate.update("""
+                UPDATE dream_analysis_outbox
+                SET available_at = NOW() + make_interval(secs => ?), last_error = ?
+                WHERE dream_id = ? AND revision = ?
+                """,
+            delay != null ? delay.toMillis() / 1000.0 : null, error, claim.dreamId(), claim.revision());
+    }
+
+    /**
+     * Number of rows waiting or being processed, parked rows excluded.
+     *
+     * @return outbox depth
+     */
+    public long depth() {
+        Long depth = jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM dream_analysis_outbox WHERE available_at IS NOT NULL", Long.class);
+        return depth != null ? depth : 0;
+    }
+
+    private static AnalysisRequest mapRow(ResultSet rs) throws SQLException {
+        return new AnalysisRequest(
+            rs.getObject("id", UUID.class),
+            rs.getString("title"),
+            rs.getString("content"),
+            DreamRows.tags(rs),
+            DreamRows.mood(rs, "mood_in_dream"),
+            DreamRows.mood(rs, "mood_after_dream"),
+            rs.getBoolean("lucid")
+        );
+    }
+}
@@ -0,0 +1,265 @@
+package pl.kalin.dreamlog.dream.analysis;
+
+import jakarta.annotation.PreDestroy;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import pl.kalin.dreamlog.dream.model.DreamAnalysis;
+import pl.kalin.dreamlog.dream.repository.DreamAnalysisRepository;
+import pl.kalin.dreamlog.dream.repository.DreamEntryRepository;
+
+/**
+ * Drains {@link DreamAnalysisOutbox} in the background: claims batches of due dreams, runs them through
+ * the {@link DreamAnalyzer} on a small worker pool and stores one {@link DreamAnalysis} per dream,
+ * replacing the previous one.
+ *
+ * <p>Every node may run workers; claims use {@code SKIP LOCKED}, so nodes share the outbox without blocking
+ * each other. Each node claims only as many batches as its pool can run or queue
+ * ({@code app.analysis.workers} + {@code app.analysis.queue-capacity}), so rows never sit claimed in memory
+ * while another node could take them. Failed dreams are retried with exponential backoff, and parked after
+ * {@code app.analysis.max-attempts}.
+ *
+ * <p>Delivery is at-least-once: a batch whose lease runs out may be analyzed twice, but only a result of
+ * the dream's current outbox revision is stored.
+ */
+@Component
+@ConditionalOnProperty(name = "app.analysis.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class DreamAnalysisWorker {
+
+    static final Duration MAX_BACKOFF = Duration.ofHours(1);
+    static final int MAX_ERROR_LENGTH = 1000;
+
+    private final DreamAnalysisOutbox outbox;
+    private final DreamAnalyzer analyzer;
+    private final DreamAnalysisRepository analysisRepository;
+    private final DreamEntryRepository dreamRepository;
+    private final TransactionTemplate transaction;
+    private final int batchSize;
+    private final Duration lease;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final ThreadPoolExecutor executor;
+    // Batches claimed by this node and not finished yet (running or queued)
+    private final Semaphore slots;
+
+    private final Timer batchTimer;
+    private final Counter analyzed;
+    private final Counter stale;
+    private final Counter retried;
+    private final Counter parked;
+
+    public DreamAnalysisWorker(
+        DreamAnalysisOutbox outbox,
+        DreamAnalyzer analyzer,
+        DreamAnalysisRepository analysisRepository,
+        DreamEntryRepository dreamRepository,
+        PlatformTransactionManager transactionManager,
+        @Value("${app.analysis.workers:2}") int workers,
+        @Value("${app.analysis.queue-capacity:4}") int queueCapacity,
+        @Value("${app.analysis.batch-size:20}") int batchSize,
+        @Value("${app.analysis.lease:5m}") Duration lease,
+        @Value("${app.analysis.max-attempts:5}") int maxAttempts,
+        @Value("${app.analysis.retry-backoff:30s}") Duration retryBackoff,
+        MeterRegistry meterRegistry
+    ) {
+        this.outbox = outbox;
+        this.analyzer = analyzer;
+        this.analysisRepository = analysisRepository;
+        this.dreamRepository = dreamRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.lease = lease;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), new CustomizableThreadFactory("dream-analysis-"));
+        this.slots = new Semaphore(workers + queueCapacity);
+
+        this.batchTimer = Timer.builder("dreamlog.analysis.batch")
+            .tag("analyzer", analyzer.modelVersion())
+            .description("Time to analyze and store one batch of dreams")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        this.analyzed = outcomeCounter(meterRegistry, "analyzed");
+        this.stale = outcomeCounter(meterRegistry, "stale");
+        this.retried = outcomeCounter(meterRegistry, "retried");
+        this.parked = outcomeCounter(meterRegistry, "parked");
+        Gauge.builder("dreamlog.analysis.queue", executor, pool -> pool.getQueue().size())
+            .description("Claimed batches waiting for a worker on this node")
+            .register(meterRegistry);
+        log.info("Dream analysis: {} workers, analyzer {}", workers, analyzer.modelVersion());
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("dreamlog.analysis.dreams")
+            .tag("outcome", outcome)
+            .description("Dreams processed by the analysis pipeline")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Claim due batches while this node has free slots and hand them to the pool. The scheduling pool is
+     * sized so the other, long-running jobs don't delay this one (see {@link pl.kalin.dreamlog.config.SchedulingConfig}).
+     */
+    @Scheduled(fixedDelayString = "${app.analysis.poll-interval:2s}")
+    public void poll() {
+        while (!executor.isShutdown() && slots.tryAcquire()) {
+            List<DreamAnalysisOutbox.Claim> claims;
+            try {
+                claims = outbox.claim(batchSize, lease);
+            } catch (RuntimeException e) {
+                slots.release();
+                throw e;
+            }
+            if (claims.isEmpty()) {
+                slots.release();
+                return;
+            }
+            executor.execute(() -> {
+                try {
+                    process(claims);
+                } finally {
+                    slots.release();
+                }
+            });
+            if (claims.size() < batchSize) {
+                // Drained
+                return;
+            }
+        }
+    }
+
+    /**
+     * Analyze and store one claimed batch. Never throws: whatever fails is scheduled for a retry,
+     * and if even that fails the lease brings the rows back.
+     */
+    void process(List<DreamAnalysisOutbox.Claim> claims) {
+        batchTimer.record(() -> {
+            try {
+                analyzeAndStore(claims);
+            } catch (RuntimeException e) {
+                log.warn("Dream analysis batch of {} failed", claims.size(), e);
+                claims.forEach(claim -> retry(claim, e.toString()));
+            }
+        });
+    }
+
+    private void analyzeAndStore(List<DreamAnalysisOutbox.Claim> claims) {
+        List<AnalysisRequest> requests = outbox.load(claims.stream().map(DreamAnalysisOutbox.Claim::dreamId).toList());
+        if (requests.isEmpty()) {
+            // All deleted since the claim; their rows went with them
+            return;
+        }
+        Set<UUID> loaded = new HashSet<>();
+        requests.forEach(request -> loaded.add(request.dreamId()));
+
+        Map<UUID, AnalysisResult> results = analyzer.analyze(requests);
+
+        List<DreamAnalysisOutbox.Claim> missing = new ArrayList<>();
+        transaction.executeWithoutResult(status -> {
+            for (DreamAnalysisOutbox.Claim claim : claims) {
+                if (!loaded.contains(claim.dreamId())) {
+                    continue;
+                }
+                AnalysisResult result = results.get(claim.dreamId());
+                if (result == null) {
+                    missing.add(claim);
+                } else if (outbox.complete(claim)) {
+                    analysisRepository.deleteByDreamId(claim.dreamId());
+                    analysisRepository.save(toEntity(claim.dreamId(), result));
+                    analyzed.increment();
+                } else {
+                    // Edited or deleted while being analyzed: the current revision gets its own round
+                    stale.increment();
+                }
+            }
+        });
+        missing.forEach(claim -> retry(claim, "No result from analyzer " + analyzer.modelVersion()));
+    }
+
+    private void retry(DreamAnalysisOutbox.Claim claim, String error) {
+        String message = error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+        Duration delay = claim.attempts() >= maxAttempts ? null : backoff(claim.attempts());
+        try {
+            outbox.retry(claim, delay, message);
+        } catch (RuntimeException e) {
+            log.warn("Could not schedule retry of dream {} analysis, it is retried when its lease expires",
+                claim.dreamId(), e);
+            return;
+        }
+        if (delay == null) {
+            log.error("Giving up on analysis of dream {} after {} attempts: {}", claim.dreamId(), claim.attempts(), message);
+            parked.increment();
+        } else {
+            retried.increment();
+        }
+    }
+
+    /**
+     * Delay before the next attempt: {@code retry-backoff} doubled after every failed attempt,
+     * up to {@link #MAX_BACKOFF}.
+     *
+     * @param attempts attempts made so far (at least 1)
+     * @return delay before the next attempt
+     */
+    Duration backoff(int attempts) {
+        int doublings = Math.min(attempts - 1, 20);
+        Duration delay = retryBackoff.multipliedBy(1L << doublings);
+        return delay.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : delay;
+    }
+
+    private DreamAnalysis toEntity(UUID dreamId, AnalysisResult result) {
+        return DreamAnalysis.builder()
+            .dream(dreamRepository.getReferenceById(dreamId))
+            .createdAt(LocalDateTime.now())
+            .summary(result.summary())
+            .tags(new ArrayList<>(result.tags()))
+            .entities(new ArrayList<>(result.entities()))
+            .emotions(new HashMap<>(result.emotions()))
+            .interpretation(result.interpretation())
+            .riskScore(result.riskScore())
+            .recurring(result.recurring())
+            .language(result.language())
+            .style(result.style())
+            .modelVersion(analyzer.modelVersion())
+            .build();
+    }
+
+    /**
+     * Stop taking new batches and give running ones a moment to finish; rows of unfinished batches
+     * are picked up again when their lease expires.
+     */
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+}
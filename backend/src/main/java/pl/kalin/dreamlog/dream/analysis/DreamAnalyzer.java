@@ -0,0 +1,32 @@
+package pl.kalin.dreamlog.dream.analysis;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Produces analyses of dreams for the asynchronous analysis pipeline ({@link DreamAnalysisWorker}).
+ * Called with batches, so implementations backed by a remote model can analyze several dreams per request.
+ *
+ * <p>Implementations are selected by {@code app.analysis.analyzer}:
+ * {@code rules} (default, {@link RuleBasedDreamAnalyzer}, local and deterministic).
+ */
+public interface DreamAnalyzer {
+
+    /**
+     * Version stored with every analysis; a new version means results are not comparable with older ones.
+     *
+     * @return analyzer name and version, e.g. {@code rules-v1}
+     */
+    String modelVersion();
+
+    /**
+     * Analyze a batch of dreams.
+     * Throwing fails the whole batch (every dream is retried later); dreams missing from the result
+     * are retried individually.
+     *
+     * @param requests dreams to analyze
+     * @return results by dream ID
+     */
+    Map<UUID, AnalysisResult> analyze(List<AnalysisRequest> requests);
+}
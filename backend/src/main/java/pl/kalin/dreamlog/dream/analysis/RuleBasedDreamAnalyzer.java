@@ -0,0 +1,275 @@
+package pl.kalin.dreamlog.dream.analysis;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import pl.kalin.dreamlog.common.text.TextNormalizer;
+import pl.kalin.dreamlog.dream.model.Mood;
+
+/**
+ * Local stand-in analyzer: keyword lexicons (English and Polish) for emotions and common dream symbols,
+ * plus a few heuristics for language, style and recurrence. Deterministic and free, so the pipeline
+ * works without any external model; a model-backed {@link DreamAnalyzer} can replace it later.
+ *
+ * <p>Lexicon entries are word stems: an entry of 4+ characters matches words starting with it
+ * ("scar" matches "scared", "scary"), shorter entries match whole words only.
+ */
+@Component
+@ConditionalOnProperty(name = "app.analysis.analyzer", havingValue = "rules", matchIfMissing = true)
+public class RuleBasedDreamAnalyzer implements DreamAnalyzer {
+
+    static final String MODEL_VERSION = "rules-v1";
+    static final int MAX_SUMMARY_LENGTH = 255;
+    static final int MAX_TAGS = 5;
+    static final int MAX_ENTITIES = 10;
+
+    private static final Map<String, List<String>> EMOTIONS = Map.of(
+        "fear", List.of("afraid", "fear", "scar", "terrif", "panic", "horror", "anxi", "nervous",
+            "strach", "bal", "przeraz", "panik", "lek", "lekal"),
+        "joy", List.of("happy", "happi", "joy", "laugh", "smil", "wonderful", "excit", "free",
+            "szczesl", "rados", "smial", "wesol"),
+        "sadness", List.of("sad", "cry", "cried", "tears", "lonel", "lost", "grief", "miss",
+            "smut", "plak", "samotn", "zal"),
+        "anger", List.of("angry", "anger", "furious", "rage", "shout", "yell", "fight",
+            "zlosc", "zly", "wsciek", "krzycz", "klotn"),
+        "surprise", List.of("suddenly", "surpris", "shock", "strange", "weird",
+            "nagle", "zaskocz", "dziwn")
+    );
+
+    private record Symbol(String name, List<String> stems, String meaning) {
+    }
+
+    private static final List<Symbol> SYMBOLS = List.of(
+        new Symbol("water", List.of("water", "ocean", "sea", "swim", "wave", "river", "lake", "woda", "wody",
+            "morze", "morza", "ocean", "plywa", "rzek", "jezior"),
+            "Water often mirrors the dreamer's emotional state."),
+        new Symbol("flying", List.of("fly", "flying", "flew", "flight", "glid", "soar", "lata", "leci", "lecial"),
+            "Flying is commonly linked to a sense of freedom or escaping limits."),
+        new Symbol("falling", List.of("fall", "fell", "spada", "spadl", "upadl"),
+            "Falling tends to accompany feelings of losing control."),
+        new Symbol("teeth", List.of("teeth", "tooth", "zeby", "zab", "zeba"),
+            "Losing teeth is often associated with worries about appearance or powerlessness."),
+        new Symbol("chase", List.of("chase", "chasing", "chased", "pursu", "gonil", "goni", "uciek", "ucieka"),
+            "Being chased usually points to something the dreamer is avoiding."),
+        new Symbol("house", List.of("house", "home", "room", "dom", "domu", "pokoj"),
+            "Houses and rooms are often read as images of the self."),
+        new Symbol("death", List.of("death", "dead", "die", "died", "dying", "smierc", "umarl", "umier", "martw"),
+            "Death in dreams usually symbolizes an ending or a transition rather than literal death."),
+        new Symbol("exam", List.of("exam", "test", "school", "teacher", "egzamin", "szkol", "nauczyciel"),
+            "Exams and school reflect being evaluated or feeling unprepared."),
+        new Symbol("animals", List.of("dog", "cat", "snake", "wolf", "spider", "horse", "pies", "psa", "kot",
+            "waz", "weza", "wilk", "pajak", "kon", "konia"),
+            "Animals often stand for instincts or traits of people in the dreamer's life."),
+        new Symbol("family", List.of("mother", "father", "mom", "dad", "sister", "brother", "mama", "mame",
+            "tata", "tate", "siostr", "brat", "brata"),
+            "Family members often represent the relationships or roles they play in waking life.")
+    );
+
+    private static final Set<String> RECURRING_WORDS = Set.of("again", "recurring", "znowu", "ponownie", "powracajacy");
+    private static final List<String> RECURRING_PHRASES = List.of("same dream", "once more", "ten sam sen", "kolejny raz");
+
+    private static final Set<String> ENGLISH_WORDS = Set.of("the", "and", "was", "were", "with", "that", "my", "of", "in", "it");
+    private static final Set<String> POLISH_WORDS = Set.of("w", "na", "sie", "ze", "nie", "jak", "byl", "bylo", "bylam", "bylem", "moj");
+
+    private static final int FRAGMENT_WORDS = 20;
+
+    @Override
+    public String modelVersion() {
+        return MODEL_VERSION;
+    }
+
+    @Override
+    public Map<UUID, AnalysisResult> analyze(List<AnalysisRequest> requests) {
+        Map<UUID, AnalysisResult> results = new LinkedHashMap<>();
+        for (AnalysisRequest request : requests) {
+            results.put(request.dreamId(), analyze(request));
+        }
+        return results;
+    }
+
+    AnalysisResult analyze(AnalysisRequest request) {
+        String text = (request.title() == null ? "" : request.title()) + ". " + request.content();
+        List<String> words = TextNormalizer.tokenize(text);
+
+        Map<String, Double> emotions = scoreEmotions(words, request);
+        List<Symbol> symbols = findSymbols(words);
+        double riskScore = riskScore(emotions, request);
+
+        Set<String> userTags = new HashSet<>();
+        if (request.tags() != null) {
+            request.tags().forEach(tag -> userTags.add(TextNormalizer.normalize(tag)));
+        }
+        List<String> tags = symbols.stream()
+            .map(Symbol::name)
+            .filter(name -> !userTags.contains(name))
+            .limit(MAX_TAGS)
+            .toList();
+
+        String interpretation = symbols.isEmpty()
+            ? "No common dream symbols were recognized."
+            : String.join(" ", symbols.stream().limit(3).map(Symbol::meaning).toList());
+
+        return new AnalysisResult(
+            summarize(request.content()),
+            tags,
+            properNouns(request.content()),
+            emotions,
+            interpretation,
+            riskScore,
+            isRecurring(words),
+            language(text, words),
+            style(request, emotions, riskScore, words.size())
+        );
+    }
+
+    private static Map<String, Double> scoreEmotions(List<String> words, AnalysisRequest request) {
+        Map<String, Integer> hits = new LinkedHashMap<>();
+        EMOTIONS.keySet().stream().sorted().forEach(emotion -> hits.put(emotion, 0));
+        for (String word : words) {
+            EMOTIONS.forEach((emotion, stems) -> {
+                if (matchesAny(word, stems)) {
+                    hits.merge(emotion, 1, Integer::sum);
+                }
+            });
+        }
+        for (Mood mood : new Mood[]{request.moodInDream(), request.moodAfterDream()}) {
+            if (mood == null) {
+                continue;
+            }
+            switch (mood) {
+                case NIGHTMARE -> hits.merge("fear", 2, Integer::sum);
+                case NEGATIVE -> hits.merge("sadness", 1, Integer::sum);
+                case POSITIVE -> hits.merge("joy", 1, Integer::sum);
+                case NEUTRAL, MIXED -> {
+                }
+            }
+        }
+        // Saturating score: 1 hit -> 0.5, 2 -> 0.67, 3 -> 0.75 ...
+        Map<String, Double> scores = new LinkedHashMap<>();
+        hits.forEach((emotion, count) -> scores.put(emotion, round(count / (count + 1.0))));
+        return scores;
+    }
+
+    private static List<Symbol> findSymbols(List<String> words) {
+        Map<Symbol, Integer> hits = new LinkedHashMap<>();
+        for (String word : words) {
+            for (Symbol symbol : SYMBOLS) {
+                if (matchesAny(word, symbol.stems())) {
+                    hits.merge(symbol, 1, Integer::sum);
+                }
+            }
+        }
+        // Most mentioned first, lexicon order breaks ties
+        return hits.entrySet().stream()
+            .sorted(Map.Entry.<Symbol, Integer>comparingByValue().reversed())
+            .map(Map.Entry::getKey)
+            .toList();
+    }
+
+    private static boolean matchesAny(String word, List<String> stems) {
+        for (String stem : stems) {
+            if (stem.length() >= 4 ? word.startsWith(stem) : word.equals(stem)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static double riskScore(Map<String, Double> emotions, AnalysisRequest request) {
+        double score = 0.6 * emotions.get("fear") + 0.3 * emotions.get("sadness") + 0.1 * emotions.get("anger");
+        if (request.moodInDream() == Mood.NIGHTMARE || request.moodAfterDream() == Mood.NIGHTMARE) {
+            score += 0.3;
+        }
+        return round(Math.min(1, score));
+    }
+
+    private static boolean isRecurring(List<String> words) {
+        if (words.stream().anyMatch(RECURRING_WORDS::contains)) {
+            return true;
+        }
+        String joined = " " + String.join(" ", words) + " ";
+        return RECURRING_PHRASES.stream().anyMatch(phrase -> joined.contains(" " + phrase + " "));
+    }
+
+    private static String language(String text, List<String> words) {
+        long polish = words.stream().filter(POLISH_WORDS::contains).count();
+        long english = words.stream().filter(ENGLISH_WORDS::contains).count();
+        if (text.chars().anyMatch(c -> "ąćęłńóśźżĄĆĘŁŃÓŚŹŻ".indexOf(c) >= 0)) {
+            polish += 2;
+        }
+        return polish > english ? "pl" : "en";
+    }
+
+    private static String style(AnalysisRequest request, Map<String, Double> emotions, double riskScore, int wordCount) {
+        if (request.lucid()) {
+            return "lucid";
+        }
+        if (riskScore >= 0.6 && emotions.get("fear") >= 0.5) {
+            return "nightmare";
+        }
+        return wordCount < FRAGMENT_WORDS ? "fragment" : "narrative";
+    }
+
+    /**
+     * First sentence of the content, cut to {@value #MAX_SUMMARY_LENGTH} characters.
+     */
+    static String summarize(String content) {
+        if (content == null || content.isBlank()) {
+            return "";
+        }
+        String normalized = content.replaceAll("\\s+", " ").strip();
+        int end = normalized.length();
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if ((c == '.' || c == '!' || c == '?') && i > 0) {
+                end = i + 1;
+                break;
+            }
+        }
+        String sentence = normalized.substring(0, end);
+        if (sentence.length() <= MAX_SUMMARY_LENGTH) {
+            return sentence;
+        }
+        int cut = MAX_SUMMARY_LENGTH - 3;
+        if (Character.isHighSurrogate(sentence.charAt(cut - 1))) {
+            cut--;
+        }
+        return sentence.substring(0, cut).stripTrailing() + "...";
+    }
+
+    /**
+     * Capitalized words that don't start a sentence - names of people and places.
+     */
+    private static List<String> properNouns(String content) {
+        if (content == null) {
+            return List.of();
+        }
+        Set<String> entities = new LinkedHashSet<>();
+        boolean sentenceStart = true;
+        for (String token : content.split("\\s+")) {
+            String word = token.replaceAll("^\\P{L}+|\\P{L}+$", "");
+            if (!sentenceStart && word.length() >= 3 && Character.isUpperCase(word.charAt(0))
+                && !word.chars().allMatch(Character::isUpperCase)) {
+                entities.add(word);
+            }
+            sentenceStart = token.endsWith(".") || token.endsWith("!") || token.endsWith("?");
+            if (entities.size() == MAX_ENTITIES) {
+                break;
+            }
+        }
+        return new ArrayList<>(entities);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
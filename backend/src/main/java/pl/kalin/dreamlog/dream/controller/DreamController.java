@@ -2,69 +2,171 @@ package pl.kalin.dreamlog.dream.controller;
 
 import jakarta.validation.Valid;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import lombok.RequiredArgsConstructor;
 import pl.kalin.dreamlog.common.dto.CreatedResponse;
+import pl.kalin.dreamlog.common.dto.CursorPage;
 import pl.kalin.dreamlog.common.security.AuthenticationHelper;
 import pl.kalin.dreamlog.dream.dto.DreamCreateRequest;
+import pl.kalin.dreamlog.dream.dto.DreamCursor;
+import pl.kalin.dreamlog.dream.dto.DreamImportResult;
+import pl.kalin.dreamlog.dream.dto.DreamPatch;
 import pl.kalin.dreamlog.dream.dto.DreamResponse;
+import pl.kalin.dreamlog.dream.dto.DreamSort;
+import pl.kalin.dreamlog.dream.dto.DreamSummary;
 import pl.kalin.dreamlog.dream.dto.DreamUpdateRequest;
+import pl.kalin.dreamlog.dream.dto.SimilarDream;
+import pl.kalin.dreamlog.dream.exception.InvalidPaginationException;
+import pl.kalin.dreamlog.dream.exception.InvalidRequestParameterException;
+import pl.kalin.dreamlog.dream.importer.DreamImportService;
+import pl.kalin.dreamlog.dream.service.DreamExportService;
 import pl.kalin.dreamlog.dream.service.DreamService;
+import pl.kalin.dreamlog.dream.service.DreamVersionService;
+import pl.kalin.dreamlog.dream.similar.SimilarDreamService;
 import pl.kalin.dreamlog.user.User;
 
 /**
  * REST controller for dream entry operations.
  * All endpoints require authentication and automatically filter by current user.
+ *
+ * <p>Dream lists and single dreams carry an ETag ({@link DreamVersionService}); a GET with a matching
+ * {@code If-None-Match} is answered with 304 after one index lookup, without loading any dream.
  */
 @RestController
 @RequestMapping("/api/dreams")
 @RequiredArgsConstructor
 public class DreamController {
 
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final String SUMMARY_VIEW = "view=summary";
+    private static final int EXPORT_BUFFER_SIZE = 8192;
+    private static final int MAX_SIMILAR = 50;
+    private static final String MERGE_PATCH_JSON_VALUE = "application/merge-patch+json";
+
     private final DreamService dreamService;
+    private final DreamVersionService dreamVersionService;
+    private final DreamExportService dreamExportService;
+    private final DreamImportService dreamImportService;
+    private final SimilarDreamService similarDreamService;
     private final AuthenticationHelper authHelper;
 
     /**
      * Get paginated dreams for the authenticated user.
      * Supports pagination and sorting via query parameters.
+     * Sort is limited to index-backed keys (see {@link DreamSort}).
      */
     @GetMapping
     public ResponseEntity<Page<DreamResponse>> getUserDreams(
         @RequestParam(defaultValue = "0") int page,
         @RequestParam(defaultValue = "20") int size,
         @RequestParam(defaultValue = "date,desc") String sort,
-        Authentication authentication) {
+        Authentication authentication,
+        WebRequest request) {
         User user = getCurrentUser(authentication);
 
-        // Parse sort parameter (format: "property,direction")
-        String[] sortParams = sort.split(",");
-        String sortProperty = sortParams[0];
-        Sort.Direction sortDirection = sortParams.length > 1 && sortParams[1].equalsIgnoreCase("asc")
-            ? Sort.Direction.ASC
-            : Sort.Direction.DESC;
+        if (page < 0) {
+            throw new InvalidPaginationException("Page index must not be negative");
+        }
+        validatePageSize(size);
+        DreamSort dreamSort = DreamSort.parse(sort);
 
-        Pageable pageable = PageRequest.of(page, size, Sort.by(sortDirection, sortProperty));
+        String version = dreamVersionService.getDreamListVersion(user);
+        if (request.checkNotModified(version)) {
+            return null;
+        }
+        Pageable pageable = PageRequest.of(page, size, dreamSort.toSort());
         Page<DreamResponse> dreams = dreamService.getUserDreams(user, pageable);
-        return ResponseEntity.ok(dreams);
+        return okVersioned(version).body(dreams);
+    }
+
+    /**
+     * Get paginated dream summaries ({@code ?view=summary}): preview instead of full content.
+     * Same paging and sorting rules as {@link #getUserDreams}.
+     */
+    @GetMapping(params = {SUMMARY_VIEW, "!cursor"})
+    public ResponseEntity<Page<DreamSummary>> getUserDreamSummaries(
+        @RequestParam(defaultValue = "0") int page,
+        @RequestParam(defaultValue = "20") int size,
+        @RequestParam(defaultValue = "date,desc") String sort,
+        Authentication authentication,
+        WebRequest request) {
+        User user = getCurrentUser(authentication);
+
+        if (page < 0) {
+            throw new InvalidPaginationException("Page index must not be negative");
+        }
+        validatePageSize(size);
+        DreamSort dreamSort = DreamSort.parse(sort);
+
+        String version = dreamVersionService.getDreamListVersion(user);
+        if (request.checkNotModified(version)) {
+            return null;
+        }
+        Pageable pageable = PageRequest.of(page, size, dreamSort.toSort());
+        Page<DreamSummary> dreams = dreamService.getUserDreamSummaries(user, pageable);
+        return okVersioned(version).body(dreams);
+    }
+
+    /**
+     * Get dreams using keyset (cursor) pagination.
+     * Selected by the presence of the {@code cursor} parameter - pass it empty for the first slice,
+     * then echo back {@code nextCursor} from the previous response. No total count is computed.
+     */
+    @GetMapping(params = "cursor")
+    public ResponseEntity<CursorPage<DreamResponse>> getUserDreamsByCursor(
+        @RequestParam String cursor,
+        @RequestParam(defaultValue = "20") int size,
+        @RequestParam(defaultValue = "date,desc") String sort,
+        @RequestParam(required = false) String view,
+        Authentication authentication,
+        WebRequest request) {
+        User user = getCurrentUser(authentication);
+
+        if ("summary".equals(view)) {
+            throw new InvalidPaginationException("The view parameter is not supported with cursor pagination");
+        }
+        validatePageSize(size);
+        DreamSort dreamSort = DreamSort.parse(sort);
+        DreamCursor position = cursor.isBlank() ? null : DreamCursor.decode(cursor);
+
+        String version = dreamVersionService.getDreamListVersion(user);
+        if (request.checkNotModified(version)) {
+            return null;
+        }
+        CursorPage<DreamResponse> dreams = dreamService.getUserDreams(user, position, size, dreamSort);
+        return okVersioned(version).body(dreams);
     }
 
     /**
@@ -73,10 +175,16 @@ public class DreamController {
     @GetMapping("/{id}")
     public ResponseEntity<DreamResponse> getDreamById(
         @PathVariable UUID id,
-        Authentication authentication) {
+        Authentication authentication,
+        WebRequest request) {
         User user = getCurrentUser(authentication);
+        String version = dreamVersionService.getDreamVersion(user, id)
+            .orElseThrow(() -> new AccessDeniedException("Dream not found or access denied"));
+        if (request.checkNotModified(version)) {
+            return null;
+        }
         DreamResponse dream = dreamService.getDreamById(user, id);
-        return ResponseEntity.ok(dream);
+        return okVersioned(version).body(dream);
     }
 
     /**
@@ -107,6 +215,24 @@ public class DreamController {
         return ResponseEntity.noContent().build();
     }
 
+    /**
+     * Partially update a dream (PATCH - JSON Merge Patch, RFC 7396).
+     * Send the dream's ETag as {@code If-Match} to be told (409) instead of overwriting a newer edit.
+     * Answers with the dream's new ETag.
+     */
+    @PatchMapping(value = "/{id}", consumes = MERGE_PATCH_JSON_VALUE)
+    public ResponseEntity<Void> patchDream(
+        @PathVariable UUID id,
+        @RequestBody DreamPatch patch,
+        @RequestHeader HttpHeaders headers,
+        Authentication authentication) {
+        User user = getCurrentUser(authentication);
+        long version = dreamService.patchDream(user, id, patch, DreamVersionService.expectedVersion(headers.getIfMatch()));
+        return ResponseEntity.noContent()
+            .eTag(DreamVersionService.version(version))
+            .build();
+    }
+
     /**
      * Delete a dream entry.
      * Only the owner can delete their dream.
@@ -139,6 +265,150 @@ public class DreamController {
         return ResponseEntity.ok(results);
     }
 
+    /**
+     * Search dreams returning summaries ({@code ?view=summary}) instead of full dreams.
+     * Minimum 3 characters required in query.
+     */
+    @GetMapping(value = "/search", params = SUMMARY_VIEW)
+    public ResponseEntity<List<DreamSummary>> searchDreamSummaries(
+        @RequestParam String query,
+        Authentication authentication) {
+        User user = getCurrentUser(authentication);
+
+        if (query == null || query.trim().length() < 3) {
+            return ResponseEntity.ok(List.of());
+        }
+
+        List<DreamSummary> results = dreamService.searchDreamSummaries(user, query.trim());
+        return ResponseEntity.ok(results);
+    }
+
+    /**
+     * Get the authenticated user's dreams most similar in meaning to one of their dreams.
+     * Only the owner can ask about a dream.
+     */
+    @GetMapping("/{id}/similar")
+    public ResponseEntity<List<SimilarDream>> getSimilarDreams(
+        @PathVariable UUID id,
+        @RequestParam(defaultValue = "10") int limit,
+        Authentication authentication) {
+        User user = getCurrentUser(authentication);
+        List<SimilarDream> results = similarDreamService.findSimilar(user, id, validateSimilarLimit(limit));
+        return ResponseEntity.ok(results);
+    }
+
+    /**
+     * Semantic search: dreams closest in meaning to the query, even without shared words.
+     * Minimum 3 characters required in query.
+     */
+    @GetMapping("/search/semantic")
+    public ResponseEntity<List<SimilarDream>> searchSimilarDreams(
+        @RequestParam String query,
+        @RequestParam(defaultValue = "20") int limit,
+        Authentication authentication) {
+        User user = getCurrentUser(authentication);
+
+        if (query == null || query.trim().length() < 3) {
+            return ResponseEntity.ok(List.of());
+        }
+
+        List<SimilarDream> results = similarDreamService.searchSemantic(user, query.trim(), validateSimilarLimit(limit));
+        return ResponseEntity.ok(results);
+    }
+
+    /**
+     * Export the whole journal of the authenticated user as NDJSON (one dream per line, newest first).
+     * Streamed straight from the database, so memory use doesn't depend on the number of dreams.
+     * Gzip-compressed when the client sends {@code Accept-Encoding: gzip}.
+     */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportDreams(
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+        Authentication authentication) {
+        User user = getCurrentUser(authentication);
+        boolean gzip = acceptsGzip(acceptEncoding);
+
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                GZIPOutputStream compressed = new GZIPOutputStream(out, EXPORT_BUFFER_SIZE);
+                dreamExportService.exportDreams(user, compressed);
+                compressed.finish();
+            } else {
+                dreamExportService.exportDreams(user, out);
+            }
+        };
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .header(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename("dreams.ndjson").build().toString())
+            .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
+    /**
+     * Import dreams in bulk: NDJSON (one dream per line, e.g. a journal export) or CSV with a header row.
+     * The upload is parsed and written incrementally in batches; invalid lines are skipped and reported,
+     * the rest is imported.
+     */
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, DreamImportService.TEXT_CSV_VALUE})
+    public ResponseEntity<DreamImportResult> importDreams(
+        @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+        InputStream body,
+        Authentication authentication) throws IOException {
+        User user = getCurrentUser(authentication);
+        MediaType mediaType = MediaType.parseMediaType(contentType);
+        Charset charset = mediaType.getCharset() != null ? mediaType.getCharset() : StandardCharsets.UTF_8;
+
+        DreamImportResult result = mediaType.isCompatibleWith(MediaType.APPLICATION_NDJSON)
+            ? dreamImportService.importNdjson(user, body, charset)
+            : dreamImportService.importCsv(user, body, charset);
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * True if the Accept-Encoding header lists gzip without {@code q=0}.
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length < 2 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 200 tagged with the version read before the body (never newer than the body). {@code no-cache}
+     * keeps the response in the browser cache but revalidated on every use, which sends
+     * {@code If-None-Match} automatically; Spring Security would otherwise mark it {@code no-store}.
+     */
+    private static ResponseEntity.BodyBuilder okVersioned(String version) {
+        return ResponseEntity.ok()
+            .eTag(version)
+            .cacheControl(CacheControl.noCache().cachePrivate());
+    }
+
+    private static void validatePageSize(int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new InvalidPaginationException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+    }
+
+    private static int validateSimilarLimit(int limit) {
+        if (limit < 1 || limit > MAX_SIMILAR) {
+            throw new InvalidRequestParameterException("Limit must be between 1 and " + MAX_SIMILAR);
+        }
+        return limit;
+    }
+
     /**
      * Helper method to get current authenticated user from database.
      */
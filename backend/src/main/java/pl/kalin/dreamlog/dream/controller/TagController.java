@@ -0,0 +1,47 @@
+package pl.kalin.dreamlog.dream.controller;
+
+import java.util.List;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import lombok.RequiredArgsConstructor;
+import pl.kalin.dreamlog.common.security.AuthenticationHelper;
+import pl.kalin.dreamlog.dream.dto.TagSuggestion;
+import pl.kalin.dreamlog.dream.exception.InvalidRequestParameterException;
+import pl.kalin.dreamlog.dream.tag.TagSuggestionService;
+import pl.kalin.dreamlog.user.User;
+
+/**
+ * REST controller for the authenticated user's dream tags.
+ */
+@RestController
+@RequestMapping("/api/tags")
+@RequiredArgsConstructor
+public class TagController {
+
+    private static final int MAX_SUGGESTIONS = 50;
+
+    private final TagSuggestionService tagSuggestionService;
+    private final AuthenticationHelper authHelper;
+
+    /**
+     * Autocomplete for the tag input: the user's tags starting with the prefix (ignoring case and accents),
+     * most used first. Without a prefix, the most used tags.
+     */
+    @GetMapping("/suggest")
+    public ResponseEntity<List<TagSuggestion>> suggest(
+        @RequestParam(defaultValue = "") String prefix,
+        @RequestParam(defaultValue = "10") int limit,
+        Authentication authentication) {
+        if (limit < 1 || limit > MAX_SUGGESTIONS) {
+            throw new InvalidRequestParameterException("Limit must be between 1 and " + MAX_SUGGESTIONS);
+        }
+        User user = authHelper.getCurrentUser(authentication);
+        return ResponseEntity.ok(tagSuggestionService.suggest(user, prefix, limit));
+    }
+}
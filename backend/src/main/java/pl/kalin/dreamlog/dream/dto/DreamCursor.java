@@ -0,0 +1,49 @@
+package pl.kalin.dreamlog.dream.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+
+import pl.kalin.dreamlog.dream.exception.InvalidPaginationException;
+import pl.kalin.dreamlog.dream.model.DreamEntry;
+
+/**
+ * Keyset position in the dream list: the (date, id) of the last dream already returned.
+ * Travels to the client as an opaque URL-safe token, see {@link #encode()}.
+ */
+public record DreamCursor(LocalDate date, UUID id) {
+
+    private static final char SEPARATOR = '|';
+
+    public static DreamCursor after(DreamEntry entry) {
+        return new DreamCursor(entry.getDate(), entry.getId());
+    }
+
+    public String encode() {
+        String raw = date + String.valueOf(SEPARATOR) + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param token cursor previously returned by {@link #encode()}
+     * @return decoded cursor
+     * @throws InvalidPaginationException if the token was not produced by this class
+     */
+    public static DreamCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(SEPARATOR);
+            if (separator < 0) {
+                throw new InvalidPaginationException("Invalid cursor");
+            }
+            return new DreamCursor(
+                LocalDate.parse(raw.substring(0, separator)),
+                UUID.fromString(raw.substring(separator + 1))
+            );
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new InvalidPaginationException("Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package pl.kalin.dreamlog.dream.dto;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk import.
+ *
+ * @param imported number of dreams imported
+ * @param failed   number of lines rejected
+ * @param errors   first rejected lines with reasons (capped, see {@code app.import.max-reported-errors})
+ */
+public record DreamImportResult(
+    long imported,
+    long failed,
+    List<LineError> errors
+) {
+    /**
+     * @param line    line number in the uploaded file (1-based; for CSV the line where the record starts)
+     * @param message what is wrong with the line
+     */
+    public record LineError(long line, String message) {
+    }
+}
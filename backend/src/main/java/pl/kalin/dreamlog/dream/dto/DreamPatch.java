@@ -0,0 +1,115 @@
+package pl.kalin.dreamlog.dream.dto;
+
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonSetter;
+
+import pl.kalin.dreamlog.dream.exception.InvalidDreamPatchException;
+import pl.kalin.dreamlog.dream.model.Mood;
+
+/**
+ * JSON Merge Patch (RFC 7396, {@code application/merge-patch+json}) of a dream.
+ * Members present in the document replace the dream's values, {@code null} clears a field,
+ * absent members keep their value. Tags are an array, so they are replaced as a whole
+ * (in the dream's tag order, so a reordered array is no change).
+ *
+ * <p>The result is validated like a PUT ({@link DreamUpdateRequest}), so e.g. {@code "title": null}
+ * is rejected, and so are {@code null} or blank tags. Unknown members are rejected too, so a misspelled
+ * member isn't silently ignored (the application's object mapper ignores unknown properties elsewhere).
+ */
+public class DreamPatch {
+
+    private enum Field {
+        DATE, TITLE, CONTENT, MOOD_IN_DREAM, MOOD_AFTER_DREAM, VIVIDNESS, LUCID, TAGS
+    }
+
+    private final Set<Field> present = EnumSet.noneOf(Field.class);
+    private LocalDate date;
+    private String title;
+    private String content;
+    private Mood moodInDream;
+    private Mood moodAfterDream;
+    private Integer vividness;
+    private Boolean lucid;
+    private List<String> tags;
+
+    /**
+     * Apply this patch to the dream's current values.
+     *
+     * @param current the dream as a full update
+     * @return the full update with the patched members replaced
+     */
+    public DreamUpdateRequest applyTo(DreamUpdateRequest current) {
+        return new DreamUpdateRequest(
+            present.contains(Field.DATE) ? date : current.date(),
+            present.contains(Field.TITLE) ? title : current.title(),
+            present.contains(Field.CONTENT) ? content : current.content(),
+            present.contains(Field.MOOD_IN_DREAM) ? moodInDream : current.moodInDream(),
+            present.contains(Field.MOOD_AFTER_DREAM) ? moodAfterDream : current.moodAfterDream(),
+            present.contains(Field.VIVIDNESS) ? vividness : current.vividness(),
+            present.contains(Field.LUCID) ? lucid : current.lucid(),
+            present.contains(Field.TAGS) ? (tags != null ? List.copyOf(new TreeSet<>(tags)) : List.of()) : current.tags()
+        );
+    }
+
+    @JsonSetter("date")
+    void setDate(LocalDate date) {
+        this.date = date;
+        present.add(Field.DATE);
+    }
+
+    @JsonSetter("title")
+    void setTitle(String title) {
+        this.title = title;
+        present.add(Field.TITLE);
+    }
+
+    @JsonSetter("content")
+    void setContent(String content) {
+        this.content = content;
+        present.add(Field.CONTENT);
+    }
+
+    @JsonSetter("moodInDream")
+    void setMoodInDream(Mood moodInDream) {
+        this.moodInDream = moodInDream;
+        present.add(Field.MOOD_IN_DREAM);
+    }
+
+    @JsonSetter("moodAfterDream")
+    void setMoodAfterDream(Mood moodAfterDream) {
+        this.moodAfterDream = moodAfterDream;
+        present.add(Field.MOOD_AFTER_DREAM);
+    }
+
+    @JsonSetter("vividness")
+    void setVividness(Integer vividness) {
+        this.vividness = vividness;
+        present.add(Field.VIVIDNESS);
+    }
+
+    @JsonSetter("lucid")
+    void setLucid(Boolean lucid) {
+        this.lucid = lucid;
+        present.add(Field.LUCID);
+    }
+
+    @JsonSetter("tags")
+    void setTags(List<String> tags) {
+        if (tags != null && tags.stream().anyMatch(tag -> tag == null || tag.isBlank())) {
+            throw new InvalidDreamPatchException("Tags must not be blank");
+        }
+        this.tags = tags;
+        present.add(Field.TAGS);
+    }
+
+    @JsonAnySetter
+    void setUnknown(String name, Object value) {
+        throw new InvalidDreamPatchException("Unknown member: " + name);
+    }
+}
@@ -37,7 +37,7 @@ public record DreamResponse(
             entity.getMoodAfterDream(),
             entity.getVividness(),
             entity.isLucid(),
-            entity.getTags()
+            List.copyOf(entity.getTags())
         );
     }
 }
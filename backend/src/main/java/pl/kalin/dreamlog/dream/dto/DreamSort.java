@@ -0,0 +1,54 @@
+package pl.kalin.dreamlog.dream.dto;
+
+import java.util.Set;
+
+import org.springframework.data.domain.Sort;
+
+import pl.kalin.dreamlog.dream.exception.InvalidPaginationException;
+
+/**
+ * Whitelisted sort order for dream lists.
+ * Only keys backed by the {@code (user_id, date DESC, id)} index are accepted, so a request
+ * can never force a full sort of a user's dreams. {@code id} is always added as a tie-breaker
+ * to keep page boundaries stable between requests.
+ */
+public record DreamSort(Sort.Direction direction) {
+
+    public static final DreamSort DEFAULT = new DreamSort(Sort.Direction.DESC);
+
+    private static final Set<String> SORTABLE_PROPERTIES = Set.of("date");
+
+    /**
+     * Parse the {@code sort} query parameter (format: "property,direction").
+     *
+     * @throws InvalidPaginationException if the property is not whitelisted or the direction is unknown
+     */
+    public static DreamSort parse(String sort) {
+        if (sort == null || sort.isBlank()) {
+            return DEFAULT;
+        }
+        String[] sortParams = sort.split(",");
+        String property = sortParams[0].trim();
+        if (!SORTABLE_PROPERTIES.contains(property)) {
+            throw new InvalidPaginationException("Unsupported sort property: " + property);
+        }
+        if (sortParams.length == 1) {
+            return DEFAULT;
+        }
+        return Sort.Direction.fromOptionalString(sortParams[1].trim())
+            .map(DreamSort::new)
+            .orElseThrow(() -> new InvalidPaginationException("Unsupported sort direction: " + sortParams[1]));
+    }
+
+    public boolean isDescending() {
+        return direction.isDescending();
+    }
+
+    /**
+     * @return Spring Data sort matching the index scan order (date, then id in the opposite direction)
+     */
+    public Sort toSort() {
+        Sort.Direction idDirection = isDescending() ? Sort.Direction.ASC : Sort.Direction.DESC;
+        return Sort.by(direction, "date").and(Sort.by(idDirection, "id"));
+    }
+}
@@ -0,0 +1,38 @@
+package pl.kalin.dreamlog.dream.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import pl.kalin.dreamlog.dream.model.Mood;
+import pl.kalin.dreamlog.dream.repository.DreamSummaryRow;
+
+/**
+ * Lightweight list/search item: everything the dream list shows, with a short preview instead
+ * of the full content. The full body is only served by {@code GET /api/dreams/{id}}.
+ */
+public record DreamSummary(
+    UUID id,
+    LocalDate date,
+    String title,
+    String preview,
+    Mood moodInDream,
+    Mood moodAfterDream,
+    Integer vividness,
+    Boolean lucid,
+    List<String> tags
+) {
+    public static DreamSummary from(DreamSummaryRow row, List<String> tags) {
+        return new DreamSummary(
+            row.id(),
+            row.date(),
+            row.title(),
+            row.preview(),
+            row.moodInDream(),
+            row.moodAfterDream(),
+            row.vividness(),
+            row.lucid(),
+            tags
+        );
+    }
+}
@@ -2,9 +2,11 @@ package pl.kalin.dreamlog.dream.dto;
 
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import pl.kalin.dreamlog.dream.model.DreamEntry;
 import pl.kalin.dreamlog.dream.model.Mood;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -29,4 +31,20 @@ public record DreamUpdateRequest(
     Boolean lucid,
 
     List<String> tags
-) {}
+) {
+    /**
+     * The dream's current values as a full update (base of a {@link DreamPatch}).
+     */
+    public static DreamUpdateRequest from(DreamEntry entity) {
+        return new DreamUpdateRequest(
+            entity.getDate(),
+            entity.getTitle(),
+            entity.getContent(),
+            entity.getMoodInDream(),
+            entity.getMoodAfterDream(),
+            entity.getVividness(),
+            entity.isLucid(),
+            new ArrayList<>(entity.getTags())
+        );
+    }
+}
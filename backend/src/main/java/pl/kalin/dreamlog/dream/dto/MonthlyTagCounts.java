@@ -0,0 +1,16 @@
+package pl.kalin.dreamlog.dream.dto;
+
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * The user's most used tags in one month, by the dreams' dates.
+ *
+ * @param month the month
+ * @param tags  most used tags first, empty if no dream of the month has tags
+ */
+public record MonthlyTagCounts(
+    YearMonth month,
+    List<TagCount> tags
+) {
+}
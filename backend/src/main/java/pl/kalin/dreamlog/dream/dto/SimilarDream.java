@@ -0,0 +1,13 @@
+package pl.kalin.dreamlog.dream.dto;
+
+/**
+ * A dream found by semantic similarity, with how close it is.
+ *
+ * @param dream      the similar dream
+ * @param similarity cosine similarity of the dreams' embeddings, 1 means identical wording
+ */
+public record SimilarDream(
+    DreamSummary dream,
+    double similarity
+) {
+}
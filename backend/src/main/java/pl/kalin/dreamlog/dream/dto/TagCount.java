@@ -0,0 +1,13 @@
+package pl.kalin.dreamlog.dream.dto;
+
+/**
+ * A tag and how many of the user's dreams carry it.
+ *
+ * @param tag    the tag
+ * @param dreams number of dreams with the tag (in the period or together with another tag, where applicable)
+ */
+public record TagCount(
+    String tag,
+    long dreams
+) {
+}
@@ -0,0 +1,15 @@
+package pl.kalin.dreamlog.dream.dto;
+
+/**
+ * Two tags used together on the user's dreams.
+ *
+ * @param tag      the alphabetically first tag
+ * @param otherTag the other tag
+ * @param dreams   number of dreams with both tags
+ */
+public record TagPair(
+    String tag,
+    String otherTag,
+    long dreams
+) {
+}
@@ -0,0 +1,13 @@
+package pl.kalin.dreamlog.dream.dto;
+
+/**
+ * An existing tag of the user that completes what they typed.
+ *
+ * @param tag   the tag as the user wrote it
+ * @param count number of the user's dreams with this tag
+ */
+public record TagSuggestion(
+    String tag,
+    int count
+) {
+}
@@ -0,0 +1,27 @@
+package pl.kalin.dreamlog.dream.event;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Published by {@code DreamService} inside the writing transaction whenever a user's dreams change.
+ * Listeners that maintain derived data (caches, indexes) should react after commit
+ * ({@code @TransactionalEventListener}), so they never see a change that was rolled back.
+ *
+ * @param userId   owner of the changed dreams
+ * @param dreamIds IDs of the changed dreams
+ * @param type     kind of change
+ */
+public record DreamChangedEvent(
+    UUID userId,
+    List<UUID> dreamIds,
+    Type type
+) {
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    public static DreamChangedEvent of(UUID userId, UUID dreamId, Type type) {
+        return new DreamChangedEvent(userId, List.of(dreamId), type);
+    }
+}
@@ -0,0 +1,11 @@
+package pl.kalin.dreamlog.dream.exception;
+
+/**
+ * Thrown when a dream was changed since the version a client based its edit on ({@code If-Match}).
+ * Maps to HTTP 409 Conflict.
+ */
+public class DreamVersionConflictException extends RuntimeException {
+    public DreamVersionConflictException(String message) {
+        super(message);
+    }
+}
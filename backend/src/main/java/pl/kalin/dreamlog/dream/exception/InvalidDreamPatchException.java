@@ -0,0 +1,11 @@
+package pl.kalin.dreamlog.dream.exception;
+
+/**
+ * Thrown when a patched dream doesn't pass the validation of a full update.
+ * Maps to HTTP 400 Bad Request.
+ */
+public class InvalidDreamPatchException extends RuntimeException {
+    public InvalidDreamPatchException(String message) {
+        super(message);
+    }
+}
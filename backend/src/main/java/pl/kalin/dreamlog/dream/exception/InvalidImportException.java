@@ -0,0 +1,12 @@
+package pl.kalin.dreamlog.dream.exception;
+
+/**
+ * Thrown when an import file can't be read at all (e.g. CSV without a content column).
+ * Problems with single lines are reported in the import result instead.
+ * Maps to HTTP 400 Bad Request.
+ */
+public class InvalidImportException extends RuntimeException {
+    public InvalidImportException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package pl.kalin.dreamlog.dream.exception;
+
+/**
+ * Thrown when paging parameters (sort, size or cursor) are malformed or not supported.
+ * Maps to HTTP 400 Bad Request.
+ */
+public class InvalidPaginationException extends RuntimeException {
+    public InvalidPaginationException(String message) {
+        super(message);
+    }
+}
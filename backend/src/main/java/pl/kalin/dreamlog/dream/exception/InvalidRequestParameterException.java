@@ -0,0 +1,11 @@
+package pl.kalin.dreamlog.dream.exception;
+
+/**
+ * Thrown when a query parameter outside paging (e.g. a result limit or a period length) is out of range.
+ * Maps to HTTP 400 Bad Request.
+ */
+public class InvalidRequestParameterException extends RuntimeException {
+    public InvalidRequestParameterException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,242 @@
+package pl.kalin.dreamlog.dream.importer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import pl.kalin.dreamlog.dream.dto.DreamCreateRequest;
+import pl.kalin.dreamlog.dream.exception.InvalidImportException;
+import pl.kalin.dreamlog.dream.model.Mood;
+
+/**
+ * Reads CSV (RFC 4180: comma-separated, fields optionally double-quoted, {@code ""} escapes a quote,
+ * quoted fields may span lines). The first record is a header naming the columns, in any order:
+ * {@code date} and {@code content} are required; {@code title}, {@code moodInDream}, {@code moodAfterDream},
+ * {@code vividness}, {@code lucid} and {@code tags} (separated by {@code ;}) are optional.
+ * Column names are case-insensitive and may use snake_case ({@code mood_in_dream}).
+ */
+class CsvDreamReader implements DreamRecordReader {
+
+    private static final List<String> COLUMNS =
+        List.of("date", "title", "content", "moodindream", "moodafterdream", "vividness", "lucid", "tags");
+
+    private static final int NONE = -2;
+
+    private final Reader reader;
+    private final Map<String, Integer> columns = new HashMap<>();
+    // Own buffer: reading char by char from a BufferedReader takes its lock for every char
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private int pending = NONE;
+    private long lineNumber = 1;
+    private boolean unterminated;
+
+    CsvDreamReader(Reader reader) throws IOException {
+        this.reader = reader;
+        List<String> header = readRecord();
+        if (header == null) {
+            throw new InvalidImportException("CSV file is empty");
+        }
+        if (unterminated) {
+            throw new InvalidImportException("Unterminated quoted field in the CSV header");
+        }
+        for (int i = 0; i < header.size(); i++) {
+            String name = header.get(i);
+            // Byte order mark written by spreadsheet exports
+            if (i == 0 && name.startsWith("\uFEFF")) {
+                name = name.substring(1);
+            }
+            name = name.strip().replace("_", "").toLowerCase(Locale.ROOT);
+            if (COLUMNS.contains(name)) {
+                columns.putIfAbsent(name, i);
+            }
+        }
+        if (!columns.containsKey("date") || !columns.containsKey("content")) {
+            throw new InvalidImportException("CSV header must name the date and content columns");
+        }
+    }
+
+    @Override
+    public ImportRecord next() throws IOException {
+        List<String> fields;
+        long line;
+        do {
+            line = lineNumber;
+            fields = readRecord();
+            if (fields == null) {
+                return null;
+            }
+        } while (fields.size() == 1 && fields.getFirst().isBlank());
+        if (unterminated) {
+            return ImportRecord.failed(line, "Unterminated quoted field (the rest of the file is part of it)");
+        }
+
+        try {
+            return ImportRecord.parsed(line, new DreamCreateRequest(
+                parseDate(field(fields, "date")),
+                field(fields, "title"),
+                field(fields, "content"),
+                parseMood(field(fields, "moodindream")),
+                parseMood(field(fields, "moodafterdream")),
+                parseInteger(field(fields, "vividness")),
+                parseBoolean(field(fields, "lucid")),
+                parseTags(field(fields, "tags"))
+            ));
+        } catch (IllegalArgumentException e) {
+            return ImportRecord.failed(line, e.getMessage());
+        }
+    }
+
+    private String field(List<String> fields, String column) {
+        Integer index = columns.get(column);
+        if (index == null || index >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(index);
+        return value.isBlank() ? null : value;
+    }
+
+    private static LocalDate parseDate(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(value.strip());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date (expected YYYY-MM-DD): " + value);
+        }
+    }
+
+    private static Mood parseMood(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Mood.valueOf(value.strip().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid mood (expected one of " + Arrays.toString(Mood.values()) + "): " + value);
+        }
+    }
+
+    private static Integer parseInteger(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value.strip());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid vividness: " + value);
+        }
+    }
+
+    private static Boolean parseBoolean(String value) {
+        if (value == null) {
+            return null;
+        }
+        return switch (value.strip().toLowerCase(Locale.ROOT)) {
+            case "true", "yes", "1" -> true;
+            case "false", "no", "0" -> false;
+            default -> throw new IllegalArgumentException("Invalid lucid flag: " + value);
+        };
+    }
+
+    private static List<String> parseTags(String value) {
+        if (value == null) {
+            return List.of();
+        }
+        LinkedHashSet<String> tags = new LinkedHashSet<>();
+        for (String tag : value.split(";")) {
+            if (!tag.isBlank()) {
+                tags.add(tag.strip());
+            }
+        }
+        return List.copyOf(tags);
+    }
+
+    /**
+     * Read one record; {@code null} at the end of input.
+     */
+    private List<String> readRecord() throws IOException {
+        int c = read();
+        if (c == -1) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    unterminated = true;
+                    fields.add(field.toString());
+                    return fields;
+                }
+                if (c == '"') {
+                    int next = read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        c = next;
+                        continue;
+                    }
+                } else {
+                    if (c == '\n') {
+                        lineNumber++;
+                    }
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == '\r' || c == -1) {
+                if (c == '\r') {
+                    int next = read();
+                    if (next != '\n') {
+                        unread(next);
+                    }
+                }
+                if (c != -1) {
+                    lineNumber++;
+                }
+                fields.add(field.toString());
+                return fields;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    private int read() throws IOException {
+        if (pending != NONE) {
+            int c = pending;
+            pending = NONE;
+            return c;
+        }
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private void unread(int c) {
+        pending = c;
+    }
+}
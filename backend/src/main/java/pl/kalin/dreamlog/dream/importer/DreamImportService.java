@@ -0,0 +1,312 @@
+package pl.kalin.dreamlog.dream.importer;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import lombok.extern.slf4j.Slf4j;
+import pl.kalin.dreamlog.dream.analysis.DreamAnalysisOutbox;
+import pl.kalin.dreamlog.dream.dto.DreamCreateRequest;
+import pl.kalin.dreamlog.dream.dto.DreamImportResult;
+import pl.kalin.dreamlog.dream.event.DreamChangedEvent;
+import pl.kalin.dreamlog.dream.model.DreamEntry;
+import pl.kalin.dreamlog.dream.model.Mood;
+import pl.kalin.dreamlog.user.User;
+
+/**
+ * Imports whole dream journals (NDJSON or CSV) for users migrating from other apps.
+ *
+ * <p>The upload is parsed incrementally and written in batches of {@code app.import.batch-size} dreams,
+ * each in its own transaction with a handful of set-based statements (dreams and tags are inserted from
+ * arrays with {@code unnest}), instead of one JPA save plus one insert per tag per dream. The transactions
+ * run with {@code dreamlog.bulk_import} on (see V11__bulk_import_support.sql): {@code search_vector} is
+ * computed once per dream, tags included, in the insert, and the batch's aggregate is added to the user's
+ * stats row in one upsert rather than by a trigger for every row. The upsert reads only the batch's dreams,
+ * so the cost of a batch doesn't grow with the size of the user's journal.
+ *
+ * <p>Lines that can't be parsed or fail validation are reported and skipped. If the database rejects a
+ * batch anyway, its dreams are retried one by one so only the offending lines fail. Batches already
+ * written stay imported when a later one fails.
+ */
+@Service
+@Slf4j
+public class DreamImportService {
+
+    public static final String TEXT_CSV_VALUE = "text/csv";
+
+    static final int MAX_TITLE_LENGTH = 255;
+    static final int MAX_TAG_LENGTH = 255;
+
+    private static final String INSERT_DREAMS_SQL = """
+        INSERT INTO dream_entry (id, user_id, date, title, content, content_preview,
+                                 mood_in_dream, mood_after_dream, vividness, lucid, search_vector)
+        SELECT i.id, ?, i.date::date, i.title, i.content, i.preview,
+               i.mood_in_dream, i.mood_after_dream, i.vividness, i.lucid,
+               dream_entry_search_vector(i.title, i.content, i.tags)
+        FROM unnest(?::uuid[], ?::text[], ?::text[], ?::text[], ?::text[], ?::text[], ?::text[], ?::int[], ?::boolean[], ?::text[])
+                 AS i(id, date, title, content, preview, mood_in_dream, mood_after_dream, vividness, lucid, tags)
+        """;
+
+    private static final String INSERT_TAGS_SQL = """
+        INSERT INTO dream_entry_tags (dream_entry_id, tag)
+        SELECT * FROM unnest(?::uuid[], ?::text[])
+        """;
+
+    // Same aggregate as user_dream_stats_reconcile, over the batch's dreams only, added to the user's row
+    private static final String ADD_BATCH_STATS_SQL = """
+        WITH batch AS (SELECT COALESCE(d.mood_after_dream, d.mood_in_dream) AS mood,
+                              COUNT(*)                                      AS dreams,
+                              COUNT(*) FILTER (WHERE d.lucid)               AS lucid,
+                              SUM(COALESCE(d.vividness, 0))                 AS vividness
+                       FROM dream_entry d
+                       WHERE d.id = ANY (?::uuid[])
+                       GROUP BY 1)
+        INSERT INTO user_dream_stats AS s (user_id, total_dreams, lucid_dreams, vividness_sum, mood_counts)
+        SELECT ?, SUM(b.dreams), SUM(b.lucid), SUM(b.vividness),
+               COALESCE(jsonb_object_agg(b.mood, b.dreams) FILTER (WHERE b.mood IS NOT NULL), '{}')
+        FROM batch b
+        ON CONFLICT (user_id) DO UPDATE
+            SET total_dreams  = s.total_dreams + EXCLUDED.total_dreams,
+                lucid_dreams  = s.lucid_dreams + EXCLUDED.lucid_dreams,
+                vividness_sum = s.vividness_sum + EXCLUDED.vividness_sum,
+                mood_counts   = (SELECT COALESCE(jsonb_object_agg(m.mood, m.dreams), '{}')
+                                 FROM (SELECT c.key AS mood, SUM(c.value::BIGINT) AS dreams
+                                       FROM (SELECT * FROM jsonb_each_text(s.mood_counts)
+                                             UNION ALL
+                                             SELECT * FROM jsonb_each_text(EXCLUDED.mood_counts)) c
+                                       GROUP BY c.key) m),
+                updated_at    = NOW()
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final ObjectReader requestReader;
+    private final Validator validator;
+    private final DreamAnalysisOutbox analysisOutbox;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int batchSize;
+    private final int maxReportedErrors;
+
+    public DreamImportService(
+        JdbcTemplate jdbcTemplate,
+        PlatformTransactionManager transactionManager,
+        ObjectMapper objectMapper,
+        Validator validator,
+        DreamAnalysisOutbox analysisOutbox,
+        ApplicationEventPublisher eventPublisher,
+        @Value("${app.import.batch-size:1000}") int batchSize,
+        @Value("${app.import.max-reported-errors:100}") int maxReportedErrors
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.requestReader = objectMapper.readerFor(DreamCreateRequest.class);
+        this.validator = validator;
+        this.analysisOutbox = analysisOutbox;
+        this.eventPublisher = eventPublisher;
+        this.batchSize = batchSize;
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+    /**
+     * Import dreams from NDJSON, one {@link DreamCreateRequest} object per line.
+     *
+     * @param user    the authenticated user, owner of the imported dreams
+     * @param in      upload stream (not closed)
+     * @param charset upload charset
+     * @return counts and the first line errors
+     * @throws IOException if reading the upload fails
+     */
+    public DreamImportResult importNdjson(User user, InputStream in, Charset charset) throws IOException {
+        return importDreams(user, new NdjsonDreamReader(new BufferedReader(new InputStreamReader(in, charset)), requestReader));
+    }
+
+    /**
+     * Import dreams from CSV with a header row (columns are described in {@link CsvDreamReader}).
+     *
+     * @param user    the authenticated user, owner of the imported dreams
+     * @param in      upload stream (not closed)
+     * @param charset upload charset
+     * @return counts and the first line errors
+     * @throws IOException if reading the upload fails
+     * @throws pl.kalin.dreamlog.dream.exception.InvalidImportException if the header is missing or lacks required columns
+     */
+    public DreamImportResult importCsv(User user, InputStream in, Charset charset) throws IOException {
+        return importDreams(user, new CsvDreamReader(new InputStreamReader(in, charset)));
+    }
+
+    private DreamImportResult importDreams(User user, DreamRecordReader reader) throws IOException {
+        log.debug("Importing dreams for user: {}", user.getEmail());
+        long start = System.nanoTime();
+        Progress progress = new Progress();
+        List<Row> batch = new ArrayList<>(batchSize);
+
+        ImportRecord record;
+        while ((record = reader.next()) != null) {
+            if (record.error() != null) {
+                progress.fail(record.line(), record.error());
+                continue;
+            }
+            String problem = validate(record.request());
+            if (problem != null) {
+                progress.fail(record.line(), problem);
+                continue;
+            }
+            batch.add(Row.of(record.line(), record.request()));
+            if (batch.size() == batchSize) {
+                write(user, batch, progress);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(user, batch, progress);
+        }
+
+        log.info("Imported {} dreams ({} lines rejected) for user {} in {} ms", progress.imported, progress.failed,
+            user.getEmail(), (System.nanoTime() - start) / 1_000_000);
+        return new DreamImportResult(progress.imported, progress.failed, progress.errors);
+    }
+
+    private String validate(DreamCreateRequest request) {
+        Set<ConstraintViolation<DreamCreateRequest>> violations = validator.validate(request);
+        if (!violations.isEmpty()) {
+            return violations.stream().map(ConstraintViolation::getMessage).sorted().collect(Collectors.joining(", "));
+        }
+        if (request.title() != null && request.title().length() > MAX_TITLE_LENGTH) {
+            return "Title must be at most " + MAX_TITLE_LENGTH + " characters";
+        }
+        if (request.tags() != null) {
+            for (String tag : request.tags()) {
+                if (tag == null || tag.isBlank()) {
+                    return "Tags must not be blank";
+                }
+                if (tag.length() > MAX_TAG_LENGTH) {
+                    return "Tags must be at most " + MAX_TAG_LENGTH + " characters";
+                }
+            }
+        }
+        return null;
+    }
+
+    private void write(User user, List<Row> batch, Progress progress) {
+        try {
+            transaction.executeWithoutResult(status -> insert(user, batch));
+            progress.imported += batch.size();
+        } catch (DataAccessException e) {
+            if (batch.size() == 1) {
+                Throwable cause = NestedExceptionUtils.getMostSpecificCause(e);
+                progress.fail(batch.getFirst().line(), "Could not be saved: " + cause.getMessage());
+                return;
+            }
+            log.warn("Import batch of {} dreams failed, retrying dream by dream", batch.size(), e);
+            batch.forEach(row -> write(user, List.of(row), progress));
+        }
+    }
+
+    private void insert(User user, List<Row> batch) {
+        int size = batch.size();
+        UUID[] ids = new UUID[size];
+        String[] dates = new String[size];
+        String[] titles = new String[size];
+        String[] contents = new String[size];
+        String[] previews = new String[size];
+        String[] moodsInDream = new String[size];
+        String[] moodsAfterDream = new String[size];
+        Integer[] vividness = new Integer[size];
+        Boolean[] lucid = new Boolean[size];
+        String[] tagText = new String[size];
+        List<UUID> tagDreamIds = new ArrayList<>();
+        List<String> tags = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Row row = batch.get(i);
+            ids[i] = row.id();
+            dates[i] = row.request().date().toString();
+            titles[i] = row.title();
+            contents[i] = row.request().content();
+            previews[i] = DreamEntry.generatePreviewFromContent(row.request().content());
+            moodsInDream[i] = name(row.request().moodInDream());
+            moodsAfterDream[i] = name(row.request().moodAfterDream());
+            vividness[i] = row.request().vividness() != null ? row.request().vividness() : 0;
+            lucid[i] = row.request().lucid() != null ? row.request().lucid() : false;
+            // Same text the trigger aggregates from dream_entry_tags
+            tagText[i] = String.join(" ", row.tags());
+            for (String tag : row.tags()) {
+                tagDreamIds.add(row.id());
+                tags.add(tag);
+            }
+        }
+
+        // Transaction-local: the triggers leave search_vector and stats to us (see V11 migration)
+        jdbcTemplate.queryForObject("SELECT set_config('dreamlog.bulk_import', 'on', true)", String.class);
+        jdbcTemplate.update(INSERT_DREAMS_SQL, user.getId(), ids, dates, titles, contents, previews,
+            moodsInDream, moodsAfterDream, vividness, lucid, tagText);
+        if (!tags.isEmpty()) {
+            jdbcTemplate.update(INSERT_TAGS_SQL, tagDreamIds.toArray(UUID[]::new), tags.toArray(String[]::new));
+        }
+        jdbcTemplate.update(ADD_BATCH_STATS_SQL, ids, user.getId());
+
+        List<UUID> imported = List.of(ids);
+        analysisOutbox.enqueue(imported);
+        eventPublisher.publishEvent(new DreamChangedEvent(user.getId(), imported, DreamChangedEvent.Type.CREATED));
+    }
+
+    private static String name(Mood mood) {
+        return mood != null ? mood.name() : null;
+    }
+
+    /**
+     * A validated dream ready to insert.
+     *
+     * @param line    line number in the upload
+     * @param id      new dream ID
+     * @param title   title, generated from content if the request has none
+     * @param tags    distinct tags in request order
+     * @param request parsed request
+     */
+    private record Row(long line, UUID id, String title, List<String> tags, DreamCreateRequest request) {
+
+        static Row of(long line, DreamCreateRequest request) {
+            String title = (request.title() == null || request.title().isBlank())
+                ? DreamEntry.generateTitleFromContent(request.content())
+                : request.title();
+            // dream_entry_tags has one row per (dream, tag)
+            List<String> tags = request.tags() != null ? List.copyOf(new LinkedHashSet<>(request.tags())) : List.of();
+            return new Row(line, UUID.randomUUID(), title, tags, request);
+        }
+    }
+
+    private class Progress {
+        long imported;
+        long failed;
+        final List<DreamImportResult.LineError> errors = new ArrayList<>();
+
+        void fail(long line, String message) {
+            failed++;
+            if (errors.size() < maxReportedErrors) {
+                errors.add(new DreamImportResult.LineError(line, message));
+            }
+        }
+    }
+}
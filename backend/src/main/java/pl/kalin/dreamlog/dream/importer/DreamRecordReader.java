@@ -0,0 +1,17 @@
+package pl.kalin.dreamlog.dream.importer;
+
+import java.io.IOException;
+
+/**
+ * Reads dreams from an import file one at a time, so files of any size are parsed incrementally.
+ */
+interface DreamRecordReader {
+
+    /**
+     * Read the next dream.
+     *
+     * @return the next record (possibly a failed one), {@code null} at the end of the file
+     * @throws IOException if reading the upload fails
+     */
+    ImportRecord next() throws IOException;
+}
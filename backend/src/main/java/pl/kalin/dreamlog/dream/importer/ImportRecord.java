@@ -0,0 +1,21 @@
+package pl.kalin.dreamlog.dream.importer;
+
+import pl.kalin.dreamlog.dream.dto.DreamCreateRequest;
+
+/**
+ * One dream read from an import file: either a request or the reason it couldn't be parsed.
+ *
+ * @param line    line number in the file (1-based)
+ * @param request parsed dream, {@code null} if parsing failed
+ * @param error   parse error, {@code null} if parsed
+ */
+record ImportRecord(long line, DreamCreateRequest request, String error) {
+
+    static ImportRecord parsed(long line, DreamCreateRequest request) {
+        return new ImportRecord(line, request, null);
+    }
+
+    static ImportRecord failed(long line, String error) {
+        return new ImportRecord(line, null, error);
+    }
+}
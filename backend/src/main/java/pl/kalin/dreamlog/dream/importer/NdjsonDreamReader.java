@@ -0,0 +1,47 @@
+package pl.kalin.dreamlog.dream.importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import pl.kalin.dreamlog.dream.dto.DreamCreateRequest;
+
+/**
+ * Reads NDJSON: one {@link DreamCreateRequest} JSON object per line, blank lines ignored.
+ * The journal export ({@code GET /api/dreams/export}) can be imported as-is; unknown fields such as
+ * {@code id} are ignored.
+ */
+class NdjsonDreamReader implements DreamRecordReader {
+
+    private final BufferedReader reader;
+    private final ObjectReader requestReader;
+    private long lineNumber;
+
+    NdjsonDreamReader(BufferedReader reader, ObjectReader requestReader) {
+        this.reader = reader;
+        this.requestReader = requestReader;
+    }
+
+    @Override
+    public ImportRecord next() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+            lineNumber++;
+        } while (line.isBlank());
+
+        try {
+            DreamCreateRequest request = requestReader.readValue(line);
+            return request != null
+                ? ImportRecord.parsed(lineNumber, request)
+                : ImportRecord.failed(lineNumber, "Expected a JSON object");
+        } catch (JsonProcessingException e) {
+            return ImportRecord.failed(lineNumber, "Invalid JSON: " + e.getOriginalMessage());
+        }
+    }
+}
@@ -5,22 +5,38 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
+import java.time.LocalDateTime;
 import java.util.UUID;
 
+/**
+ * Quantized embedding of a dream, written by {@code SimilarDreamService}.
+ * {@link #vector} holds one signed byte per dimension of the L2-normalized vector.
+ */
 @Entity
 @Table(name = "dream_embedding")
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
+@ToString(exclude = {"dream", "vector"})
 public class DreamEmbedding {
     @Id
     private UUID dreamId;
 
-    @OneToOne
+    @OneToOne(fetch = FetchType.LAZY)
     @MapsId
     @JoinColumn(name = "dream_id")
     private DreamEntry dream;
 
+    @Column(nullable = false)
+    private String model;
+
+    @Column(nullable = false)
+    private byte[] vector;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
 }
@@ -6,37 +6,55 @@ import jakarta.persistence.ElementCollection;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 
 import java.time.LocalDate;
-import java.util.ArrayList;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.UUID;
 
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.SortNatural;
+
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import pl.kalin.dreamlog.user.User;
 
 @Entity
 @Table(name = "dream_entry")
+// UPDATE only the changed columns: a mood tweak doesn't rewrite the content (or its TOAST) in the WAL
+@DynamicUpdate
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
+@ToString(exclude = {"user"})
 public class DreamEntry {
+    static final int TAG_BATCH_SIZE = 100;
+    public static final int PREVIEW_LENGTH = 200;
+
     @Id
     @GeneratedValue
     private UUID id;
 
-    @ManyToOne
+    // Lazy: read paths only need the owner's id (user_id column), never the User row itself
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     @NotNull
     private User user;
@@ -51,6 +69,13 @@ public class DreamEntry {
     @NotBlank
     private String content;
 
+    /**
+     * Plain-text preview of {@link #content} for list views, refreshed on every write.
+     * Lets summary queries skip the content column entirely.
+     */
+    @Column(name = "content_preview", nullable = false, length = PREVIEW_LENGTH)
+    private String contentPreview;
+
     @Enumerated(EnumType.STRING)
     private Mood moodInDream;
 
@@ -61,19 +86,45 @@ public class DreamEntry {
 
     private boolean lucid;
 
+    /**
+     * Tags are loaded lazily, but in batches: the first access initializes the tags of up to
+     * {@value #TAG_BATCH_SIZE} dreams loaded in the same session with one query. List and search
+     * pages (max 100 rows) therefore cost one extra round trip instead of one per dream.
+     *
+     * <p>A set, like the table's primary key {@code (dream_entry_id, tag)}, kept in alphabetical order.
+     * Hibernate persists a set element by element: a changed set costs one INSERT per added and one
+     * DELETE per removed tag (a bag would be deleted and reinserted whole), an unchanged one nothing.
+     */
     @ElementCollection
     @CollectionTable(name = "dream_entry_tags", joinColumns = @JoinColumn(name = "dream_entry_id"))
     @Column(name = "tag")
+    @BatchSize(size = TAG_BATCH_SIZE)
+    @SortNatural
     @Builder.Default
-    private List<String> tags = new ArrayList<>();
+    private SortedSet<String> tags = new TreeSet<>();
 
     /**
      * Full-text search vector (tsvector) maintained by database trigger.
-     * Do not modify manually - automatically updated on INSERT/UPDATE by trigger.
+     * Do not modify manually - automatically updated on INSERT/UPDATE by trigger;
+     * tag changes are applied when the transaction commits.
      */
     @Column(name = "search_vector", columnDefinition = "tsvector", insertable = false, updatable = false)
     private String searchVector;
 
+    /**
+     * Time of the last change. Set by the database on insert, by {@link #updateFrom} on every edit
+     * and by the tag search-vector refresh at commit.
+     */
+    @Column(name = "updated_at", nullable = false, insertable = false)
+    private LocalDateTime updatedAt;
+
+    /**
+     * Optimistic lock, incremented by Hibernate on every update (tag changes included) and checked
+     * in its WHERE clause. Also the dream's ETag.
+     */
+    @Version
+    private long version;
+
 
     public static String generateTitleFromContent(String content) {
         if (content == null || content.isBlank()) {
@@ -106,9 +157,39 @@ public class DreamEntry {
         return title.isEmpty() ? "Untitled Dream" : title;
     }
 
+    /**
+     * Build list preview from content: whitespace collapsed, cut to {@value #PREVIEW_LENGTH} chars.
+     * Keep in sync with the backfill in V6__add_dream_entry_content_preview.sql.
+     */
+    public static String generatePreviewFromContent(String content) {
+        if (content == null) {
+            return "";
+        }
+
+        String normalized = content.replaceAll("\\s+", " ").strip();
+        if (normalized.length() <= PREVIEW_LENGTH) {
+            return normalized;
+        }
+
+        int cut = PREVIEW_LENGTH - 3;
+        // Don't split a surrogate pair (emoji etc.)
+        if (Character.isHighSurrogate(normalized.charAt(cut - 1))) {
+            cut--;
+        }
+        return normalized.substring(0, cut).stripTrailing() + "...";
+    }
+
+    @PrePersist
+    @PreUpdate
+    void refreshContentPreview() {
+        this.contentPreview = generatePreviewFromContent(content);
+    }
+
     /**
      * Update all fields from request (PUT semantics - full replacement).
      * Domain logic: encapsulates update rules and defaults.
+     * Tags are updated in place: only added and removed tags are written, an edit that keeps them
+     * doesn't touch them.
      *
      * @param date           dream date
      * @param title          dream title (can be null)
@@ -129,7 +210,10 @@ public class DreamEntry {
         this.moodAfterDream = moodAfterDream;
         this.vividness = vividness != null ? vividness : 0;
         this.lucid = lucid != null ? lucid : false;
-        // Wrap in ArrayList to ensure mutability for Hibernate
-        this.tags = tags != null ? new ArrayList<>(tags) : new ArrayList<>();
+        // Changed in place, so Hibernate writes only the tags added or removed
+        List<String> newTags = tags != null ? tags : List.of();
+        this.tags.retainAll(newTags);
+        this.tags.addAll(newTags);
+        this.updatedAt = LocalDateTime.now();
     }
 }
@@ -1,9 +1,24 @@
 package pl.kalin.dreamlog.dream.repository;
 
+import java.util.List;
+import java.util.UUID;
+
 import org.springframework.data.jpa.repository.JpaRepository;
-import pl.kalin.dreamlog.dream.model.DreamAnalysis;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-import java.util.UUID;
+import pl.kalin.dreamlog.dream.model.DreamAnalysis;
 
 public interface DreamAnalysisRepository extends JpaRepository<DreamAnalysis, UUID> {
+
+    List<DreamAnalysis> findByDreamId(UUID dreamId);
+
+    /**
+     * Delete the dream's analyses in one statement (tags and entities go by ON DELETE CASCADE),
+     * without loading them first like a derived delete would.
+     */
+    @Modifying
+    @Query("DELETE FROM DreamAnalysis a WHERE a.dream.id = :dreamId")
+    int deleteByDreamId(@Param("dreamId") UUID dreamId);
 }
@@ -1,9 +1,12 @@
 package pl.kalin.dreamlog.dream.repository;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -32,6 +35,112 @@ public interface DreamEntryRepository extends JpaRepository<DreamEntry, UUID> {
 
     List<DreamEntry> findByUserId(UUID userId);
 
+    /**
+     * First keyset page, newest first. Reads the {@code (user_id, date DESC, id)} index forward.
+     * No count query is issued.
+     *
+     * @param userId the user's ID
+     * @param limit  maximum number of rows
+     * @return dreams ordered by date descending, id ascending
+     */
+    List<DreamEntry> findByUserIdOrderByDateDescIdAsc(UUID userId, Limit limit);
+
+    /**
+     * First keyset page, oldest first. Reads the {@code (user_id, date DESC, id)} index backward.
+     *
+     * @param userId the user's ID
+     * @param limit  maximum number of rows
+     * @return dreams ordered by date ascending, id descending
+     */
+    List<DreamEntry> findByUserIdOrderByDateAscIdDesc(UUID userId, Limit limit);
+
+    /**
+     * Keyset page after the given (date, id) position, newest first.
+     * The redundant {@code d.date <= :date} bound lets PostgreSQL seek straight to the cursor
+     * in the composite index instead of filtering from the start of the user's range.
+     *
+     * @param userId the user's ID
+     * @param date   date of the last dream already returned
+     * @param id     id of the last dream already returned
+     * @param limit  maximum number of rows
+     * @return dreams following the cursor
+     */
+    @Query(value = """
+        SELECT d.*
+        FROM dream_entry d
+        WHERE d.user_id = :userId
+          AND d.date <= :date
+          AND (d.date < :date OR d.id > :id)
+        ORDER BY d.date DESC, d.id ASC
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<DreamEntry> findPageAfterDateDesc(@Param("userId") UUID userId, @Param("date") LocalDate date,
+                                           @Param("id") UUID id, @Param("limit") int limit);
+
+    /**
+     * Keyset page after the given (date, id) position, oldest first.
+     *
+     * @see #findPageAfterDateDesc(UUID, LocalDate, UUID, int)
+     */
+    @Query(value = """
+        SELECT d.*
+        FROM dream_entry d
+        WHERE d.user_id = :userId
+          AND d.date >= :date
+          AND (d.date > :date OR d.id < :id)
+        ORDER BY d.date ASC, d.id DESC
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<DreamEntry> findPageAfterDateAsc(@Param("userId") UUID userId, @Param("date") LocalDate date,
+                                          @Param("id") UUID id, @Param("limit") int limit);
+
+    /**
+     * Page of dream summaries (no content column) for a user.
+     *
+     * @param userId   the user's ID
+     * @param pageable pagination parameters (page, size, sort)
+     * @return page of summary rows, without tags
+     */
+    @Query(value = """
+        SELECT new pl.kalin.dreamlog.dream.repository.DreamSummaryRow(
+            d.id, d.date, d.title, d.contentPreview, d.moodInDream, d.moodAfterDream, d.vividness, d.lucid)
+        FROM DreamEntry d
+        WHERE d.user.id = :userId
+        """,
+        countQuery = "SELECT COUNT(d) FROM DreamEntry d WHERE d.user.id = :userId")
+    Page<DreamSummaryRow> findSummariesByUserId(@Param("userId") UUID userId, Pageable pageable);
+
+    /**
+     * Dream summaries (no content column) for the given IDs, restricted to the user.
+     * Order is not defined - callers reorder by their own ranking.
+     *
+     * @param ids    dream IDs
+     * @param userId the user's ID (security filter)
+     * @return summary rows, without tags
+     */
+    @Query("""
+        SELECT new pl.kalin.dreamlog.dream.repository.DreamSummaryRow(
+            d.id, d.date, d.title, d.contentPreview, d.moodInDream, d.moodAfterDream, d.vividness, d.lucid)
+        FROM DreamEntry d
+        WHERE d.id IN :ids AND d.user.id = :userId
+        """)
+    List<DreamSummaryRow> findSummariesByIdIn(@Param("ids") Collection<UUID> ids, @Param("userId") UUID userId);
+
+    /**
+     * Tags of many dreams in one query.
+     *
+     * @param dreamIds dream IDs
+     * @return pairs of [dream ID (UUID), tag (String)], tags in code point order like {@link DreamEntry#getTags()}
+     * (collation {@code "C"}: the database's own would order case and accents differently)
+     */
+    @Query(value = """
+        SELECT t.dream_entry_id, t.tag
+        FROM dream_entry_tags t
+        WHERE t.dream_entry_id IN (:dreamIds)
+        ORDER BY t.tag COLLATE "C"
+        """, nativeQuery = true)
+    List<Object[]> findTagsByDreamIds(@Param("dreamIds") Collection<UUID> dreamIds);
+
     /**
      * Find a dream only if it belongs to the specified user.
      * Used for authorization checks before update/delete operations.
@@ -43,28 +152,32 @@ public interface DreamEntryRepository extends JpaRepository<DreamEntry, UUID> {
     Optional<DreamEntry> findByIdAndUserId(UUID id, UUID userId);
 
     /**
-     * Count total dreams for a user.
-     * Useful for statistics and pagination.
+     * Version of a dream, only if it belongs to the user. Doesn't load the dream or its tags.
      *
+     * @param id     the dream ID
      * @param userId the user's ID
-     * @return number of dreams
+     * @return the dream's {@code version}, empty if not found or owned by another user
      */
-    long countByUserId(UUID userId);
+    @Query("SELECT d.version FROM DreamEntry d WHERE d.id = :id AND d.user.id = :userId")
+    Optional<Long> findVersionByIdAndUserId(@Param("id") UUID id, @Param("userId") UUID userId);
+
+    /**
+     * Find dreams by IDs, restricted to the user. Order is not defined.
+     *
+     * @param ids    dream IDs
+     * @param userId the user's ID (security filter)
+     * @return dreams found among the IDs that belong to the user
+     */
+    List<DreamEntry> findByIdInAndUserId(Collection<UUID> ids, UUID userId);
 
     /**
+     * Count total dreams for a user.
+     * Useful for statistics and pagination.
+     *
      * @param userId the user's ID
-     * @return most common mood, or empty if user has no dreams or no moods recorded
+     * @return number of dreams
      */
-    @Query(value = """
-        SELECT CAST(COALESCE(d.mood_after_dream, d.mood_in_dream) AS TEXT)
-        FROM dream_entry d
-        WHERE d.user_id = :userId
-          AND (d.mood_after_dream IS NOT NULL OR d.mood_in_dream IS NOT NULL)
-        GROUP BY COALESCE(d.mood_after_dream, d.mood_in_dream)
-        ORDER BY COUNT(*) DESC
-        LIMIT 1
-        """, nativeQuery = true)
-    Optional<String> findMostCommonMoodByUserId(@Param("userId") UUID userId);
+    long countByUserId(UUID userId);
 
     @Query(value = """
         SELECT d.*
@@ -103,4 +216,49 @@ public interface DreamEntryRepository extends JpaRepository<DreamEntry, UUID> {
         LIMIT 100
         """, nativeQuery = true)
     List<DreamEntry> searchByFuzzy(@Param("userId") UUID userId, @Param("searchQuery") String searchQuery);
+
+    /**
+     * Same as {@link #searchByFullText(UUID, String)} but returns only ranked IDs,
+     * so callers can hydrate whichever representation they need.
+     */
+    @Query(value = """
+        SELECT d.id
+        FROM dream_entry d
+        WHERE d.user_id = :userId
+          AND d.search_vector @@ websearch_to_tsquery('simple', unaccent(:searchQuery))
+        ORDER BY ts_rank(d.search_vector, websearch_to_tsquery('simple', unaccent(:searchQuery))) DESC
+        LIMIT 100
+        """, nativeQuery = true)
+    List<UUID> searchIdsByFullText(@Param("userId") UUID userId, @Param("searchQuery") String searchQuery);
+
+    /**
+     * Same as {@link #searchByFuzzy(UUID, String)} but returns only ranked IDs.
+     */
+    @Query(value = """
+        SELECT d.id
+        FROM dream_entry d
+        WHERE d.user_id = :userId
+          AND (
+              similarity(d.title, :searchQuery) > 0.2
+              OR similarity(d.content, :searchQuery) > 0.2
+          )
+        ORDER BY GREATEST(similarity(d.title, :searchQuery), similarity(d.content, :searchQuery)) DESC
+        LIMIT 100
+        """, nativeQuery = true)
+    List<UUID> searchIdsByFuzzy(@Param("userId") UUID userId, @Param("searchQuery") String searchQuery);
+
+    /**
+     * Hybrid search: full-text and trigram candidates merged by a weighted score in one statement
+     * (see {@code dream_entry_search_hybrid} in the V8 migration).
+     *
+     * @param userId      the user's ID (security filter)
+     * @param searchQuery search query string
+     * @return IDs of matching dreams ordered by score (max 100 results)
+     */
+    @Query(value = """
+        SELECT h.id
+        FROM dream_entry_search_hybrid(:userId, :searchQuery, 100) h
+        ORDER BY h.score DESC, h.id
+        """, nativeQuery = true)
+    List<UUID> searchIdsByHybrid(@Param("userId") UUID userId, @Param("searchQuery") String searchQuery);
 }
@@ -0,0 +1,52 @@
+package pl.kalin.dreamlog.dream.repository;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import pl.kalin.dreamlog.dream.model.Mood;
+
+/**
+ * Shared pieces of the JDBC queries that read dreams outside JPA (export, search index, similarity index,
+ * analysis): the tag column and the mapping of its columns.
+ */
+public final class DreamRows {
+
+    /**
+     * Select-list item with the tags of dream {@code d} as a {@code text[]} named {@code tags}, in code point
+     * order like {@link pl.kalin.dreamlog.dream.model.DreamEntry#getTags()} (collation {@code "C"}, not the
+     * database's, which orders case and accents differently).
+     */
+    public static final String TAGS_COLUMN = """
+        ARRAY(SELECT t.tag FROM dream_entry_tags t WHERE t.dream_entry_id = d.id ORDER BY t.tag COLLATE "C") AS tags""";
+
+    private DreamRows() {
+    }
+
+    /**
+     * @param rs row with a {@link #TAGS_COLUMN}
+     * @return the dream's tags, empty if none
+     */
+    public static List<String> tags(ResultSet rs) throws SQLException {
+        Array array = rs.getArray("tags");
+        if (array == null) {
+            return List.of();
+        }
+        try {
+            return List.of((String[]) array.getArray());
+        } finally {
+            array.free();
+        }
+    }
+
+    /**
+     * @param rs     current row
+     * @param column a mood column ({@code mood_in_dream}, {@code mood_after_dream})
+     * @return the mood, {@code null} if not set
+     */
+    public static Mood mood(ResultSet rs, String column) throws SQLException {
+        String value = rs.getString(column);
+        return value != null ? Mood.valueOf(value) : null;
+    }
+}
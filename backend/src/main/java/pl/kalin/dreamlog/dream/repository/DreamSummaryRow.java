@@ -0,0 +1,22 @@
+package pl.kalin.dreamlog.dream.repository;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+import pl.kalin.dreamlog.dream.model.Mood;
+
+/**
+ * Constructor projection of {@code dream_entry} without the content column.
+ * Tags are loaded separately for a whole page, see {@link DreamEntryRepository#findTagsByDreamIds}.
+ */
+public record DreamSummaryRow(
+    UUID id,
+    LocalDate date,
+    String title,
+    String preview,
+    Mood moodInDream,
+    Mood moodAfterDream,
+    int vividness,
+    boolean lucid
+) {
+}
@@ -0,0 +1,27 @@
+package pl.kalin.dreamlog.dream.search;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Full-text search over a user's dreams, returning ranked dream IDs.
+ * Callers hydrate whichever representation they need (full dreams, summaries).
+ *
+ * <p>Implementations are selected by {@code app.search.engine}:
+ * {@code postgres} (default, {@link PostgresDreamSearchEngine}) or
+ * {@code memory} ({@link InMemoryDreamSearchEngine}).
+ */
+public interface DreamSearchEngine {
+
+    /** Maximum number of IDs returned by {@link #searchIds(UUID, String)}. */
+    int MAX_RESULTS = 100;
+
+    /**
+     * Search the user's dreams.
+     *
+     * @param userId the user's ID (only this user's dreams are searched)
+     * @param query  search query string
+     * @return IDs of matching dreams, most relevant first (max {@value #MAX_RESULTS})
+     */
+    List<UUID> searchIds(UUID userId, String query);
+}
@@ -0,0 +1,16 @@
+package pl.kalin.dreamlog.dream.search;
+
+/**
+ * How {@link PostgresDreamSearchEngine} queries PostgreSQL. Selected by {@code app.search.mode}.
+ */
+public enum DreamSearchMode {
+    /**
+     * Full-text search; only if it finds nothing, a second trigram (fuzzy) query.
+     */
+    TWO_STEP,
+
+    /**
+     * Full-text and trigram candidates merged by a weighted score in a single statement.
+     */
+    HYBRID
+}
@@ -0,0 +1,180 @@
+package pl.kalin.dreamlog.dream.search;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import pl.kalin.dreamlog.dream.event.DreamChangedEvent;
+import pl.kalin.dreamlog.dream.repository.DreamRows;
+import pl.kalin.dreamlog.dream.search.SearchMetrics.Outcome;
+
+/**
+ * Searches an in-JVM inverted index instead of the database, so search load doesn't compete
+ * with CRUD for connections and database CPU. Enabled with {@code app.search.engine=memory}.
+ *
+ * <p>The index is sharded per user ({@link InvertedIndex}), ranks with BM25, normalizes text like
+ * {@code unaccent} and supports prefixes (see {@link SearchQuery}). It has no typo tolerance.
+ * It is built from the database before the application starts serving requests and kept current
+ * from {@link DreamChangedEvent}s after commit.
+ *
+ * <p>Each node only sees writes it handles itself. With several nodes, schedule periodic rebuilds
+ * ({@code app.search.memory.rebuild-cron}) or keep the default PostgreSQL engine.
+ */
+@Component
+@ConditionalOnProperty(name = "app.search.engine", havingValue = "memory")
+@Slf4j
+public class InMemoryDreamSearchEngine implements DreamSearchEngine, SmartInitializingSingleton {
+
+    private static final String DREAM_COLUMNS = """
+        SELECT d.id, d.user_id, d.title, d.content,
+               %s
+        FROM dream_entry d
+        """.formatted(DreamRows.TAGS_COLUMN);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final SearchMetrics metrics;
+    // Not synchronized: a rebuild runs queries, and a virtual thread blocking inside synchronized pins its carrier
+    private final Lock rebuildLock = new ReentrantLock();
+    private volatile Map<UUID, InvertedIndex> shards = new ConcurrentHashMap<>();
+    // Dreams changed (by user) while a rebuild reads its snapshot, null when no rebuild runs
+    private volatile Map<UUID, Set<UUID>> changedDuringRebuild;
+
+    public InMemoryDreamSearchEngine(
+        DataSource dataSource,
+        PlatformTransactionManager transactionManager,
+        @Value("${app.search.memory.fetch-size:500}") int fetchSize,
+        MeterRegistry meterRegistry
+    ) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.metrics = new SearchMetrics(meterRegistry, "memory", "bm25");
+        Gauge.builder("dreamlog.search.memory.documents", this, InMemoryDreamSearchEngine::documentCount)
+            .register(meterRegistry);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        rebuild();
+    }
+
+    /**
+     * Build a fresh index of all dreams and swap it in.
+     * Streams dreams through a cursor, so only the index itself has to fit in memory.
+     * Dreams changed while the cursor is read go to the old index; they are recorded and re-read into
+     * the new one after the swap, so no committed change is lost.
+     */
+    @Scheduled(cron = "${app.search.memory.rebuild-cron:-}")
+    public void rebuild() {
+        rebuildLock.lock();
+        try {
+            long start = System.nanoTime();
+            Map<UUID, Set<UUID>> changed = new ConcurrentHashMap<>();
+            changedDuringRebuild = changed;
+            Map<UUID, InvertedIndex> rebuilt = new ConcurrentHashMap<>();
+            readOnlyTransaction.executeWithoutResult(status ->
+                jdbcTemplate.query(DREAM_COLUMNS, rs -> {
+                    UUID userId = rs.getObject("user_id", UUID.class);
+                    index(rebuilt.computeIfAbsent(userId, id -> new InvertedIndex()), rs);
+                }));
+            shards = rebuilt;
+            // Events from here on see the new shards; those recorded before are replayed
+            changedDuringRebuild = null;
+            changed.forEach((userId, dreamIds) -> refresh(userId, dreamIds));
+            log.info("Built in-memory search index: {} dreams of {} users in {} ms ({} users changed meanwhile)",
+                documentCount(), rebuilt.size(), (System.nanoTime() - start) / 1_000_000, changed.size());
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    @Override
+    public List<UUID> searchIds(UUID userId, String query) {
+        InvertedIndex shard = shards.get(userId);
+        SearchQuery parsed = SearchQuery.parse(query);
+        return metrics.record(() -> new SearchMetrics.Result(Outcome.FTS,
+            shard == null ? List.of() : shard.search(parsed, MAX_RESULTS)));
+    }
+
+    /**
+     * Re-read changed dreams after commit and update the user's shard.
+     * Updates of one shard are serialized and each re-reads committed state, so the last one wins
+     * even if events are handled out of order.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    void onDreamChanged(DreamChangedEvent event) {
+        // Recorded before the shards are read: a rebuild swapping them in meanwhile replays the change
+        Map<UUID, Set<UUID>> changed = changedDuringRebuild;
+        if (changed != null) {
+            changed.computeIfAbsent(event.userId(), id -> ConcurrentHashMap.newKeySet()).addAll(event.dreamIds());
+        }
+        if (event.type() == DreamChangedEvent.Type.DELETED) {
+            InvertedIndex shard = shards.computeIfAbsent(event.userId(), id -> new InvertedIndex());
+            Lock updates = shard.updateLock();
+            updates.lock();
+            try {
+                event.dreamIds().forEach(shard::remove);
+            } finally {
+                updates.unlock();
+            }
+            return;
+        }
+        refresh(event.userId(), event.dreamIds());
+    }
+
+    int documentCount() {
+        return shards.values().stream().mapToInt(InvertedIndex::size).sum();
+    }
+
+    /**
+     * Re-read dreams of one user into the current shards, removing those that no longer exist.
+     */
+    private void refresh(UUID userId, Collection<UUID> dreamIds) {
+        InvertedIndex shard = shards.computeIfAbsent(userId, id -> new InvertedIndex());
+        // Not synchronized: this runs a query, and a virtual thread blocking inside synchronized pins its carrier
+        Lock updates = shard.updateLock();
+        updates.lock();
+        try {
+            Set<UUID> missing = new HashSet<>(dreamIds);
+            jdbcTemplate.query(DREAM_COLUMNS + " WHERE d.user_id = ? AND d.id = ANY(?)", rs -> {
+                missing.remove(index(shard, rs));
+            }, userId, dreamIds.toArray(UUID[]::new));
+            // Deleted again before we got here
+            missing.forEach(shard::remove);
+        } finally {
+            updates.unlock();
+        }
+    }
+
+    private static UUID index(InvertedIndex shard, ResultSet rs) throws SQLException {
+        UUID id = rs.getObject("id", UUID.class);
+        shard.put(id, rs.getString("title"), rs.getString("content"), DreamRows.tags(rs));
+        return id;
+    }
+}
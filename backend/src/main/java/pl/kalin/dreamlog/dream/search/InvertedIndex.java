@@ -0,0 +1,221 @@
+package pl.kalin.dreamlog.dream.search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import pl.kalin.dreamlog.common.text.TextNormalizer;
+
+/**
+ * Inverted index of one user's dreams with BM25 ranking.
+ *
+ * <p>Fields are weighted like the {@code search_vector} weights in PostgreSQL (title A, tags C, content B):
+ * a word counts {@value #TITLE_WEIGHT}x in the title, {@value #TAG_WEIGHT}x in tags and once in content.
+ * Terms are kept sorted, so prefix terms expand to a range of the dictionary.
+ *
+ * <p>Thread-safe: searches share a read lock, changes take the write lock.
+ */
+final class InvertedIndex {
+    static final float TITLE_WEIGHT = 3f;
+    static final float TAG_WEIGHT = 2f;
+    static final float CONTENT_WEIGHT = 1f;
+
+    // BM25 parameters (common defaults)
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    // Bounds the work of a very short prefix ("a") on a large dictionary
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+
+    private final NavigableMap<String, Map<UUID, Float>> postings = new TreeMap<>();
+    private final Map<UUID, Document> documents = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock updateLock = new ReentrantLock();
+    private double totalLength;
+
+    /**
+     * Add a dream or replace its previous version.
+     */
+    void put(UUID id, String title, String content, List<String> tags) {
+        Map<String, Float> frequencies = new HashMap<>();
+        addWords(frequencies, TextNormalizer.tokenize(title), TITLE_WEIGHT);
+        addWords(frequencies, TextNormalizer.tokenize(content), CONTENT_WEIGHT);
+        for (String tag : tags) {
+            addWords(frequencies, TextNormalizer.tokenize(tag), TAG_WEIGHT);
+        }
+
+        float length = 0;
+        for (float frequency : frequencies.values()) {
+            length += frequency;
+        }
+
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+            documents.put(id, new Document(frequencies, length));
+            frequencies.forEach((term, frequency) ->
+                postings.computeIfAbsent(term, t -> new HashMap<>()).put(id, frequency));
+            totalLength += length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(UUID id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Lock for callers that re-read dreams and then apply them, held across both steps so concurrent
+     * updates of this shard apply in order. Not used by the index itself.
+     *
+     * @return the update lock
+     */
+    Lock updateLock() {
+        return updateLock;
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int termCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find dreams matching every required term and no excluded term, best BM25 score first.
+     *
+     * @param query parsed query
+     * @param limit maximum number of results
+     * @return matching dream IDs, ties broken by ID for stable order
+     */
+    List<UUID> search(SearchQuery query, int limit) {
+        if (query.terms().isEmpty()) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            Map<UUID, Double> scores = null;
+            for (SearchQuery.Term term : query.terms()) {
+                Map<UUID, Double> termScores = score(term);
+                if (scores == null) {
+                    scores = termScores;
+                } else {
+                    // AND: keep only documents matching every term so far
+                    Map<UUID, Double> previous = scores;
+                    scores = new HashMap<>();
+                    for (Map.Entry<UUID, Double> entry : termScores.entrySet()) {
+                        Double score = previous.get(entry.getKey());
+                        if (score != null) {
+                            scores.put(entry.getKey(), score + entry.getValue());
+                        }
+                    }
+                }
+                if (scores.isEmpty()) {
+                    return List.of();
+                }
+            }
+            for (String excluded : query.excluded()) {
+                Map<UUID, Float> posting = postings.get(excluded);
+                if (posting != null) {
+                    scores.keySet().removeAll(posting.keySet());
+                }
+            }
+
+            return scores.entrySet().stream()
+                .sorted(Map.Entry.<UUID, Double>comparingByValue(Comparator.reverseOrder())
+                    .thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * BM25 contribution of one query term per matching document; a prefix term sums its expansions.
+     */
+    private Map<UUID, Double> score(SearchQuery.Term term) {
+        List<Map<UUID, Float>> matches = new ArrayList<>();
+        if (term.prefix()) {
+            for (Map<UUID, Float> posting : postings.subMap(term.text(), true, term.text() + Character.MAX_VALUE, false).values()) {
+                if (matches.size() == MAX_PREFIX_EXPANSIONS) {
+                    break;
+                }
+                matches.add(posting);
+            }
+        } else {
+            Map<UUID, Float> posting = postings.get(term.text());
+            if (posting != null) {
+                matches.add(posting);
+            }
+        }
+
+        Map<UUID, Double> scores = new HashMap<>();
+        int documentCount = documents.size();
+        double averageLength = documentCount == 0 ? 0 : totalLength / documentCount;
+        for (Map<UUID, Float> posting : matches) {
+            double idf = Math.log(1 + (documentCount - posting.size() + 0.5) / (posting.size() + 0.5));
+            posting.forEach((id, frequency) -> {
+                double length = documents.get(id).length();
+                double norm = K1 * (1 - B + B * length / averageLength);
+                double score = idf * frequency * (K1 + 1) / (frequency + norm);
+                scores.merge(id, score, Double::sum);
+            });
+        }
+        return scores;
+    }
+
+    private void removeLocked(UUID id) {
+        Document previous = documents.remove(id);
+        if (previous == null) {
+            return;
+        }
+        for (String term : previous.frequencies().keySet()) {
+            Map<UUID, Float> posting = postings.get(term);
+            posting.remove(id);
+            if (posting.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+        totalLength -= previous.length();
+    }
+
+    private static void addWords(Map<String, Float> frequencies, List<String> words, float weight) {
+        for (String word : words) {
+            frequencies.merge(word, weight, Float::sum);
+        }
+    }
+
+    /**
+     * Weighted term frequencies of one dream (kept to unindex it) and their sum (BM25 document length).
+     */
+    private record Document(Map<String, Float> frequencies, float length) {
+    }
+}
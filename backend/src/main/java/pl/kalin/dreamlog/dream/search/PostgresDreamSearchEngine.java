@@ -0,0 +1,60 @@
+package pl.kalin.dreamlog.dream.search;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import pl.kalin.dreamlog.dream.repository.DreamEntryRepository;
+import pl.kalin.dreamlog.dream.search.SearchMetrics.Outcome;
+
+/**
+ * Searches with PostgreSQL full-text search and trigram matching, in the configured {@link DreamSearchMode}.
+ * Both modes stay available so they can be compared on the same data.
+ *
+ * <p>Query time, the path that answered (full-text, fuzzy fallback, hybrid or nothing) and result sizes are
+ * published as described in {@link SearchMetrics}.
+ */
+@Component
+@ConditionalOnProperty(name = "app.search.engine", havingValue = "postgres", matchIfMissing = true)
+@Slf4j
+public class PostgresDreamSearchEngine implements DreamSearchEngine {
+
+    private final DreamEntryRepository dreamRepository;
+    private final DreamSearchMode mode;
+    private final SearchMetrics metrics;
+
+    public PostgresDreamSearchEngine(
+        DreamEntryRepository dreamRepository,
+        @Value("${app.search.mode:hybrid}") DreamSearchMode mode,
+        MeterRegistry meterRegistry
+    ) {
+        this.dreamRepository = dreamRepository;
+        this.mode = mode;
+        this.metrics = new SearchMetrics(meterRegistry, "postgres", mode.name().toLowerCase(Locale.ROOT));
+        log.info("Dream search engine: postgres ({})", mode);
+    }
+
+    @Override
+    public List<UUID> searchIds(UUID userId, String query) {
+        return metrics.record(() -> switch (mode) {
+            case HYBRID -> new SearchMetrics.Result(Outcome.HYBRID, dreamRepository.searchIdsByHybrid(userId, query));
+            case TWO_STEP -> {
+                // Try full-text search first (fast, PostgreSQL FTS with websearch_to_tsquery)
+                List<UUID> ids = dreamRepository.searchIdsByFullText(userId, query);
+                if (!ids.isEmpty()) {
+                    yield new SearchMetrics.Result(Outcome.FTS, ids);
+                }
+
+                // Fallback to fuzzy search if no FTS results (handles typos)
+                log.debug("No FTS results, trying fuzzy search for query: {}", query);
+                yield new SearchMetrics.Result(Outcome.FUZZY, dreamRepository.searchIdsByFuzzy(userId, query));
+            }
+        });
+    }
+}
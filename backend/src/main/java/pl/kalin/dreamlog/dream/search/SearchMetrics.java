@@ -0,0 +1,87 @@
+package pl.kalin.dreamlog.dream.search;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Meters of one search engine, all tagged with {@code engine} and {@code mode}:
+ * <ul>
+ *   <li>{@code dreamlog.search.query} - query time with p50 and p99</li>
+ *   <li>{@code dreamlog.search.outcome} - which path produced the result (tag {@code outcome}, see {@link Outcome})</li>
+ *   <li>{@code dreamlog.search.results} - number of IDs returned, bucketed for Prometheus histograms</li>
+ * </ul>
+ */
+final class SearchMetrics {
+
+    /**
+     * Path that answered a search.
+     */
+    enum Outcome {
+        /** Full-text (or BM25) matches */
+        FTS,
+        /** Full-text found nothing, the trigram fallback did (two-step mode) */
+        FUZZY,
+        /** One query ranking full-text and trigram candidates together (hybrid mode) */
+        HYBRID,
+        /** Nothing found */
+        EMPTY
+    }
+
+    private static final double[] RESULT_BUCKETS = {1, 5, 10, 25, 50, 100};
+
+    private final Timer queryTimer;
+    private final Counter[] outcomes;
+    private final DistributionSummary results;
+
+    SearchMetrics(MeterRegistry meterRegistry, String engine, String mode) {
+        this.queryTimer = Timer.builder("dreamlog.search.query")
+            .tag("engine", engine)
+            .tag("mode", mode)
+            .description("Time spent in search queries")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        this.outcomes = new Counter[Outcome.values().length];
+        for (Outcome outcome : Outcome.values()) {
+            outcomes[outcome.ordinal()] = Counter.builder("dreamlog.search.outcome")
+                .tag("engine", engine)
+                .tag("mode", mode)
+                .tag("outcome", outcome.name().toLowerCase(Locale.ROOT))
+                .description("Searches by the path that produced the result")
+                .register(meterRegistry);
+        }
+        this.results = DistributionSummary.builder("dreamlog.search.results")
+            .tag("engine", engine)
+            .tag("mode", mode)
+            .description("Dream IDs returned per search")
+            .serviceLevelObjectives(RESULT_BUCKETS)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Time a search and count its outcome and result size.
+     *
+     * @param search runs the search and reports the path that produced a non-empty result;
+     *               {@link Outcome#EMPTY} is counted instead when nothing was found
+     * @return IDs found
+     */
+    List<UUID> record(Supplier<Result> search) {
+        Result result = queryTimer.record(search);
+        Outcome outcome = result.ids().isEmpty() ? Outcome.EMPTY : result.outcome();
+        outcomes[outcome.ordinal()].increment();
+        results.record(result.ids().size());
+        return result.ids();
+    }
+
+    /**
+     * IDs found by a search and the path that found them.
+     */
+    record Result(Outcome outcome, List<UUID> ids) {
+    }
+}
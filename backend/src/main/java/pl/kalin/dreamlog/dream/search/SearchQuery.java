@@ -0,0 +1,77 @@
+package pl.kalin.dreamlog.dream.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import pl.kalin.dreamlog.common.text.TextNormalizer;
+
+/**
+ * Query parsed for {@link InvertedIndex}, following the websearch syntax users already type:
+ * words are required (AND), {@code -word} excludes, quotes group words (matched as plain words -
+ * the index keeps no positions), {@code or} is ignored. The last word and words ending with {@code *}
+ * match as prefixes, so results follow the user while typing.
+ *
+ * @param terms    required terms, normalized
+ * @param excluded excluded terms, normalized
+ */
+record SearchQuery(List<Term> terms, List<String> excluded) {
+
+    record Term(String text, boolean prefix) {
+    }
+
+    static SearchQuery parse(String query) {
+        List<Term> terms = new ArrayList<>();
+        List<String> excluded = new ArrayList<>();
+        if (query == null) {
+            return new SearchQuery(terms, excluded);
+        }
+
+        boolean endsWithTerm = false;
+        for (String part : splitRespectingQuotes(query.strip())) {
+            if (part.equalsIgnoreCase("or")) {
+                continue;
+            }
+            boolean negated = part.startsWith("-") && part.length() > 1;
+            boolean prefix = part.endsWith("*");
+            List<String> words = TextNormalizer.tokenize(negated ? part.substring(1) : part);
+            endsWithTerm = !negated && !words.isEmpty();
+            if (negated) {
+                excluded.addAll(words);
+                continue;
+            }
+            for (int i = 0; i < words.size(); i++) {
+                terms.add(new Term(words.get(i), prefix && i == words.size() - 1));
+            }
+        }
+
+        // Search-as-you-type: the last word is probably not finished yet
+        if (endsWithTerm && !query.endsWith(" ") && !query.endsWith("\"")) {
+            Term last = terms.removeLast();
+            terms.add(new Term(last.text(), true));
+        }
+        return new SearchQuery(terms, excluded);
+    }
+
+    private static List<String> splitRespectingQuotes(String query) {
+        List<String> parts = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (!current.isEmpty()) {
+                    parts.add(current.toString());
+                    current.setLength(0);
+                }
+            } else {
+                current.append(c);
+            }
+        }
+        if (!current.isEmpty()) {
+            parts.add(current.toString());
+        }
+        return parts;
+    }
+}
@@ -0,0 +1,123 @@
+package pl.kalin.dreamlog.dream.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import lombok.extern.slf4j.Slf4j;
+import pl.kalin.dreamlog.dream.dto.DreamResponse;
+import pl.kalin.dreamlog.dream.repository.DreamRows;
+import pl.kalin.dreamlog.user.User;
+
+/**
+ * Streams a user's whole journal as NDJSON (one {@link DreamResponse} per line).
+ *
+ * <p>Rows come from a forward-only JDBC cursor: inside a read-only transaction the PostgreSQL
+ * driver fetches {@code app.export.fetch-size} rows at a time instead of the whole result,
+ * and every row is written out and dropped before the next one is read. Tags are aggregated
+ * per row in the same query. Heap use therefore depends on the fetch size, not on the account size.
+ */
+@Service
+@Slf4j
+public class DreamExportService {
+
+    private static final String EXPORT_SQL = """
+        SELECT d.id, d.date, d.title, d.content, d.mood_in_dream, d.mood_after_dream, d.vividness, d.lucid,
+               %s
+        FROM dream_entry d
+        WHERE d.user_id = ?
+        ORDER BY d.date DESC, d.id ASC
+        """.formatted(DreamRows.TAGS_COLUMN);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter dreamWriter;
+
+    public DreamExportService(
+        DataSource dataSource,
+        PlatformTransactionManager transactionManager,
+        ObjectMapper objectMapper,
+        @Value("${app.export.fetch-size:500}") int fetchSize
+    ) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.objectMapper = objectMapper;
+        this.dreamWriter = objectMapper.writerFor(DreamResponse.class)
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * Write all dreams of the user to the stream, newest first, one JSON object per line.
+     * The stream is flushed but not closed.
+     *
+     * @param user the authenticated user
+     * @param out  destination stream
+     * @return number of dreams written
+     * @throws UncheckedIOException if writing to the stream fails (e.g. client disconnected)
+     */
+    public long exportDreams(User user, OutputStream out) {
+        log.debug("Exporting dreams for user: {}", user.getEmail());
+        // Autocommit must be off for the driver to use a cursor, hence the explicit transaction
+        Long count = readOnlyTransaction.execute(status -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+                // Lines are separated explicitly, the stream belongs to the caller
+                generator.setRootValueSeparator(null);
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                long[] written = {0};
+                jdbcTemplate.query(EXPORT_SQL, rs -> {
+                    writeLine(generator, mapRow(rs));
+                    written[0]++;
+                }, user.getId());
+                generator.flush();
+                return written[0];
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        log.info("Exported {} dreams for user {}", count, user.getEmail());
+        return count;
+    }
+
+    private void writeLine(JsonGenerator generator, DreamResponse dream) {
+        try {
+            // Without per-value flush the generator buffers and writes to the stream in chunks
+            dreamWriter.writeValue(generator, dream);
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static DreamResponse mapRow(ResultSet rs) throws SQLException {
+        return new DreamResponse(
+            rs.getObject("id", UUID.class),
+            rs.getDate("date").toLocalDate(),
+            rs.getString("title"),
+            rs.getString("content"),
+            DreamRows.mood(rs, "mood_in_dream"),
+            DreamRows.mood(rs, "mood_after_dream"),
+            rs.getInt("vividness"),
+            rs.getBoolean("lucid"),
+            DreamRows.tags(rs)
+        );
+    }
+}
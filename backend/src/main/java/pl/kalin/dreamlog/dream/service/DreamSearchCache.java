@@ -0,0 +1,166 @@
+package pl.kalin.dreamlog.dream.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import pl.kalin.dreamlog.common.cache.CacheLookup;
+import pl.kalin.dreamlog.common.cache.ExpiringLruCache;
+import pl.kalin.dreamlog.dream.event.DreamChangedEvent;
+import pl.kalin.dreamlog.user.UserDreamStatsRepository;
+
+/**
+ * Per-user cache of search results: (user, normalized query) → ranked dream IDs.
+ *
+ * <p>The frontend searches on every debounced keystroke, so the same few queries repeat a lot;
+ * a hit skips the FTS query and the fuzzy fallback and only hydrates dreams by ID.
+ * Each user gets an own bounded LRU of queries, and users themselves are kept in a bounded LRU,
+ * both with a write TTL. Any change to a user's dreams drops that user's whole entry after commit.
+ *
+ * <p>Each user's entry is keyed by the {@code user_dream_stats.dreams_version} it was filled at, looked up
+ * (one primary key read) on every search in the caller's transaction. Only an entry of the version the
+ * caller's connection sees is used or filled: a search on a replica that hasn't replayed the user's last
+ * write yet neither serves nor stores results newer or older than what it reads itself.
+ *
+ * <p>Metrics: {@code dreamlog.search.cache.requests} (tag {@code result}) and
+ * {@code dreamlog.search.latency} (tag {@code cache}); the difference between the miss and hit
+ * latency is the time saved per hit.
+ */
+@Component
+@Slf4j
+public class DreamSearchCache {
+
+    private final UserDreamStatsRepository statsRepository;
+    private final ExpiringLruCache<UUID, UserQueries> users;
+    private final int maxQueriesPerUser;
+    private final Duration ttl;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final Timer hitTimer;
+    private final Timer missTimer;
+
+    public DreamSearchCache(
+        UserDreamStatsRepository statsRepository,
+        @Value("${app.search.cache.max-users:10000}") int maxUsers,
+        @Value("${app.search.cache.max-queries-per-user:50}") int maxQueriesPerUser,
+        @Value("${app.search.cache.ttl:10m}") Duration ttl,
+        MeterRegistry meterRegistry
+    ) {
+        this.statsRepository = statsRepository;
+        this.users = new ExpiringLruCache<>(maxUsers, ttl);
+        this.maxQueriesPerUser = maxQueriesPerUser;
+        this.ttl = ttl;
+        // Per-user caches come and go, so hits and misses are tallied here rather than by the caches
+        FunctionCounter.builder("dreamlog.search.cache.requests", hits, LongAdder::sum)
+            .tag("result", "hit")
+            .description("Searches answered from cached ranked IDs")
+            .register(meterRegistry);
+        FunctionCounter.builder("dreamlog.search.cache.requests", misses, LongAdder::sum)
+            .tag("result", "miss")
+            .description("Searches that ran the search queries")
+            .register(meterRegistry);
+        Gauge.builder("dreamlog.search.cache.users", users, ExpiringLruCache::size)
+            .register(meterRegistry);
+        this.hitTimer = Timer.builder("dreamlog.search.latency")
+            .tag("cache", "hit")
+            .description("Search latency including hydration")
+            .register(meterRegistry);
+        this.missTimer = Timer.builder("dreamlog.search.latency")
+            .tag("cache", "miss")
+            .description("Search latency including hydration")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Cache key for a query: trimmed, whitespace collapsed, lower case.
+     * Both search backends are case-insensitive, so this doesn't change results.
+     */
+    public static String normalize(String query) {
+        return query.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Get ranked IDs for the query, running the search on a miss.
+     * A result loaded while the user's entry is being invalidated lands in the discarded
+     * per-user cache, so a search racing with a write can't resurrect stale IDs; a result loaded after
+     * the write commits is newer than the version it is stored under, which only costs a later miss.
+     *
+     * @param userId          the user's ID
+     * @param normalizedQuery query after {@link #normalize(String)}
+     * @param search          runs the search, returns ranked IDs
+     * @return ranked dream IDs and whether they were cached
+     */
+    public CacheLookup<List<UUID>> lookup(UUID userId, String normalizedQuery, Function<String, List<UUID>> search) {
+        long version = statsRepository.findDreamsVersion(userId).orElse(0L);
+        UserQueries queries = users.get(userId, id -> newQueries(version));
+        if (queries.dreamsVersion() < version) {
+            // Written since, possibly on another node
+            queries = newQueries(version);
+            users.put(userId, queries);
+        }
+        boolean current = queries.dreamsVersion() == version;
+        List<UUID> cached = current ? queries.ids().getIfPresent(normalizedQuery) : null;
+        if (cached != null) {
+            hits.increment();
+            return new CacheLookup<>(cached, true);
+        }
+        misses.increment();
+        List<UUID> ids = List.copyOf(search.apply(normalizedQuery));
+        if (current) {
+            queries.ids().put(normalizedQuery, ids);
+        }
+        return new CacheLookup<>(ids, false);
+    }
+
+    /**
+     * Drop all cached searches of the user.
+     */
+    public void invalidate(UUID userId) {
+        users.invalidate(userId);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    void onDreamChanged(DreamChangedEvent event) {
+        log.debug("Invalidating search cache of user {} after {}", event.userId(), event.type());
+        invalidate(event.userId());
+    }
+
+    /**
+     * Record the end-to-end latency of a search served from cache ({@code hit}) or not.
+     */
+    public void recordLatency(boolean hit, long nanos) {
+        (hit ? hitTimer : missTimer).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    private UserQueries newQueries(long dreamsVersion) {
+        return new UserQueries(dreamsVersion, new ExpiringLruCache<>(maxQueriesPerUser, ttl));
+    }
+
+    /**
+     * A user's cached searches, all at one version of their dreams.
+     */
+    private record UserQueries(long dreamsVersion, ExpiringLruCache<String, List<UUID>> ids) {
+    }
+}
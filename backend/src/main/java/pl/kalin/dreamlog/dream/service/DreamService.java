@@ -1,35 +1,69 @@
 package pl.kalin.dreamlog.dream.service;
 
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import pl.kalin.dreamlog.common.cache.CacheLookup;
+import pl.kalin.dreamlog.common.dto.CursorPage;
+import pl.kalin.dreamlog.dream.analysis.DreamAnalysisOutbox;
 import pl.kalin.dreamlog.dream.dto.DreamCreateRequest;
+import pl.kalin.dreamlog.dream.dto.DreamCursor;
+import pl.kalin.dreamlog.dream.dto.DreamPatch;
 import pl.kalin.dreamlog.dream.dto.DreamResponse;
+import pl.kalin.dreamlog.dream.dto.DreamSort;
+import pl.kalin.dreamlog.dream.dto.DreamSummary;
 import pl.kalin.dreamlog.dream.dto.DreamUpdateRequest;
+import pl.kalin.dreamlog.dream.event.DreamChangedEvent;
+import pl.kalin.dreamlog.dream.exception.DreamVersionConflictException;
+import pl.kalin.dreamlog.dream.exception.InvalidDreamPatchException;
 import pl.kalin.dreamlog.dream.model.DreamEntry;
 import pl.kalin.dreamlog.dream.repository.DreamEntryRepository;
+import pl.kalin.dreamlog.dream.repository.DreamSummaryRow;
+import pl.kalin.dreamlog.dream.search.DreamSearchEngine;
 import pl.kalin.dreamlog.user.User;
 
 /**
  * Service for managing dream entries with user-based authorization.
  * Ensures that users can only access and modify their own dreams.
+ *
+ * <p>Every public method is timed as {@code dreamlog.dreams} (tags {@code method} and {@code exception}).
  */
 @Service
+@Timed(value = "dreamlog.dreams", description = "Dream service operations", histogram = true)
 @RequiredArgsConstructor
 @Slf4j
 @Transactional
 public class DreamService {
 
     private final DreamEntryRepository dreamRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DreamSearchCache searchCache;
+    private final DreamSearchEngine searchEngine;
+    private final DreamAnalysisOutbox analysisOutbox;
+    private final Validator validator;
 
     /**
      * Get paginated dreams for the authenticated user.
@@ -45,6 +79,62 @@ public class DreamService {
             .map(DreamResponse::from);
     }
 
+    /**
+     * Get paginated dream summaries (preview instead of content) for the authenticated user.
+     * The content column is never read; tags for the whole page come from one extra query.
+     *
+     * @param user     the authenticated user
+     * @param pageable pagination parameters (page, size, sort)
+     * @return page of user's dream summaries
+     */
+    @Transactional(readOnly = true)
+    public Page<DreamSummary> getUserDreamSummaries(User user, Pageable pageable) {
+        log.debug("Fetching dream summaries for user: {} with pagination: {}", user.getEmail(), pageable);
+        Page<DreamSummaryRow> rows = dreamRepository.findSummariesByUserId(user.getId(), pageable);
+        Map<UUID, List<String>> tags = loadTags(rows.getContent());
+        return rows.map(row -> DreamSummary.from(row, tags.getOrDefault(row.id(), List.of())));
+    }
+
+    /**
+     * Get a keyset-paginated slice of dreams for the authenticated user.
+     * Seeks directly to the cursor in the {@code (user_id, date DESC, id)} index and never counts,
+     * so the cost of a slice doesn't grow with how deep the client has scrolled.
+     *
+     * @param user   the authenticated user
+     * @param cursor position after which to continue, {@code null} for the first slice
+     * @param size   slice size
+     * @param sort   whitelisted sort order
+     * @return slice of user's dreams with cursor for the next one
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<DreamResponse> getUserDreams(User user, DreamCursor cursor, int size, DreamSort sort) {
+        log.debug("Fetching dreams for user: {} after cursor: {} (size {}, {})", user.getEmail(), cursor, size, sort);
+
+        // Fetch one extra row to find out whether another slice follows
+        int limit = size + 1;
+        List<DreamEntry> rows;
+        if (cursor == null) {
+            rows = sort.isDescending()
+                ? dreamRepository.findByUserIdOrderByDateDescIdAsc(user.getId(), Limit.of(limit))
+                : dreamRepository.findByUserIdOrderByDateAscIdDesc(user.getId(), Limit.of(limit));
+        } else {
+            rows = sort.isDescending()
+                ? dreamRepository.findPageAfterDateDesc(user.getId(), cursor.date(), cursor.id(), limit)
+                : dreamRepository.findPageAfterDateAsc(user.getId(), cursor.date(), cursor.id(), limit);
+        }
+
+        boolean hasNext = rows.size() > size;
+        List<DreamEntry> slice = hasNext ? rows.subList(0, size) : rows;
+        String nextCursor = hasNext ? DreamCursor.after(slice.getLast()).encode() : null;
+
+        return new CursorPage<>(
+            slice.stream().map(DreamResponse::from).toList(),
+            size,
+            nextCursor,
+            hasNext
+        );
+    }
+
     /**
      * Get all dreams for the authenticated user (unpaginated).
      *
@@ -96,11 +186,15 @@ public class DreamService {
             .moodAfterDream(request.moodAfterDream())
             .vividness(request.vividness() != null ? request.vividness() : 0)
             .lucid(request.lucid() != null ? request.lucid() : false)
-            // Wrap in ArrayList to ensure mutability for Hibernate
-            .tags(request.tags() != null ? new ArrayList<>(request.tags()) : new ArrayList<>())
+            // Duplicates collapse: dream_entry_tags has one row per (dream, tag)
+            .tags(request.tags() != null ? new TreeSet<>(request.tags()) : new TreeSet<>())
             .build();
 
         DreamEntry saved = dreamRepository.save(dream);
+        // Analysis runs in the background; the outbox row commits with the dream (and references it)
+        dreamRepository.flush();
+        analysisOutbox.enqueue(List.of(saved.getId()));
+        eventPublisher.publishEvent(DreamChangedEvent.of(user.getId(), saved.getId(), DreamChangedEvent.Type.CREATED));
         log.info("Created dream {} for user {}", saved.getId(), user.getEmail());
         return saved.getId();
     }
@@ -128,9 +222,67 @@ public class DreamService {
         );
 
         dreamRepository.save(dream);
+        analysisOutbox.enqueue(List.of(dreamId));
+        eventPublisher.publishEvent(DreamChangedEvent.of(user.getId(), dreamId, DreamChangedEvent.Type.UPDATED));
         log.info("Updated dream {} for user {}", dreamId, user.getEmail());
     }
 
+    /**
+     * Partially update a dream (PATCH - JSON Merge Patch). The patched dream must be valid as a full update.
+     * Only changed columns are written ({@code @DynamicUpdate}); an unchanged dream isn't written at all
+     * and keeps its version. Analysis is only redone when the text changed.
+     *
+     * @param user            the authenticated user
+     * @param dreamId         the dream ID
+     * @param patch           members to replace
+     * @param expectedVersion version the client's edit is based on, {@code null} to patch any version
+     * @return the dream's new version
+     * @throws AccessDeniedException         if dream not found or doesn't belong to user
+     * @throws DreamVersionConflictException if the dream isn't at {@code expectedVersion}
+     * @throws InvalidDreamPatchException    if the patched dream isn't valid
+     */
+    public long patchDream(User user, UUID dreamId, DreamPatch patch, Long expectedVersion) {
+        log.debug("Patching dream {} for user: {}", dreamId, user.getEmail());
+
+        DreamEntry dream = dreamRepository.findByIdAndUserId(dreamId, user.getId())
+            .orElseThrow(() -> new AccessDeniedException("Dream not found or access denied"));
+        if (expectedVersion != null && expectedVersion != dream.getVersion()) {
+            throw new DreamVersionConflictException("Dream was modified, reload and retry");
+        }
+
+        DreamUpdateRequest current = DreamUpdateRequest.from(dream);
+        DreamUpdateRequest patched = patch.applyTo(current);
+        Set<ConstraintViolation<DreamUpdateRequest>> violations = validator.validate(patched);
+        if (!violations.isEmpty()) {
+            throw new InvalidDreamPatchException(violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining(", ")));
+        }
+        if (patched.equals(current)) {
+            return dream.getVersion();
+        }
+
+        dream.updateFrom(
+            patched.date(),
+            patched.title(),
+            patched.content(),
+            patched.moodInDream(),
+            patched.moodAfterDream(),
+            patched.vividness(),
+            patched.lucid(),
+            patched.tags()
+        );
+        // Flush to run the version check now and return the incremented version
+        dreamRepository.flush();
+        if (!patched.title().equals(current.title()) || !patched.content().equals(current.content())) {
+            analysisOutbox.enqueue(List.of(dreamId));
+        }
+        eventPublisher.publishEvent(DreamChangedEvent.of(user.getId(), dreamId, DreamChangedEvent.Type.UPDATED));
+        log.info("Patched dream {} for user {}", dreamId, user.getEmail());
+        return dream.getVersion();
+    }
+
     /**
      * Delete a dream entry.
      * Only the owner can delete their dream.
@@ -146,19 +298,24 @@ public class DreamService {
             .orElseThrow(() -> new AccessDeniedException("Dream not found or access denied"));
 
         dreamRepository.delete(dream);
+        eventPublisher.publishEvent(DreamChangedEvent.of(user.getId(), dreamId, DreamChangedEvent.Type.DELETED));
         log.info("Deleted dream {} for user {}", dreamId, user.getEmail());
     }
 
     /**
-     * Search dreams using full-text search with fuzzy fallback.
-     * Strategy: Try PostgreSQL FTS first (fast, exact matching), then fuzzy search if no results.
+     * Search dreams with the configured {@link DreamSearchEngine}.
+     * The default PostgreSQL engine combines full-text search with fuzzy (trigram) matching
+     * (see {@link pl.kalin.dreamlog.dream.search.DreamSearchMode}); the in-memory engine ranks with BM25.
      * <p>
      * Search supports:
      * - Natural language queries: "lucid dream"
      * - Boolean operators: "flying -nightmare"
      * - Phrase search: "\"flying car\""
      * - Polish characters: "łódź" matches "lodz"
-     * - Typo tolerance: "lucdi" matches "lucid" (fuzzy fallback)
+     * - Typo tolerance: "lucdi" matches "lucid" (PostgreSQL engine only)
+     * <p>
+     * The engine returns ranked IDs, which are cached per user ({@link DreamSearchCache});
+     * dreams are then loaded by ID.
      *
      * @param user  the authenticated user
      * @param query search query string (minimum 3 characters)
@@ -167,19 +324,101 @@ public class DreamService {
     @Transactional(readOnly = true)
     public List<DreamResponse> searchDreams(User user, String query) {
         log.debug("Searching dreams for user {} with query: {}", user.getEmail(), query);
+        long start = System.nanoTime();
 
-        // Try full-text search first (fast, PostgreSQL FTS with websearch_to_tsquery)
-        List<DreamEntry> results = dreamRepository.searchByFullText(user.getId(), query);
+        CacheLookup<List<UUID>> ids = searchCache.lookup(user.getId(), DreamSearchCache.normalize(query),
+            normalized -> searchEngine.searchIds(user.getId(), query));
+        List<DreamResponse> responses = loadEntries(user, ids.value()).stream()
+            .map(DreamResponse::from)
+            .toList();
+
+        searchCache.recordLatency(ids.hit(), System.nanoTime() - start);
+        log.debug("Found {} dreams for query: {} (cached: {})", responses.size(), query, ids.hit());
+        return responses;
+    }
+
+    /**
+     * Search dreams like {@link #searchDreams(User, String)}, returning summaries instead of full dreams.
+     * The search queries return ranked IDs only; summaries are then loaded without the content column.
+     *
+     * @param user  the authenticated user
+     * @param query search query string (minimum 3 characters)
+     * @return list of matching dream summaries ordered by relevance (max 100 results)
+     */
+    @Transactional(readOnly = true)
+    public List<DreamSummary> searchDreamSummaries(User user, String query) {
+        log.debug("Searching dream summaries for user {} with query: {}", user.getEmail(), query);
+        long start = System.nanoTime();
 
-        // Fallback to fuzzy search if no FTS results (handles typos)
-        if (results.isEmpty()) {
-            log.debug("No FTS results, trying fuzzy search for query: {}", query);
-            results = dreamRepository.searchByFuzzy(user.getId(), query);
+        CacheLookup<List<UUID>> ids = searchCache.lookup(user.getId(), DreamSearchCache.normalize(query),
+            normalized -> searchEngine.searchIds(user.getId(), query));
+        List<DreamSummary> summaries = loadSummaries(user, ids.value());
+
+        searchCache.recordLatency(ids.hit(), System.nanoTime() - start);
+        log.debug("Found {} dreams for query: {} (cached: {})", summaries.size(), query, ids.hit());
+        return summaries;
+    }
+
+    /**
+     * Get summaries of the user's dreams with the given IDs, in the given order.
+     * IDs of other users' (or deleted) dreams are skipped.
+     *
+     * @param user the authenticated user
+     * @param ids  dream IDs, e.g. ranked by a search
+     * @return summaries in the order of {@code ids}
+     */
+    @Transactional(readOnly = true)
+    public List<DreamSummary> getDreamSummaries(User user, List<UUID> ids) {
+        return loadSummaries(user, ids);
+    }
+
+    /**
+     * Load whole dreams for ranked IDs in one query (tags in one more), preserving the ranking.
+     */
+    private List<DreamEntry> loadEntries(User user, List<UUID> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
         }
+        Map<UUID, DreamEntry> entries = dreamRepository.findByIdInAndUserId(ids, user.getId())
+            .stream()
+            .collect(Collectors.toMap(DreamEntry::getId, Function.identity()));
+        return ids.stream()
+            .map(entries::get)
+            .filter(Objects::nonNull)
+            .toList();
+    }
 
-        log.debug("Found {} dreams for query: {}", results.size(), query);
-        return results.stream()
-            .map(DreamResponse::from)
+    /**
+     * Load summaries for ranked IDs, preserving the ranking.
+     */
+    private List<DreamSummary> loadSummaries(User user, List<UUID> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<UUID, DreamSummaryRow> rows = dreamRepository.findSummariesByIdIn(ids, user.getId())
+            .stream()
+            .collect(Collectors.toMap(DreamSummaryRow::id, Function.identity()));
+        Map<UUID, List<String>> tags = loadTags(rows.values());
+
+        return ids.stream()
+            .map(rows::get)
+            .filter(Objects::nonNull)
+            .map(row -> DreamSummary.from(row, tags.getOrDefault(row.id(), List.of())))
             .toList();
     }
+
+    /**
+     * Load tags for many dreams with a single query.
+     */
+    private Map<UUID, List<String>> loadTags(Collection<DreamSummaryRow> rows) {
+        if (rows.isEmpty()) {
+            return Map.of();
+        }
+        List<UUID> ids = rows.stream().map(DreamSummaryRow::id).toList();
+        Map<UUID, List<String>> tags = new HashMap<>();
+        for (Object[] pair : dreamRepository.findTagsByDreamIds(ids)) {
+            tags.computeIfAbsent((UUID) pair[0], id -> new ArrayList<>()).add((String) pair[1]);
+        }
+        return tags;
+    }
 }
@@ -0,0 +1,94 @@
+package pl.kalin.dreamlog.dream.service;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import lombok.RequiredArgsConstructor;
+import pl.kalin.dreamlog.dream.event.DreamChangedEvent;
+import pl.kalin.dreamlog.dream.repository.DreamEntryRepository;
+import pl.kalin.dreamlog.user.User;
+import pl.kalin.dreamlog.user.UserDreamStatsRepository;
+
+/**
+ * Versions of dreams and dream lists, used as ETags so unchanged data is answered with 304.
+ * Reading a version is a single index lookup; nothing is hydrated.
+ *
+ * <ul>
+ *   <li>a dream's version is its optimistic lock ({@code DreamEntry#version}), incremented on every edit</li>
+ *   <li>a user's list version is {@code user_dream_stats.dreams_version}, incremented here whenever a
+ *       transaction changes the user's dreams ({@link DreamChangedEvent})</li>
+ * </ul>
+ */
+@Service
+@RequiredArgsConstructor
+public class DreamVersionService {
+
+    private final DreamEntryRepository dreamRepository;
+    private final UserDreamStatsRepository statsRepository;
+
+    /**
+     * @param user    the authenticated user
+     * @param dreamId the dream ID
+     * @return version of the dream, empty if not found or owned by another user
+     */
+    @Transactional(readOnly = true)
+    public Optional<String> getDreamVersion(User user, UUID dreamId) {
+        return dreamRepository.findVersionByIdAndUserId(dreamId, user.getId())
+            .map(DreamVersionService::version);
+    }
+
+    /**
+     * The list URL is the same for every user, so the version includes the user: a browser shared by two
+     * accounts must not revalidate one user's cached list for the other.
+     *
+     * @param user the authenticated user
+     * @return version of all the user's dreams, the same for every page, sort and view of the list
+     */
+    @Transactional(readOnly = true)
+    public String getDreamListVersion(User user) {
+        return user.getId() + "." + statsRepository.findDreamsVersion(user.getId()).orElse(0L);
+    }
+
+    /**
+     * Increment the user's list version in the writing transaction, so it commits (or rolls back)
+     * with the change. One statement per event (a transaction or import batch), however many dreams it touched.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    void onDreamChanged(DreamChangedEvent event) {
+        statsRepository.incrementDreamsVersion(event.userId());
+    }
+
+    /**
+     * @param version the dream's {@code version}
+     * @return the dream's ETag value (unquoted)
+     */
+    public static String version(long version) {
+        return "d" + version;
+    }
+
+    /**
+     * Dream version a client based its edit on, from the entity tags of an {@code If-Match} header.
+     *
+     * @param ifMatch quoted entity tags, e.g. {@code ["\"d3\""]}; empty if the header is absent
+     * @return the version, {@code null} for no header or {@code *} (any version), -1 if no strong tag
+     *         names a dream version (matches nothing)
+     */
+    public static Long expectedVersion(List<String> ifMatch) {
+        if (ifMatch.isEmpty() || ifMatch.contains("*")) {
+            return null;
+        }
+        // Strong comparison: weak tags (W/"...") never match
+        for (String etag : ifMatch) {
+            if (etag.matches("\"d\\d{1,18}\"")) {
+                return Long.parseLong(etag.substring(2, etag.length() - 1));
+            }
+        }
+        return -1L;
+    }
+}
@@ -0,0 +1,152 @@
+package pl.kalin.dreamlog.dream.similar;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.stereotype.Component;
+
+import pl.kalin.dreamlog.common.text.TextNormalizer;
+
+/**
+ * Turns dream text into a fixed-size vector without any model files or network calls.
+ *
+ * <p>Features are normalized words plus the character trigrams of each word (so "flying" and "flew"
+ * or a typo still share something), weighted by field (title and tags count more than content) and
+ * damped with a square root, so a repeated word doesn't dominate. Each feature is hashed to a dimension
+ * and a sign (the hashing trick), and the result is L2-normalized, so the dot product of two vectors
+ * is their cosine similarity.
+ *
+ * <p>The output depends only on the input and {@link #MODEL}: bump the model name whenever anything
+ * here changes, and stored embeddings of the old model are recomputed on startup.
+ */
+@Component
+public class HashingDreamEncoder {
+
+    /** Identifies this encoder and its parameters in {@code dream_embedding.model}. */
+    public static final String MODEL = "hash-ngram-256-v1";
+    public static final int DIMENSIONS = 256;
+
+    private static final float TITLE_WEIGHT = 2f;
+    private static final float TAG_WEIGHT = 2f;
+    private static final float CONTENT_WEIGHT = 1f;
+    private static final float TRIGRAM_WEIGHT = 0.5f;
+    private static final int MIN_WORD_LENGTH = 3;
+
+    // Frequent words that would otherwise make every dream look alike
+    private static final Set<String> STOP_WORDS = Set.of(
+        "the", "and", "was", "were", "that", "this", "with", "for", "from", "then", "there", "they",
+        "have", "had", "but", "not", "you", "she", "her", "him", "his", "our", "out", "into", "all",
+        "are", "its", "when", "what", "which", "who", "been", "some", "very", "just", "like",
+        "nie", "sie", "jak", "ale", "czy", "jest", "byl", "byla", "bylo", "mnie", "tak", "ten", "tym", "przez"
+    );
+
+    /**
+     * Encode a dream.
+     *
+     * @return L2-normalized vector of {@link #DIMENSIONS} components (all zero for text without features)
+     */
+    public float[] encode(String title, String content, List<String> tags) {
+        Map<String, Float> features = new HashMap<>();
+        addText(features, title, TITLE_WEIGHT);
+        addText(features, content, CONTENT_WEIGHT);
+        for (String tag : tags) {
+            addText(features, tag, TAG_WEIGHT);
+        }
+        return project(features);
+    }
+
+    /**
+     * Encode free text typed as a search query.
+     */
+    public float[] encodeQuery(String query) {
+        Map<String, Float> features = new HashMap<>();
+        addText(features, query, CONTENT_WEIGHT);
+        return project(features);
+    }
+
+    /**
+     * Quantize a normalized vector to one signed byte per component (component × 127).
+     */
+    public static byte[] quantize(float[] vector) {
+        byte[] quantized = new byte[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            quantized[i] = (byte) Math.round(Math.max(-1f, Math.min(1f, vector[i])) * 127f);
+        }
+        return quantized;
+    }
+
+    private static void addText(Map<String, Float> features, String text, float weight) {
+        for (String word : TextNormalizer.tokenize(text)) {
+            if (word.length() < MIN_WORD_LENGTH || STOP_WORDS.contains(word)) {
+                continue;
+            }
+            features.merge("w:" + word, weight, Float::sum);
+            String padded = "#" + word + "#";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                features.merge("t:" + padded.substring(i, i + 3), weight * TRIGRAM_WEIGHT, Float::sum);
+            }
+        }
+    }
+
+    private static float[] project(Map<String, Float> features) {
+        float[] vector = new float[DIMENSIONS];
+        for (Map.Entry<String, Float> feature : features.entrySet()) {
+            int hash = murmur3(feature.getKey().getBytes(StandardCharsets.UTF_8));
+            int dimension = Math.floorMod(hash, DIMENSIONS);
+            float sign = (hash & 0x8000_0000) == 0 ? 1f : -1f;
+            vector[dimension] += sign * (float) Math.sqrt(feature.getValue());
+        }
+        double norm = 0;
+        for (float component : vector) {
+            norm += component * component;
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * MurmurHash3 (x86, 32-bit, seed 0) - stable across JVMs, unlike {@link String#hashCode()} mixing.
+     */
+    static int murmur3(byte[] data) {
+        int h = 0;
+        int length = data.length;
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            int k = (data[i] & 0xff) | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff) << 16 | (data[i + 3] & 0xff) << 24;
+            h ^= mixK(k);
+            h = Integer.rotateLeft(h, 13) * 5 + 0xe6546b64;
+        }
+        int k = 0;
+        switch (length - i) {
+            case 3:
+                k ^= (data[i + 2] & 0xff) << 16;
+            case 2:
+                k ^= (data[i + 1] & 0xff) << 8;
+            case 1:
+                k ^= data[i] & 0xff;
+                h ^= mixK(k);
+            default:
+        }
+        h ^= length;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int mixK(int k) {
+        k *= 0xcc9e2d51;
+        k = Integer.rotateLeft(k, 15);
+        return k * 0x1b873593;
+    }
+}
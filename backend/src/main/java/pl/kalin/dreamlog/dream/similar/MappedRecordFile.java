@@ -0,0 +1,103 @@
+package pl.kalin.dreamlog.dream.similar;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * File of fixed-size records, memory-mapped in chunks that grow on demand.
+ * A record never spans two chunks, so every field is read and written with absolute
+ * {@link MappedByteBuffer} access at {@link #offset(int)} of {@link #chunk(int)}.
+ *
+ * <p>Not thread-safe: {@link HnswIndex} guards all access with its lock.
+ */
+final class MappedRecordFile implements AutoCloseable {
+
+    private static final int MAX_CHUNK_BYTES = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final int recordSize;
+    private final int recordsPerChunk;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+
+    MappedRecordFile(Path file, int recordSize) {
+        this.recordSize = recordSize;
+        this.recordsPerChunk = Math.max(1, MAX_CHUNK_BYTES / recordSize);
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // Two writers would corrupt the file; the lock is released when the channel closes
+            if (channel.tryLock() == null) {
+                channel.close();
+                throw new IllegalStateException(file + " is used by another process");
+            }
+            long existingRecords = channel.size() / recordSize;
+            ensureCapacity((int) Math.min(Integer.MAX_VALUE, Math.max(1, existingRecords)));
+        } catch (OverlappingFileLockException e) {
+            throw new IllegalStateException(file + " is already open", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map " + file, e);
+        }
+    }
+
+    /**
+     * Make sure records {@code [0, records)} are mapped, extending the file if needed.
+     */
+    void ensureCapacity(int records) {
+        try {
+            while ((long) chunks.size() * recordsPerChunk < records) {
+                long position = (long) chunks.size() * recordsPerChunk * recordSize;
+                chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, position, (long) recordsPerChunk * recordSize));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    MappedByteBuffer chunk(int record) {
+        return chunks.get(record / recordsPerChunk);
+    }
+
+    int offset(int record) {
+        return (record % recordsPerChunk) * recordSize;
+    }
+
+    /**
+     * Write dirty pages to disk.
+     */
+    void force() {
+        chunks.forEach(MappedByteBuffer::force);
+    }
+
+    /**
+     * Drop all records (the file is truncated and remapped empty).
+     */
+    void clear() {
+        try {
+            chunks.clear();
+            channel.truncate(0);
+            ensureCapacity(1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            force();
+            chunks.clear();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
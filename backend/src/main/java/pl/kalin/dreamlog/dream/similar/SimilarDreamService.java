@@ -0,0 +1,378 @@
+package pl.kalin.dreamlog.dream.similar;
+
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import pl.kalin.dreamlog.dream.dto.DreamResponse;
+import pl.kalin.dreamlog.dream.dto.DreamSummary;
+import pl.kalin.dreamlog.dream.dto.SimilarDream;
+import pl.kalin.dreamlog.dream.event.DreamChangedEvent;
+import pl.kalin.dreamlog.dream.repository.DreamRows;
+import pl.kalin.dreamlog.dream.service.DreamService;
+import pl.kalin.dreamlog.user.User;
+
+/**
+ * Semantic "similar dreams": embeddings from {@link HashingDreamEncoder}, stored in {@code dream_embedding}
+ * and served from an {@link HnswIndex} kept in a memory-mapped file ({@code app.similar.index-path}).
+ *
+ * <p>Embeddings are written after every committed change to a dream and applied to the index right away.
+ * On startup, dreams without an embedding of the current model are encoded, and the index catches up
+ * with {@code dream_embedding} rows changed since its watermark (minus {@code app.similar.catch-up-margin},
+ * for transactions that committed late) and drops dreams that no longer exist. A restart therefore only
+ * reads what changed; a new, incompatible or crashed index file is loaded from the stored embeddings
+ * without re-encoding anything.
+ *
+ * <p>Each node keeps its own index file and applies only its own writes immediately; embeddings written by
+ * the others are applied on every flush ({@code app.similar.flush-interval}), their deletions on restart or
+ * on the scheduled rebuild ({@code app.similar.rebuild-cron}).
+ */
+@Service
+@Slf4j
+public class SimilarDreamService implements SmartInitializingSingleton {
+
+    private static final int BATCH_SIZE = 500;
+
+    private static final String DREAMS_SQL = """
+        SELECT d.id, d.user_id, d.title, d.content,
+               %s
+        FROM dream_entry d
+        """.formatted(DreamRows.TAGS_COLUMN);
+
+    // Skips dreams deleted in the meantime instead of failing the batch on the foreign key
+    private static final String UPSERT_EMBEDDING_SQL = """
+        INSERT INTO dream_embedding (dream_id, model, vector, updated_at)
+        SELECT ?, ?, ?, NOW()
+        WHERE EXISTS (SELECT 1 FROM dream_entry WHERE id = ?)
+        ON CONFLICT (dream_id) DO UPDATE
+            SET model = EXCLUDED.model, vector = EXCLUDED.vector, updated_at = EXCLUDED.updated_at
+            WHERE (dream_embedding.model, dream_embedding.vector) IS DISTINCT FROM (EXCLUDED.model, EXCLUDED.vector)
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    // For writes from AFTER_COMMIT listeners, where the committed transaction's resources are still bound
+    private final TransactionTemplate newTransaction;
+    private final HashingDreamEncoder encoder;
+    private final DreamService dreamService;
+    private final Path indexPath;
+    private final int efSearch;
+    private final Duration catchUpMargin;
+    private final Timer queryTimer;
+    // Not synchronized: a rebuild runs queries, and a virtual thread blocking inside synchronized pins its carrier
+    private final Lock rebuildLock = new ReentrantLock();
+    private volatile HnswIndex index;
+
+    public SimilarDreamService(
+        DataSource dataSource,
+        PlatformTransactionManager transactionManager,
+        HashingDreamEncoder encoder,
+        DreamService dreamService,
+        @Value("${app.similar.index-path:data/similar-dreams.hnsw}") Path indexPath,
+        @Value("${app.similar.ef-search:64}") int efSearch,
+        @Value("${app.similar.catch-up-margin:5m}") Duration catchUpMargin,
+        MeterRegistry meterRegistry
+    ) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(BATCH_SIZE);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.encoder = encoder;
+        this.dreamService = dreamService;
+        this.indexPath = indexPath;
+        this.efSearch = efSearch;
+        this.catchUpMargin = catchUpMargin;
+        this.queryTimer = Timer.builder("dreamlog.similar.query")
+            .description("Time spent searching the similarity index")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        Gauge.builder("dreamlog.similar.index.vectors", this, service -> service.index == null ? 0 : service.index.size())
+            .register(meterRegistry);
+        Gauge.builder("dreamlog.similar.index.deleted", this, service -> service.index == null ? 0 : service.index.deletedCount())
+            .register(meterRegistry);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        index = new HnswIndex(indexPath, HashingDreamEncoder.MODEL, HashingDreamEncoder.DIMENSIONS);
+        int encoded = encodeMissing();
+        catchUp(index, true);
+        log.info("Similarity index ready: {} vectors ({} dreams encoded on startup)", index.size(), encoded);
+    }
+
+    /**
+     * Find the user's dreams most similar to one of their dreams.
+     *
+     * @param user    the authenticated user
+     * @param dreamId the dream to compare with
+     * @param limit   maximum number of results
+     * @return similar dreams, most similar first, without the dream itself
+     * @throws AccessDeniedException if the dream doesn't exist or belongs to someone else
+     */
+    public List<SimilarDream> findSimilar(User user, UUID dreamId, int limit) {
+        byte[] vector = index().vector(dreamId, user.getId());
+        if (vector == null) {
+            // Not indexed (yet): encode from the dream itself, which also checks ownership
+            DreamResponse dream = dreamService.getDreamById(user, dreamId);
+            vector = HashingDreamEncoder.quantize(encoder.encode(dream.title(), dream.content(), dream.tags()));
+        }
+        return search(user, vector, limit, dreamId);
+    }
+
+    /**
+     * Find the user's dreams closest in meaning to free text.
+     *
+     * @param user  the authenticated user
+     * @param query text to compare with
+     * @param limit maximum number of results
+     * @return similar dreams, most similar first
+     */
+    public List<SimilarDream> searchSemantic(User user, String query, int limit) {
+        return search(user, HashingDreamEncoder.quantize(encoder.encodeQuery(query)), limit, null);
+    }
+
+    /**
+     * Write embeddings of changed dreams and update the index, after the change is committed.
+     * Each batch is read and written in a new transaction, on the primary.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    void onDreamChanged(DreamChangedEvent event) {
+        if (event.type() == DreamChangedEvent.Type.DELETED) {
+            // dream_embedding rows go with the dream (ON DELETE CASCADE)
+            event.dreamIds().forEach(index()::remove);
+            return;
+        }
+        for (int from = 0; from < event.dreamIds().size(); from += BATCH_SIZE) {
+            List<UUID> ids = event.dreamIds().subList(from, Math.min(from + BATCH_SIZE, event.dreamIds().size()));
+            List<Encoded> encoded = newTransaction.execute(status -> {
+                List<Encoded> batch = encode(DREAMS_SQL + " WHERE d.user_id = ? AND d.id = ANY(?)",
+                    event.userId(), ids.toArray(UUID[]::new));
+                store(batch);
+                return batch;
+            });
+            encoded.forEach(dream -> index().put(dream.id(), dream.userId(), dream.vector()));
+        }
+    }
+
+    /**
+     * Apply embeddings written since the watermark (by this or any other node), then persist index pages
+     * and advance the watermark, so a restart catches up from here.
+     */
+    @Scheduled(fixedDelayString = "${app.similar.flush-interval:1m}", initialDelayString = "${app.similar.flush-interval:1m}")
+    public void flush() {
+        catchUp(index(), false);
+    }
+
+    /**
+     * Build a compact index from the stored embeddings (dropping deleted nodes) and swap it in.
+     * Searches keep using the old index until the new one is ready; the old one is closed only after the swap.
+     */
+    @Scheduled(cron = "${app.similar.rebuild-cron:-}")
+    public void rebuild() {
+        rebuildLock.lock();
+        try {
+            Path rebuildPath = indexPath.resolveSibling(indexPath.getFileName() + ".rebuild");
+            HnswIndex rebuilt = new HnswIndex(rebuildPath, HashingDreamEncoder.MODEL, HashingDreamEncoder.DIMENSIONS);
+            rebuilt.clear();
+            catchUp(rebuilt, true);
+            HnswIndex old = index();
+            index = rebuilt;
+            // Changes applied to the old index while the new one was being built
+            catchUp(rebuilt, true);
+            old.close();
+            // The open index keeps its file channels across a rename, so it can be moved into place for restarts
+            try {
+                Files.move(rebuildPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.move(rebuildPath.resolveSibling(rebuildPath.getFileName() + ".links"),
+                    indexPath.resolveSibling(indexPath.getFileName() + ".links"),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // Searches go on with the rebuilt index; the next start reloads from dream_embedding
+                log.warn("Cannot move the rebuilt similarity index to {}, dropping the old file", indexPath, e);
+                deleteQuietly(indexPath);
+            }
+            log.info("Rebuilt similarity index: {} vectors", rebuilt.size());
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        HnswIndex current = index;
+        if (current != null) {
+            flush();
+            current.close();
+        }
+    }
+
+    private HnswIndex index() {
+        HnswIndex current = index;
+        if (current == null) {
+            throw new IllegalStateException("Similarity index is not open yet");
+        }
+        return current;
+    }
+
+    private List<SimilarDream> search(User user, byte[] vector, int limit, UUID exclude) {
+        List<HnswIndex.Match> matches = queryTimer.record(() ->
+            index().search(user.getId(), vector, limit, Math.max(efSearch, limit), exclude));
+        Map<UUID, Float> similarities = matches.stream()
+            .collect(Collectors.toMap(HnswIndex.Match::dreamId, HnswIndex.Match::similarity));
+        List<DreamSummary> summaries = dreamService.getDreamSummaries(user,
+            matches.stream().map(HnswIndex.Match::dreamId).toList());
+        return summaries.stream()
+            .map(summary -> new SimilarDream(summary, similarities.get(summary.id())))
+            .toList();
+    }
+
+    /**
+     * Encode dreams that have no embedding of the current model, in batches.
+     *
+     * @return number of dreams encoded
+     */
+    private int encodeMissing() {
+        int total = 0;
+        List<Encoded> batch;
+        do {
+            batch = encode(DREAMS_SQL + """
+                    WHERE NOT EXISTS (SELECT 1 FROM dream_embedding e WHERE e.dream_id = d.id AND e.model = ?)
+                    LIMIT ?
+                    """, HashingDreamEncoder.MODEL, BATCH_SIZE);
+            store(batch);
+            total += batch.size();
+        } while (batch.size() == BATCH_SIZE);
+        return total;
+    }
+
+    /**
+     * Bring an index up to date with {@code dream_embedding}: add or replace vectors changed since its
+     * watermark, then move the watermark to the start of this catch-up and persist the index.
+     *
+     * @param removeMissing also remove dreams that are gone (reads the IDs of all embeddings); deletions
+     *                      made on other nodes are otherwise picked up on the next start or rebuild - searches
+     *                      never return them, as results are hydrated from existing dreams only
+     */
+    private void catchUp(HnswIndex target, boolean removeMissing) {
+        long since = target.watermark() == 0 ? 0 : target.watermark() - catchUpMargin.toNanos() / 1000;
+        LocalDateTime start = databaseNow();
+        Set<UUID> existing = new HashSet<>();
+        int[] applied = {0};
+        Timestamp changedSince = Timestamp.valueOf(fromWatermark(since));
+        // Without the removal pass only changed rows are read (idx_dream_embedding_updated_at)
+        String changedOnly = removeMissing ? "" : " AND e.updated_at >= ?";
+        Object[] args = removeMissing
+            ? new Object[]{changedSince, HashingDreamEncoder.MODEL}
+            : new Object[]{changedSince, HashingDreamEncoder.MODEL, changedSince};
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query("""
+                SELECT e.dream_id, d.user_id, e.updated_at,
+                       CASE WHEN e.updated_at >= ? THEN e.vector END AS vector
+                FROM dream_embedding e
+                         JOIN dream_entry d ON d.id = e.dream_id
+                WHERE e.model = ?
+                """ + changedOnly, rs -> {
+                UUID dreamId = rs.getObject("dream_id", UUID.class);
+                existing.add(dreamId);
+                byte[] vector = rs.getBytes("vector");
+                if (vector != null) {
+                    target.put(dreamId, rs.getObject("user_id", UUID.class), vector);
+                    applied[0]++;
+                }
+            }, args));
+        int removed = 0;
+        if (removeMissing) {
+            for (UUID dreamId : target.dreamIds()) {
+                if (!existing.contains(dreamId) && target.remove(dreamId)) {
+                    removed++;
+                }
+            }
+        }
+        target.setWatermark(toWatermark(start));
+        target.flush();
+        log.debug("Similarity index caught up: {} vectors applied, {} removed", applied[0], removed);
+    }
+
+    private List<Encoded> encode(String sql, Object... args) {
+        List<Encoded> encoded = new ArrayList<>();
+        jdbcTemplate.query(sql, rs -> {
+            float[] vector = encoder.encode(rs.getString("title"), rs.getString("content"), DreamRows.tags(rs));
+            encoded.add(new Encoded(
+                rs.getObject("id", UUID.class),
+                rs.getObject("user_id", UUID.class),
+                HashingDreamEncoder.quantize(vector)));
+        }, args);
+        return encoded;
+    }
+
+    private void store(List<Encoded> encoded) {
+        if (encoded.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(UPSERT_EMBEDDING_SQL, encoded, encoded.size(), (ps, dream) -> {
+            ps.setObject(1, dream.id());
+            ps.setString(2, HashingDreamEncoder.MODEL);
+            ps.setBytes(3, dream.vector());
+            ps.setObject(4, dream.id());
+        });
+    }
+
+    private LocalDateTime databaseNow() {
+        return jdbcTemplate.queryForObject("SELECT LOCALTIMESTAMP", LocalDateTime.class);
+    }
+
+    private static long toWatermark(LocalDateTime time) {
+        return ChronoUnit.MICROS.between(LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC), time);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Cannot delete {}", file, e);
+        }
+    }
+
+    private static LocalDateTime fromWatermark(long watermark) {
+        return LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC).plus(watermark, ChronoUnit.MICROS);
+    }
+
+    private record Encoded(UUID id, UUID userId, byte[] vector) {
+    }
+}
@@ -0,0 +1,101 @@
+package pl.kalin.dreamlog.dream.tag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import pl.kalin.dreamlog.common.text.TextNormalizer;
+import pl.kalin.dreamlog.dream.dto.TagSuggestion;
+
+/**
+ * One user's tags with usage counts, for prefix lookups. Immutable: three parallel arrays sorted by the
+ * normalized tag ({@link TextNormalizer}, like {@code unaccent} + {@code lower} in search), so "lod" finds "Łódź".
+ *
+ * <p>A lookup binary-searches the start of the prefix range, walks it and keeps the most used tags in a
+ * selection of {@code limit} slots; the only allocations are that {@code int[limit]} and the result.
+ */
+final class TagIndex {
+
+    static final TagIndex EMPTY = new TagIndex(new String[0], new String[0], new int[0]);
+
+    private final String[] keys;
+    private final String[] tags;
+    private final int[] counts;
+
+    private TagIndex(String[] keys, String[] tags, int[] counts) {
+        this.keys = keys;
+        this.tags = tags;
+        this.counts = counts;
+    }
+
+    /**
+     * @param counts dreams per tag, tags as written
+     */
+    static TagIndex of(Map<String, Integer> counts) {
+        if (counts.isEmpty()) {
+            return EMPTY;
+        }
+        List<Map.Entry<String, String>> sorted = new ArrayList<>(counts.size());
+        for (String tag : counts.keySet()) {
+            sorted.add(Map.entry(TextNormalizer.normalize(tag), tag));
+        }
+        sorted.sort(Map.Entry.<String, String>comparingByKey().thenComparing(Map.Entry.comparingByValue()));
+
+        String[] keys = new String[sorted.size()];
+        String[] tags = new String[sorted.size()];
+        int[] tagCounts = new int[sorted.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = sorted.get(i).getKey();
+            tags[i] = sorted.get(i).getValue();
+            tagCounts[i] = counts.get(tags[i]);
+        }
+        return new TagIndex(keys, tags, tagCounts);
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    /**
+     * Most used tags starting with the prefix, ties in alphabetical order.
+     *
+     * @param normalizedPrefix prefix after {@link TextNormalizer#normalize(String)}, empty for all tags
+     * @param limit            maximum number of suggestions
+     * @return suggestions, most used first
+     */
+    List<TagSuggestion> suggest(String normalizedPrefix, int limit) {
+        int[] best = new int[limit];
+        int found = 0;
+        for (int i = lowerBound(normalizedPrefix); i < keys.length && keys[i].startsWith(normalizedPrefix); i++) {
+            // Insertion into the selection; entries are visited in key order, so equal counts stay alphabetical
+            if (found == limit && counts[i] <= counts[best[limit - 1]]) {
+                continue;
+            }
+            int position = found < limit ? found++ : limit - 1;
+            while (position > 0 && counts[best[position - 1]] < counts[i]) {
+                best[position] = best[position - 1];
+                position--;
+            }
+            best[position] = i;
+        }
+
+        List<TagSuggestion> suggestions = new ArrayList<>(found);
+        for (int j = 0; j < found; j++) {
+            suggestions.add(new TagSuggestion(tags[best[j]], counts[best[j]]));
+        }
+        return suggestions;
+    }
+
+    private int lowerBound(String prefix) {
+        int index = Arrays.binarySearch(keys, prefix);
+        if (index < 0) {
+            return -index - 1;
+        }
+        // Duplicate keys (e.g. "Łódź" and "lodz"): step back to the first
+        while (index > 0 && keys[index - 1].equals(prefix)) {
+            index--;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,67 @@
+package pl.kalin.dreamlog.dream.tag;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Recomputes the tag analytics of {@link TagStatsService} from {@code dream_entry_tags}: backfill of
+ * users whose dreams were written around the application, and repair of drifted counters.
+ *
+ * <p>Each user is rebuilt in its own short transaction by the {@code user_tag_stats_rebuild} database
+ * function, which takes the same per-user lock as the incremental updates, so it can't race with them.
+ * Scheduled by {@code app.stats.tags.rebuild-cron} (off by default; the V16 migration backfilled existing users).
+ */
+@Component
+@Slf4j
+public class TagStatsRebuilder {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+
+    public TagStatsRebuilder(
+        JdbcTemplate jdbcTemplate,
+        @Value("${app.stats.tags.rebuild-batch-size:500}") int batchSize
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Rebuild tag stats of all users, walking the users table in keyset batches.
+     *
+     * @return number of users rebuilt
+     */
+    @Scheduled(cron = "${app.stats.tags.rebuild-cron:-}")
+    public int rebuildAll() {
+        log.info("Rebuilding tag stats");
+        int rebuilt = 0;
+        List<UUID> batch = jdbcTemplate.queryForList(
+            "SELECT id FROM users ORDER BY id LIMIT ?", UUID.class, batchSize);
+        while (!batch.isEmpty()) {
+            for (UUID userId : batch) {
+                rebuild(userId);
+                rebuilt++;
+            }
+            batch = jdbcTemplate.queryForList(
+                "SELECT id FROM users WHERE id > ? ORDER BY id LIMIT ?", UUID.class, batch.getLast(), batchSize);
+        }
+        log.info("Rebuilt tag stats of {} users", rebuilt);
+        return rebuilt;
+    }
+
+    /**
+     * Rebuild tag stats of one user.
+     *
+     * @param userId the user's ID
+     */
+    public void rebuild(UUID userId) {
+        jdbcTemplate.queryForObject("SELECT user_tag_stats_rebuild(?)::TEXT", String.class, userId);
+    }
+}
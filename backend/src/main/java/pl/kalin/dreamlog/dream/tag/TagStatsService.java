@@ -0,0 +1,156 @@
+package pl.kalin.dreamlog.dream.tag;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import lombok.RequiredArgsConstructor;
+import pl.kalin.dreamlog.dream.dto.MonthlyTagCounts;
+import pl.kalin.dreamlog.dream.dto.TagCount;
+import pl.kalin.dreamlog.dream.dto.TagPair;
+import pl.kalin.dreamlog.dream.event.DreamChangedEvent;
+import pl.kalin.dreamlog.dream.repository.DreamEntryRepository;
+import pl.kalin.dreamlog.user.User;
+
+/**
+ * Tag analytics: the user's most used tags, overall and per month, and tags used together.
+ *
+ * <p>Counters live in {@code user_tag_counts}, {@code user_tag_monthly_counts} and {@code user_tag_pairs}
+ * (V16 migration) and are updated in the writing transaction: every {@link DreamChangedEvent} applies the
+ * difference between the tags its dreams are counted with and the tags they have now, in one call of
+ * {@code user_tag_stats_apply}. Every read is a top-K index range scan of the user's counters, so its cost
+ * doesn't grow with the user's history. {@link TagStatsRebuilder} recomputes them from the dreams.
+ */
+@Service
+@RequiredArgsConstructor
+public class TagStatsService {
+
+    private static final String RELATED_TAGS_SQL = """
+        SELECT tag, dreams
+        FROM ((SELECT co_tag AS tag, dreams
+               FROM user_tag_pairs
+               WHERE user_id = ? AND tag = ?
+               ORDER BY dreams DESC, co_tag
+               LIMIT ?)
+              UNION ALL
+              (SELECT tag, dreams
+               FROM user_tag_pairs
+               WHERE user_id = ? AND co_tag = ?
+               ORDER BY dreams DESC, tag
+               LIMIT ?)) related
+        ORDER BY dreams DESC, tag
+        LIMIT ?
+        """;
+
+    private static final String MONTHLY_TAGS_SQL = """
+        SELECT m.month::DATE AS month, c.tag, c.dreams
+        FROM generate_series(?::TIMESTAMP, ?::TIMESTAMP, INTERVAL '1 month') AS m(month)
+                 CROSS JOIN LATERAL (SELECT tag, dreams
+                                     FROM user_tag_monthly_counts
+                                     WHERE user_id = ? AND month = m.month::DATE
+                                     ORDER BY dreams DESC, tag
+                                     LIMIT ?) c
+        ORDER BY m.month, c.dreams DESC, c.tag
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DreamEntryRepository dreamRepository;
+
+    /**
+     * @param user  the authenticated user
+     * @param limit maximum number of tags
+     * @return the user's most used tags, ties in alphabetical order
+     */
+    @Transactional(readOnly = true)
+    public List<TagCount> getTopTags(User user, int limit) {
+        return jdbcTemplate.query(
+            "SELECT tag, dreams FROM user_tag_counts WHERE user_id = ? ORDER BY dreams DESC, tag LIMIT ?",
+            (rs, rowNum) -> new TagCount(rs.getString("tag"), rs.getLong("dreams")),
+            user.getId(), limit);
+    }
+
+    /**
+     * @param userId the user's ID
+     * @return how many of the user's dreams carry each of their tags
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Integer> getTagCounts(UUID userId) {
+        Map<String, Integer> counts = new HashMap<>();
+        jdbcTemplate.query("SELECT tag, dreams FROM user_tag_counts WHERE user_id = ?", rs -> {
+                counts.put(rs.getString("tag"), rs.getInt("dreams"));
+            },
+            userId);
+        return counts;
+    }
+
+    /**
+     * @param user  the authenticated user
+     * @param limit maximum number of pairs
+     * @return pairs of tags most often used on the same dream
+     */
+    @Transactional(readOnly = true)
+    public List<TagPair> getTopTagPairs(User user, int limit) {
+        return jdbcTemplate.query(
+            "SELECT tag, co_tag, dreams FROM user_tag_pairs WHERE user_id = ? ORDER BY dreams DESC, tag, co_tag LIMIT ?",
+            (rs, rowNum) -> new TagPair(rs.getString("tag"), rs.getString("co_tag"), rs.getLong("dreams")),
+            user.getId(), limit);
+    }
+
+    /**
+     * @param user  the authenticated user
+     * @param tag   a tag of the user (exact)
+     * @param limit maximum number of tags
+     * @return tags most often used together with the tag, with the number of dreams having both
+     */
+    @Transactional(readOnly = true)
+    public List<TagCount> getRelatedTags(User user, String tag, int limit) {
+        return jdbcTemplate.query(RELATED_TAGS_SQL,
+            (rs, rowNum) -> new TagCount(rs.getString("tag"), rs.getLong("dreams")),
+            user.getId(), tag, limit, user.getId(), tag, limit, limit);
+    }
+
+    /**
+     * @param user  the authenticated user
+     * @param from  first month
+     * @param to    last month (inclusive)
+     * @param limit maximum number of tags per month
+     * @return every month of the range in order, each with its most used tags
+     */
+    @Transactional(readOnly = true)
+    public List<MonthlyTagCounts> getMonthlyTopTags(User user, YearMonth from, YearMonth to, int limit) {
+        Map<YearMonth, List<TagCount>> months = new LinkedHashMap<>();
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            months.put(month, new ArrayList<>());
+        }
+        jdbcTemplate.query(MONTHLY_TAGS_SQL, rs -> {
+                YearMonth month = YearMonth.from(rs.getObject("month", LocalDate.class));
+                months.get(month).add(new TagCount(rs.getString("tag"), rs.getLong("dreams")));
+            },
+            from.atDay(1), to.atDay(1), user.getId(), limit);
+        return months.entrySet().stream()
+            .map(entry -> new MonthlyTagCounts(entry.getKey(), List.copyOf(entry.getValue())))
+            .toList();
+    }
+
+    /**
+     * Apply the tag changes of the event's dreams in the writing transaction, so the counters commit
+     * (or roll back) with them. Pending entity changes are flushed first: the function reads the tag rows.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    void onDreamChanged(DreamChangedEvent event) {
+        dreamRepository.flush();
+        jdbcTemplate.queryForObject("SELECT user_tag_stats_apply(?, ?)::TEXT", String.class,
+            event.userId(), event.dreamIds().toArray(UUID[]::new));
+    }
+}
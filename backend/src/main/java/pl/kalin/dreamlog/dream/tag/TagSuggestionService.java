@@ -0,0 +1,99 @@
+package pl.kalin.dreamlog.dream.tag;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import pl.kalin.dreamlog.common.cache.ExpiringLruCache;
+import pl.kalin.dreamlog.common.text.TextNormalizer;
+import pl.kalin.dreamlog.dream.dto.TagSuggestion;
+import pl.kalin.dreamlog.dream.event.DreamChangedEvent;
+import pl.kalin.dreamlog.user.User;
+import pl.kalin.dreamlog.user.UserDreamStatsRepository;
+
+/**
+ * Tag autocomplete: the user's existing tags starting with what they typed, most used first.
+ *
+ * <p>Served from a {@link TagIndex} per user, loaded from the user's tag counters ({@link TagStatsService})
+ * on the user's first lookup and kept in a bounded LRU with a write TTL ({@code app.tags.suggest.*}),
+ * so inactive users drop out.
+ * Any change to a user's dreams drops their index after commit and the next lookup reloads it.
+ *
+ * <p>An index is kept with the {@code user_dream_stats.dreams_version} read (one primary key lookup) before
+ * it was loaded, and every lookup compares it with the current version, so writes made on other nodes are
+ * seen too. Only an index of the version the lookup reads is used or stored: a lookup on a replica that
+ * hasn't replayed the user's last write yet doesn't replace a newer index with older tags, and a lookup
+ * racing with a write stores tags at least as new as their version.
+ *
+ * <p>Metric: {@code dreamlog.tags.suggest.users} - users with a loaded index.
+ */
+@Service
+@Slf4j
+public class TagSuggestionService {
+
+    private final TagStatsService tagStatsService;
+    private final UserDreamStatsRepository statsRepository;
+    private final ExpiringLruCache<UUID, VersionedIndex> users;
+
+    public TagSuggestionService(
+        TagStatsService tagStatsService,
+        UserDreamStatsRepository statsRepository,
+        @Value("${app.tags.suggest.max-users:10000}") int maxUsers,
+        @Value("${app.tags.suggest.ttl:30m}") Duration ttl,
+        MeterRegistry meterRegistry
+    ) {
+        this.tagStatsService = tagStatsService;
+        this.statsRepository = statsRepository;
+        this.users = new ExpiringLruCache<>(maxUsers, ttl);
+        Gauge.builder("dreamlog.tags.suggest.users", users, ExpiringLruCache::size)
+            .description("Users with a loaded tag suggestion index")
+            .register(meterRegistry);
+    }
+
+    /**
+     * @param user   the authenticated user
+     * @param prefix what the user typed; case and accents are ignored, blank suggests the most used tags
+     * @param limit  maximum number of suggestions
+     * @return the user's tags starting with the prefix, most used first, ties in alphabetical order
+     */
+    public List<TagSuggestion> suggest(User user, String prefix, int limit) {
+        return index(user.getId()).suggest(TextNormalizer.normalize(prefix.strip()), limit);
+    }
+
+    /**
+     * Drop the user's index; the next lookup reloads it.
+     */
+    public void invalidate(UUID userId) {
+        users.invalidate(userId);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    void onDreamChanged(DreamChangedEvent event) {
+        log.debug("Invalidating tag suggestions of user {} after {}", event.userId(), event.type());
+        invalidate(event.userId());
+    }
+
+    private TagIndex index(UUID userId) {
+        long version = statsRepository.findDreamsVersion(userId).orElse(0L);
+        VersionedIndex cached = users.getIfPresent(userId);
+        if (cached != null && cached.dreamsVersion() == version) {
+            return cached.index();
+        }
+        TagIndex index = TagIndex.of(tagStatsService.getTagCounts(userId));
+        if (cached == null || cached.dreamsVersion() < version) {
+            users.put(userId, new VersionedIndex(version, index));
+        }
+        return index;
+    }
+
+    private record VersionedIndex(long dreamsVersion, TagIndex index) {
+    }
+}
@@ -0,0 +1,61 @@
+package pl.kalin.dreamlog.user;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+/**
+ * Per-user dream aggregates. Read-only on the Java side: rows are maintained by database
+ * triggers on {@code dream_entry} (see V7 migration) and repaired by {@code StatsReconciler};
+ * only {@link #dreamsVersion} is written by the application ({@link UserDreamStatsRepository}).
+ */
+@Entity
+@Table(name = "user_dream_stats")
+@Immutable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UserDreamStats {
+    @Id
+    @Column(name = "user_id")
+    private UUID userId;
+
+    @Column(name = "total_dreams", nullable = false)
+    private long totalDreams;
+
+    @Column(name = "lucid_dreams", nullable = false)
+    private long lucidDreams;
+
+    @Column(name = "vividness_sum", nullable = false)
+    private long vividnessSum;
+
+    /**
+     * Number of dreams per mood (mood after dream, falling back to mood in dream). No zero entries.
+     */
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "mood_counts", columnDefinition = "jsonb", nullable = false)
+    @Builder.Default
+    private Map<String, Long> moodCounts = new HashMap<>();
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    /**
+     * Incremented on every transaction that changes the user's dreams (ETag of the dream list).
+     * Maintained by {@code DreamVersionService}, not by triggers.
+     */
+    @Column(name = "dreams_version", nullable = false)
+    private long dreamsVersion;
+}
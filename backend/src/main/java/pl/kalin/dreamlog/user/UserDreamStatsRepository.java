@@ -0,0 +1,35 @@
+package pl.kalin.dreamlog.user;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface UserDreamStatsRepository extends JpaRepository<UserDreamStats, UUID> {
+
+    /**
+     * Current version of the user's dream list, without loading the stats row.
+     *
+     * @param userId the user's ID
+     * @return version, empty if the user has no stats row yet (never had a dream)
+     */
+    @Query("SELECT s.dreamsVersion FROM UserDreamStats s WHERE s.userId = :userId")
+    Optional<Long> findDreamsVersion(@Param("userId") UUID userId);
+
+    /**
+     * Increment the version of the user's dream list, creating the stats row if needed.
+     *
+     * @param userId the user's ID
+     */
+    @Modifying
+    @Query(value = """
+        INSERT INTO user_dream_stats AS s (user_id, dreams_version)
+        VALUES (:userId, 1)
+        ON CONFLICT (user_id) DO UPDATE
+            SET dreams_version = s.dreams_version + 1
+        """, nativeQuery = true)
+    void incrementDreamsVersion(@Param("userId") UUID userId);
+}
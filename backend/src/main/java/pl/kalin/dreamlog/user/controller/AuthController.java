@@ -70,7 +70,7 @@ public class AuthController {
         @Valid @RequestBody SetPasswordRequest request,
         Authentication authentication
     ) {
-        User user = authHelper.getCurrentUser(authentication);
+        User user = authHelper.getCurrentUserWithCredentials(authentication);
         userService.setPassword(user, request.password());
         return ResponseEntity.ok(Map.of("success", true));
     }
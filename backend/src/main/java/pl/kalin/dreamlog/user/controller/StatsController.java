@@ -1,13 +1,22 @@
 package pl.kalin.dreamlog.user.controller;
 
+import java.time.YearMonth;
+import java.util.List;
+
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import lombok.RequiredArgsConstructor;
 import pl.kalin.dreamlog.common.security.AuthenticationHelper;
+import pl.kalin.dreamlog.dream.dto.MonthlyTagCounts;
+import pl.kalin.dreamlog.dream.dto.TagCount;
+import pl.kalin.dreamlog.dream.dto.TagPair;
+import pl.kalin.dreamlog.dream.exception.InvalidRequestParameterException;
+import pl.kalin.dreamlog.dream.tag.TagStatsService;
 import pl.kalin.dreamlog.user.User;
 import pl.kalin.dreamlog.user.dto.UserStatsDto;
 import pl.kalin.dreamlog.user.service.StatsService;
@@ -21,7 +30,11 @@ import pl.kalin.dreamlog.user.service.StatsService;
 @RequiredArgsConstructor
 public class StatsController {
 
+    private static final int MAX_TAGS = 50;
+    private static final int MAX_MONTHS = 36;
+
     private final StatsService statsService;
+    private final TagStatsService tagStatsService;
     private final AuthenticationHelper authHelper;
 
     /**
@@ -34,4 +47,63 @@ public class StatsController {
         UserStatsDto stats = statsService.getUserStats(user);
         return ResponseEntity.ok(stats);
     }
+
+    /**
+     * Get the authenticated user's most used tags.
+     */
+    @GetMapping("/tags")
+    public ResponseEntity<List<TagCount>> getTopTags(
+        @RequestParam(defaultValue = "10") int limit,
+        Authentication authentication) {
+        User user = authHelper.getCurrentUser(authentication);
+        return ResponseEntity.ok(tagStatsService.getTopTags(user, validateLimit(limit)));
+    }
+
+    /**
+     * Get the pairs of tags the authenticated user most often puts on the same dream.
+     */
+    @GetMapping("/tags/pairs")
+    public ResponseEntity<List<TagPair>> getTopTagPairs(
+        @RequestParam(defaultValue = "10") int limit,
+        Authentication authentication) {
+        User user = authHelper.getCurrentUser(authentication);
+        return ResponseEntity.ok(tagStatsService.getTopTagPairs(user, validateLimit(limit)));
+    }
+
+    /**
+     * Get the tags the authenticated user most often uses together with a tag.
+     */
+    @GetMapping("/tags/related")
+    public ResponseEntity<List<TagCount>> getRelatedTags(
+        @RequestParam String tag,
+        @RequestParam(defaultValue = "10") int limit,
+        Authentication authentication) {
+        User user = authHelper.getCurrentUser(authentication);
+        return ResponseEntity.ok(tagStatsService.getRelatedTags(user, tag, validateLimit(limit)));
+    }
+
+    /**
+     * Get the authenticated user's most used tags per month, for the last {@code months} months
+     * (by dream date, current month included).
+     */
+    @GetMapping("/tags/monthly")
+    public ResponseEntity<List<MonthlyTagCounts>> getMonthlyTopTags(
+        @RequestParam(defaultValue = "12") int months,
+        @RequestParam(defaultValue = "5") int limit,
+        Authentication authentication) {
+        if (months < 1 || months > MAX_MONTHS) {
+            throw new InvalidRequestParameterException("Months must be between 1 and " + MAX_MONTHS);
+        }
+        User user = authHelper.getCurrentUser(authentication);
+        YearMonth to = YearMonth.now();
+        return ResponseEntity.ok(
+            tagStatsService.getMonthlyTopTags(user, to.minusMonths(months - 1), to, validateLimit(limit)));
+    }
+
+    private static int validateLimit(int limit) {
+        if (limit < 1 || limit > MAX_TAGS) {
+            throw new InvalidRequestParameterException("Limit must be between 1 and " + MAX_TAGS);
+        }
+        return limit;
+    }
 }
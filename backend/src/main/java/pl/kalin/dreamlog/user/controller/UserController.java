@@ -22,7 +22,7 @@ public class UserController {
      */
     @GetMapping("/me")
     public ResponseEntity<UserResponse> getCurrentUser(Authentication authentication) {
-        User user = authHelper.getCurrentUser(authentication);
+        User user = authHelper.getCurrentUserWithCredentials(authentication);
         return ResponseEntity.ok(UserResponse.from(user));
     }
 }
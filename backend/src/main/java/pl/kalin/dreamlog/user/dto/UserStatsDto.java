@@ -1,6 +1,10 @@
 package pl.kalin.dreamlog.user.dto;
 
+import java.util.Comparator;
+import java.util.Map;
+
 import pl.kalin.dreamlog.dream.model.Mood;
+import pl.kalin.dreamlog.user.UserDreamStats;
 
 /**
  * DTO for user statistics displayed on dashboard.
@@ -8,13 +12,35 @@ import pl.kalin.dreamlog.dream.model.Mood;
  */
 public record UserStatsDto(
     long totalDreams,
-    Mood mostCommonMood
+    Mood mostCommonMood,
+    long lucidDreams,
+    Double averageVividness
 ) {
     /**
      * Factory method for creating stats with defaults when no dreams exist.
      * @return UserStatsDto with zero dreams and null mood
      */
     public static UserStatsDto empty() {
-        return new UserStatsDto(0, null);
+        return new UserStatsDto(0, null, 0, null);
+    }
+
+    /**
+     * Factory method to create UserStatsDto from the precomputed stats row.
+     * Ties for the most common mood are broken by {@link Mood} declaration order.
+     * @param stats the UserDreamStats entity
+     * @return UserStatsDto
+     */
+    public static UserStatsDto from(UserDreamStats stats) {
+        if (stats.getTotalDreams() <= 0) {
+            return empty();
+        }
+        Mood mostCommonMood = stats.getMoodCounts().entrySet().stream()
+            .filter(entry -> entry.getValue() > 0)
+            .max(Map.Entry.<String, Long>comparingByValue()
+                .thenComparing(entry -> Mood.valueOf(entry.getKey()), Comparator.reverseOrder()))
+            .map(entry -> Mood.valueOf(entry.getKey()))
+            .orElse(null);
+        double averageVividness = (double) stats.getVividnessSum() / stats.getTotalDreams();
+        return new UserStatsDto(stats.getTotalDreams(), mostCommonMood, stats.getLucidDreams(), averageVividness);
     }
 }
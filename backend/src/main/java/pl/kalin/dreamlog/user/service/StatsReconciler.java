@@ -0,0 +1,71 @@
+package pl.kalin.dreamlog.user.service;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Periodically recomputes {@code user_dream_stats} from {@code dream_entry} and repairs drifted rows
+ * (manual data fixes, triggers disabled during maintenance, bugs).
+ *
+ * <p>Each user is reconciled in its own short transaction by the {@code user_dream_stats_reconcile}
+ * database function, which locks the user's stats row so it can't race with concurrent trigger updates.
+ */
+@Component
+@Slf4j
+public class StatsReconciler {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+
+    public StatsReconciler(
+        JdbcTemplate jdbcTemplate,
+        @Value("${app.stats.reconcile-batch-size:500}") int batchSize
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Reconcile stats of all users, walking the users table in keyset batches.
+     *
+     * @return number of users whose stats had drifted and were repaired
+     */
+    @Scheduled(cron = "${app.stats.reconcile-cron:0 30 3 * * *}")
+    public int reconcileAll() {
+        log.debug("Reconciling user dream stats");
+        int repaired = 0;
+        List<UUID> batch = jdbcTemplate.queryForList(
+            "SELECT id FROM users ORDER BY id LIMIT ?", UUID.class, batchSize);
+        while (!batch.isEmpty()) {
+            for (UUID userId : batch) {
+                if (reconcile(userId)) {
+                    repaired++;
+                }
+            }
+            batch = jdbcTemplate.queryForList(
+                "SELECT id FROM users WHERE id > ? ORDER BY id LIMIT ?", UUID.class, batch.getLast(), batchSize);
+        }
+        if (repaired > 0) {
+            log.warn("Repaired drifted dream stats of {} users", repaired);
+        }
+        return repaired;
+    }
+
+    /**
+     * Reconcile stats of one user.
+     *
+     * @param userId the user's ID
+     * @return true if the stats row had drifted and was repaired
+     */
+    public boolean reconcile(UUID userId) {
+        return Boolean.TRUE.equals(
+            jdbcTemplate.queryForObject("SELECT user_dream_stats_reconcile(?)", Boolean.class, userId));
+    }
+}
@@ -3,15 +3,17 @@ package pl.kalin.dreamlog.user.service;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import pl.kalin.dreamlog.dream.model.Mood;
-import pl.kalin.dreamlog.dream.repository.DreamEntryRepository;
 import pl.kalin.dreamlog.user.User;
+import pl.kalin.dreamlog.user.UserDreamStatsRepository;
 import pl.kalin.dreamlog.user.dto.UserStatsDto;
 
 /**
- * Service for aggregating user statistics from dreams.
+ * Service for reading user statistics.
+ * Aggregates are precomputed in {@code user_dream_stats} by database triggers,
+ * so reading them is a single primary-key lookup regardless of how many dreams the user has.
  */
 @Service
 @RequiredArgsConstructor
@@ -19,28 +21,19 @@ import pl.kalin.dreamlog.user.dto.UserStatsDto;
 @Transactional(readOnly = true)
 public class StatsService {
 
-    private final DreamEntryRepository dreamRepository;
+    private final UserDreamStatsRepository statsRepository;
 
     /**
      * Get statistics for the authenticated user.
      *
      * @param user the authenticated user
-     * @return user statistics (total dreams, most common mood)
+     * @return user statistics (total dreams, most common mood, lucid dreams, average vividness)
      */
+    @Timed(value = "dreamlog.stats", description = "User statistics reads", histogram = true)
     public UserStatsDto getUserStats(User user) {
-        log.debug("Calculating stats for user: {}", user.getEmail());
-
-        long totalDreams = dreamRepository.countByUserId(user.getId());
-
-        if (totalDreams == 0) {
-            return UserStatsDto.empty();
-        }
-
-        // Use optimized database query instead of loading all dreams into memory
-        Mood mostCommonMood = dreamRepository.findMostCommonMoodByUserId(user.getId())
-            .map(Mood::valueOf)
-            .orElse(null);
-
-        return new UserStatsDto(totalDreams, mostCommonMood);
+        log.debug("Fetching stats for user: {}", user.getEmail());
+        return statsRepository.findById(user.getId())
+            .map(UserStatsDto::from)
+            .orElseGet(UserStatsDto::empty);
     }
 }
@@ -10,6 +10,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import pl.kalin.dreamlog.common.security.CurrentUserCache;
 import pl.kalin.dreamlog.user.FederatedIdentity;
 import pl.kalin.dreamlog.user.FederatedIdentityRepository;
 import pl.kalin.dreamlog.user.LocalCredential;
@@ -29,6 +30,7 @@ public class UserService {
     private final FederatedIdentityRepository federatedIdentityRepository;
     private final LocalCredentialRepository localCredentialRepository;
     private final PasswordEncoder passwordEncoder;
+    private final CurrentUserCache currentUserCache;
 
     /**
      * Register new user with email/password (manual registration)
@@ -63,6 +65,8 @@ public class UserService {
      * Register or login user via OAuth provider (Google, Facebook, etc.)
      */
     public User registerOrLoginWithOAuth(String provider, String providerUserId, String email, String name) {
+        currentUserCache.invalidate(email);
+
         // Check if federated identity already exists
         Optional<FederatedIdentity> existingIdentity =
             federatedIdentityRepository.findByProviderAndProviderUserId(provider, providerUserId);
@@ -70,6 +74,7 @@ public class UserService {
         if (existingIdentity.isPresent()) {
             // User already registered with this OAuth provider
             User user = existingIdentity.get().getUser();
+            currentUserCache.invalidate(user.getEmail());
             user.setLastLoginAt(Instant.now());
             log.info("User logged in via {}: {}", provider, user.getEmail());
             return userRepository.save(user);
@@ -115,6 +120,8 @@ public class UserService {
      * Link OAuth provider to existing user account
      */
     public void linkOAuthProvider(User user, String provider, String providerUserId) {
+        currentUserCache.invalidate(user.getEmail());
+
         // Check if this OAuth identity is already linked to another user
         Optional<FederatedIdentity> existingIdentity =
             federatedIdentityRepository.findByProviderAndProviderUserId(provider, providerUserId);
@@ -142,6 +149,8 @@ public class UserService {
      * Set or update password for user (for OAuth users who want to add local credentials)
      */
     public void setPassword(User user, String password) {
+        currentUserCache.invalidate(user.getEmail());
+
         LocalCredential credential = user.getLocalCredential();
 
         if (credential == null) {
@@ -171,6 +180,15 @@ public class UserService {
         return userRepository.findByEmailWithCredentials(email);
     }
 
+    /**
+     * Find user by email without loading credentials.
+     * Read-only, so it may run on the read replica unless the caller's transaction is on the primary.
+     */
+    @Transactional(readOnly = true)
+    public Optional<User> findByEmail(String email) {
+        return userRepository.findByEmail(email);
+    }
+
     /**
      * Find user by ID
      */
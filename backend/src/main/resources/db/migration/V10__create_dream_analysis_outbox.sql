@@ -0,0 +1,32 @@
+-- Transactional outbox of dreams waiting for (re-)analysis. DreamService writes a row in the same
+-- transaction as the dream create/update; DreamAnalysisWorker on any node claims due rows with
+-- FOR UPDATE SKIP LOCKED, so concurrent workers never block on or double-claim each other's rows.
+--
+-- One row per dream: repeated edits before the analysis runs coalesce into one row, and bump revision.
+-- A claim pushes available_at forward by the lease, so rows of a crashed worker become due again.
+-- A result is stored only if the row still has the claimed revision (an edit during the analysis
+-- leaves the row for another round); failures back off via available_at. Rows that used up their
+-- attempts are parked with available_at = NULL until the dream changes again.
+CREATE TABLE dream_analysis_outbox (
+    dream_id UUID PRIMARY KEY REFERENCES dream_entry(id) ON DELETE CASCADE,
+    revision INT NOT NULL DEFAULT 0,
+    attempts INT NOT NULL DEFAULT 0,
+    available_at TIMESTAMP DEFAULT NOW(),
+    last_error TEXT,
+    created_at TIMESTAMP NOT NULL DEFAULT NOW()
+);
+
+CREATE INDEX idx_dream_analysis_outbox_available_at ON dream_analysis_outbox (available_at)
+    WHERE available_at IS NOT NULL;
+
+-- One analysis per dream, replaced on re-analysis
+CREATE INDEX idx_dream_analysis_dream_id ON dream_analysis (dream_id);
+
+-- Backfill: dreams written before the pipeline existed
+INSERT INTO dream_analysis_outbox (dream_id)
+SELECT d.id
+FROM dream_entry d
+WHERE NOT EXISTS (SELECT 1 FROM dream_analysis a WHERE a.dream_id = d.id);
+
+COMMENT ON TABLE dream_analysis_outbox IS
+    'Dreams waiting for analysis, written with the dream and claimed by workers with SKIP LOCKED (see V10 migration).';
@@ -0,0 +1,86 @@
+-- Bulk import support (DreamImportService).
+--
+-- The importer inserts dreams and their tags with a few set-based statements per batch. Left alone, the
+-- triggers would turn that back into per-row work: every tag row re-updates its dream to refresh
+-- search_vector (dream_entry_tags_search_vector_trigger), and every dream upserts the user's stats row.
+-- Inside its transactions the importer sets dreamlog.bulk_import = 'on' (set_config(..., true), so it
+-- ends with the transaction) and takes over that work:
+--   - search_vector is computed once per dream, tags included, in the INSERT itself
+--   - the batch's aggregate (count, lucid, vividness, moods) is added to the user's stats row in one upsert
+
+-- search_vector of a dream; shared by the trigger and the importer so both produce the same vector
+CREATE OR REPLACE FUNCTION dream_entry_search_vector(p_title TEXT, p_content TEXT, p_tags TEXT) RETURNS tsvector AS
+$$
+SELECT setweight(to_tsvector('simple', unaccent(COALESCE(p_title, ''))), 'A') ||
+       setweight(to_tsvector('simple', unaccent(COALESCE(p_content, ''))), 'B') ||
+       setweight(to_tsvector('simple', unaccent(COALESCE(p_tags, ''))), 'C')
+$$ LANGUAGE sql STABLE;
+
+CREATE OR REPLACE FUNCTION dream_entry_search_vector_update() RETURNS trigger AS
+$$
+DECLARE
+    tags_string TEXT;
+BEGIN
+    -- Bulk import supplies the vector (tags included), keep it
+    IF TG_OP = 'INSERT' AND NEW.search_vector IS NOT NULL
+        AND current_setting('dreamlog.bulk_import', true) = 'on' THEN
+        RETURN NEW;
+    END IF;
+
+    -- Fetch tags from dream_entry_tags table if this is an UPDATE
+    -- (tags won't exist yet on INSERT, they're added after)
+    IF TG_OP = 'UPDATE' THEN
+        SELECT COALESCE(string_agg(tag, ' '), '')
+        INTO tags_string
+        FROM dream_entry_tags
+        WHERE dream_entry_id = NEW.id;
+    ELSE
+        tags_string := '';
+    END IF;
+
+    NEW.search_vector := dream_entry_search_vector(NEW.title, NEW.content, tags_string);
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION dream_entry_tags_update_search_vector() RETURNS trigger AS
+$$
+BEGIN
+    -- Bulk import wrote the tags into search_vector already
+    IF current_setting('dreamlog.bulk_import', true) = 'on' THEN
+        RETURN NULL;
+    END IF;
+
+    -- Update the parent dream_entry to trigger search_vector refresh
+    IF TG_OP = 'DELETE' THEN
+        UPDATE dream_entry SET updated_at = NOW() WHERE id = OLD.dream_entry_id;
+        RETURN OLD;
+    ELSE
+        UPDATE dream_entry SET updated_at = NOW() WHERE id = NEW.dream_entry_id;
+        RETURN NEW;
+    END IF;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION dream_entry_update_user_stats() RETURNS trigger AS
+$$
+BEGIN
+    -- Bulk import adds each batch's aggregate to the user's row in one upsert instead
+    IF current_setting('dreamlog.bulk_import', true) = 'on' THEN
+        RETURN NULL;
+    END IF;
+
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        PERFORM user_dream_stats_apply(OLD.user_id, -1, OLD.lucid, OLD.vividness,
+                                       COALESCE(OLD.mood_after_dream, OLD.mood_in_dream));
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        PERFORM user_dream_stats_apply(NEW.user_id, 1, NEW.lucid, NEW.vividness,
+                                       COALESCE(NEW.mood_after_dream, NEW.mood_in_dream));
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+COMMENT ON FUNCTION dream_entry_search_vector(TEXT, TEXT, TEXT) IS
+    'search_vector of a dream: A=title, B=content, C=tags (space-separated). Used by trigger and bulk import.';
@@ -0,0 +1,86 @@
+-- Refresh search_vector once per dream per transaction when its tags change.
+--
+-- Until now every INSERT/UPDATE/DELETE on dream_entry_tags ran UPDATE dream_entry (V4), which re-fired
+-- dream_entry_search_vector_trigger and re-aggregated all tags. Saving a dream with 10 tags wrote 10 extra
+-- versions of its dream_entry row (content and GIN index entries included); an edit, where Hibernate deletes
+-- and re-inserts the whole tag collection, wrote 20.
+--
+-- Tag changes are now handled by a deferred constraint trigger, which runs when the transaction commits,
+-- after all tag rows are in place. Its events still fire per tag row, but only the first one per dream
+-- writes: the UPDATE is skipped when search_vector is already current. A dream therefore gets at most one
+-- extra row version per transaction, and none if its tags didn't change the vector.
+--
+-- Inside a transaction that changes tags, search_vector reflects the new tags only after commit
+-- (or after SET CONSTRAINTS ALL IMMEDIATE).
+
+-- Tags of a dream as one space-separated string, the C-weighted part of search_vector
+CREATE OR REPLACE FUNCTION dream_entry_tags_text(p_dream_id UUID) RETURNS TEXT AS
+$$
+SELECT COALESCE(string_agg(tag, ' '), '')
+FROM dream_entry_tags
+WHERE dream_entry_id = p_dream_id
+$$ LANGUAGE sql STABLE;
+
+CREATE OR REPLACE FUNCTION dream_entry_search_vector_update() RETURNS trigger AS
+$$
+BEGIN
+    -- Bulk import supplies the vector (tags included), keep it
+    IF TG_OP = 'INSERT' AND NEW.search_vector IS NOT NULL
+        AND current_setting('dreamlog.bulk_import', true) = 'on' THEN
+        RETURN NEW;
+    END IF;
+
+    -- Tags don't exist yet on INSERT, they're added after (and picked up at commit)
+    NEW.search_vector := dream_entry_search_vector(NEW.title, NEW.content,
+                                                   CASE WHEN TG_OP = 'UPDATE' THEN dream_entry_tags_text(NEW.id) ELSE '' END);
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+-- Only title and content feed search_vector from the row itself; the deferred tag refresh below sets
+-- search_vector directly and must not re-fire this trigger
+DROP TRIGGER dream_entry_search_vector_trigger ON dream_entry;
+CREATE TRIGGER dream_entry_search_vector_trigger
+    BEFORE INSERT OR UPDATE OF title, content
+    ON dream_entry
+    FOR EACH ROW
+EXECUTE FUNCTION dream_entry_search_vector_update();
+
+CREATE OR REPLACE FUNCTION dream_entry_tags_refresh_search_vector() RETURNS trigger AS
+$$
+DECLARE
+    v_dream_id UUID;
+BEGIN
+    -- Bulk import wrote the tags into search_vector already
+    IF current_setting('dreamlog.bulk_import', true) = 'on' THEN
+        RETURN NULL;
+    END IF;
+
+    -- Tag rows are only inserted and deleted; an UPDATE keeps its dream
+    v_dream_id := CASE WHEN TG_OP = 'DELETE' THEN OLD.dream_entry_id ELSE NEW.dream_entry_id END;
+
+    -- No-op for the dream's later events (vector already current) and for deleted dreams (no row)
+    UPDATE dream_entry d
+    SET search_vector = v.search_vector,
+        updated_at    = NOW()
+    FROM (SELECT dream_entry_search_vector(title, content, dream_entry_tags_text(id)) AS search_vector
+          FROM dream_entry
+          WHERE id = v_dream_id) v
+    WHERE d.id = v_dream_id
+      AND d.search_vector IS DISTINCT FROM v.search_vector;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER dream_entry_tags_search_vector_trigger ON dream_entry_tags;
+DROP FUNCTION dream_entry_tags_update_search_vector();
+
+CREATE CONSTRAINT TRIGGER dream_entry_tags_search_vector_trigger
+    AFTER INSERT OR UPDATE OR DELETE
+    ON dream_entry_tags
+    DEFERRABLE INITIALLY DEFERRED
+    FOR EACH ROW
+EXECUTE FUNCTION dream_entry_tags_refresh_search_vector();
+
+COMMENT ON COLUMN dream_entry.search_vector IS
+    'Automatically maintained tsvector for full-text search. Uses simple config + unaccent for Polish character support (ł→l, ą→a). Weights: A=title, B=content, C=tags. Set by trigger on INSERT and title/content UPDATE; tag changes are applied once per dream at commit (deferred trigger on dream_entry_tags).';
@@ -0,0 +1,11 @@
+-- Per-user version of the dream list, the ETag of GET /api/dreams (all pagination variants).
+-- A conditional GET is answered with one primary-key lookup instead of the list query.
+--
+-- Incremented once per writing transaction by DreamVersionService (on DreamChangedEvent, before commit),
+-- not by a trigger: a row trigger would add a write per dream and per tag row, undoing V11/V12.
+-- Writers that bypass the application must bump it themselves.
+ALTER TABLE user_dream_stats
+    ADD COLUMN dreams_version BIGINT NOT NULL DEFAULT 0;
+
+COMMENT ON COLUMN user_dream_stats.dreams_version IS
+    'Incremented on every transaction that changes the user''s dreams; ETag of the dream list.';
@@ -0,0 +1,8 @@
+-- Optimistic locking of dreams (JPA @Version): every Hibernate update checks and increments it, so two
+-- clients editing the same dream get a conflict instead of silently overwriting each other.
+-- It is also the dream's ETag (If-None-Match on GET, If-Match on PATCH).
+--
+-- Bulk-imported dreams start at 0; the deferred tag search-vector refresh (V12) doesn't touch it, because
+-- it doesn't change anything a client sees.
+ALTER TABLE dream_entry
+    ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,31 @@
+-- HTTP sessions shared by all backend nodes (Spring Session JDBC), replacing per-JVM Tomcat sessions:
+-- any node can serve any request, and logins survive deploys.
+-- Schema of spring-session-jdbc's schema-postgresql.sql, with two changes for the per-request write
+-- (every request moves last_access_time and expiry_time):
+--   * no index on expiry_time, so that UPDATE is HOT (heap-only, no index writes); the expiry sweep
+--     (spring.session.jdbc.cleanup-cron) scans this table of live sessions instead
+--   * fillfactor leaves room on each page for those HOT row versions
+CREATE TABLE spring_session (
+    primary_id CHAR(36) NOT NULL,
+    session_id CHAR(36) NOT NULL,
+    creation_time BIGINT NOT NULL,
+    last_access_time BIGINT NOT NULL,
+    max_inactive_interval INT NOT NULL,
+    expiry_time BIGINT NOT NULL,
+    principal_name VARCHAR(100),
+    CONSTRAINT spring_session_pk PRIMARY KEY (primary_id)
+) WITH (fillfactor = 70);
+
+CREATE UNIQUE INDEX spring_session_ix1 ON spring_session (session_id);
+-- Sessions of a user: concurrent-session limit (SpringSessionBackedSessionRegistry)
+CREATE INDEX spring_session_ix3 ON spring_session (principal_name);
+
+-- Serialized attributes (security context, OAuth2 authorization request), written only when set
+CREATE TABLE spring_session_attributes (
+    session_primary_id CHAR(36) NOT NULL,
+    attribute_name VARCHAR(200) NOT NULL,
+    attribute_bytes BYTEA NOT NULL,
+    CONSTRAINT spring_session_attributes_pk PRIMARY KEY (session_primary_id, attribute_name),
+    CONSTRAINT spring_session_attributes_fk FOREIGN KEY (session_primary_id)
+        REFERENCES spring_session (primary_id) ON DELETE CASCADE
+);
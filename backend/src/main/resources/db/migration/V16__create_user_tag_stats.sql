@@ -0,0 +1,200 @@
+-- Per-user tag analytics: how many dreams carry each tag (overall and per month of the dream's date)
+-- and each pair of tags. Serves "top tags", "top tags over time" and "tags used together" as index
+-- range scans of K rows, instead of self-joining dream_entry_tags over the user's whole history.
+--
+-- Maintained incrementally by user_tag_stats_apply(), called once per writing transaction by
+-- TagStatsService (on DreamChangedEvent, before commit), not by row triggers: those would fire per tag row
+-- and couldn't tell a replaced tag collection from an unchanged one. The delta of a dream is the difference
+-- between the tags it is counted with (user_tag_stats_dreams) and the tags it has now, so re-saving a dream
+-- without changing its tags or month writes nothing. Repaired or backfilled by user_tag_stats_rebuild().
+
+CREATE TABLE user_tag_counts (
+    user_id UUID NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    tag VARCHAR(255) NOT NULL,
+    dreams BIGINT NOT NULL,
+    PRIMARY KEY (user_id, tag)
+);
+
+CREATE INDEX idx_user_tag_counts_top ON user_tag_counts (user_id, dreams DESC, tag);
+
+CREATE TABLE user_tag_monthly_counts (
+    user_id UUID NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    -- First day of the month of the dream's date
+    month DATE NOT NULL,
+    tag VARCHAR(255) NOT NULL,
+    dreams BIGINT NOT NULL,
+    PRIMARY KEY (user_id, month, tag)
+);
+
+CREATE INDEX idx_user_tag_monthly_counts_top ON user_tag_monthly_counts (user_id, month, dreams DESC, tag);
+
+-- Each unordered pair once (tag < co_tag): half the rows a dream writes compared to both directions;
+-- the tags used with one tag are the top of two index ranges, one per side
+CREATE TABLE user_tag_pairs (
+    user_id UUID NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    tag VARCHAR(255) NOT NULL,
+    co_tag VARCHAR(255) NOT NULL,
+    dreams BIGINT NOT NULL,
+    PRIMARY KEY (user_id, tag, co_tag),
+    CHECK (tag < co_tag)
+);
+
+CREATE INDEX idx_user_tag_pairs_top ON user_tag_pairs (user_id, dreams DESC, tag, co_tag);
+CREATE INDEX idx_user_tag_pairs_tag ON user_tag_pairs (user_id, tag, dreams DESC, co_tag);
+CREATE INDEX idx_user_tag_pairs_co_tag ON user_tag_pairs (user_id, co_tag, dreams DESC, tag);
+
+-- What each dream with tags is currently counted with. No foreign key to dream_entry: the row must
+-- outlive a deleted dream until its contribution is subtracted.
+CREATE TABLE user_tag_stats_dreams (
+    dream_id UUID PRIMARY KEY,
+    user_id UUID NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    month DATE NOT NULL,
+    tags VARCHAR(255)[] NOT NULL
+);
+
+CREATE INDEX idx_user_tag_stats_dreams_user_id ON user_tag_stats_dreams (user_id);
+
+-- Tags of the given dreams as counted (sign -1) and as stored now (sign 1), one row per dream and tag
+CREATE OR REPLACE FUNCTION user_tag_stats_delta(p_user_id UUID, p_dream_ids UUID[])
+    RETURNS TABLE (dream_id UUID, month DATE, tag VARCHAR, sign INT) AS
+$$
+SELECT s.dream_id, s.month, t.tag, -1
+FROM user_tag_stats_dreams s
+         CROSS JOIN LATERAL unnest(s.tags) AS t(tag)
+WHERE s.dream_id = ANY (p_dream_ids)
+  AND s.user_id = p_user_id
+UNION ALL
+SELECT d.id, date_trunc('month', d.date::TIMESTAMP)::DATE, t.tag, 1
+FROM dream_entry d
+         JOIN dream_entry_tags t ON t.dream_entry_id = d.id
+WHERE d.id = ANY (p_dream_ids)
+  AND d.user_id = p_user_id
+$$ LANGUAGE sql STABLE;
+
+-- Serializes maintenance of one user's tag stats: concurrent writers (whose deltas touch the same
+-- counter rows) and a rebuild. Held until the transaction ends.
+CREATE OR REPLACE FUNCTION user_tag_stats_lock(p_user_id UUID) RETURNS void AS
+$$
+SELECT pg_advisory_xact_lock(hashtext('user_tag_stats'), hashtext(p_user_id::TEXT))
+$$ LANGUAGE sql;
+
+-- Apply the changes of the given dreams (created, edited or deleted) of one user.
+-- Counters that drop to zero are deleted.
+CREATE OR REPLACE FUNCTION user_tag_stats_apply(p_user_id UUID, p_dream_ids UUID[]) RETURNS void AS
+$$
+BEGIN
+    PERFORM user_tag_stats_lock(p_user_id);
+
+    MERGE INTO user_tag_counts c
+    USING (SELECT tag, SUM(sign) AS delta
+           FROM user_tag_stats_delta(p_user_id, p_dream_ids)
+           GROUP BY tag
+           HAVING SUM(sign) <> 0) d
+    ON c.user_id = p_user_id AND c.tag = d.tag
+    WHEN MATCHED AND c.dreams + d.delta <= 0 THEN DELETE
+    WHEN MATCHED THEN UPDATE SET dreams = c.dreams + d.delta
+    WHEN NOT MATCHED AND d.delta > 0 THEN INSERT (user_id, tag, dreams) VALUES (p_user_id, d.tag, d.delta);
+
+    MERGE INTO user_tag_monthly_counts c
+    USING (SELECT month, tag, SUM(sign) AS delta
+           FROM user_tag_stats_delta(p_user_id, p_dream_ids)
+           GROUP BY month, tag
+           HAVING SUM(sign) <> 0) d
+    ON c.user_id = p_user_id AND c.month = d.month AND c.tag = d.tag
+    WHEN MATCHED AND c.dreams + d.delta <= 0 THEN DELETE
+    WHEN MATCHED THEN UPDATE SET dreams = c.dreams + d.delta
+    WHEN NOT MATCHED AND d.delta > 0 THEN
+        INSERT (user_id, month, tag, dreams) VALUES (p_user_id, d.month, d.tag, d.delta);
+
+    -- Pairs within one side of one dream (its old or its new tags)
+    MERGE INTO user_tag_pairs c
+    USING (SELECT a.tag, b.tag AS co_tag, SUM(a.sign) AS delta
+           FROM user_tag_stats_delta(p_user_id, p_dream_ids) a
+                    JOIN user_tag_stats_delta(p_user_id, p_dream_ids) b
+                         ON b.dream_id = a.dream_id AND b.sign = a.sign AND a.tag < b.tag
+           GROUP BY a.tag, b.tag
+           HAVING SUM(a.sign) <> 0) d
+    ON c.user_id = p_user_id AND c.tag = d.tag AND c.co_tag = d.co_tag
+    WHEN MATCHED AND c.dreams + d.delta <= 0 THEN DELETE
+    WHEN MATCHED THEN UPDATE SET dreams = c.dreams + d.delta
+    WHEN NOT MATCHED AND d.delta > 0 THEN
+        INSERT (user_id, tag, co_tag, dreams) VALUES (p_user_id, d.tag, d.co_tag, d.delta);
+
+    INSERT INTO user_tag_stats_dreams AS s (dream_id, user_id, month, tags)
+    SELECT d.id, d.user_id, date_trunc('month', d.date::TIMESTAMP)::DATE, array_agg(t.tag ORDER BY t.tag)
+    FROM dream_entry d
+             JOIN dream_entry_tags t ON t.dream_entry_id = d.id
+    WHERE d.id = ANY (p_dream_ids)
+      AND d.user_id = p_user_id
+    GROUP BY d.id
+    ON CONFLICT (dream_id) DO UPDATE
+        SET month = EXCLUDED.month,
+            tags  = EXCLUDED.tags
+        WHERE (s.month, s.tags) IS DISTINCT FROM (EXCLUDED.month, EXCLUDED.tags);
+
+    -- Deleted dreams and dreams whose last tag was removed
+    DELETE FROM user_tag_stats_dreams s
+    WHERE s.dream_id = ANY (p_dream_ids)
+      AND s.user_id = p_user_id
+      AND NOT EXISTS (SELECT 1 FROM dream_entry_tags t WHERE t.dream_entry_id = s.dream_id);
+END
+$$ LANGUAGE plpgsql;
+
+-- Recompute all of one user's tag stats from dream_entry (backfill, repair of drift from writes that
+-- bypassed the application).
+CREATE OR REPLACE FUNCTION user_tag_stats_rebuild(p_user_id UUID) RETURNS void AS
+$$
+BEGIN
+    -- Taken before the first read, so the statements below see every write applied before the lock
+    PERFORM user_tag_stats_lock(p_user_id);
+
+    DELETE FROM user_tag_stats_dreams WHERE user_id = p_user_id;
+    DELETE FROM user_tag_counts WHERE user_id = p_user_id;
+    DELETE FROM user_tag_monthly_counts WHERE user_id = p_user_id;
+    DELETE FROM user_tag_pairs WHERE user_id = p_user_id;
+
+    INSERT INTO user_tag_stats_dreams (dream_id, user_id, month, tags)
+    SELECT d.id, d.user_id, date_trunc('month', d.date::TIMESTAMP)::DATE, array_agg(t.tag ORDER BY t.tag)
+    FROM dream_entry d
+             JOIN dream_entry_tags t ON t.dream_entry_id = d.id
+    WHERE d.user_id = p_user_id
+    GROUP BY d.id;
+
+    INSERT INTO user_tag_counts (user_id, tag, dreams)
+    SELECT p_user_id, t.tag, COUNT(*)
+    FROM user_tag_stats_dreams s
+             CROSS JOIN LATERAL unnest(s.tags) AS t(tag)
+    WHERE s.user_id = p_user_id
+    GROUP BY t.tag;
+
+    INSERT INTO user_tag_monthly_counts (user_id, month, tag, dreams)
+    SELECT p_user_id, s.month, t.tag, COUNT(*)
+    FROM user_tag_stats_dreams s
+             CROSS JOIN LATERAL unnest(s.tags) AS t(tag)
+    WHERE s.user_id = p_user_id
+    GROUP BY s.month, t.tag;
+
+    INSERT INTO user_tag_pairs (user_id, tag, co_tag, dreams)
+    SELECT p_user_id, a.tag, b.tag, COUNT(*)
+    FROM user_tag_stats_dreams s
+             CROSS JOIN LATERAL unnest(s.tags) AS a(tag)
+             CROSS JOIN LATERAL unnest(s.tags) AS b(tag)
+    WHERE s.user_id = p_user_id
+      AND a.tag < b.tag
+    GROUP BY a.tag, b.tag;
+END
+$$ LANGUAGE plpgsql;
+
+-- Backfill existing users
+SELECT user_tag_stats_rebuild(u.id)
+FROM users u
+WHERE EXISTS (SELECT 1 FROM dream_entry d WHERE d.user_id = u.id);
+
+COMMENT ON TABLE user_tag_counts IS
+    'Dreams per tag and user, maintained by user_tag_stats_apply(). Repaired by user_tag_stats_rebuild().';
+COMMENT ON TABLE user_tag_monthly_counts IS
+    'Dreams per tag, user and month of the dream date, maintained by user_tag_stats_apply().';
+COMMENT ON TABLE user_tag_pairs IS
+    'Dreams per pair of tags (tag < co_tag) and user, maintained by user_tag_stats_apply().';
+COMMENT ON TABLE user_tag_stats_dreams IS
+    'Tags and month each dream is counted with in the user_tag_* tables; the base of incremental deltas.';
@@ -0,0 +1,7 @@
+-- Composite index backing the dream list: equality on user_id, then date/id in list order.
+-- Serves both offset pages and keyset (cursor) pages without a sort step,
+-- and can be scanned backward for oldest-first lists.
+CREATE INDEX idx_dream_entry_user_date_id ON dream_entry (user_id, date DESC, id);
+
+-- Covered by the composite index above (user_id is its leading column)
+DROP INDEX idx_dream_entry_user_id;
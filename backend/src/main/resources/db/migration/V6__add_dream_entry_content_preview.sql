@@ -0,0 +1,18 @@
+-- Short plain-text preview of the dream content, maintained by the application on every write
+-- (DreamEntry.generatePreviewFromContent). Lets list and search pages skip the content TEXT column
+-- entirely - no TOAST detoasting and no megabytes of content per page.
+ALTER TABLE dream_entry
+    ADD COLUMN content_preview VARCHAR(200);
+
+-- Backfill with the same rules as the application: collapse whitespace, cut at 197 chars + '...'
+UPDATE dream_entry
+SET content_preview = CASE
+                          WHEN length(normalized) > 200 THEN rtrim(left(normalized, 197)) || '...'
+                          ELSE normalized
+                      END
+FROM (SELECT id AS normalized_id, btrim(regexp_replace(content, '\s+', ' ', 'g')) AS normalized
+      FROM dream_entry) n
+WHERE dream_entry.id = n.normalized_id;
+
+ALTER TABLE dream_entry
+    ALTER COLUMN content_preview SET NOT NULL;
@@ -0,0 +1,135 @@
+-- Per-user dream statistics, maintained incrementally by triggers on dream_entry.
+-- Turns /api/stats/me into a primary-key lookup instead of scanning all of the user's dreams.
+CREATE TABLE user_dream_stats (
+    user_id UUID PRIMARY KEY REFERENCES users(id) ON DELETE CASCADE,
+    total_dreams BIGINT NOT NULL DEFAULT 0,
+    lucid_dreams BIGINT NOT NULL DEFAULT 0,
+    vividness_sum BIGINT NOT NULL DEFAULT 0,
+    -- Histogram of COALESCE(mood_after_dream, mood_in_dream): {"POSITIVE": 3, "NEUTRAL": 1}, no zero entries
+    mood_counts JSONB NOT NULL DEFAULT '{}',
+    updated_at TIMESTAMP NOT NULL DEFAULT NOW()
+);
+
+-- Apply one dream's contribution (p_sign = 1) or remove it (p_sign = -1).
+-- Removal is a plain UPDATE: when the user is being deleted, the stats row may already be gone
+-- and must not be recreated.
+CREATE OR REPLACE FUNCTION user_dream_stats_apply(p_user_id UUID, p_sign INT, p_lucid BOOLEAN,
+                                                  p_vividness INT, p_mood VARCHAR) RETURNS void AS
+$$
+BEGIN
+    IF p_sign > 0 THEN
+        INSERT INTO user_dream_stats AS s (user_id, total_dreams, lucid_dreams, vividness_sum, mood_counts)
+        VALUES (p_user_id,
+                1,
+                CASE WHEN p_lucid THEN 1 ELSE 0 END,
+                COALESCE(p_vividness, 0),
+                CASE WHEN p_mood IS NULL THEN '{}'::jsonb ELSE jsonb_build_object(p_mood, 1) END)
+        ON CONFLICT (user_id) DO UPDATE
+            SET total_dreams  = s.total_dreams + 1,
+                lucid_dreams  = s.lucid_dreams + EXCLUDED.lucid_dreams,
+                vividness_sum = s.vividness_sum + EXCLUDED.vividness_sum,
+                mood_counts   = CASE
+                                    WHEN p_mood IS NULL THEN s.mood_counts
+                                    ELSE s.mood_counts || jsonb_build_object(
+                                        p_mood, COALESCE((s.mood_counts ->> p_mood)::BIGINT, 0) + 1)
+                                END,
+                updated_at    = NOW();
+    ELSE
+        UPDATE user_dream_stats s
+        SET total_dreams  = s.total_dreams - 1,
+            lucid_dreams  = s.lucid_dreams - CASE WHEN p_lucid THEN 1 ELSE 0 END,
+            vividness_sum = s.vividness_sum - COALESCE(p_vividness, 0),
+            mood_counts   = CASE
+                                WHEN p_mood IS NULL THEN s.mood_counts
+                                WHEN COALESCE((s.mood_counts ->> p_mood)::BIGINT, 0) <= 1 THEN s.mood_counts - p_mood
+                                ELSE s.mood_counts || jsonb_build_object(
+                                    p_mood, (s.mood_counts ->> p_mood)::BIGINT - 1)
+                            END,
+            updated_at    = NOW()
+        WHERE s.user_id = p_user_id;
+    END IF;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION dream_entry_update_user_stats() RETURNS trigger AS
+$$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        PERFORM user_dream_stats_apply(OLD.user_id, -1, OLD.lucid, OLD.vividness,
+                                       COALESCE(OLD.mood_after_dream, OLD.mood_in_dream));
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        PERFORM user_dream_stats_apply(NEW.user_id, 1, NEW.lucid, NEW.vividness,
+                                       COALESCE(NEW.mood_after_dream, NEW.mood_in_dream));
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER dream_entry_user_stats_insert_delete_trigger
+    AFTER INSERT OR DELETE
+    ON dream_entry
+    FOR EACH ROW
+EXECUTE FUNCTION dream_entry_update_user_stats();
+
+-- Only updates touching counted columns pay for the stats row update
+-- (search_vector refreshes from tag changes, title/content edits etc. don't)
+CREATE TRIGGER dream_entry_user_stats_update_trigger
+    AFTER UPDATE
+    ON dream_entry
+    FOR EACH ROW
+    WHEN ((OLD.user_id, OLD.lucid, OLD.vividness, OLD.mood_in_dream, OLD.mood_after_dream)
+        IS DISTINCT FROM (NEW.user_id, NEW.lucid, NEW.vividness, NEW.mood_in_dream, NEW.mood_after_dream))
+EXECUTE FUNCTION dream_entry_update_user_stats();
+
+-- Recompute one user's row from dream_entry and fix it if it drifted.
+-- Locks the stats row first, so concurrent trigger updates for this user wait; the aggregate
+-- (a new snapshot in READ COMMITTED) then includes every dream whose delta is already applied.
+-- Returns true if the row was changed.
+CREATE OR REPLACE FUNCTION user_dream_stats_reconcile(p_user_id UUID) RETURNS BOOLEAN AS
+$$
+DECLARE
+    actual  RECORD;
+    changed INT;
+BEGIN
+    PERFORM 1 FROM user_dream_stats WHERE user_id = p_user_id FOR UPDATE;
+
+    SELECT COALESCE(SUM(m.dreams), 0)                                                   AS total_dreams,
+           COALESCE(SUM(m.lucid), 0)                                                    AS lucid_dreams,
+           COALESCE(SUM(m.vividness), 0)                                                AS vividness_sum,
+           COALESCE(jsonb_object_agg(m.mood, m.dreams) FILTER (WHERE m.mood IS NOT NULL), '{}') AS mood_counts
+    INTO actual
+    FROM (SELECT COALESCE(d.mood_after_dream, d.mood_in_dream) AS mood,
+                 COUNT(*)                                      AS dreams,
+                 COUNT(*) FILTER (WHERE d.lucid)               AS lucid,
+                 SUM(COALESCE(d.vividness, 0))                 AS vividness
+          FROM dream_entry d
+          WHERE d.user_id = p_user_id
+          GROUP BY 1) m;
+
+    INSERT INTO user_dream_stats AS s (user_id, total_dreams, lucid_dreams, vividness_sum, mood_counts)
+    SELECT p_user_id, actual.total_dreams, actual.lucid_dreams, actual.vividness_sum, actual.mood_counts
+    WHERE actual.total_dreams > 0
+       OR EXISTS (SELECT 1 FROM user_dream_stats WHERE user_id = p_user_id)
+    ON CONFLICT (user_id) DO UPDATE
+        SET total_dreams  = EXCLUDED.total_dreams,
+            lucid_dreams  = EXCLUDED.lucid_dreams,
+            vividness_sum = EXCLUDED.vividness_sum,
+            mood_counts   = EXCLUDED.mood_counts,
+            updated_at    = NOW()
+        WHERE (s.total_dreams, s.lucid_dreams, s.vividness_sum, s.mood_counts)
+                  IS DISTINCT FROM
+              (EXCLUDED.total_dreams, EXCLUDED.lucid_dreams, EXCLUDED.vividness_sum, EXCLUDED.mood_counts);
+
+    GET DIAGNOSTICS changed = ROW_COUNT;
+    RETURN changed > 0;
+END
+$$ LANGUAGE plpgsql;
+
+-- Backfill existing users
+SELECT user_dream_stats_reconcile(u.id)
+FROM users u
+WHERE EXISTS (SELECT 1 FROM dream_entry d WHERE d.user_id = u.id);
+
+COMMENT ON TABLE user_dream_stats IS
+    'Per-user dream aggregates maintained by dream_entry triggers. Repaired by user_dream_stats_reconcile().';
@@ -0,0 +1,53 @@
+-- Hybrid search: full-text and trigram candidates computed in one statement and merged by a weighted score.
+-- Replaces "FTS, and only if that finds nothing, a second fuzzy query" with a single round trip, and lets
+-- typo-tolerant matches complement partial FTS hits.
+--
+-- Candidates:
+--   fts   - search_vector @@ websearch_to_tsquery (GIN idx_dream_entry_search_vector)
+--   fuzzy - title % query OR query <% content (GIN trigram indexes), negated terms ("-word") excluded
+-- Score:
+--   0.7 * (FTS match + ts_rank normalized to [0, 1)) + 0.3 * trigram similarity
+--   so every FTS match ranks above every fuzzy-only match, and fuzzy similarity breaks ties between them.
+--
+-- The SET clauses scope the trigram thresholds to this function (the operators read them from GUCs):
+-- 0.2 matches the similarity() cutoff of the fuzzy fallback query, 0.3 lets a typo match one word
+-- in long content.
+CREATE OR REPLACE FUNCTION dream_entry_search_hybrid(p_user_id UUID, p_query TEXT, p_limit INT)
+    RETURNS TABLE (id UUID, score REAL) AS
+$$
+WITH q AS (
+    SELECT websearch_to_tsquery('simple', unaccent(p_query)) AS tsq,
+           websearch_to_tsquery('simple', unaccent(array_to_string(ARRAY(
+               SELECT m[1] FROM regexp_matches(p_query, '(?:^|\s)-("[^"]*"|\S+)', 'g') m), ' or '))) AS excluded,
+           btrim(regexp_replace(p_query, '(?:^|\s)-("[^"]*"|\S+)', ' ', 'g')) AS fuzzy_text
+),
+fts AS (
+    SELECT d.id, ts_rank(d.search_vector, q.tsq, 32) AS rank
+    FROM dream_entry d, q
+    WHERE d.user_id = p_user_id
+      AND d.search_vector @@ q.tsq
+    ORDER BY rank DESC
+    LIMIT p_limit
+),
+fuzzy AS (
+    SELECT d.id, GREATEST(similarity(d.title, q.fuzzy_text), word_similarity(q.fuzzy_text, d.content)) AS sim
+    FROM dream_entry d, q
+    WHERE d.user_id = p_user_id
+      AND q.fuzzy_text <> ''
+      AND (d.title % q.fuzzy_text OR q.fuzzy_text <% d.content)
+      AND NOT COALESCE(CASE WHEN numnode(q.excluded) > 0 THEN d.search_vector @@ q.excluded END, FALSE)
+    ORDER BY sim DESC
+    LIMIT p_limit
+)
+SELECT COALESCE(f.id, z.id) AS id,
+       (0.7 * (CASE WHEN f.id IS NOT NULL THEN 1 + f.rank ELSE 0 END) + 0.3 * COALESCE(z.sim, 0))::REAL AS score
+FROM fts f
+         FULL JOIN fuzzy z ON z.id = f.id
+ORDER BY score DESC, id
+LIMIT p_limit
+$$ LANGUAGE sql STABLE
+    SET pg_trgm.similarity_threshold = 0.2
+    SET pg_trgm.word_similarity_threshold = 0.3;
+
+COMMENT ON FUNCTION dream_entry_search_hybrid(UUID, TEXT, INT) IS
+    'Single-statement FTS + trigram search for a user, ranked by a weighted score (see V8 migration).';
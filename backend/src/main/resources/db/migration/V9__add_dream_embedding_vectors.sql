@@ -0,0 +1,18 @@
+-- Embeddings for semantic "similar dreams" search, computed in the application (HashingDreamEncoder).
+-- Vectors are L2-normalized and quantized to one signed byte per dimension (256 bytes for 256 dimensions),
+-- so the table stays small and the application's HNSW index can load them without conversion.
+-- pgvector is not used: the nearest-neighbour index lives in the application (see HnswIndex).
+ALTER TABLE dream_embedding
+    ADD COLUMN model VARCHAR(64) NOT NULL DEFAULT '',
+    ADD COLUMN vector BYTEA NOT NULL DEFAULT '\x',
+    ADD COLUMN updated_at TIMESTAMP NOT NULL DEFAULT NOW();
+
+ALTER TABLE dream_embedding
+    ALTER COLUMN model DROP DEFAULT,
+    ALTER COLUMN vector DROP DEFAULT;
+
+-- The index catches up on changes since its last checkpoint after a restart
+CREATE INDEX idx_dream_embedding_updated_at ON dream_embedding (updated_at);
+
+COMMENT ON TABLE dream_embedding IS
+    'Quantized (int8) dream embeddings maintained by the application; model identifies the encoder.';
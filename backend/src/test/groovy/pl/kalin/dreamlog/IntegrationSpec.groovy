@@ -8,6 +8,8 @@ import org.testcontainers.spock.Testcontainers
 import spock.lang.Shared
 import spock.lang.Specification
 
+import java.nio.file.Files
+
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @Testcontainers
 abstract class IntegrationSpec extends Specification {
@@ -36,5 +38,11 @@ abstract class IntegrationSpec extends Specification {
         registry.add("spring.flyway.url", () -> postgres.getJdbcUrl())
         registry.add("spring.flyway.user", () -> postgres.getUsername())
         registry.add("spring.flyway.password", () -> postgres.getPassword())
+        // Lets specs assert SQL statements per request (SessionRestClient.lastSqlStatementCount)
+        registry.add("app.sql.statement-count-header", () -> "true")
+        // Every cached context maps its own similarity index file
+        // Pick up queued dream analyses quickly
+        registry.add("app.analysis.poll-interval", () -> "200ms")
+        registry.add("app.similar.index-path", () -> Files.createTempDirectory("dreamlog-similar").resolve("similar-dreams.hnsw").toString())
     }
 }
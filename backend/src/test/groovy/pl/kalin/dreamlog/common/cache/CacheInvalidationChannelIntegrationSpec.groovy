@@ -0,0 +1,115 @@
+package pl.kalin.dreamlog.common.cache
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.support.TransactionTemplate
+import pl.kalin.dreamlog.IntegrationSpec
+import pl.kalin.dreamlog.common.security.CurrentUser
+import pl.kalin.dreamlog.common.security.CurrentUserCache
+import spock.util.concurrent.PollingConditions
+
+import javax.sql.DataSource
+import java.time.Duration
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+/**
+ * Integration tests for cache invalidation over LISTEN/NOTIFY. A second channel on its own connection
+ * stands in for another node.
+ */
+class CacheInvalidationChannelIntegrationSpec extends IntegrationSpec {
+
+    @Autowired
+    CacheInvalidationChannel channel
+
+    @Autowired
+    CurrentUserCache currentUserCache
+
+    @Autowired
+    DataSource dataSource
+
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    @Autowired
+    PlatformTransactionManager transactionManager
+
+    CacheInvalidationChannel otherNode
+    LinkedBlockingQueue<String> received = new LinkedBlockingQueue<>()
+
+    def setup() {
+        otherNode = new CacheInvalidationChannel(dataSource, Duration.ofMillis(100), 10, Duration.ofSeconds(1),
+            new SimpleMeterRegistry())
+        otherNode.subscribe("test", { received.add(it) }, { received.add("*") })
+        otherNode.afterSingletonsInstantiated()
+        new PollingConditions(timeout: 10).eventually {
+            assert otherNode.listening
+            assert channel.listening
+        }
+    }
+
+    def cleanup() {
+        otherNode.shutdown()
+    }
+
+    def "should deliver a key to other nodes only when the publishing transaction commits"() {
+        when:
+        new TransactionTemplate(transactionManager).executeWithoutResult {
+            channel.publish("test", "owl@example.com")
+            assert received.poll(500, TimeUnit.MILLISECONDS) == null
+        }
+
+        then:
+        received.poll(5, TimeUnit.SECONDS) == "owl@example.com"
+    }
+
+    def "should not deliver a key published in a transaction that rolls back"() {
+        when:
+        new TransactionTemplate(transactionManager).executeWithoutResult { status ->
+            channel.publish("test", "rolled-back@example.com")
+            status.setRollbackOnly()
+        }
+        channel.publish("test", "after@example.com")
+
+        then: "only the later key arrives"
+        received.poll(5, TimeUnit.SECONDS) == "after@example.com"
+    }
+
+    def "should clear the caches and keep listening when a subscriber fails"() {
+        given:
+        otherNode.subscribe("failing", { throw new IllegalStateException("boom") }, { })
+
+        when:
+        channel.publish("failing", "any@example.com")
+
+        then: "the listener reconnects and clears every cache"
+        received.poll(5, TimeUnit.SECONDS) == "*"
+
+        when:
+        new PollingConditions(timeout: 10).eventually {
+            assert otherNode.listening
+        }
+        channel.publish("test", "later@example.com")
+
+        then:
+        received.poll(5, TimeUnit.SECONDS) == "later@example.com"
+    }
+
+    def "should drop a cached user when another node changes them"() {
+        given:
+        def user = new CurrentUser(UUID.randomUUID(), "fox@example.com", "Fox")
+        currentUserCache.lookup(user.email()) { user }
+
+        when: "another node publishes the invalidation"
+        otherNode.publish("current-user", user.email())
+
+        then:
+        new PollingConditions(timeout: 5).eventually {
+            def loads = 0
+            currentUserCache.lookup(user.email()) { loads++; user }
+            assert loads == 1
+        }
+    }
+}
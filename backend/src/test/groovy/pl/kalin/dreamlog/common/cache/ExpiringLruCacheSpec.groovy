@@ -0,0 +1,94 @@
+package pl.kalin.dreamlog.common.cache
+
+import spock.lang.Specification
+
+import java.time.Duration
+
+/**
+ * Unit test for ExpiringLruCache.
+ * Uses a fake ticker so TTL behaviour is deterministic.
+ */
+class ExpiringLruCacheSpec extends Specification {
+
+    long now = 0
+    ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(2, Duration.ofSeconds(10), { now })
+
+    def "should load value on miss and serve it from cache afterwards"() {
+        given: "a loader that counts calls"
+        int loads = 0
+        def loader = { String key -> loads++; "value-" + key }
+
+        when: "reading the same key twice"
+        def first = cache.get("a", loader)
+        def second = cache.get("a", loader)
+
+        then: "loader runs once"
+        first == "value-a"
+        second == "value-a"
+        loads == 1
+
+        and: "one miss and one hit are recorded"
+        cache.missCount() == 1
+        cache.hitCount() == 1
+    }
+
+    def "should tell hits from loads"() {
+        when:
+        def miss = cache.lookup("a", { "1" })
+        def hit = cache.lookup("a", { "2" })
+
+        then:
+        miss == new CacheLookup<>("1", false)
+        hit == new CacheLookup<>("1", true)
+    }
+
+    def "should not cache null loader results"() {
+        when: "loader finds nothing"
+        def result = cache.get("missing", { null })
+
+        then: "null is returned and nothing is stored"
+        result == null
+        cache.size() == 0
+    }
+
+    def "should expire entries after TTL"() {
+        given: "a cached value"
+        cache.put("a", "old")
+
+        when: "TTL elapses"
+        now += Duration.ofSeconds(10).toNanos()
+
+        then: "entry is gone"
+        cache.getIfPresent("a") == null
+        cache.size() == 0
+    }
+
+    def "should evict least recently used entry when full"() {
+        given: "a full cache"
+        cache.put("a", "1")
+        cache.put("b", "2")
+
+        and: "'a' was read recently"
+        cache.getIfPresent("a")
+
+        when: "adding a third entry"
+        cache.put("c", "3")
+
+        then: "'b' is evicted"
+        cache.getIfPresent("b") == null
+        cache.getIfPresent("a") == "1"
+        cache.getIfPresent("c") == "3"
+        cache.evictionCount() == 1
+    }
+
+    def "should drop invalidated entries"() {
+        given: "a cached value"
+        cache.put("a", "1")
+
+        when: "invalidating it"
+        cache.invalidate("a")
+
+        then: "next read reloads"
+        cache.get("a", { "2" }) == "2"
+    }
+}
@@ -0,0 +1,135 @@
+package pl.kalin.dreamlog.common.security
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken
+import org.springframework.security.core.Authentication
+import org.springframework.security.crypto.password.PasswordEncoder
+import org.springframework.transaction.PlatformTransactionManager
+import pl.kalin.dreamlog.common.cache.CacheInvalidationChannel
+import pl.kalin.dreamlog.user.FederatedIdentity
+import pl.kalin.dreamlog.user.FederatedIdentityRepository
+import pl.kalin.dreamlog.user.LocalCredentialRepository
+import pl.kalin.dreamlog.user.User
+import pl.kalin.dreamlog.user.UserRepository
+import pl.kalin.dreamlog.user.exception.UserNotFoundException
+import pl.kalin.dreamlog.user.service.UserService
+import spock.lang.Specification
+
+import java.time.Duration
+
+/**
+ * Unit test for resolving the current user through {@link CurrentUserCache},
+ * and for {@link UserService} dropping cached users it changes.
+ */
+class AuthenticationHelperSpec extends Specification {
+
+    UserRepository userRepository = Mock()
+    FederatedIdentityRepository federatedIdentityRepository = Mock()
+    LocalCredentialRepository localCredentialRepository = Mock()
+    CacheInvalidationChannel invalidationChannel = Mock()
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    CurrentUserCache cache = new CurrentUserCache(100, Duration.ofMinutes(5), invalidationChannel, meterRegistry)
+    UserService userService = new UserService(userRepository, federatedIdentityRepository, localCredentialRepository,
+        Stub(PasswordEncoder), cache)
+    AuthenticationHelper helper = new AuthenticationHelper(userService, cache, Stub(PlatformTransactionManager), meterRegistry)
+
+    User user = User.builder()
+        .id(UUID.randomUUID())
+        .email("dreamer@example.com")
+        .name("Dreamer")
+        .build()
+
+    def "should load the current user once and serve later requests from the cache"() {
+        when:
+        def first = helper.getCurrentUser(authentication(user.email))
+        def second = helper.getCurrentUser(authentication(user.email))
+
+        then: "only the first request queries the database"
+        1 * userRepository.findByEmail(user.email) >> Optional.of(user)
+        [first, second].every { it.id == user.id && it.email == user.email && it.name == "Dreamer" }
+
+        and: "one miss, one hit"
+        cache.missCount() == 1
+        cache.hitCount() == 1
+        meterRegistry.get("dreamlog.user.cache.requests").tag("result", "hit").functionCounter().count() == 1
+        meterRegistry.get("dreamlog.user.cache.requests").tag("result", "miss").functionCounter().count() == 1
+        meterRegistry.get("dreamlog.user.lookup").tag("source", "cache").timer().count() == 1
+        meterRegistry.get("dreamlog.user.lookup").tag("source", "database").timer().count() == 1
+    }
+
+    def "should hand out a detached reference, not the cached snapshot's entity"() {
+        given:
+        userRepository.findByEmail(user.email) >> Optional.of(user)
+
+        when:
+        def first = helper.getCurrentUser(authentication(user.email))
+        def second = helper.getCurrentUser(authentication(user.email))
+
+        then:
+        !first.is(user)
+        !first.is(second)
+        first.federatedIdentities.isEmpty()
+    }
+
+    def "should reject an unknown user without caching the miss"() {
+        when:
+        helper.getCurrentUser(authentication("ghost@example.com"))
+
+        then:
+        1 * userRepository.findByEmail("ghost@example.com") >> Optional.empty()
+        thrown(UserNotFoundException)
+
+        when: "the user registers meanwhile"
+        def registered = helper.getCurrentUser(authentication("ghost@example.com"))
+
+        then:
+        1 * userRepository.findByEmail("ghost@example.com") >> Optional.of(user)
+        registered.id == user.id
+        cache.missCount() == 2
+        cache.hitCount() == 0
+    }
+
+    def "should drop the cached user when #method changes them"() {
+        given: "a cached user, not linked to the OAuth identity yet"
+        userRepository.findByEmail(user.email) >> Optional.of(user)
+        federatedIdentityRepository.findByProviderAndProviderUserId("google", "google-1") >> Optional.empty()
+        helper.getCurrentUser(authentication(user.email))
+
+        when:
+        change.call(userService, user)
+        helper.getCurrentUser(authentication(user.email))
+
+        then: "dropped here and announced to the other nodes"
+        (1.._) * invalidationChannel.publish(CurrentUserCache.CACHE_NAME, user.email)
+        cache.missCount() == 2
+
+        where:
+        method                     | change
+        "setPassword"              | { UserService service, User user -> service.setPassword(user, "Password123") }
+        "linkOAuthProvider"        | { UserService service, User user -> service.linkOAuthProvider(user, "google", "google-1") }
+        "registerOrLoginWithOAuth" | { UserService service, User user -> service.registerOrLoginWithOAuth("google", "google-1", user.email, user.name) }
+    }
+
+    def "should drop the cached user when they log in again with OAuth"() {
+        given: "a cached user and an OAuth identity already linked to them"
+        userRepository.findByEmail(user.email) >> Optional.of(user)
+        helper.getCurrentUser(authentication(user.email))
+        federatedIdentityRepository.findByProviderAndProviderUserId("google", "google-1") >>
+            Optional.of(FederatedIdentity.builder().user(user).provider("google").providerUserId("google-1").build())
+        userRepository.save(user) >> user
+
+        when:
+        userService.registerOrLoginWithOAuth("google", "google-1", user.email, user.name)
+        helper.getCurrentUser(authentication(user.email))
+
+        then:
+        cache.missCount() == 2
+    }
+
+    private static Authentication authentication(String email) {
+        def principal = org.springframework.security.core.userdetails.User.withUsername(email)
+            .password("unused")
+            .build()
+        new UsernamePasswordAuthenticationToken(principal, null, principal.authorities)
+    }
+}
@@ -0,0 +1,84 @@
+package pl.kalin.dreamlog.common.sql
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import jakarta.servlet.FilterChain
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.mock.web.MockHttpServletResponse
+import org.springframework.web.servlet.HandlerMapping
+import spock.lang.Specification
+
+/**
+ * Unit test for counting SQL statements per request and reporting budget and N+1 violations.
+ */
+class SqlStatementBudgetFilterSpec extends Specification {
+
+    SimpleMeterRegistry registry = new SimpleMeterRegistry()
+    SqlStatementInspector inspector = new SqlStatementInspector()
+    SqlStatementBudgetFilter filter = new SqlStatementBudgetFilter(5, 3, true, registry)
+
+    def "should report the statement count in a header and a summary per URI template"() {
+        when:
+        def response = run("select d from dream_entry d", "select t from dream_entry_tags t")
+
+        then:
+        response.getHeader(SqlStatementBudgetFilter.STATEMENT_COUNT_HEADER) == "2"
+        def summary = registry.get("dreamlog.sql.statements").tags("method", "GET", "uri", "/api/dreams/{id}").summary()
+        summary.count() == 1
+        summary.totalAmount() == 2
+
+        and:
+        registry.find("dreamlog.sql.budget.exceeded").counter() == null
+        registry.find("dreamlog.sql.repeated").counter() == null
+    }
+
+    def "should count requests over budget"() {
+        when:
+        run((1..6).collect { "select ${it}".toString() } as String[])
+
+        then:
+        registry.get("dreamlog.sql.budget.exceeded").tag("uri", "/api/dreams/{id}").counter().count() == 1
+        registry.find("dreamlog.sql.repeated").counter() == null
+    }
+
+    def "should count requests repeating one statement as likely N+1"() {
+        when:
+        run("select d from dream_entry d", *(["select t from dream_entry_tags t where id = ?"] * 3))
+
+        then:
+        registry.get("dreamlog.sql.repeated").tag("uri", "/api/dreams/{id}").counter().count() == 1
+        registry.find("dreamlog.sql.budget.exceeded").counter() == null
+    }
+
+    def "should count only statements run inside the request"() {
+        when:
+        inspector.inspect("select before")
+        def response = run("select inside")
+        inspector.inspect("select after")
+
+        then:
+        response.getHeader(SqlStatementBudgetFilter.STATEMENT_COUNT_HEADER) == "1"
+    }
+
+    def "should not add the header unless enabled"() {
+        given:
+        filter = new SqlStatementBudgetFilter(5, 3, false, registry)
+
+        when:
+        def response = run("select 1")
+
+        then:
+        response.getHeader(SqlStatementBudgetFilter.STATEMENT_COUNT_HEADER) == null
+        registry.get("dreamlog.sql.statements").summary().totalAmount() == 1
+    }
+
+    private MockHttpServletResponse run(String... statements) {
+        def request = new MockHttpServletRequest("GET", "/api/dreams/42")
+        def response = new MockHttpServletResponse()
+        FilterChain chain = { req, res ->
+            req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/dreams/{id}")
+            statements.each { inspector.inspect(it) }
+        }
+        filter.doFilter(request, response, chain)
+        response
+    }
+}
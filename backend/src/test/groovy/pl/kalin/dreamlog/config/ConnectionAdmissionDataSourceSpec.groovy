@@ -0,0 +1,75 @@
+package pl.kalin.dreamlog.config
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+import javax.sql.DataSource
+import java.sql.Connection
+import java.sql.SQLException
+import java.sql.SQLTransientConnectionException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * Unit test for the admission limit in front of the connection pool.
+ */
+class ConnectionAdmissionDataSourceSpec extends Specification {
+
+    DataSource pool = Mock()
+    SimpleMeterRegistry registry = new SimpleMeterRegistry()
+
+    def "should reject callers beyond the waiting limit while the pool is busy"() {
+        given: "a pool that blocks until released"
+        def release = new CountDownLatch(1)
+        def entered = new CountDownLatch(2)
+        pool.getConnection() >> {
+            entered.countDown()
+            release.await(10, TimeUnit.SECONDS)
+            Mock(Connection)
+        }
+        def dataSource = new ConnectionAdmissionDataSource(pool, "primary", 2, registry)
+
+        and: "two callers waiting for it"
+        def waiters = (1..2).collect { Thread.startVirtualThread { dataSource.getConnection() } }
+        assert entered.await(10, TimeUnit.SECONDS)
+
+        when:
+        dataSource.getConnection()
+
+        then:
+        def e = thrown(SQLTransientConnectionException)
+        e.message.contains("limit 2")
+        registry.get("dreamlog.datasource.rejected").counter().count() == 1
+        registry.get("dreamlog.datasource.waiting").gauge().value() == 2
+
+        cleanup:
+        release.countDown()
+        waiters*.join()
+    }
+
+    def "should admit callers again once waiting ones got their connection"() {
+        given:
+        def connection = Mock(Connection)
+        pool.getConnection() >> connection
+        def dataSource = new ConnectionAdmissionDataSource(pool, "primary", 1, registry)
+
+        expect:
+        dataSource.getConnection() == connection
+        dataSource.getConnection() == connection
+        dataSource.waiting() == 0
+    }
+
+    def "should not count a failed attempt as waiting"() {
+        given:
+        pool.getConnection() >> { throw new SQLException("pool timeout") }
+        def dataSource = new ConnectionAdmissionDataSource(pool, "primary", 1, registry)
+
+        when:
+        dataSource.getConnection()
+
+        then:
+        thrown(SQLException)
+        dataSource.waiting() == 0
+        registry.get("dreamlog.datasource.rejected").counter().count() == 0
+    }
+}
@@ -0,0 +1,82 @@
+package pl.kalin.dreamlog.config
+
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability
+import org.springframework.boot.test.web.client.TestRestTemplate
+import org.springframework.boot.test.web.server.LocalServerPort
+import org.springframework.http.HttpStatus
+import org.springframework.test.context.TestPropertySource
+import pl.kalin.dreamlog.IntegrationSpec
+import pl.kalin.dreamlog.dream.controller.DreamControllerIntegrationSpec.DreamClient
+import pl.kalin.dreamlog.dream.repository.DreamEntryRepository
+import pl.kalin.dreamlog.user.UserRepository
+
+import java.time.LocalDate
+
+/**
+ * Integration tests for the Prometheus scrape endpoint and the application meters it exposes.
+ */
+@AutoConfigureObservability(tracing = false)
+@TestPropertySource(properties = ["app.metrics.scrape.username=scraper", "app.metrics.scrape.password=scrape-secret"])
+class MetricsEndpointIntegrationSpec extends IntegrationSpec {
+
+    @LocalServerPort
+    int port
+
+    @Autowired
+    TestRestTemplate restTemplate
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    DreamEntryRepository dreamRepository
+
+    def setup() {
+        dreamRepository.deleteAll()
+        userRepository.deleteAll()
+    }
+
+    def "should expose application, pool and Hibernate meters to the scrape user"() {
+        given:
+        def client = new DreamClient(restTemplate, "http://localhost:${port}")
+        client.registerAndLogin("metrics@example.com", "password123", "Metrics")
+        client.createDream([date: LocalDate.now().toString(), title: "Ocean", content: "Swimming in a warm ocean", vividness: 5, lucid: false])
+        client.searchDreams("ocean")
+        client.searchDreams("unicorn")
+
+        when:
+        def response = restTemplate.withBasicAuth("scraper", "scrape-secret")
+            .getForEntity("http://localhost:${port}/actuator/prometheus", String)
+
+        then:
+        response.statusCode == HttpStatus.OK
+        def scrape = response.body
+        scrape.contains('dreamlog_dreams_seconds_bucket{application="dreamlog"')
+        scrape =~ /dreamlog_dreams_seconds_count\{[^}]*method="createDream"/
+        scrape =~ /dreamlog_search_outcome_total\{[^}]*outcome="empty"/
+        scrape.contains('dreamlog_search_results_bucket{')
+        scrape =~ /dreamlog_user_lookup_seconds_count\{[^}]*source="cache"/
+        scrape.contains('http_server_requests_seconds_bucket{')
+        scrape.contains('hikaricp_connections_active')
+        scrape.contains('hibernate_sessions_open_total')
+
+        and: "no per-user or per-dream labels"
+        !scrape.contains("metrics@example.com")
+        !(scrape =~ /uri="\/api\/dreams\/[0-9a-f]{8}-/)
+    }
+
+    def "should not expose metrics without the scrape user's credentials"() {
+        given: "a logged-in user"
+        def client = new DreamClient(restTemplate, "http://localhost:${port}")
+        client.registerAndLogin("metrics@example.com", "password123", "Metrics")
+
+        expect:
+        restTemplate.getForEntity("http://localhost:${port}/actuator/prometheus", String).statusCode == HttpStatus.UNAUTHORIZED
+        restTemplate.withBasicAuth("scraper", "wrong")
+            .getForEntity("http://localhost:${port}/actuator/prometheus", String).statusCode == HttpStatus.UNAUTHORIZED
+        restTemplate.withBasicAuth("metrics@example.com", "password123")
+            .getForEntity("http://localhost:${port}/actuator/prometheus", String).statusCode == HttpStatus.UNAUTHORIZED
+        client.get("/actuator/prometheus", String).statusCode == HttpStatus.UNAUTHORIZED
+    }
+}
@@ -0,0 +1,12 @@
+package pl.kalin.dreamlog.config
+
+import org.springframework.test.context.TestPropertySource
+import spock.lang.Tag
+
+/**
+ * Request load on platform threads (Tomcat's default pool of 200); run with {@code ./gradlew benchmarkTest}.
+ */
+@Tag("benchmark")
+@TestPropertySource(properties = "spring.threads.virtual.enabled=false")
+class PlatformThreadLoadBenchmarkSpec extends RequestThreadingLoadBenchmark {
+}
@@ -0,0 +1,136 @@
+package pl.kalin.dreamlog.config
+
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.web.client.TestRestTemplate
+import org.springframework.boot.test.web.server.LocalServerPort
+import org.springframework.http.HttpStatus
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.datasource.SingleConnectionDataSource
+import org.springframework.test.context.DynamicPropertyRegistry
+import org.springframework.test.context.DynamicPropertySource
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.support.TransactionTemplate
+import org.testcontainers.Testcontainers
+import org.testcontainers.containers.GenericContainer
+import org.testcontainers.containers.wait.strategy.Wait
+import pl.kalin.dreamlog.IntegrationSpec
+import pl.kalin.dreamlog.dream.controller.DreamControllerIntegrationSpec.DreamClient
+import pl.kalin.dreamlog.user.UserRepository
+import spock.lang.Shared
+import spock.util.concurrent.PollingConditions
+
+import java.time.LocalDate
+
+/**
+ * Integration tests for read-replica routing ({@link ReplicaDataSourceConfig}) against a second Postgres
+ * container streaming from the test database. The replica applies WAL {@link #REPLICA_DELAY} late, so reads
+ * that must see a fresh write can only be served by the primary.
+ */
+class ReadReplicaIntegrationSpec extends IntegrationSpec {
+
+    static final String REPLICA_DELAY = "5s"
+
+    @Shared
+    static GenericContainer replica
+
+    @LocalServerPort
+    int port
+
+    @Autowired
+    TestRestTemplate restTemplate
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    PlatformTransactionManager transactionManager
+
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    def setupSpec() {
+        if (replica == null) {
+            // Let the replica connect for streaming replication, through the host port of the test database
+            postgres.execInContainer("sh", "-c",
+                "echo 'host replication all all scram-sha-256' >> /var/lib/postgresql/data/pg_hba.conf")
+            postgres.execInContainer("psql", "-U", postgres.username, "-c", "SELECT pg_reload_conf()")
+            int primaryPort = postgres.getMappedPort(5432)
+            Testcontainers.exposeHostPorts(primaryPort)
+
+            replica = new GenericContainer("postgres:17-alpine")
+                .withEnv("PGPASSWORD", postgres.password)
+                .withExposedPorts(5432)
+                .withCommand("sh", "-c", """
+                    mkdir -p /tmp/replica && chown postgres /tmp/replica && chmod 700 /tmp/replica &&
+                    su-exec postgres pg_basebackup -h host.testcontainers.internal -p ${primaryPort} \
+                        -U ${postgres.username} -D /tmp/replica -R -X stream &&
+                    exec su-exec postgres postgres -D /tmp/replica -c recovery_min_apply_delay=${REPLICA_DELAY}
+                    """.toString())
+                .waitingFor(Wait.forLogMessage(".*ready to accept read-only connections.*", 1))
+            replica.start()
+        }
+    }
+
+    def cleanupSpec() {
+        replica?.stop()
+        replica = null
+    }
+
+    @DynamicPropertySource
+    static void configureReplica(DynamicPropertyRegistry registry) {
+        registry.add("app.datasource.replica.url", () -> replicaUrl())
+        registry.add("app.datasource.replica.primary-after-write", () -> "1m")
+    }
+
+    def setup() {
+        userRepository.deleteAll()
+    }
+
+    def "should run read-only transactions on the replica and the rest on the primary"() {
+        given:
+        def transaction = new TransactionTemplate(transactionManager)
+        def readOnly = new TransactionTemplate(transactionManager)
+        readOnly.readOnly = true
+
+        expect:
+        readOnly.execute { jdbcTemplate.queryForObject("SELECT pg_is_in_recovery()", Boolean) }
+        !transaction.execute { jdbcTemplate.queryForObject("SELECT pg_is_in_recovery()", Boolean) }
+    }
+
+    def "should serve a user's reads from the primary right after their write"() {
+        given:
+        def client = new DreamClient(restTemplate, "http://localhost:${port}")
+        client.registerAndLogin("replica@example.com", "Password123", "Replica")
+
+        when: "the user creates a dream and lists their dreams at once"
+        def id = client.createDream([
+            date   : LocalDate.now().toString(),
+            title  : "Fresh Dream",
+            content: "Written a moment ago"
+        ]).body.id
+        def dreams = client.getDreams()
+
+        then: "the list includes it, though the replica hasn't applied the write yet"
+        dreams.statusCode == HttpStatus.OK
+        dreams.body.content*.id == [id]
+        replicaCount("SELECT count(*) FROM dream_entry WHERE id = ?::uuid", id) == 0
+
+        and: "the replica catches up"
+        new PollingConditions(timeout: 30).eventually {
+            assert replicaCount("SELECT count(*) FROM dream_entry WHERE id = ?::uuid", id) == 1
+        }
+    }
+
+    private static String replicaUrl() {
+        "jdbc:postgresql://${replica.host}:${replica.getMappedPort(5432)}/${postgres.databaseName}"
+    }
+
+    private static long replicaCount(String sql, Object... args) {
+        def dataSource = new SingleConnectionDataSource(replicaUrl(), postgres.username, postgres.password, true)
+        try {
+            new JdbcTemplate(dataSource).queryForObject(sql, Long, args)
+        } finally {
+            dataSource.destroy()
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package pl.kalin.dreamlog.config
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import jakarta.servlet.FilterChain
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.mock.web.MockHttpServletResponse
+import org.springframework.mock.web.MockHttpSession
+import spock.lang.Specification
+
+import javax.sql.DataSource
+import java.sql.Connection
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneOffset
+
+/**
+ * Unit test for routing read-only connections to the replica, and to the primary after a session's writes.
+ */
+class ReplicaLagGuardFilterSpec extends Specification {
+
+    static final Instant NOW = Instant.parse("2025-10-22T07:30:00Z")
+
+    SimpleMeterRegistry registry = new SimpleMeterRegistry()
+    DataSource primary = Mock()
+    DataSource replica = Mock()
+    ReadReplicaDataSource readDataSource = new ReadReplicaDataSource(replica, primary, registry)
+    Clock clock = Clock.fixed(NOW, ZoneOffset.UTC)
+    ReplicaLagGuardFilter filter = new ReplicaLagGuardFilter(Duration.ofSeconds(5), clock)
+    MockHttpSession session = new MockHttpSession()
+
+    def "should read from the replica outside requests"() {
+        when:
+        readDataSource.getConnection()
+
+        then:
+        1 * replica.getConnection() >> Mock(Connection)
+        0 * primary.getConnection()
+        registry.get("dreamlog.datasource.reads").tag("target", "replica").counter().count() == 1
+    }
+
+    def "should read from the replica for a session that didn't write"() {
+        when:
+        read("GET")
+
+        then:
+        1 * replica.getConnection() >> Mock(Connection)
+        0 * primary.getConnection()
+        session.getAttribute(ReplicaLagGuardFilter.PRIMARY_UNTIL_ATTRIBUTE) == null
+    }
+
+    def "should run a write request on the primary and mark the session"() {
+        when:
+        read("POST")
+
+        then:
+        1 * primary.getConnection() >> Mock(Connection)
+        0 * replica.getConnection()
+        session.getAttribute(ReplicaLagGuardFilter.PRIMARY_UNTIL_ATTRIBUTE) == NOW.plusSeconds(5).toEpochMilli()
+    }
+
+    def "should read from the primary until the window after the session's write has passed"() {
+        given:
+        session.setAttribute(ReplicaLagGuardFilter.PRIMARY_UNTIL_ATTRIBUTE, NOW.toEpochMilli() + offset)
+
+        when:
+        read("GET")
+
+        then:
+        (primaryReads) * primary.getConnection() >> Mock(Connection)
+        (1 - primaryReads) * replica.getConnection() >> Mock(Connection)
+
+        where:
+        offset || primaryReads
+        1      || 1
+        0      || 0
+        -1000  || 0
+    }
+
+    def "should unpin the thread after the request"() {
+        given:
+        read("PUT")
+
+        when:
+        readDataSource.getConnection()
+
+        then:
+        1 * replica.getConnection() >> Mock(Connection)
+    }
+
+    /**
+     * Run a request of the session whose handler opens one read-only connection.
+     */
+    private void read(String method) {
+        def request = new MockHttpServletRequest(method, "/api/dreams")
+        request.session = session
+        filter.doFilter(request, new MockHttpServletResponse(), { req, res -> readDataSource.getConnection() } as FilterChain)
+    }
+}
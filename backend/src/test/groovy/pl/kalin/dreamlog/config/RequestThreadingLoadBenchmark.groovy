@@ -0,0 +1,133 @@
+package pl.kalin.dreamlog.config
+
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.boot.test.web.client.TestRestTemplate
+import org.springframework.boot.test.web.server.LocalServerPort
+import org.springframework.jdbc.core.JdbcTemplate
+import pl.kalin.dreamlog.IntegrationSpec
+import pl.kalin.dreamlog.dream.controller.DreamControllerIntegrationSpec.DreamClient
+import pl.kalin.dreamlog.dream.repository.DreamEntryRepository
+import pl.kalin.dreamlog.user.UserRepository
+
+import java.net.http.HttpClient
+import java.net.http.HttpRequest
+import java.net.http.HttpResponse
+import java.time.Duration
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Concurrent request load for comparing request execution modes (see {@link PlatformThreadLoadBenchmarkSpec}
+ * and {@link VirtualThreadLoadBenchmarkSpec}): {@link #CLIENTS} clients hit the API in a closed loop,
+ * mostly with cheap page reads and partly with fuzzy searches that miss the search cache and keep
+ * connections busy. Prints throughput, latency percentiles and 503s (admission limit) per request type.
+ */
+abstract class RequestThreadingLoadBenchmark extends IntegrationSpec {
+
+    static final int DREAM_COUNT = 20_000
+    static final int CLIENTS = 400
+    static final Duration WARMUP = Duration.ofSeconds(5)
+    static final Duration MEASURED = Duration.ofSeconds(20)
+    static final double SEARCH_SHARE = 0.3
+
+    static final List<String> WORDS = ["flying", "ocean", "forest", "castle", "falling", "teeth", "school", "exam",
+                                       "chase", "river", "mountain", "mirror", "stairs", "train", "storm", "garden"]
+
+    @LocalServerPort
+    int port
+
+    @Autowired
+    TestRestTemplate restTemplate
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    DreamEntryRepository dreamRepository
+
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    @Value('${spring.threads.virtual.enabled}')
+    boolean virtualThreads
+
+    def "should report throughput and latency under concurrent search load"() {
+        given: "a user with a generated journal"
+        dreamRepository.deleteAll()
+        userRepository.deleteAll()
+        def client = new DreamClient(restTemplate, "http://localhost:${port}")
+        client.registerAndLogin("load@example.com", "Password123", "Load")
+        jdbcTemplate.update("""
+            INSERT INTO dream_entry (user_id, date, title, content, content_preview, vividness, lucid)
+            SELECT u.id, current_date - (g % 3650),
+                   initcap(v.w[1 + g % 16]) || ' ' || v.w[1 + (g * 7) % 16],
+                   (SELECT string_agg(v.w[1 + (g * k * 31 + k) % 16], ' ') FROM generate_series(1, 80) k),
+                   'generated', g % 11, g % 5 = 0
+            FROM generate_series(1, ?) g, users u, (SELECT ?::text[] AS w) v
+            WHERE u.email = 'load@example.com'
+            """, DREAM_COUNT, WORDS as String[])
+        def http = HttpClient.newBuilder().executor { Thread.startVirtualThread(it) }.build()
+        def cookie = client.sessionCookie()
+
+        when:
+        run(http, cookie, WARMUP)
+        def samples = run(http, cookie, MEASURED)
+
+        then:
+        def mode = virtualThreads ? "virtual" : "platform"
+        samples.groupBy { it.type }.sort().each { type, typed ->
+            def ok = typed.findAll { it.status == 200 }*.millis.sort()
+            println String.format("threads %-8s %-6s %7.1f req/s  p50 %7.1f ms  p99 %7.1f ms  503: %d  other errors: %d",
+                mode, type, ok.size() / MEASURED.toSeconds(), percentile(ok, 0.5), percentile(ok, 0.99),
+                typed.count { it.status == 503 }, typed.count { it.status != 200 && it.status != 503 })
+        }
+        samples.every { it.status in [200, 503] }
+        samples.count { it.status == 200 } > 0
+    }
+
+    private List<Map> run(HttpClient http, String cookie, Duration duration) {
+        def samples = new ConcurrentLinkedQueue<Map>()
+        def stop = new AtomicBoolean()
+        def clients = (1..CLIENTS).collect {
+            Thread.startVirtualThread {
+                def random = ThreadLocalRandom.current()
+                while (!stop.get()) {
+                    def search = random.nextDouble() < SEARCH_SHARE
+                    // A misspelled pair of words: a fuzzy query, and rarely a repeated one (cache miss)
+                    def path = search
+                        ? "/api/dreams/search?query=" + typo(WORDS[random.nextInt(WORDS.size())]) + "+" + typo(WORDS[random.nextInt(WORDS.size())])
+                        : "/api/dreams?view=summary&size=20&page=" + random.nextInt(50)
+                    def request = HttpRequest.newBuilder(URI.create("http://localhost:${port}${path}"))
+                        .header("Cookie", cookie)
+                        .timeout(Duration.ofSeconds(60))
+                        .build()
+                    long start = System.nanoTime()
+                    int status
+                    try {
+                        status = http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode()
+                    } catch (IOException ignored) {
+                        status = -1
+                    }
+                    samples << [type  : search ? "search" : "page", status: status,
+                                millis: (System.nanoTime() - start) / 1_000_000d]
+                }
+            }
+        }
+        Thread.sleep(duration.toMillis())
+        stop.set(true)
+        clients*.join()
+        new ArrayList<>(samples)
+    }
+
+    private static String typo(String word) {
+        def random = ThreadLocalRandom.current()
+        int at = random.nextInt(word.length())
+        word.substring(0, at) + "abcdefghijklmnopqrstuvwxyz"[random.nextInt(26)] + word.substring(at + 1)
+    }
+
+    private static double percentile(List<Double> sorted, double p) {
+        sorted ? sorted[Math.min(sorted.size() - 1, (int) (sorted.size() * p))] : 0
+    }
+}
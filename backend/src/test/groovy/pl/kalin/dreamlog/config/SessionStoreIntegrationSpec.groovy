@@ -0,0 +1,79 @@
+package pl.kalin.dreamlog.config
+
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.web.client.TestRestTemplate
+import org.springframework.boot.test.web.server.LocalServerPort
+import org.springframework.http.HttpStatus
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.session.FindByIndexNameSessionRepository
+import pl.kalin.dreamlog.IntegrationSpec
+import pl.kalin.dreamlog.auth.AuthenticationIntegrationSpec.AuthClient
+import pl.kalin.dreamlog.user.UserRepository
+
+/**
+ * Integration tests for the shared session store ({@link SessionConfig}): sessions in Postgres and the
+ * concurrent-session limit enforced through it.
+ */
+class SessionStoreIntegrationSpec extends IntegrationSpec {
+
+    @LocalServerPort
+    int port
+
+    @Autowired
+    TestRestTemplate restTemplate
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    FindByIndexNameSessionRepository<?> sessionRepository
+
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    def setup() {
+        userRepository.deleteAll()
+        jdbcTemplate.update("DELETE FROM spring_session")
+    }
+
+    def "should keep the session of a logged in user in the shared store"() {
+        given:
+        def client = client()
+
+        when:
+        client.register("store@example.com", "Password123", "Store")
+
+        then: "the session is found by its user, as any node would find it"
+        client.me().statusCode == HttpStatus.OK
+        sessionRepository.findByPrincipalName("store@example.com").size() == 1
+        jdbcTemplate.queryForObject(
+            "SELECT count(*) FROM spring_session WHERE principal_name = ?", Long, "store@example.com") == 1
+    }
+
+    def "should expire the least recently used session when a user logs in over the limit"() {
+        given: "a user with five sessions"
+        def first = client()
+        first.register("limit@example.com", "Password123", "Limit")
+        def others = (1..4).collect { loggedIn("limit@example.com") }
+
+        when: "the user logs in a sixth time"
+        def sixth = loggedIn("limit@example.com")
+
+        then: "the oldest session is expired, the others stay valid"
+        def expired = first.me()
+        expired.statusCode == HttpStatus.UNAUTHORIZED
+        expired.body.error == "Session expired"
+        sixth.me().statusCode == HttpStatus.OK
+        others.every { it.me().statusCode == HttpStatus.OK }
+    }
+
+    private AuthClient client() {
+        new AuthClient(restTemplate, "http://localhost:${port}")
+    }
+
+    private AuthClient loggedIn(String email) {
+        def client = client()
+        assert client.login(email, "Password123").statusCode == HttpStatus.OK
+        client
+    }
+}
@@ -0,0 +1,13 @@
+package pl.kalin.dreamlog.config
+
+import org.springframework.test.context.TestPropertySource
+import spock.lang.Tag
+
+/**
+ * Request load on virtual threads, bounded by the connection admission limit;
+ * run with {@code ./gradlew benchmarkTest}.
+ */
+@Tag("benchmark")
+@TestPropertySource(properties = "spring.threads.virtual.enabled=true")
+class VirtualThreadLoadBenchmarkSpec extends RequestThreadingLoadBenchmark {
+}
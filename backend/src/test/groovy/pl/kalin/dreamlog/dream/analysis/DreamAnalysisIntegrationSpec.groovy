@@ -0,0 +1,117 @@
+package pl.kalin.dreamlog.dream.analysis
+
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.web.client.TestRestTemplate
+import org.springframework.boot.test.web.server.LocalServerPort
+import org.springframework.jdbc.core.JdbcTemplate
+import pl.kalin.dreamlog.IntegrationSpec
+import pl.kalin.dreamlog.dream.controller.DreamControllerIntegrationSpec.DreamClient
+import pl.kalin.dreamlog.dream.repository.DreamAnalysisRepository
+import pl.kalin.dreamlog.dream.repository.DreamEntryRepository
+import pl.kalin.dreamlog.user.UserRepository
+import spock.util.concurrent.PollingConditions
+
+import java.time.LocalDate
+import java.time.format.DateTimeFormatter
+
+/**
+ * Integration tests for the asynchronous analysis pipeline: dream writes queue an outbox row,
+ * background workers store the analysis.
+ */
+class DreamAnalysisIntegrationSpec extends IntegrationSpec {
+
+    @LocalServerPort
+    int port
+
+    @Autowired
+    TestRestTemplate restTemplate
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    DreamEntryRepository dreamRepository
+
+    @Autowired
+    DreamAnalysisRepository analysisRepository
+
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    DreamClient client
+    PollingConditions conditions = new PollingConditions(timeout: 10)
+
+    def setup() {
+        dreamRepository.deleteAll()
+        userRepository.deleteAll()
+        client = new DreamClient(restTemplate, baseUrl())
+        client.registerAndLogin("analysis@example.com", "Password123", "Analysis")
+    }
+
+    String baseUrl() {
+        "http://localhost:${port}"
+    }
+
+    def "should analyze a created dream in the background"() {
+        when:
+        def id = UUID.fromString(createDream("Chased", "A big dog was chasing me through the house. I was terrified."))
+
+        then: "the analysis is stored and the outbox row is gone"
+        conditions.eventually {
+            def analyses = analysisRepository.findByDreamId(id)
+            assert analyses.size() == 1
+            assert analyses[0].modelVersion == RuleBasedDreamAnalyzer.MODEL_VERSION
+            assert analyses[0].tags.containsAll(["chase", "animals"])
+            assert outboxRows(id) == 0
+        }
+    }
+
+    def "should replace the analysis when the dream is edited"() {
+        given: "an analyzed dream"
+        def id = createDream("Sea", "Swimming in the sea.")
+        conditions.eventually {
+            assert analysisRepository.findByDreamId(UUID.fromString(id)).size() == 1
+        }
+
+        when: "the dream is edited"
+        client.updateDream(id, [
+            date   : LocalDate.now().format(DateTimeFormatter.ISO_LOCAL_DATE),
+            title  : "Exam",
+            content: "I forgot about the exam at school.",
+            tags   : []
+        ])
+
+        then: "it has one analysis, of the new content"
+        conditions.eventually {
+            def analyses = analysisRepository.findByDreamId(UUID.fromString(id))
+            assert analyses.size() == 1
+            assert analyses[0].summary == "I forgot about the exam at school."
+        }
+    }
+
+    def "should drop the outbox row with the dream"() {
+        given:
+        def id = createDream("Gone", "A dream that is deleted right away.")
+
+        when:
+        client.deleteDream(id)
+
+        then:
+        outboxRows(UUID.fromString(id)) == 0
+    }
+
+    private int outboxRows(UUID dreamId) {
+        jdbcTemplate.queryForObject("SELECT COUNT(*) FROM dream_analysis_outbox WHERE dream_id = ?", Integer, dreamId)
+    }
+
+    private String createDream(String title, String content) {
+        client.createDream([
+            date     : LocalDate.now().format(DateTimeFormatter.ISO_LOCAL_DATE),
+            title    : title,
+            content  : content,
+            vividness: 5,
+            lucid    : false,
+            tags     : []
+        ]).body.id
+    }
+}
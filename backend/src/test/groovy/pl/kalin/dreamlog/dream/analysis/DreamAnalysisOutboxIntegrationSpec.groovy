@@ -0,0 +1,151 @@
+package pl.kalin.dreamlog.dream.analysis
+
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.test.context.TestPropertySource
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.support.TransactionTemplate
+import pl.kalin.dreamlog.IntegrationSpec
+import pl.kalin.dreamlog.dream.model.DreamEntry
+import pl.kalin.dreamlog.dream.repository.DreamEntryRepository
+import pl.kalin.dreamlog.user.User
+import pl.kalin.dreamlog.user.UserRepository
+
+import java.time.Duration
+import java.time.LocalDate
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
+/**
+ * Integration tests for the analysis outbox queries. Workers are disabled, so rows are only
+ * claimed by the tests.
+ */
+@TestPropertySource(properties = "app.analysis.enabled=false")
+class DreamAnalysisOutboxIntegrationSpec extends IntegrationSpec {
+
+    static final Duration LEASE = Duration.ofMinutes(5)
+
+    @Autowired
+    DreamAnalysisOutbox outbox
+
+    @Autowired
+    DreamEntryRepository dreamRepository
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    @Autowired
+    PlatformTransactionManager transactionManager
+
+    User user
+
+    def setup() {
+        dreamRepository.deleteAll()
+        userRepository.deleteAll()
+        user = userRepository.save(User.builder().email("outbox@example.com").name("Outbox").build())
+    }
+
+    def "should keep one row per dream and bump its revision on every enqueue"() {
+        given:
+        def id = createDream()
+
+        when:
+        outbox.enqueue([id])
+        outbox.enqueue([id])
+
+        then:
+        jdbcTemplate.queryForList("SELECT revision FROM dream_analysis_outbox WHERE dream_id = ?", Integer, id) == [1]
+    }
+
+    def "should skip rows locked by a concurrent claim instead of waiting"() {
+        given: "three due dreams"
+        def ids = (1..3).collect { createDream() }
+        outbox.enqueue(ids)
+
+        when: "another node claims while the first claim's transaction still holds its row"
+        List<DreamAnalysisOutbox.Claim> other = null
+        def first = new TransactionTemplate(transactionManager).execute {
+            def claims = outbox.claim(1, LEASE)
+            other = CompletableFuture.supplyAsync { outbox.claim(10, LEASE) }.get(5, TimeUnit.SECONDS)
+            claims
+        }
+
+        then: "the claims don't overlap and cover all rows"
+        first.size() == 1
+        other*.dreamId() as Set == (ids - first*.dreamId()) as Set
+        (first + other).every { it.attempts() == 1 }
+    }
+
+    def "should hand out a claimed row again only after its lease expires"() {
+        given:
+        def id = createDream()
+        outbox.enqueue([id])
+
+        expect: "an expired lease makes the row due again, a running one hides it"
+        outbox.claim(10, Duration.ZERO)*.dreamId() == [id]
+        outbox.claim(10, LEASE)*.attempts() == [2]
+        outbox.claim(10, LEASE).isEmpty()
+    }
+
+    def "should complete only the claimed revision"() {
+        given:
+        def id = createDream()
+        outbox.enqueue([id])
+        def claim = outbox.claim(1, LEASE).first()
+
+        when: "the dream changes during the analysis"
+        outbox.enqueue([id])
+
+        then: "the stale result is rejected and the row is due again"
+        !outbox.complete(claim)
+        outbox.claim(1, LEASE)*.revision() == [claim.revision() + 1]
+    }
+
+    def "should back off failed rows and park them when asked to"() {
+        given:
+        def ids = (1..2).collect { createDream() }
+        outbox.enqueue(ids)
+        def claims = outbox.claim(10, Duration.ZERO)
+
+        when:
+        outbox.retry(claims[0], Duration.ofMinutes(10), "timeout")
+        outbox.retry(claims[1], null, "broken")
+
+        then: "nothing is due; the parked row no longer counts"
+        outbox.claim(10, LEASE).isEmpty()
+        outbox.depth() == 1
+        jdbcTemplate.queryForObject("SELECT last_error FROM dream_analysis_outbox WHERE dream_id = ?", String, claims[1].dreamId()) == "broken"
+
+        when: "the parked dream changes"
+        outbox.enqueue([claims[1].dreamId()])
+
+        then: "it gets a fresh round"
+        outbox.claim(10, LEASE)*.dreamId() == [claims[1].dreamId()]
+    }
+
+    def "should load dream content with tags"() {
+        given:
+        def id = createDream(["sea", "night"])
+
+        when:
+        def requests = outbox.load([id, UUID.randomUUID()])
+
+        then:
+        requests.size() == 1
+        requests[0].dreamId() == id
+        requests[0].tags() as Set == ["sea", "night"] as Set
+    }
+
+    private UUID createDream(List<String> tags = []) {
+        dreamRepository.save(DreamEntry.builder()
+            .user(user)
+            .date(LocalDate.now())
+            .title("Dream")
+            .content("Dream content")
+            .tags(new TreeSet<>(tags))
+            .build()).id
+    }
+}
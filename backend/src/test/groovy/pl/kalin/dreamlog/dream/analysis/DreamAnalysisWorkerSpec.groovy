@@ -0,0 +1,159 @@
+package pl.kalin.dreamlog.dream.analysis
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.transaction.PlatformTransactionManager
+import pl.kalin.dreamlog.dream.model.DreamEntry
+import pl.kalin.dreamlog.dream.repository.DreamAnalysisRepository
+import pl.kalin.dreamlog.dream.repository.DreamEntryRepository
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+
+/**
+ * Unit test for DreamAnalysisWorker: outcome of a batch for every outbox row.
+ * Claiming and the revision guard are SQL - covered by DreamAnalysisIntegrationSpec.
+ */
+class DreamAnalysisWorkerSpec extends Specification {
+
+    DreamAnalysisOutbox outbox = Mock()
+    DreamAnalyzer analyzer = Mock()
+    DreamAnalysisRepository analysisRepository = Mock()
+    DreamEntryRepository dreamRepository = Mock()
+
+    DreamAnalysisWorker worker
+
+    def setup() {
+        analyzer.modelVersion() >> "test-v1"
+        dreamRepository.getReferenceById(_) >> { UUID id -> DreamEntry.builder().id(id).build() }
+        worker = new DreamAnalysisWorker(outbox, analyzer, analysisRepository, dreamRepository,
+            Mock(PlatformTransactionManager), 1, 1, 10, Duration.ofMinutes(5), 3, Duration.ofSeconds(30),
+            new SimpleMeterRegistry())
+    }
+
+    def cleanup() {
+        worker.shutdown()
+    }
+
+    def "should store the analysis of a completed row, replacing older ones"() {
+        given:
+        def claim = claim(1)
+        outbox.load([claim.dreamId()]) >> [request(claim.dreamId())]
+        analyzer.analyze(_) >> [(claim.dreamId()): result()]
+
+        when:
+        worker.process([claim])
+
+        then:
+        1 * outbox.complete(claim) >> true
+
+        then:
+        1 * analysisRepository.deleteByDreamId(claim.dreamId())
+        1 * analysisRepository.save({ it.dream.id == claim.dreamId() && it.modelVersion == "test-v1" && it.summary == "Summary" })
+        0 * outbox.retry(*_)
+    }
+
+    def "should drop the result when the dream changed during the analysis"() {
+        given:
+        def claim = claim(1)
+        outbox.load(_) >> [request(claim.dreamId())]
+        analyzer.analyze(_) >> [(claim.dreamId()): result()]
+        outbox.complete(claim) >> false
+
+        when:
+        worker.process([claim])
+
+        then:
+        0 * analysisRepository.save(_)
+        0 * outbox.retry(*_)
+    }
+
+    def "should retry the whole batch with exponential backoff when the analyzer fails"() {
+        given:
+        def first = claim(1)
+        def third = claim(3)
+        outbox.load(_) >> [request(first.dreamId()), request(third.dreamId())]
+        analyzer.analyze(_) >> { throw new IllegalStateException("model unavailable") }
+
+        when:
+        worker.process([first, third])
+
+        then: "the first attempt is retried after the base backoff"
+        1 * outbox.retry(first, Duration.ofSeconds(30), { it.contains("model unavailable") })
+
+        and: "the last attempt parks the row"
+        1 * outbox.retry(third, null, _)
+        0 * analysisRepository.save(_)
+    }
+
+    def "should retry only dreams the analyzer returned no result for"() {
+        given:
+        def done = claim(1)
+        def skipped = claim(2)
+        outbox.load(_) >> [request(done.dreamId()), request(skipped.dreamId())]
+        analyzer.analyze(_) >> [(done.dreamId()): result()]
+        outbox.complete(done) >> true
+
+        when:
+        worker.process([done, skipped])
+
+        then:
+        1 * analysisRepository.save(_)
+        1 * outbox.retry(skipped, Duration.ofMinutes(1), _)
+        0 * outbox.retry(done, *_)
+    }
+
+    def "should skip dreams deleted since the claim"() {
+        given:
+        def claim = claim(1)
+        outbox.load(_) >> []
+
+        when:
+        worker.process([claim])
+
+        then:
+        0 * analyzer.analyze(_)
+        0 * outbox.retry(*_)
+    }
+
+    def "should double the backoff per attempt up to an hour"() {
+        expect:
+        worker.backoff(attempts) == expected
+
+        where:
+        attempts || expected
+        1        || Duration.ofSeconds(30)
+        2        || Duration.ofMinutes(1)
+        4        || Duration.ofMinutes(4)
+        10       || DreamAnalysisWorker.MAX_BACKOFF
+        100      || DreamAnalysisWorker.MAX_BACKOFF
+    }
+
+    def "should claim no more batches than it can run or queue"() {
+        given: "the running batch is stuck in the database"
+        def release = new CountDownLatch(1)
+        outbox.load(_) >> { release.await(); [] }
+
+        when:
+        worker.poll()
+        worker.poll()
+
+        then: "one full batch runs and one waits; the second poll has no free slot"
+        2 * outbox.claim(*_) >> { (1..10).collect { claim(1) } }
+
+        cleanup:
+        release.countDown()
+    }
+
+    private static DreamAnalysisOutbox.Claim claim(int attempts) {
+        new DreamAnalysisOutbox.Claim(UUID.randomUUID(), 0, attempts)
+    }
+
+    private static AnalysisRequest request(UUID dreamId) {
+        new AnalysisRequest(dreamId, "Title", "Content", [], null, null, false)
+    }
+
+    private static AnalysisResult result() {
+        new AnalysisResult("Summary", ["water"], [], [fear: 0.5d], "Interpretation", 0.3d, false, "en", "narrative")
+    }
+}
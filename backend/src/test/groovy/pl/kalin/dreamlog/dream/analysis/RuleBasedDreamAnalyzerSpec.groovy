@@ -0,0 +1,69 @@
+package pl.kalin.dreamlog.dream.analysis
+
+import pl.kalin.dreamlog.dream.model.Mood
+import spock.lang.Specification
+
+/**
+ * Unit test for the local rule-based dream analyzer.
+ */
+class RuleBasedDreamAnalyzerSpec extends Specification {
+
+    RuleBasedDreamAnalyzer analyzer = new RuleBasedDreamAnalyzer()
+
+    def "should find symbols, emotions and people in an English nightmare"() {
+        when:
+        def result = analyze("Chased", "A huge dog was chasing me through my old house. I was terrified and screamed for Anna.",
+            ["dogs"], Mood.NIGHTMARE)
+
+        then:
+        result.tags().containsAll(["chase", "animals", "house"])
+        result.entities() == ["Anna"]
+        result.emotions().fear > result.emotions().joy
+        result.riskScore() >= 0.6
+        result.style() == "nightmare"
+        result.language() == "en"
+        result.summary() == "A huge dog was chasing me through my old house."
+        result.interpretation().contains("chased")
+    }
+
+    def "should leave out tags the user already gave"() {
+        expect:
+        !analyze("Sea", "Swimming in the sea with dolphins", ["water"], null).tags().contains("water")
+    }
+
+    def "should recognize Polish dreams by words and diacritics"() {
+        when:
+        def result = analyze("Lot", "Znowu leciałem nad morzem i byłem bardzo szczęśliwy.", [], Mood.POSITIVE)
+
+        then:
+        result.language() == "pl"
+        result.recurring()
+        result.tags().containsAll(["flying", "water"])
+        result.emotions().joy > 0.5
+    }
+
+    def "should classify lucid dreams and short fragments"() {
+        expect:
+        analyze("Lucid", "I knew I was dreaming", [], null, true).style() == "lucid"
+        analyze("Fragment", "A red door", [], null).style() == "fragment"
+        analyze("Fragment", "A red door", [], null).interpretation() == "No common dream symbols were recognized."
+    }
+
+    def "should cut a long first sentence to the summary length"() {
+        expect:
+        RuleBasedDreamAnalyzer.summarize("word " * 100).length() == RuleBasedDreamAnalyzer.MAX_SUMMARY_LENGTH
+        RuleBasedDreamAnalyzer.summarize("First.  Second.") == "First."
+    }
+
+    def "should return a result for every dream of the batch"() {
+        given:
+        def requests = (1..3).collect { new AnalysisRequest(UUID.randomUUID(), "Dream", "Content $it", [], null, null, false) }
+
+        expect:
+        analyzer.analyze(requests).keySet() == requests*.dreamId() as Set
+    }
+
+    private AnalysisResult analyze(String title, String content, List<String> tags, Mood mood, boolean lucid = false) {
+        analyzer.analyze(new AnalysisRequest(UUID.randomUUID(), title, content, tags, mood, null, lucid))
+    }
+}
@@ -1,10 +1,12 @@
 package pl.kalin.dreamlog.dream.controller
 
+import com.fasterxml.jackson.databind.ObjectMapper
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.boot.test.web.client.TestRestTemplate
 import org.springframework.boot.test.web.server.LocalServerPort
 import org.springframework.http.HttpMethod
 import org.springframework.http.HttpStatus
+import org.springframework.http.MediaType
 import org.springframework.http.ResponseEntity
 import org.springframework.util.LinkedMultiValueMap
 import pl.kalin.dreamlog.IntegrationSpec
@@ -188,6 +190,168 @@ class DreamControllerIntegrationSpec extends IntegrationSpec {
         response.body.number == 0
     }
 
+    def "should page through dreams with cursor without total count"() {
+        given: "a user with 5 dreams on different dates"
+        def client = new DreamClient(restTemplate, baseUrl())
+        client.registerAndLogin("user@example.com", "Password123", "User")
+        (1..5).each { day ->
+            client.createDream([date     : LocalDate.now().minusDays(day).format(DateTimeFormatter.ISO_LOCAL_DATE),
+                                title    : "Dream ${day}", content: "Content ${day}",
+                                vividness: 5, lucid: false, tags: []])
+        }
+
+        when: "fetching the first slice of 2"
+        def first = client.getDreamsByCursor("", 2)
+
+        then: "newest dreams are returned with a cursor and no count"
+        first.statusCode == HttpStatus.OK
+        first.body.content*.title == ["Dream 1", "Dream 2"]
+        first.body.hasNext == true
+        first.body.nextCursor != null
+        !first.body.containsKey("totalElements")
+
+        when: "following the cursor to the end"
+        def second = client.getDreamsByCursor(first.body.nextCursor, 2)
+        def third = client.getDreamsByCursor(second.body.nextCursor, 2)
+
+        then: "remaining dreams come in order and the last slice has no cursor"
+        second.body.content*.title == ["Dream 3", "Dream 4"]
+        third.body.content*.title == ["Dream 5"]
+        third.body.hasNext == false
+        third.body.nextCursor == null
+    }
+
+    def "should return dream summaries with preview instead of content"() {
+        given: "a user with a long dream"
+        def client = new DreamClient(restTemplate, baseUrl())
+        client.registerAndLogin("user@example.com", "Password123", "User")
+        def longContent = "I was flying over endless mountains. " * 20
+        client.createDream([date     : LocalDate.now().format(DateTimeFormatter.ISO_LOCAL_DATE),
+                            title    : "Mountain flight", content: longContent,
+                            vividness: 7, lucid: true, tags: ["flying"]])
+
+        when: "fetching the summary view of the list"
+        def list = client.getDreamSummaries()
+
+        then: "summary carries a bounded preview and no content"
+        list.statusCode == HttpStatus.OK
+        list.body.totalElements == 1
+        def summary = list.body.content[0]
+        summary.title == "Mountain flight"
+        summary.preview.length() <= 200
+        summary.preview.startsWith("I was flying over endless mountains.")
+        !summary.containsKey("content")
+        summary.tags == ["flying"]
+        summary.lucid == true
+
+        when: "searching with the summary view"
+        def search = client.searchDreamSummaries("mountains")
+
+        then: "search returns the same summary"
+        search.statusCode == HttpStatus.OK
+        search.body*.title == ["Mountain flight"]
+        !search.body[0].containsKey("content")
+    }
+
+    def "should not serve stale search results after dreams change"() {
+        given: "a user whose search for 'ocean' was already answered"
+        def client = new DreamClient(restTemplate, baseUrl())
+        client.registerAndLogin("user@example.com", "Password123", "User")
+        def today = LocalDate.now().format(DateTimeFormatter.ISO_LOCAL_DATE)
+        def created = client.createDream([date: today, title: "Ocean", content: "Swimming in the ocean",
+                                          vividness: 5, lucid: false])
+        assert client.searchDreams("ocean").body*.title == ["Ocean"]
+
+        when: "another matching dream is added"
+        client.createDream([date: today, title: "Deep ocean", content: "Diving deep into the ocean",
+                            vividness: 5, lucid: false])
+
+        then: "search sees it"
+        client.searchDreams("ocean").body*.title.sort() == ["Deep ocean", "Ocean"]
+
+        when: "the first dream is deleted"
+        client.deleteDream(created.body.id as String)
+
+        then: "search no longer returns it"
+        client.searchDreams("ocean").body*.title == ["Deep ocean"]
+    }
+
+    def "should export only user's own dreams as NDJSON"() {
+        given: "two users with dreams"
+        def user1 = new DreamClient(restTemplate, baseUrl())
+        user1.registerAndLogin("user1@example.com", "Password123", "User One")
+        user1.createDream([date     : LocalDate.now().minusDays(1).format(DateTimeFormatter.ISO_LOCAL_DATE),
+                           title    : "Older", content: "Walking through a forest",
+                           vividness: 4, lucid: false, tags: ["forest", "calm"]])
+        user1.createDream([date     : LocalDate.now().format(DateTimeFormatter.ISO_LOCAL_DATE),
+                           title    : "Newer", content: "Flying over the sea",
+                           moodInDream: "POSITIVE", vividness: 9, lucid: true, tags: []])
+
+        def user2 = new DreamClient(restTemplate, baseUrl())
+        user2.registerAndLogin("user2@example.com", "Password123", "User Two")
+        user2.createDream([date     : LocalDate.now().format(DateTimeFormatter.ISO_LOCAL_DATE),
+                           title    : "Not mine", content: "Someone else's dream",
+                           vividness: 1, lucid: false])
+
+        when: "user1 exports the journal"
+        def export = user1.exportDreams()
+
+        then: "one JSON line per own dream, newest first, with full content and tags"
+        export.status == HttpStatus.OK
+        export.contentType.startsWith("application/x-ndjson")
+        export.lines.size() == 2
+        def dreams = export.lines.collect { new ObjectMapper().readValue(it, Map) }
+        dreams*.title == ["Newer", "Older"]
+        dreams[0].content == "Flying over the sea"
+        dreams[0].moodInDream == "POSITIVE"
+        dreams[0].lucid == true
+        dreams[0].tags == []
+        dreams[1].tags.sort() == ["calm", "forest"]
+    }
+
+    def "should order tags the same way in full, summary and exported dreams"() {
+        given: "a dream with mixed-case and accented tags"
+        def client = new DreamClient(restTemplate, baseUrl())
+        client.registerAndLogin("user@example.com", "Password123", "User")
+        def dreamId = client.createDream([date     : LocalDate.now().format(DateTimeFormatter.ISO_LOCAL_DATE),
+                                          title    : "Journey", content: "Travelling across the country",
+                                          vividness: 5, lucid: false,
+                                          tags     : ["wisła", "Polska", "łódź", "Żaba", "apple", "Zebra"]]).body.id
+
+        when:
+        def full = client.getDreamById(dreamId).body.tags
+        def summary = client.getDreamSummaries().body.content[0].tags
+        def exported = new ObjectMapper().readValue(client.exportDreams().lines[0], Map).tags
+
+        then: "code point order everywhere, not the database collation's"
+        full == ["Polska", "Zebra", "apple", "wisła", "łódź", "Żaba"]
+        summary == full
+        exported == full
+    }
+
+    def "should reject sort by property without index"() {
+        given: "a logged in user"
+        def client = new DreamClient(restTemplate, baseUrl())
+        client.registerAndLogin("user@example.com", "Password123", "User")
+
+        when: "sorting by content"
+        def response = client.getDreams(0, 20, "content,asc")
+
+        then: "request is rejected"
+        response.statusCode == HttpStatus.BAD_REQUEST
+    }
+
+    def "should reject malformed cursor"() {
+        given: "a logged in user"
+        def client = new DreamClient(restTemplate, baseUrl())
+        client.registerAndLogin("user@example.com", "Password123", "User")
+
+        when: "sending a cursor that was not issued by the server"
+        def response = client.getDreamsByCursor("not-a-cursor", 20)
+
+        then: "request is rejected"
+        response.statusCode == HttpStatus.BAD_REQUEST
+    }
 
     // ============================================================================
     // Get Single Dream Tests - Authorization
@@ -317,6 +481,95 @@ class DreamControllerIntegrationSpec extends IntegrationSpec {
         verification.body.content == "Original"
     }
 
+    // ============================================================================
+    // Patch Dream Tests (JSON Merge Patch, If-Match)
+    // ============================================================================
+
+    def "should patch only the sent members of a dream"() {
+        given: "a user with a dream"
+        def client = new DreamClient(restTemplate, baseUrl())
+        client.registerAndLogin("patch@example.com", "Password123", "Patcher")
+        def dreamId = client.createDream([
+            date       : LocalDate.now().format(DateTimeFormatter.ISO_LOCAL_DATE),
+            title      : "Patched Dream",
+            content    : "Content that is not resent",
+            moodInDream: "NEUTRAL",
+            vividness  : 5,
+            lucid      : false,
+            tags       : ["keep"]
+        ]).body.id
+        def etag = client.getDreamById(dreamId).headers.getETag()
+
+        when: "patching the mood with the current ETag"
+        def response = client.patchDream(dreamId, [moodInDream: "POSITIVE"], etag)
+
+        then: "204 with the dream's new ETag"
+        response.statusCode == HttpStatus.NO_CONTENT
+        response.headers.getETag()
+        response.headers.getETag() != etag
+
+        and: "only the mood changed"
+        def dream = client.getDreamById(dreamId)
+        dream.headers.getETag() == response.headers.getETag()
+        dream.body.moodInDream == "POSITIVE"
+        dream.body.title == "Patched Dream"
+        dream.body.content == "Content that is not resent"
+        dream.body.tags == ["keep"]
+
+        when: "another device patches with the old ETag"
+        def stale = client.patchDream(dreamId, [lucid: true], etag)
+
+        then: "409 and nothing is overwritten"
+        stale.statusCode == HttpStatus.CONFLICT
+        !client.getDreamById(dreamId).body.lucid
+
+        when: "a patch would remove the title"
+        def invalid = client.patchDream(dreamId, [title: null])
+
+        then:
+        invalid.statusCode == HttpStatus.BAD_REQUEST
+        invalid.body.error == "Title is required"
+    }
+
+    def "should reject a patch with an unknown member"() {
+        given: "a user with a dream"
+        def client = new DreamClient(restTemplate, baseUrl())
+        client.registerAndLogin("typo@example.com", "Password123", "Typo")
+        def dreamId = client.createDream([
+            date   : LocalDate.now().format(DateTimeFormatter.ISO_LOCAL_DATE),
+            title  : "Original",
+            content: "Content"
+        ]).body.id
+
+        when: "patching a misspelled member"
+        def response = client.patchDream(dreamId, [titel: "x"])
+
+        then: "400 and the dream is unchanged"
+        response.statusCode == HttpStatus.BAD_REQUEST
+        response.body.error == "Unknown member: titel"
+        client.getDreamById(dreamId).body.title == "Original"
+    }
+
+    def "should deny patching dream belonging to other user"() {
+        given:
+        def user1 = new DreamClient(restTemplate, baseUrl())
+        user1.registerAndLogin("user1@example.com", "Password123", "User One")
+        def dreamId = user1.createDream([
+            date   : LocalDate.now().format(DateTimeFormatter.ISO_LOCAL_DATE),
+            title  : "Private Dream",
+            content: "Private content"
+        ]).body.id
+        def user2 = new DreamClient(restTemplate, baseUrl())
+        user2.registerAndLogin("user2@example.com", "Password123", "User Two")
+
+        when:
+        def response = user2.patchDream(dreamId, [title: "Hacked"])
+
+        then:
+        response.statusCode == HttpStatus.FORBIDDEN
+        user1.getDreamById(dreamId).body.title == "Private Dream"
+    }
+
     // ============================================================================
     // Delete Dream Tests - Authorization
     // ============================================================================
@@ -380,6 +633,146 @@ class DreamControllerIntegrationSpec extends IntegrationSpec {
         verification.body.title == "User1 Important Dream"
     }
 
+    // ============================================================================
+    // SQL Statement Budget Tests (X-Sql-Statement-Count)
+    // ============================================================================
+
+    def "should list #dreamCount dreams with the same number of SQL statements"() {
+        given: "a user with dreams that have tags"
+        def client = new DreamClient(restTemplate, baseUrl())
+        client.registerAndLogin("statements@example.com", "Password123", "Statements")
+        dreamCount.times { i ->
+            client.createDream([
+                date     : LocalDate.now().minusDays(i).format(DateTimeFormatter.ISO_LOCAL_DATE),
+                title    : "Dream ${i}".toString(),
+                content  : "Content ${i}".toString(),
+                vividness: 5,
+                lucid    : false,
+                tags     : ["tag${i}".toString(), "common"]
+            ])
+        }
+
+        when: "fetching the first page"
+        def dreams = client.getDreams()
+
+        then: "list version, page query and one batched tag query, no count query for a short first page"
+        dreams.body.content.size() == dreamCount
+        client.lastSqlStatementCount() == 3
+
+        when: "fetching the first page of summaries"
+        def summaries = client.getDreamSummaries()
+
+        then: "list version, summary query and one tag query"
+        summaries.body.content.size() == dreamCount
+        client.lastSqlStatementCount() == 3
+
+        where:
+        dreamCount << [1, 10]
+    }
+
+    def "should get dream by ID with three SQL statements"() {
+        given: "a user with a tagged dream"
+        def client = new DreamClient(restTemplate, baseUrl())
+        client.registerAndLogin("statements@example.com", "Password123", "Statements")
+        def created = client.createDream([
+            date     : LocalDate.now().format(DateTimeFormatter.ISO_LOCAL_DATE),
+            title    : "Tagged Dream",
+            content  : "Tagged content",
+            vividness: 5,
+            lucid    : false,
+            tags     : ["one", "two"]
+        ])
+
+        when: "fetching the dream"
+        def response = client.getDreamById(created.body.id)
+
+        then: "dream version, dream query and tag query (the current user is cached)"
+        response.body.tags == ["one", "two"]
+        client.lastSqlStatementCount() == 3
+    }
+
+    // ============================================================================
+    // Conditional GET Tests (ETag / If-None-Match)
+    // ============================================================================
+
+    def "should answer an unchanged dream with 304 until it changes"() {
+        given: "a user with a tagged dream fetched once"
+        def client = new DreamClient(restTemplate, baseUrl())
+        client.registerAndLogin("etag@example.com", "Password123", "ETag")
+        def dream = [
+            date     : LocalDate.now().format(DateTimeFormatter.ISO_LOCAL_DATE),
+            title    : "Cached Dream",
+            content  : "Cached content",
+            vividness: 5,
+            lucid    : false,
+            tags     : ["one"]
+        ]
+        def dreamId = client.createDream(dream).body.id
+        def first = client.getDreamById(dreamId)
+
+        expect: "the response carries an ETag and may be cached only with revalidation"
+        first.headers.getETag()
+        first.headers.getCacheControl().contains("no-cache")
+
+        when: "fetching it again with the ETag"
+        def cached = client.getDreamById(dreamId, first.headers.getETag())
+
+        then: "304 without a body, answered by the version lookup alone"
+        cached.statusCode == HttpStatus.NOT_MODIFIED
+        cached.body == null
+        cached.headers.getETag() == first.headers.getETag()
+        client.lastSqlStatementCount() == 1
+
+        when: "only its tags change"
+        client.updateDream(dreamId, dream + [tags: ["one", "two"]])
+        def changed = client.getDreamById(dreamId, first.headers.getETag())
+
+        then: "the new dream comes back with a new ETag"
+        changed.statusCode == HttpStatus.OK
+        changed.body.tags == ["one", "two"]
+        changed.headers.getETag() != first.headers.getETag()
+    }
+
+    def "should answer an unchanged dream list with 304 until the user's dreams change"() {
+        given: "two users with one dream each"
+        def user1 = new DreamClient(restTemplate, baseUrl())
+        user1.registerAndLogin("user1@example.com", "Password123", "User One")
+        def dream = [
+            date     : LocalDate.now().format(DateTimeFormatter.ISO_LOCAL_DATE),
+            title    : "Listed Dream",
+            content  : "Listed content",
+            vividness: 5,
+            lucid    : false,
+            tags     : []
+        ]
+        user1.createDream(dream)
+        def user2 = new DreamClient(restTemplate, baseUrl())
+        user2.registerAndLogin("user2@example.com", "Password123", "User Two")
+        user2.createDream(dream)
+
+        and: "user1 fetched their list"
+        def first = user1.getDreams()
+
+        when: "fetching the list again with the ETag"
+        def cached = user1.getDreams(first.headers.getETag())
+
+        then: "304 after a single version lookup"
+        cached.statusCode == HttpStatus.NOT_MODIFIED
+        user1.lastSqlStatementCount() == 1
+
+        and: "the other user's list is not validated by it"
+        user2.getDreams(first.headers.getETag()).statusCode == HttpStatus.OK
+
+        when: "user1 adds a dream"
+        user1.createDream(dream)
+        def changed = user1.getDreams(first.headers.getETag())
+
+        then: "the full list comes back with a new ETag"
+        changed.statusCode == HttpStatus.OK
+        changed.body.content.size() == 2
+        changed.headers.getETag() != first.headers.getETag()
+    }
+
     // ============================================================================
     // Helper Class - DreamClient
     // ============================================================================
@@ -423,14 +816,94 @@ class DreamControllerIntegrationSpec extends IntegrationSpec {
             return get(url, Map)
         }
 
+        ResponseEntity<Map> getDreams(String etag) {
+            return getIfNoneMatch("/api/dreams", etag, Map)
+        }
+
+        ResponseEntity<Map> getDreamsByCursor(String cursor, int size = 20) {
+            return get("/api/dreams?cursor=${cursor}&size=${size}", Map)
+        }
+
+        ResponseEntity<Map> getDreamSummaries(int page = 0, int size = 20) {
+            return get("/api/dreams?view=summary&page=${page}&size=${size}", Map)
+        }
+
+        ResponseEntity<List> searchDreamSummaries(String query) {
+            return get("/api/dreams/search?view=summary&query=${query}", List)
+        }
+
+        ResponseEntity<List> searchDreams(String query) {
+            return get("/api/dreams/search?query=${query}", List)
+        }
+
+        ResponseEntity<List> getSimilarDreams(String dreamId, int limit = 10) {
+            return get("/api/dreams/${dreamId}/similar?limit=${limit}", List)
+        }
+
+        ResponseEntity<List> searchSemantic(String query) {
+            return get("/api/dreams/search/semantic?query=${query}", List)
+        }
+
+        ResponseEntity<List> suggestTags(String prefix, int limit = 10) {
+            return get("/api/tags/suggest?prefix=${prefix}&limit=${limit}", List)
+        }
+
+        /**
+         * Export the journal, reading it line by line (gzip is negotiated and decoded by the HTTP client).
+         */
+        Map exportDreams() {
+            return stream("/api/dreams/export") { response ->
+                [status     : response.statusCode,
+                 contentType: response.headers.getFirst("Content-Type"),
+                 lines      : response.body.newReader("UTF-8").readLines()]
+            }
+        }
+
+        /**
+         * Export the journal without keeping it: counts lines and keeps only the first one.
+         */
+        Map countExportedDreams() {
+            return stream("/api/dreams/export") { response ->
+                long count = 0
+                String first = null
+                response.body.newReader("UTF-8").eachLine { line ->
+                    if (first == null) {
+                        first = line
+                    }
+                    count++
+                }
+                [status: response.statusCode, count: count, first: first]
+            }
+        }
+
+        ResponseEntity<Map> importDreams(String body, String contentType) {
+            return postText("/api/dreams/import", body, MediaType.parseMediaType(contentType + ";charset=UTF-8"), Map)
+        }
+
+        /**
+         * Session cookie as a {@code Cookie} header value, for driving load with another HTTP client.
+         */
+        String sessionCookie() {
+            def session = cookieStore().cookies.find { it.name == "JSESSIONID" }
+            return "${session.name}=${session.value}"
+        }
+
         ResponseEntity<Map> getDreamById(String dreamId) {
             return get("/api/dreams/${dreamId}", Map)
         }
 
+        ResponseEntity<Map> getDreamById(String dreamId, String etag) {
+            return getIfNoneMatch("/api/dreams/${dreamId}", etag, Map)
+        }
+
         ResponseEntity<Map> updateDream(String dreamId, Map dream) {
             return json(HttpMethod.PUT, "/api/dreams/${dreamId}", dream, Map)
         }
 
+        ResponseEntity<Map> patchDream(String dreamId, Map patch, String etag = null) {
+            return mergePatch("/api/dreams/${dreamId}", patch, etag, Map)
+        }
+
         ResponseEntity<Void> deleteDream(String dreamId) {
             return delete("/api/dreams/${dreamId}", Void)
         }
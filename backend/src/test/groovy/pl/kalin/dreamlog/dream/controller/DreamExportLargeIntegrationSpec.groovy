@@ -0,0 +1,74 @@
+package pl.kalin.dreamlog.dream.controller
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.web.client.TestRestTemplate
+import org.springframework.boot.test.web.server.LocalServerPort
+import org.springframework.http.HttpStatus
+import org.springframework.jdbc.core.JdbcTemplate
+import pl.kalin.dreamlog.IntegrationSpec
+import pl.kalin.dreamlog.dream.controller.DreamControllerIntegrationSpec.DreamClient
+import pl.kalin.dreamlog.dream.repository.DreamEntryRepository
+import pl.kalin.dreamlog.user.UserRepository
+import spock.lang.Requires
+import spock.lang.Tag
+
+/**
+ * Exports an account far bigger than the heap allows to materialise.
+ * Run with {@code ./gradlew largeTest} (256 MB heap); excluded from the regular test task.
+ */
+@Tag("large")
+@Requires({ Runtime.runtime.maxMemory() <= 512L * 1024 * 1024 })
+class DreamExportLargeIntegrationSpec extends IntegrationSpec {
+
+    // ~5 KB of content each: ~100 MB of text, several times that once held as entities and DTOs
+    static final int DREAM_COUNT = 20_000
+
+    @LocalServerPort
+    int port
+
+    @Autowired
+    TestRestTemplate restTemplate
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    DreamEntryRepository dreamRepository
+
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    def setup() {
+        dreamRepository.deleteAll()
+        userRepository.deleteAll()
+    }
+
+    def "should stream a large journal under a small heap"() {
+        given: "a user with a large journal generated in the database"
+        def client = new DreamClient(restTemplate, "http://localhost:${port}")
+        client.registerAndLogin("archivist@example.com", "Password123", "Archivist")
+        def userId = userRepository.findByEmail("archivist@example.com").get().id
+        jdbcTemplate.update("""
+            INSERT INTO dream_entry (user_id, date, title, content, content_preview, vividness, lucid)
+            SELECT ?, current_date - (g % 3650), 'Dream ' || g, repeat('I was walking through a long corridor. ', 128),
+                   'I was walking through a long corridor.', g % 11, g % 2 = 0
+            FROM generate_series(1, ?) g
+            """, userId, DREAM_COUNT)
+        jdbcTemplate.update("""
+            INSERT INTO dream_entry_tags (dream_entry_id, tag)
+            SELECT d.id, t.tag FROM dream_entry d CROSS JOIN (VALUES ('corridor'), ('recurring')) t(tag)
+            WHERE d.user_id = ?
+            """, userId)
+
+        when: "exporting the whole journal"
+        def export = client.countExportedDreams()
+
+        then: "every dream is streamed with its tags"
+        export.status == HttpStatus.OK
+        export.count == DREAM_COUNT
+        def first = new ObjectMapper().readValue(export.first, Map)
+        first.content.startsWith("I was walking through a long corridor.")
+        first.tags.sort() == ["corridor", "recurring"]
+    }
+}
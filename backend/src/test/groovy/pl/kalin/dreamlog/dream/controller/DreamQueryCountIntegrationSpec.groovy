@@ -0,0 +1,170 @@
+package pl.kalin.dreamlog.dream.controller
+
+import jakarta.persistence.EntityManagerFactory
+import org.hibernate.SessionFactory
+import org.hibernate.stat.Statistics
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.boot.test.web.client.TestRestTemplate
+import org.springframework.boot.test.web.server.LocalServerPort
+import org.springframework.http.HttpStatus
+import pl.kalin.dreamlog.IntegrationSpec
+import pl.kalin.dreamlog.dream.controller.DreamControllerIntegrationSpec.DreamClient
+import pl.kalin.dreamlog.dream.repository.DreamEntryRepository
+import pl.kalin.dreamlog.user.UserRepository
+
+import java.time.LocalDate
+import java.time.format.DateTimeFormatter
+
+/**
+ * Guards read endpoints against N+1 queries.
+ * Counts JDBC statements prepared by Hibernate while serving a request; the count must not
+ * depend on how many dreams (and tags) the response contains.
+ */
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = "spring.jpa.properties.hibernate.generate_statistics=true"
+)
+class DreamQueryCountIntegrationSpec extends IntegrationSpec {
+
+    @LocalServerPort
+    int port
+
+    @Autowired
+    TestRestTemplate restTemplate
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    DreamEntryRepository dreamRepository
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory
+
+    DreamClient client
+
+    String baseUrl() {
+        "http://localhost:${port}"
+    }
+
+    def setup() {
+        dreamRepository.deleteAll()
+        userRepository.deleteAll()
+
+        client = new DreamClient(restTemplate, baseUrl())
+        client.registerAndLogin("counter@example.com", "Password123", "Counter")
+        (1..10).each { i ->
+            client.createDream([
+                date     : LocalDate.now().minusDays(i).format(DateTimeFormatter.ISO_LOCAL_DATE),
+                title    : "Flying dream ${i}",
+                content  : "I was flying over the city number ${i}",
+                vividness: 5,
+                lucid    : false,
+                tags     : ["flying", "city-${i}"]
+            ])
+        }
+        // Warm up the current user cache so it doesn't skew the counts
+        client.getDreams()
+    }
+
+    def "should list a page of dreams with tags in a constant number of statements"() {
+        given: "clean statistics"
+        statistics().clear()
+
+        when: "fetching the first page"
+        def response = client.getDreams(0, 20)
+
+        then: "all dreams come back with their tags"
+        response.statusCode == HttpStatus.OK
+        response.body.content.size() == 10
+        response.body.content.every { it.tags.size() == 2 }
+
+        and: "page query, count query and one batched tag query"
+        statistics().prepareStatementCount == 3
+    }
+
+    def "should list a keyset slice of dreams in a constant number of statements"() {
+        given: "clean statistics"
+        statistics().clear()
+
+        when: "fetching the first slice"
+        def response = client.getDreamsByCursor("", 20)
+
+        then: "all dreams come back with their tags"
+        response.statusCode == HttpStatus.OK
+        response.body.content.size() == 10
+
+        and: "slice query and one batched tag query"
+        statistics().prepareStatementCount == 2
+    }
+
+    def "should search dreams with tags in a constant number of statements"() {
+        given: "clean statistics"
+        statistics().clear()
+
+        when: "searching for a word present in every dream"
+        def response = client.searchDreams("flying")
+
+        then: "every dream matches with its tags"
+        response.statusCode == HttpStatus.OK
+        response.body.size() == 10
+        response.body.every { it.tags.size() == 2 }
+
+        and: "ID search, dreams by ID and one batched tag query"
+        statistics().prepareStatementCount == 3
+    }
+
+    def "should serve a repeated search from cache with a load by ID"() {
+        given: "a search already cached"
+        client.searchDreams("flying")
+        statistics().clear()
+
+        when: "searching again"
+        def response = client.searchDreams("Flying")
+
+        then: "the same dreams come back"
+        response.statusCode == HttpStatus.OK
+        response.body.size() == 10
+        response.body.every { it.tags.size() == 2 }
+
+        and: "dreams by ID and one batched tag query, no search query"
+        statistics().prepareStatementCount == 2
+    }
+
+    def "should list dream summaries in a constant number of statements"() {
+        given: "clean statistics"
+        statistics().clear()
+
+        when: "fetching the summary view"
+        def response = client.getDreamSummaries(0, 20)
+
+        then: "all summaries come back with their tags"
+        response.statusCode == HttpStatus.OK
+        response.body.content.size() == 10
+        response.body.content.every { it.tags.size() == 2 }
+
+        and: "projection query, count query and one tag query"
+        statistics().prepareStatementCount == 3
+    }
+
+    def "should search dream summaries in a constant number of statements"() {
+        given: "clean statistics"
+        statistics().clear()
+
+        when: "searching with the summary view"
+        def response = client.searchDreamSummaries("flying")
+
+        then: "every dream matches with its tags"
+        response.statusCode == HttpStatus.OK
+        response.body.size() == 10
+        response.body.every { it.tags.size() == 2 }
+
+        and: "ID search, projection query and one tag query"
+        statistics().prepareStatementCount == 3
+    }
+
+    private Statistics statistics() {
+        entityManagerFactory.unwrap(SessionFactory).statistics
+    }
+}
@@ -0,0 +1,185 @@
+package pl.kalin.dreamlog.dream.controller
+
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.web.client.TestRestTemplate
+import org.springframework.boot.test.web.server.LocalServerPort
+import org.springframework.http.HttpStatus
+import org.springframework.jdbc.core.JdbcTemplate
+import pl.kalin.dreamlog.IntegrationSpec
+import pl.kalin.dreamlog.dream.controller.DreamControllerIntegrationSpec.DreamClient
+import pl.kalin.dreamlog.dream.repository.DreamEntryRepository
+import pl.kalin.dreamlog.dream.similar.HashingDreamEncoder
+import pl.kalin.dreamlog.dream.similar.SimilarDreamService
+import pl.kalin.dreamlog.user.UserRepository
+
+import java.time.LocalDate
+import java.time.format.DateTimeFormatter
+
+/**
+ * Integration tests for semantic similar-dream search: embeddings stored in dream_embedding
+ * and served from the memory-mapped HNSW index.
+ */
+class SimilarDreamIntegrationSpec extends IntegrationSpec {
+
+    @LocalServerPort
+    int port
+
+    @Autowired
+    TestRestTemplate restTemplate
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    DreamEntryRepository dreamRepository
+
+    @Autowired
+    SimilarDreamService similarDreamService
+
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    DreamClient client
+
+    String baseUrl() {
+        "http://localhost:${port}"
+    }
+
+    def setup() {
+        dreamRepository.deleteAll()
+        userRepository.deleteAll()
+        client = new DreamClient(restTemplate, baseUrl())
+        client.registerAndLogin("similar@example.com", "Password123", "Similar")
+    }
+
+    def "should find dreams similar to a dream, most similar first"() {
+        given: "two dreams about flying over the sea and one about teeth"
+        def flying = createDream("Flying over the sea", "I was flying high over the ocean waves with seagulls", ["flying"])
+        def gliding = createDream("Gliding above the ocean", "Flying above the sea, waves below me, seagulls around", ["flying"])
+        createDream("Teeth falling out", "My teeth crumbled one by one in a dentist office", ["teeth"])
+
+        when: "asking for dreams similar to the first one"
+        def response = client.getSimilarDreams(flying)
+
+        then: "the other flying dream comes first and the dream itself is left out"
+        response.statusCode == HttpStatus.OK
+        response.body.first().dream.id == gliding
+        response.body*.dream*.id.every { it != flying }
+        response.body.first().similarity > response.body.last().similarity
+    }
+
+    def "should store a quantized embedding for every dream"() {
+        when: "a dream is created"
+        def id = createDream("Lucid castle", "I realized I was dreaming inside a castle", [])
+
+        then: "its embedding is stored with the model name"
+        def row = jdbcTemplate.queryForMap("SELECT model, length(vector) AS bytes FROM dream_embedding WHERE dream_id = ?::uuid", id)
+        row.model == HashingDreamEncoder.MODEL
+        row.bytes == HashingDreamEncoder.DIMENSIONS
+    }
+
+    def "should search dreams by meaning of free text"() {
+        given:
+        def ocean = createDream("Swimming", "Swimming deep in the ocean with dolphins", [])
+        createDream("Exam", "I forgot about the exam at school", [])
+
+        when:
+        def response = client.searchSemantic("dolphins in the ocean")
+
+        then:
+        response.statusCode == HttpStatus.OK
+        response.body.first().dream.id == ocean
+    }
+
+    def "should not return deleted dreams"() {
+        given:
+        def flying = createDream("Flying", "Flying over the city at night", [])
+        def other = createDream("Flying again", "Flying over the city in the morning", [])
+
+        when: "one dream is deleted"
+        client.deleteDream(other)
+
+        then:
+        client.getSimilarDreams(flying).body.every { it.dream.id != other }
+    }
+
+    def "should deny similar dreams of another user's dream"() {
+        given:
+        def id = createDream("Private", "A private dream about a forest", [])
+        def intruder = new DreamClient(restTemplate, baseUrl())
+        intruder.registerAndLogin("intruder@example.com", "Password123", "Intruder")
+
+        expect: "error bodies are objects, not lists"
+        intruder.get("/api/dreams/${id}/similar", Map).statusCode == HttpStatus.FORBIDDEN
+    }
+
+    def "should keep serving results after the index is rebuilt from stored embeddings"() {
+        given:
+        def flying = createDream("Flying over the sea", "Flying over the ocean waves", [])
+        def gliding = createDream("Gliding over the sea", "Gliding over the ocean waves", [])
+
+        when:
+        similarDreamService.rebuild()
+
+        then:
+        client.getSimilarDreams(flying).body*.dream*.id == [gliding]
+    }
+
+    def "should apply embeddings written by another node on flush"() {
+        given:
+        def flying = createDream("Flying over the sea", "Flying over the ocean waves", [])
+        def gliding = createDream("Gliding over the sea", "Gliding over the ocean waves", [])
+
+        and: "a dream and its embedding written by another node"
+        def copy = UUID.randomUUID()
+        jdbcTemplate.update("""
+            INSERT INTO dream_entry (id, user_id, date, title, content, content_preview, vividness, lucid)
+            SELECT ?, user_id, date, 'Gliding again', content, content_preview, vividness, lucid
+            FROM dream_entry WHERE id = ?::uuid""", copy, gliding)
+        jdbcTemplate.update("""
+            INSERT INTO dream_embedding (dream_id, model, vector, updated_at)
+            SELECT ?, model, vector, NOW() FROM dream_embedding WHERE dream_id = ?::uuid""", copy, gliding)
+
+        expect:
+        client.getSimilarDreams(flying).body*.dream*.id == [gliding]
+
+        when:
+        similarDreamService.flush()
+
+        then:
+        client.getSimilarDreams(flying).body*.dream*.id as Set == [gliding, copy.toString()] as Set
+    }
+
+    def "should keep applying changes after repeated rebuilds"() {
+        given:
+        def flying = createDream("Flying over the sea", "Flying over the ocean waves", [])
+        similarDreamService.rebuild()
+        similarDreamService.rebuild()
+
+        when:
+        def gliding = createDream("Gliding over the sea", "Gliding over the ocean waves", [])
+
+        then: "the swapped-in index is open and receives new dreams"
+        client.getSimilarDreams(flying).body*.dream*.id == [gliding]
+    }
+
+    def "should reject a limit out of range"() {
+        given:
+        def id = createDream("Any", "Any dream content", [])
+
+        expect: "error bodies are objects, not lists"
+        client.get("/api/dreams/${id}/similar?limit=0", Map).statusCode == HttpStatus.BAD_REQUEST
+        client.get("/api/dreams/${id}/similar?limit=51", Map).statusCode == HttpStatus.BAD_REQUEST
+    }
+
+    private String createDream(String title, String content, List<String> tags) {
+        client.createDream([
+            date     : LocalDate.now().format(DateTimeFormatter.ISO_LOCAL_DATE),
+            title    : title,
+            content  : content,
+            vividness: 5,
+            lucid    : false,
+            tags     : tags
+        ]).body.id
+    }
+}
@@ -0,0 +1,107 @@
+package pl.kalin.dreamlog.dream.controller
+
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.web.client.TestRestTemplate
+import org.springframework.boot.test.web.server.LocalServerPort
+import org.springframework.http.HttpStatus
+import pl.kalin.dreamlog.IntegrationSpec
+import pl.kalin.dreamlog.dream.controller.DreamControllerIntegrationSpec.DreamClient
+import pl.kalin.dreamlog.dream.repository.DreamEntryRepository
+import pl.kalin.dreamlog.user.UserRepository
+
+import java.time.LocalDate
+import java.time.format.DateTimeFormatter
+
+/**
+ * Integration tests for tag autocomplete.
+ */
+class TagControllerIntegrationSpec extends IntegrationSpec {
+
+    @LocalServerPort
+    int port
+
+    @Autowired
+    TestRestTemplate restTemplate
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    DreamEntryRepository dreamRepository
+
+    DreamClient client
+
+    String baseUrl() {
+        "http://localhost:${port}"
+    }
+
+    def setup() {
+        dreamRepository.deleteAll()
+        userRepository.deleteAll()
+        client = new DreamClient(restTemplate, baseUrl())
+        client.registerAndLogin("tags@example.com", "Password123", "Tags")
+    }
+
+    def "should suggest the user's tags by prefix, most used first, ignoring accents"() {
+        given:
+        createDream(["flying", "forest"])
+        createDream(["flying", "Łódź"])
+
+        when:
+        def response = client.suggestTags("f")
+
+        then:
+        response.statusCode == HttpStatus.OK
+        response.body == [[tag: "flying", count: 2], [tag: "forest", count: 1]]
+        client.suggestTags("lod").body*.tag == ["Łódź"]
+    }
+
+    def "should pick up tags of new, edited and deleted dreams"() {
+        given:
+        def id = createDream(["owl"])
+        assert client.suggestTags("o").body*.tag == ["owl"]
+
+        when:
+        client.updateDream(id, dream(["otter"]))
+
+        then:
+        client.suggestTags("o").body*.tag == ["otter"]
+
+        when:
+        client.deleteDream(id)
+
+        then:
+        client.suggestTags("").body.isEmpty()
+    }
+
+    def "should not suggest tags of other users"() {
+        given:
+        createDream(["secret"])
+        def other = new DreamClient(restTemplate, baseUrl())
+        other.registerAndLogin("other-tags@example.com", "Password123", "Other")
+
+        expect:
+        other.suggestTags("s").body.isEmpty()
+    }
+
+    def "should reject a limit out of range"() {
+        expect: "error bodies are objects, not lists"
+        client.get("/api/tags/suggest?prefix=a&limit=0", Map).statusCode == HttpStatus.BAD_REQUEST
+        client.get("/api/tags/suggest?prefix=a&limit=51", Map).statusCode == HttpStatus.BAD_REQUEST
+    }
+
+    private String createDream(List<String> tags) {
+        client.createDream(dream(tags)).body.id
+    }
+
+    private static Map dream(List<String> tags) {
+        [
+            date     : LocalDate.now().format(DateTimeFormatter.ISO_LOCAL_DATE),
+            title    : "Night walk",
+            content  : "Walking through the night",
+            vividness: 5,
+            lucid    : false,
+            tags     : tags
+        ]
+    }
+}
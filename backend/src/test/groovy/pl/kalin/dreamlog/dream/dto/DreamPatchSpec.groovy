@@ -0,0 +1,43 @@
+package pl.kalin.dreamlog.dream.dto
+
+import com.fasterxml.jackson.databind.DeserializationFeature
+import com.fasterxml.jackson.databind.JsonMappingException
+import com.fasterxml.jackson.databind.ObjectMapper
+import pl.kalin.dreamlog.dream.exception.InvalidDreamPatchException
+import spock.lang.Specification
+
+/**
+ * Unit test for reading a DreamPatch from JSON.
+ */
+class DreamPatchSpec extends Specification {
+
+    def "a patch with an unknown member should be rejected even where unknown properties are ignored"() {
+        given: "a mapper lenient like the application's"
+        def mapper = new ObjectMapper().findAndRegisterModules()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+
+        when:
+        mapper.readValue('{"titel": "x"}', DreamPatch)
+
+        then:
+        def e = thrown(JsonMappingException)
+        e.cause instanceof InvalidDreamPatchException
+        e.cause.message == "Unknown member: titel"
+    }
+
+    def "a patch with a null or blank tag should be rejected"() {
+        given:
+        def mapper = new ObjectMapper().findAndRegisterModules()
+
+        when:
+        mapper.readValue(json, DreamPatch)
+
+        then:
+        def e = thrown(JsonMappingException)
+        e.cause instanceof InvalidDreamPatchException
+        e.cause.message == "Tags must not be blank"
+
+        where:
+        json << ['{"tags": ["a", null]}', '{"tags": ["a", " "]}']
+    }
+}
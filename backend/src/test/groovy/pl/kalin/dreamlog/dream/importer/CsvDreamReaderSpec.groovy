@@ -0,0 +1,99 @@
+package pl.kalin.dreamlog.dream.importer
+
+import pl.kalin.dreamlog.dream.exception.InvalidImportException
+import pl.kalin.dreamlog.dream.model.Mood
+import spock.lang.Specification
+
+import java.time.LocalDate
+
+/**
+ * Unit test for the incremental CSV reader of the bulk import.
+ */
+class CsvDreamReaderSpec extends Specification {
+
+    def "should read columns by header name in any order"() {
+        given:
+        def reader = reader("""\
+            Content,date,mood_in_dream,Lucid,tags,vividness
+            I was flying,2025-01-02,positive,yes,flying; sky ;flying,7
+            """.stripIndent())
+
+        when:
+        def record = reader.next()
+
+        then:
+        record.line() == 2
+        with(record.request()) {
+            content() == "I was flying"
+            date() == LocalDate.of(2025, 1, 2)
+            moodInDream() == Mood.POSITIVE
+            lucid()
+            tags() == ["flying", "sky"]
+            vividness() == 7
+            title() == null
+        }
+        reader.next() == null
+    }
+
+    def "should read quoted fields with commas, quotes and line breaks"() {
+        given:
+        def reader = reader('date,title,content\r\n2025-01-02,"Sea, again","Line one\r\nsaid ""hi"""\r\n2025-01-03,Next,Plain\r\n')
+
+        when:
+        def first = reader.next()
+        def second = reader.next()
+
+        then:
+        first.request().title() == "Sea, again"
+        first.request().content() == 'Line one\r\nsaid "hi"'
+        second.line() == 4
+        second.request().title() == "Next"
+    }
+
+    def "should report a bad line and continue with the next one"() {
+        given:
+        def reader = reader("date,content,vividness\nyesterday,Dream,1\n2025-01-02,Dream,loud\n2025-01-03,Dream,2\n")
+
+        expect:
+        reader.next().error().startsWith("Invalid date")
+        reader.next().error() == "Invalid vividness: loud"
+        reader.next().request().vividness() == 2
+    }
+
+    def "should report an unterminated quote instead of failing the import"() {
+        given:
+        def reader = reader('date,content\n2025-01-02,"never closed\n2025-01-03,Dream\n')
+
+        expect:
+        reader.next().error().startsWith("Unterminated quoted field")
+        reader.next() == null
+    }
+
+    def "should reject a file without the required columns"() {
+        when:
+        reader(header)
+
+        then:
+        def e = thrown(InvalidImportException)
+        e.message.contains(message)
+
+        where:
+        header              || message
+        ""                  || "empty"
+        "title,content\n"   || "date and content"
+        "﻿date,title\n" || "date and content"
+    }
+
+    def "should skip a byte order mark and blank lines"() {
+        given:
+        def reader = reader("﻿date,content\n\n2025-01-02,Dream\n")
+
+        expect:
+        reader.next().request().date() == LocalDate.of(2025, 1, 2)
+        reader.next() == null
+    }
+
+    private static CsvDreamReader reader(String csv) {
+        new CsvDreamReader(new StringReader(csv))
+    }
+}
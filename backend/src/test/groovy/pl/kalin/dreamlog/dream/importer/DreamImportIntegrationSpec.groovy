@@ -0,0 +1,148 @@
+package pl.kalin.dreamlog.dream.importer
+
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.web.client.TestRestTemplate
+import org.springframework.boot.test.web.server.LocalServerPort
+import org.springframework.http.HttpStatus
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.test.context.TestPropertySource
+import pl.kalin.dreamlog.IntegrationSpec
+import pl.kalin.dreamlog.dream.controller.DreamControllerIntegrationSpec.DreamClient
+import pl.kalin.dreamlog.dream.repository.DreamEntryRepository
+import pl.kalin.dreamlog.user.UserRepository
+
+/**
+ * Integration tests for {@code POST /api/dreams/import}. A small batch size makes every test span
+ * several batches.
+ */
+@TestPropertySource(properties = ["app.import.batch-size=2", "app.analysis.enabled=false"])
+class DreamImportIntegrationSpec extends IntegrationSpec {
+
+    static final String NDJSON = "application/x-ndjson"
+    static final String CSV = "text/csv"
+
+    @LocalServerPort
+    int port
+
+    @Autowired
+    TestRestTemplate restTemplate
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    DreamEntryRepository dreamRepository
+
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    DreamClient client
+
+    def setup() {
+        dreamRepository.deleteAll()
+        userRepository.deleteAll()
+        client = new DreamClient(restTemplate, baseUrl())
+        client.registerAndLogin("import@example.com", "Password123", "Importer")
+    }
+
+    String baseUrl() {
+        "http://localhost:${port}"
+    }
+
+    def "should import NDJSON and report the lines it skipped"() {
+        given:
+        def body = '''\
+            {"date":"2025-01-01","title":"Ocean","content":"Swimming with whales","tags":["water","whales"],"moodInDream":"POSITIVE","vividness":8,"lucid":true}
+            {"date":"2025-01-02","content":"Falling down the stairs"}
+            not json
+
+            {"title":"No date","content":"Lost"}
+            {"date":"2025-01-03","content":"Exam again","tags":["school"],"moodAfterDream":"NEGATIVE","vividness":4}
+            '''.stripIndent()
+
+        when:
+        def response = client.importDreams(body, NDJSON)
+
+        then:
+        response.statusCode == HttpStatus.OK
+        response.body.imported == 3
+        response.body.failed == 2
+        response.body.errors*.line == [3, 5]
+        response.body.errors[0].message.startsWith("Invalid JSON")
+
+        and: "the dreams are searchable by title, content and tags"
+        client.searchDreams("whales").body*.title == ["Ocean"]
+        client.searchDreams("school").body*.title == ["Exam again"]
+        client.getDreams().body.content*.title.sort() == ["Exam again", "Falling down the stairs", "Ocean"]
+
+        and: "every batch was added to the stats"
+        with(stats()) {
+            total_dreams == 3
+            lucid_dreams == 1
+            vividness_sum == 12
+            moods == '{"NEGATIVE": 1, "POSITIVE": 1}'
+        }
+
+        and: "every imported dream is queued for analysis"
+        jdbcTemplate.queryForObject("SELECT COUNT(*) FROM dream_analysis_outbox", Long) == 3
+    }
+
+    def "should import CSV"() {
+        given:
+        def body = 'date,title,content,mood_in_dream,lucid,tags\r\n' +
+            '2025-02-01,"Sea, again","Waves, ""big"" ones",POSITIVE,yes,water;sea\r\n' +
+            '2025-02-02,,Flying over the city,,no,\r\n' +
+            '2025-02-03,Bad,Mood,SLEEPY,no,\r\n'
+
+        when:
+        def response = client.importDreams(body, CSV)
+
+        then:
+        response.statusCode == HttpStatus.OK
+        response.body.imported == 2
+        response.body.failed == 1
+        response.body.errors*.line == [4]
+
+        and:
+        def dreams = client.getDreams().body.content
+        dreams*.title.sort() == ["Flying over the city", "Sea, again"]
+        dreams.find { it.title == "Sea, again" }.tags.sort() == ["sea", "water"]
+        stats().total_dreams == 2
+    }
+
+    def "should reject a CSV file without the required columns"() {
+        when:
+        def response = client.importDreams("title,body\nA,B\n", CSV)
+
+        then:
+        response.statusCode == HttpStatus.BAD_REQUEST
+        dreamRepository.count() == 0
+    }
+
+    def "should import its own export"() {
+        given:
+        client.createDream([date: "2025-03-01", title: "Forest", content: "Walking in a forest", tags: ["trees"], lucid: true])
+        client.createDream([date: "2025-03-02", title: "Train", content: "A train without doors", moodInDream: "MIXED"])
+        def export = client.exportDreams().lines.join("\n")
+
+        and: "another user"
+        def other = new DreamClient(restTemplate, baseUrl())
+        other.registerAndLogin("import2@example.com", "Password123", "Second")
+
+        when:
+        def response = other.importDreams(export, NDJSON)
+
+        then:
+        response.body.imported == 2
+        response.body.failed == 0
+        def dreams = other.getDreams().body.content
+        dreams*.title.sort() == ["Forest", "Train"]
+        dreams.find { it.title == "Forest" }.tags == ["trees"]
+        other.searchDreams("trees").body*.title == ["Forest"]
+    }
+
+    private Map<String, Object> stats() {
+        jdbcTemplate.queryForMap("SELECT s.*, s.mood_counts::text AS moods FROM user_dream_stats s JOIN users u ON u.id = s.user_id WHERE u.email = ?",
+            "import@example.com")
+    }
+}
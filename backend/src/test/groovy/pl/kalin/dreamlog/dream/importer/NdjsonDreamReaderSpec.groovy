@@ -0,0 +1,58 @@
+package pl.kalin.dreamlog.dream.importer
+
+import com.fasterxml.jackson.databind.DeserializationFeature
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.json.JsonMapper
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule
+import pl.kalin.dreamlog.dream.dto.DreamCreateRequest
+import pl.kalin.dreamlog.dream.model.Mood
+import spock.lang.Specification
+
+import java.time.LocalDate
+
+/**
+ * Unit test for the incremental NDJSON reader of the bulk import.
+ */
+class NdjsonDreamReaderSpec extends Specification {
+
+    ObjectMapper objectMapper = JsonMapper.builder()
+        .addModule(new JavaTimeModule())
+        .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+        .build()
+
+    def "should read one dream per line, skipping blank lines and unknown fields"() {
+        given:
+        def reader = reader('''\
+            {"id":"8d0f3c1e-0000-0000-0000-000000000000","date":"2025-01-02","content":"Flying","moodInDream":"POSITIVE","tags":["sky"]}
+
+            {"date":"2025-01-03","content":"Falling"}
+            '''.stripIndent())
+
+        when:
+        def first = reader.next()
+        def second = reader.next()
+
+        then:
+        first.line() == 1
+        first.request().date() == LocalDate.of(2025, 1, 2)
+        first.request().moodInDream() == Mood.POSITIVE
+        first.request().tags() == ["sky"]
+        second.line() == 3
+        second.request().content() == "Falling"
+        reader.next() == null
+    }
+
+    def "should report malformed lines with their line numbers"() {
+        given:
+        def reader = reader('{"date":"2025-01-02",\n{"date":"2025-01-02","content":"x","moodInDream":"SLEEPY"}\nnull\n')
+
+        expect:
+        with(reader.next()) { line() == 1 && error().startsWith("Invalid JSON") }
+        with(reader.next()) { line() == 2 && error().contains("SLEEPY") }
+        with(reader.next()) { line() == 3 && error() == "Expected a JSON object" }
+    }
+
+    private NdjsonDreamReader reader(String ndjson) {
+        new NdjsonDreamReader(new BufferedReader(new StringReader(ndjson)), objectMapper.readerFor(DreamCreateRequest))
+    }
+}
@@ -0,0 +1,61 @@
+package pl.kalin.dreamlog.dream.model
+
+import spock.lang.Specification
+
+/**
+ * Unit test for DreamEntry domain logic.
+ */
+class DreamEntrySpec extends Specification {
+
+    def "should keep short content as preview with whitespace collapsed"() {
+        expect:
+        DreamEntry.generatePreviewFromContent("  I was\n\nflying   over\tmountains ") == "I was flying over mountains"
+    }
+
+    def "should cut long content to preview length"() {
+        given: "content longer than the preview"
+        def content = "word " * 100
+
+        when: "generating preview"
+        def preview = DreamEntry.generatePreviewFromContent(content)
+
+        then: "preview fits the column and is marked as truncated"
+        preview.length() <= DreamEntry.PREVIEW_LENGTH
+        preview.endsWith("...")
+        !preview.contains("  ")
+    }
+
+    def "should refresh preview before persisting"() {
+        given: "a dream built without preview"
+        def dream = DreamEntry.builder()
+            .content("Dark corridors")
+            .build()
+
+        when: "JPA lifecycle callback runs"
+        dream.refreshContentPreview()
+
+        then: "preview reflects content"
+        dream.contentPreview == "Dark corridors"
+    }
+
+    def "should update tags in place, keeping them sorted and distinct"() {
+        given:
+        def dream = DreamEntry.builder()
+            .tags(new TreeSet<>(["owl", "moss"]))
+            .build()
+        def tags = dream.tags
+
+        when:
+        dream.updateFrom(null, "Title", "Content", null, null, null, null, ["owl", "fox", "fox"])
+
+        then: "the same set, so Hibernate sees only the added and removed tags"
+        dream.tags.is(tags)
+        dream.tags as List == ["fox", "owl"]
+
+        when: "no tags"
+        dream.updateFrom(null, "Title", "Content", null, null, null, null, null)
+
+        then:
+        dream.tags.isEmpty()
+    }
+}
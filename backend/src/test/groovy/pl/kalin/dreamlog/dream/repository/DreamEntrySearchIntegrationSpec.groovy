@@ -2,6 +2,7 @@ package pl.kalin.dreamlog.dream.repository
 
 import jakarta.transaction.Transactional
 import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.jdbc.core.JdbcTemplate
 import pl.kalin.dreamlog.IntegrationSpec
 import pl.kalin.dreamlog.dream.model.DreamEntry
 import pl.kalin.dreamlog.user.User
@@ -22,6 +23,9 @@ class DreamEntrySearchIntegrationSpec extends IntegrationSpec {
     @Autowired
     UserRepository userRepository
 
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
     User testUser
     User otherUser
 
@@ -44,7 +48,7 @@ class DreamEntrySearchIntegrationSpec extends IntegrationSpec {
                 .date(LocalDate.now())
                 .title("Lucid dream about flying")
                 .content("I realized I was dreaming and started to fly over the city")
-                .tags(["lucid", "flying"])
+                .tags(new TreeSet<>(["lucid", "flying"]))
                 .build(),
 
             DreamEntry.builder()
@@ -52,7 +56,7 @@ class DreamEntrySearchIntegrationSpec extends IntegrationSpec {
                 .date(LocalDate.now().minusDays(1))
                 .title("Nightmare with monsters")
                 .content("Scary creatures were chasing me through dark corridors")
-                .tags(["nightmare", "scary"])
+                .tags(new TreeSet<>(["nightmare", "scary"]))
                 .build(),
 
             DreamEntry.builder()
@@ -60,7 +64,7 @@ class DreamEntrySearchIntegrationSpec extends IntegrationSpec {
                 .date(LocalDate.now().minusDays(2))
                 .title("Sen o łodzi na Wiśle")
                 .content("Płynąłem łodzią po Wiśle, było pięknie i spokojnie")
-                .tags(["łódź", "Wisła", "Polska"])
+                .tags(new TreeSet<>(["łódź", "Wisła", "Polska"]))
                 .build(),
 
             DreamEntry.builder()
@@ -68,7 +72,7 @@ class DreamEntrySearchIntegrationSpec extends IntegrationSpec {
                 .date(LocalDate.now().minusDays(3))
                 .title("Flying car adventure")
                 .content("I was driving a flying car through the mountains")
-                .tags(["flying", "car"])
+                .tags(new TreeSet<>(["flying", "car"]))
                 .build(),
 
             DreamEntry.builder()
@@ -76,7 +80,7 @@ class DreamEntrySearchIntegrationSpec extends IntegrationSpec {
                 .date(LocalDate.now().minusDays(4))
                 .title("Meeting with famous person")
                 .content("I met a celebrity at a party and we had a great conversation")
-                .tags(["celebrity", "party"])
+                .tags(new TreeSet<>(["celebrity", "party"]))
                 .build(),
 
             // Dream for other user (should not appear in testUser's search results)
@@ -87,6 +91,9 @@ class DreamEntrySearchIntegrationSpec extends IntegrationSpec {
                 .content("This is a lucid dream but belongs to another user")
                 .build()
         ])
+        // Tags reach search_vector at commit; the test transaction never commits
+        dreamEntryRepository.flush()
+        jdbcTemplate.execute("SET CONSTRAINTS ALL IMMEDIATE")
     }
 
     def "should search dreams by full-text query"() {
@@ -264,4 +271,46 @@ class DreamEntrySearchIntegrationSpec extends IntegrationSpec {
         lowerResults.size() == upperResults.size()
         lowerResults.size() == mixedResults.size()
     }
+
+    def "should find typos with hybrid search in a single query"() {
+        when: "hybrid searching with typo 'lucdi dream'"
+        def results = hybrid("lucdi dream")
+
+        then: "the lucid dream is found through trigram candidates"
+        results*.title.contains("Lucid dream about flying")
+        results.every { it.user.id == testUser.id }
+    }
+
+    def "should rank full-text matches above fuzzy-only matches in hybrid search"() {
+        given: "a dream only similar to the query"
+        dreamEntryRepository.save(DreamEntry.builder()
+            .user(testUser)
+            .date(LocalDate.now())
+            .title("Flyinng lessons")
+            .content("Misspelled on purpose")
+            .build())
+
+        when: "hybrid searching for 'flying'"
+        def results = hybrid("flying")
+
+        then: "both FTS matches come first, the closest typo-only match right after them"
+        results.size() >= 3
+        results[0..1]*.title.toSet() == ["Lucid dream about flying", "Flying car adventure"].toSet()
+        results[2].title == "Flyinng lessons"
+    }
+
+    def "should honour negated terms for fuzzy candidates in hybrid search"() {
+        when: "hybrid searching for 'dream -flying'"
+        def results = hybrid("dream -flying")
+
+        then: "the similar but excluded dream is not returned"
+        !results*.title.contains("Lucid dream about flying")
+    }
+
+    /**
+     * Dreams ranked by hybrid search, in ranking order.
+     */
+    private List<DreamEntry> hybrid(String query) {
+        dreamEntryRepository.searchIdsByHybrid(testUser.id, query).collect { dreamEntryRepository.findById(it).get() }
+    }
 }
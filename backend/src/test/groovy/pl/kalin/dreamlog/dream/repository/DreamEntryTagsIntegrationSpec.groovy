@@ -0,0 +1,119 @@
+package pl.kalin.dreamlog.dream.repository
+
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.support.TransactionTemplate
+import pl.kalin.dreamlog.IntegrationSpec
+import pl.kalin.dreamlog.common.sql.SqlStatementCounter
+import pl.kalin.dreamlog.dream.model.DreamEntry
+import pl.kalin.dreamlog.user.User
+import pl.kalin.dreamlog.user.UserRepository
+
+import java.time.LocalDate
+
+/**
+ * Integration tests for tag persistence: edits write only the tags they add or remove.
+ */
+class DreamEntryTagsIntegrationSpec extends IntegrationSpec {
+
+    @Autowired
+    DreamEntryRepository dreamEntryRepository
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    @Autowired
+    PlatformTransactionManager transactionManager
+
+    TransactionTemplate transaction
+    User user
+
+    def setup() {
+        dreamEntryRepository.deleteAll()
+        userRepository.deleteAll()
+        transaction = new TransactionTemplate(transactionManager)
+        user = userRepository.save(User.builder().email("tag-dml@example.com").name("Tags").build())
+    }
+
+    def "should not write tags when an edit keeps them"() {
+        given:
+        def id = create(["owl", "moss", "fern"])
+
+        when: "the title changes and the same tags are sent in another order"
+        def statements = edit(id, "New title", ["fern", "owl", "moss"])
+
+        then: "the dream row is updated, no tag is deleted or inserted"
+        dml(statements, "dream_entry") == 1
+        dml(statements, "dream_entry_tags") == 0
+        tags(id) == ["fern", "moss", "owl"]
+    }
+
+    def "should write only the added and removed tags"() {
+        given:
+        def id = create(["owl", "moss", "fern"])
+
+        when:
+        def statements = edit(id, "Forest", ["owl", "moss", "fox"])
+
+        then: "one delete for fern, one insert for fox"
+        deletes(statements, "dream_entry_tags") == 1
+        inserts(statements, "dream_entry_tags") == 1
+        tags(id) == ["fox", "moss", "owl"]
+    }
+
+    private UUID create(List<String> tags) {
+        transaction.execute {
+            dreamEntryRepository.save(DreamEntry.builder()
+                .user(user)
+                .date(LocalDate.now())
+                .title("Forest")
+                .content("Walking through a dark forest")
+                .tags(new TreeSet<>(tags))
+                .build()).id
+        }
+    }
+
+    /**
+     * Edit a dream like a PUT does and count the statements Hibernate ran, by SQL text.
+     */
+    private Map<String, Integer> edit(UUID id, String title, List<String> tags) {
+        def counter = SqlStatementCounter.start()
+        try {
+            transaction.executeWithoutResult {
+                def dream = dreamEntryRepository.findById(id).orElseThrow()
+                dream.updateFrom(dream.date, title, dream.content, null, null, 3, false, tags)
+            }
+        } finally {
+            counter.stop()
+        }
+        counter.countsBySql()
+    }
+
+    private static int dml(Map<String, Integer> statements, String table) {
+        inserts(statements, table) + updates(statements, table) + deletes(statements, table)
+    }
+
+    private static int inserts(Map<String, Integer> statements, String table) {
+        count(statements, "insert into ${table}")
+    }
+
+    private static int updates(Map<String, Integer> statements, String table) {
+        count(statements, "update ${table}")
+    }
+
+    private static int deletes(Map<String, Integer> statements, String table) {
+        count(statements, "delete from ${table}")
+    }
+
+    private static int count(Map<String, Integer> statements, String prefix) {
+        statements.findAll { sql, n -> sql.strip().toLowerCase() ==~ /(?s)${prefix}\b.*/ }.values().sum(0) as int
+    }
+
+    private List<String> tags(UUID id) {
+        jdbcTemplate.queryForList("SELECT tag FROM dream_entry_tags WHERE dream_entry_id = ? ORDER BY tag", String, id)
+    }
+}
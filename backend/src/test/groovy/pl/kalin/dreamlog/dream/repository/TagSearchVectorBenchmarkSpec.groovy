@@ -0,0 +1,150 @@
+package pl.kalin.dreamlog.dream.repository
+
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.support.TransactionTemplate
+import pl.kalin.dreamlog.IntegrationSpec
+import spock.lang.Tag
+
+/**
+ * Measures what keeping {@code search_vector} in sync with tags costs: {@code dream_entry} row versions
+ * and WAL bytes for creating and editing dreams, with the per-tag-row trigger of V4 and the deferred
+ * refresh of V12. Replays the statements Hibernate issues (dream row, one insert per tag; on edit the
+ * dream row, a delete of all tags and one insert per new tag). Every run happens in a rolled-back
+ * transaction, the V4 triggers are swapped in inside it; run with {@code ./gradlew benchmarkTest}.
+ */
+@Tag("benchmark")
+class TagSearchVectorBenchmarkSpec extends IntegrationSpec {
+
+    static final int DREAM_COUNT = 200
+    static final int TAGS_PER_DREAM = 10
+
+    // The triggers as they were before V12
+    static final List<String> V4_TRIGGERS = [
+        "DROP TRIGGER dream_entry_tags_search_vector_trigger ON dream_entry_tags",
+        "DROP TRIGGER dream_entry_search_vector_trigger ON dream_entry",
+        """CREATE TRIGGER dream_entry_search_vector_trigger BEFORE INSERT OR UPDATE ON dream_entry
+           FOR EACH ROW EXECUTE FUNCTION dream_entry_search_vector_update()""",
+        """CREATE FUNCTION v4_dream_entry_tags_update_search_vector() RETURNS trigger AS \$\$
+           BEGIN
+               IF TG_OP = 'DELETE' THEN
+                   UPDATE dream_entry SET updated_at = NOW() WHERE id = OLD.dream_entry_id;
+                   RETURN OLD;
+               ELSE
+                   UPDATE dream_entry SET updated_at = NOW() WHERE id = NEW.dream_entry_id;
+                   RETURN NEW;
+               END IF;
+           END
+           \$\$ LANGUAGE plpgsql""",
+        """CREATE TRIGGER v4_dream_entry_tags_search_vector_trigger AFTER INSERT OR UPDATE OR DELETE ON dream_entry_tags
+           FOR EACH ROW EXECUTE FUNCTION v4_dream_entry_tags_update_search_vector()"""
+    ]
+
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    @Autowired
+    PlatformTransactionManager transactionManager
+
+    def "should write each dream row at most twice per transaction regardless of tag count"() {
+        when:
+        def v4 = measure(true)
+        def v12 = measure(false)
+        [v4: v4, v12: v12].each { name, result ->
+            result.each { operation, cost ->
+                println String.format("tag trigger %-3s %-6s %6.1f row versions/dream  %8.0f WAL bytes/dream",
+                    name, operation, cost.versions / DREAM_COUNT, cost.wal / DREAM_COUNT)
+            }
+        }
+
+        then: "V4 rewrote the dream row for every tag row"
+        v4.create.versions == DREAM_COUNT * (1 + TAGS_PER_DREAM)
+        v4.update.versions == DREAM_COUNT * (1 + 2 * TAGS_PER_DREAM)
+
+        and: "V12 writes it once more at commit"
+        v12.create.versions == DREAM_COUNT * 2
+        v12.update.versions == DREAM_COUNT * 2
+
+        and:
+        v12.create.wal < v4.create.wal
+        v12.update.wal < v4.update.wal
+    }
+
+    /**
+     * Create and then edit {@link #DREAM_COUNT} dreams in one rolled-back transaction.
+     *
+     * @param v4 run with the V4 triggers
+     * @return {@code [create: [versions, wal], update: [versions, wal]]}
+     */
+    private Map<String, Map<String, Long>> measure(boolean v4) {
+        def transaction = new TransactionTemplate(transactionManager)
+        transaction.execute { status ->
+            status.setRollbackOnly()
+            if (v4) {
+                V4_TRIGGERS.each { jdbcTemplate.execute(it) }
+            }
+            def userId = jdbcTemplate.queryForObject(
+                "INSERT INTO users (email, name) VALUES ('tag-bench@example.com', 'Bench') RETURNING id", UUID)
+            List<UUID> ids = []
+
+            def create = cost {
+                DREAM_COUNT.times { i ->
+                    def id = UUID.randomUUID()
+                    jdbcTemplate.update("""
+                        INSERT INTO dream_entry (id, user_id, date, title, content, content_preview, vividness, lucid)
+                        VALUES (?, ?, current_date, ?, ?, ?, 5, false)""",
+                        id, userId, "Dream ${i}".toString(), "A long walk through a forest ${i}".toString(), "preview")
+                    insertTags(id, "first")
+                    ids << id
+                }
+                commitDeferred()
+            }
+            def update = cost {
+                ids.each { id ->
+                    // Hibernate updates every column, then replaces the whole tag collection
+                    jdbcTemplate.update("""
+                        UPDATE dream_entry SET date = current_date, title = title, content = content || ' edited',
+                            content_preview = content_preview, mood_in_dream = NULL, mood_after_dream = NULL,
+                            vividness = 5, lucid = false
+                        WHERE id = ?""", id)
+                    jdbcTemplate.update("DELETE FROM dream_entry_tags WHERE dream_entry_id = ?", id)
+                    insertTags(id, "second")
+                }
+                commitDeferred()
+            }
+            [create: create, update: update]
+        }
+    }
+
+    private void insertTags(UUID dreamId, String prefix) {
+        jdbcTemplate.batchUpdate("INSERT INTO dream_entry_tags (dream_entry_id, tag) VALUES (?, ?)",
+            (1..TAGS_PER_DREAM).collect { [dreamId, "${prefix}${it}".toString()] as Object[] })
+    }
+
+    // Fire the deferred triggers as commit would
+    private void commitDeferred() {
+        jdbcTemplate.execute("SET CONSTRAINTS ALL IMMEDIATE")
+        jdbcTemplate.execute("SET CONSTRAINTS ALL DEFERRED")
+    }
+
+    /**
+     * Row versions written to {@code dream_entry} and WAL generated by {@code work}, which must run in the
+     * current transaction (the row counters are transaction-local).
+     */
+    private Map<String, Long> cost(Closure work) {
+        def before = counters()
+        work()
+        def after = counters()
+        [versions: after.versions - before.versions,
+         wal     : jdbcTemplate.queryForObject("SELECT pg_wal_lsn_diff(?::pg_lsn, ?::pg_lsn)::bigint", Long,
+             after.lsn, before.lsn)]
+    }
+
+    private Map<String, Object> counters() {
+        jdbcTemplate.queryForMap("""
+            SELECT pg_stat_get_xact_tuples_inserted('dream_entry'::regclass)
+                       + pg_stat_get_xact_tuples_updated('dream_entry'::regclass) AS versions,
+                   pg_current_wal_insert_lsn()::text AS lsn""")
+    }
+}
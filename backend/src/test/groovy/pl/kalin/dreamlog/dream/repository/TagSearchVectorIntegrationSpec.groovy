@@ -0,0 +1,123 @@
+package pl.kalin.dreamlog.dream.repository
+
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.support.TransactionTemplate
+import pl.kalin.dreamlog.IntegrationSpec
+import pl.kalin.dreamlog.dream.model.DreamEntry
+import pl.kalin.dreamlog.user.User
+import pl.kalin.dreamlog.user.UserRepository
+
+import java.time.LocalDate
+
+/**
+ * Integration tests for the deferred refresh of {@code search_vector} on tag changes
+ * (V12__defer_tag_search_vector_refresh.sql).
+ */
+class TagSearchVectorIntegrationSpec extends IntegrationSpec {
+
+    @Autowired
+    DreamEntryRepository dreamEntryRepository
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    @Autowired
+    PlatformTransactionManager transactionManager
+
+    TransactionTemplate transaction
+    User user
+
+    def setup() {
+        dreamEntryRepository.deleteAll()
+        userRepository.deleteAll()
+        transaction = new TransactionTemplate(transactionManager)
+        user = userRepository.save(User.builder().email("tags@example.com").name("Tags").build())
+    }
+
+    def "should index the tags of a new dream when the transaction commits"() {
+        when:
+        def id = create(["owl", "moss"])
+
+        then:
+        indexed(id, "owl")
+        indexed(id, "moss")
+        indexed(id, "forest")
+    }
+
+    def "should index the new tags and drop the old ones when tags are replaced"() {
+        given:
+        def id = create(["owl", "moss"])
+
+        when:
+        transaction.executeWithoutResult {
+            def dream = dreamEntryRepository.findById(id).orElseThrow()
+            dream.updateFrom(dream.date, "Night forest", dream.content, null, null, 3, false, ["fox"])
+        }
+
+        then:
+        indexed(id, "fox")
+        indexed(id, "night")
+        !indexed(id, "owl")
+        !indexed(id, "moss")
+    }
+
+    def "should drop removed tags from the index"() {
+        given:
+        def id = create(["owl"])
+
+        when:
+        transaction.executeWithoutResult {
+            dreamEntryRepository.findById(id).orElseThrow().tags.clear()
+        }
+
+        then:
+        !indexed(id, "owl")
+        indexed(id, "forest")
+    }
+
+    def "should delete a dream with tags"() {
+        given:
+        def id = create(["owl", "moss"])
+
+        when: "the deferred events of the cascaded tag deletes find no dream"
+        transaction.executeWithoutResult { dreamEntryRepository.deleteById(id) }
+
+        then:
+        dreamEntryRepository.findById(id).isEmpty()
+    }
+
+    def "should see tags in the same transaction once constraints are checked"() {
+        expect:
+        transaction.execute { status ->
+            status.setRollbackOnly()
+            def id = dreamEntryRepository.saveAndFlush(dream(["owl"])).id
+            def before = indexed(id, "owl")
+            jdbcTemplate.execute("SET CONSTRAINTS ALL IMMEDIATE")
+            !before && indexed(id, "owl")
+        }
+    }
+
+    private UUID create(List<String> tags) {
+        transaction.execute { dreamEntryRepository.save(dream(tags)).id }
+    }
+
+    private DreamEntry dream(List<String> tags) {
+        DreamEntry.builder()
+            .user(user)
+            .date(LocalDate.now())
+            .title("Forest")
+            .content("Walking through a dark forest")
+            .tags(new TreeSet<>(tags))
+            .build()
+    }
+
+    private boolean indexed(UUID id, String word) {
+        jdbcTemplate.queryForObject(
+            "SELECT search_vector @@ to_tsquery('simple', ?) FROM dream_entry WHERE id = ?", Boolean, word, id)
+    }
+}
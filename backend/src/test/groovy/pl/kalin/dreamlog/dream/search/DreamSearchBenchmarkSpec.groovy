@@ -0,0 +1,103 @@
+package pl.kalin.dreamlog.dream.search
+
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.transaction.PlatformTransactionManager
+import pl.kalin.dreamlog.IntegrationSpec
+import pl.kalin.dreamlog.dream.repository.DreamEntryRepository
+import pl.kalin.dreamlog.user.User
+import pl.kalin.dreamlog.user.UserRepository
+import spock.lang.Tag
+
+import javax.sql.DataSource
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares search latency of the {@link DreamSearchEngine}s on a generated journal:
+ * PostgreSQL in both {@link DreamSearchMode}s and the in-memory BM25 index.
+ * Prints p50/p99 of {@code dreamlog.search.query} per engine; run with {@code ./gradlew benchmarkTest}.
+ */
+@Tag("benchmark")
+class DreamSearchBenchmarkSpec extends IntegrationSpec {
+
+    static final int DREAM_COUNT = 5_000
+    static final int WARMUP_ROUNDS = 20
+    static final int MEASURED_ROUNDS = 200
+
+    // Exact hits, multi-word, typos (FTS misses), negation, no match at all
+    static final List<String> QUERIES = ["flying", "ocean forest", "flyng", "forrest castle", "castle -ocean", "unicorn"]
+
+    @Autowired
+    DreamEntryRepository dreamRepository
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    @Autowired
+    DataSource dataSource
+
+    @Autowired
+    PlatformTransactionManager transactionManager
+
+    def "should report search latency percentiles for every engine"() {
+        given: "a user with a generated journal"
+        dreamRepository.deleteAll()
+        userRepository.deleteAll()
+        def user = userRepository.save(User.builder().email("bench@example.com").name("Bench").build())
+        jdbcTemplate.update("""
+            INSERT INTO dream_entry (user_id, date, title, content, content_preview, vividness, lucid)
+            SELECT ?, current_date - (g % 3650),
+                   initcap(v.w[1 + g % 20]) || ' ' || v.w[1 + (g * 7) % 20],
+                   (SELECT string_agg(v.w[1 + (g * k * 31 + k) % 20], ' ') FROM generate_series(1, 80) k),
+                   'generated', g % 11, g % 5 = 0
+            FROM generate_series(1, ?) g,
+                 (SELECT ARRAY['flying', 'ocean', 'forest', 'castle', 'falling', 'teeth', 'school', 'exam',
+                               'chase', 'river', 'mountain', 'mirror', 'stairs', 'train', 'storm', 'garden',
+                               'wolf', 'bridge', 'library', 'desert'] AS w) v
+            """, user.id, DREAM_COUNT)
+
+        and: "a factory per engine, so measured rounds get a fresh registry"
+        Map<String, Closure<DreamSearchEngine>> engines = [
+            "two-step": { MeterRegistry registry -> new PostgresDreamSearchEngine(dreamRepository, DreamSearchMode.TWO_STEP, registry) },
+            "hybrid"  : { MeterRegistry registry -> new PostgresDreamSearchEngine(dreamRepository, DreamSearchMode.HYBRID, registry) },
+            "memory"  : { MeterRegistry registry ->
+                def engine = new InMemoryDreamSearchEngine(dataSource, transactionManager, 500, registry)
+                engine.rebuild()
+                engine
+            }
+        ]
+        def registries = [:]
+        def results = [:]
+
+        when: "every query runs warm-up rounds, then measured rounds, on each engine"
+        engines.each { name, factory ->
+            def warmup = factory(new SimpleMeterRegistry())
+            WARMUP_ROUNDS.times { QUERIES.each { warmup.searchIds(user.id, it) } }
+            def registry = new SimpleMeterRegistry()
+            def measured = factory(registry)
+            MEASURED_ROUNDS.times { QUERIES.each { measured.searchIds(user.id, it) } }
+            registries[name] = registry
+            results[name] = measured.searchIds(user.id, "flying")
+        }
+
+        then: "percentiles are available for every engine"
+        engines.keySet().each { name ->
+            def snapshot = registries[name].get("dreamlog.search.query").timer().takeSnapshot()
+            def percentiles = snapshot.percentileValues().collectEntries {
+                [it.percentile(), it.value(TimeUnit.MILLISECONDS)]
+            }
+            println String.format("search engine %-8s p50 %7.2f ms  p99 %7.2f ms  (%d queries, %d dreams)",
+                name, percentiles[0.5d], percentiles[0.99d], snapshot.count(), DREAM_COUNT)
+            assert snapshot.count() == MEASURED_ROUNDS * QUERIES.size()
+            assert percentiles[0.99d] > 0
+        }
+
+        and: "every engine finds exact matches"
+        results.values().every { !it.isEmpty() }
+    }
+}
@@ -0,0 +1,133 @@
+package pl.kalin.dreamlog.dream.search
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.TransactionDefinition
+import org.springframework.transaction.TransactionStatus
+import pl.kalin.dreamlog.IntegrationSpec
+import pl.kalin.dreamlog.dream.event.DreamChangedEvent
+import pl.kalin.dreamlog.dream.model.DreamEntry
+import pl.kalin.dreamlog.dream.repository.DreamEntryRepository
+import pl.kalin.dreamlog.user.User
+import pl.kalin.dreamlog.user.UserRepository
+
+import javax.sql.DataSource
+import java.time.LocalDate
+
+/**
+ * Integration tests for the in-memory search engine's rebuild: changes committed while the rebuild
+ * reads its snapshot must survive the swap.
+ */
+class InMemoryDreamSearchEngineIntegrationSpec extends IntegrationSpec {
+
+    @Autowired
+    DataSource dataSource
+
+    @Autowired
+    PlatformTransactionManager transactionManager
+
+    @Autowired
+    DreamEntryRepository dreamRepository
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    AfterSnapshot afterSnapshot
+    InMemoryDreamSearchEngine engine
+    User user
+
+    def setup() {
+        dreamRepository.deleteAll()
+        userRepository.deleteAll()
+        user = userRepository.save(User.builder().email("memory@example.com").name("Memory").build())
+        afterSnapshot = new AfterSnapshot(transactionManager)
+        engine = new InMemoryDreamSearchEngine(dataSource, afterSnapshot, 500, new SimpleMeterRegistry())
+        engine.rebuild()
+    }
+
+    def "should keep a dream edited while the index is rebuilt"() {
+        given:
+        def id = dreamRepository.save(dream("Forest")).id
+        engine.onDreamChanged(DreamChangedEvent.of(user.id, id, DreamChangedEvent.Type.CREATED))
+
+        and: "an edit committed after the rebuild read its snapshot, handled before the swap"
+        afterSnapshot.hook = {
+            jdbcTemplate.update("UPDATE dream_entry SET title = 'Ocean' WHERE id = ?", id)
+            engine.onDreamChanged(DreamChangedEvent.of(user.id, id, DreamChangedEvent.Type.UPDATED))
+        }
+
+        when:
+        engine.rebuild()
+
+        then:
+        engine.searchIds(user.id, "ocean") == [id]
+        engine.searchIds(user.id, "forest").isEmpty()
+    }
+
+    def "should keep dreams created and deleted while the index is rebuilt"() {
+        given:
+        def deleted = dreamRepository.save(dream("Forest")).id
+        engine.rebuild()
+        afterSnapshot.hook = {
+            def created = dreamRepository.save(dream("Ocean")).id
+            engine.onDreamChanged(DreamChangedEvent.of(user.id, created, DreamChangedEvent.Type.CREATED))
+            dreamRepository.deleteById(deleted)
+            engine.onDreamChanged(DreamChangedEvent.of(user.id, deleted, DreamChangedEvent.Type.DELETED))
+        }
+
+        when:
+        engine.rebuild()
+
+        then:
+        engine.searchIds(user.id, "ocean").size() == 1
+        engine.searchIds(user.id, "forest").isEmpty()
+        engine.documentCount() == 1
+    }
+
+    private DreamEntry dream(String title) {
+        DreamEntry.builder()
+            .user(user)
+            .date(LocalDate.now())
+            .title(title)
+            .content("Walking at night")
+            .tags(new TreeSet<>())
+            .build()
+    }
+
+    /**
+     * Transaction manager that runs a hook once, right after the next read-only transaction commits:
+     * for a rebuild, between reading its snapshot and swapping the new index in.
+     */
+    static class AfterSnapshot implements PlatformTransactionManager {
+
+        final PlatformTransactionManager delegate
+        Closure hook
+
+        AfterSnapshot(PlatformTransactionManager delegate) {
+            this.delegate = delegate
+        }
+
+        @Override
+        TransactionStatus getTransaction(TransactionDefinition definition) {
+            delegate.getTransaction(definition)
+        }
+
+        @Override
+        void commit(TransactionStatus status) {
+            delegate.commit(status)
+            def current = hook
+            hook = null
+            current?.call()
+        }
+
+        @Override
+        void rollback(TransactionStatus status) {
+            delegate.rollback(status)
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package pl.kalin.dreamlog.dream.search
+
+import spock.lang.Specification
+
+/**
+ * Unit test for the in-memory search index and query parsing.
+ */
+class InvertedIndexSpec extends Specification {
+
+    InvertedIndex index = new InvertedIndex()
+
+    UUID flying = UUID.randomUUID()
+    UUID ocean = UUID.randomUUID()
+    UUID city = UUID.randomUUID()
+
+    def setup() {
+        index.put(flying, "Flying over Łódź", "I was flying above the old town at night", ["lucid"])
+        index.put(ocean, "Ocean", "Swimming in the ocean, then flying with seagulls", ["water"])
+        index.put(city, "Lost in the city", "Walking streets of a city I did not know", [])
+    }
+
+    def "should require every term"() {
+        expect:
+        search("flying ocean ") == [ocean]
+        search("flying ") as Set == [flying, ocean] as Set
+        search("unicorn ").isEmpty()
+    }
+
+    def "should rank title matches above content matches"() {
+        expect:
+        search("flying ") == [flying, ocean]
+    }
+
+    def "should match the last word as a prefix"() {
+        expect:
+        search("fly") as Set == [flying, ocean] as Set
+        search("fly ").isEmpty()
+        search("oce* seagulls ") == [ocean]
+    }
+
+    def "should exclude negated terms"() {
+        expect:
+        search("flying -ocean") == [flying]
+        search("-ocean").isEmpty()
+    }
+
+    def "should match tags"() {
+        expect:
+        search("lucid ") == [flying]
+    }
+
+    def "should ignore case and diacritics"() {
+        expect:
+        search("lodz") == [flying]
+        search("ŁÓDŹ") == [flying]
+        search("LOST ") == [city]
+    }
+
+    def "should replace and remove documents"() {
+        when: "a dream is edited"
+        index.put(ocean, "Desert", "Sand everywhere", [])
+
+        then: "old words no longer find it"
+        search("ocean ").isEmpty()
+        search("desert ") == [ocean]
+
+        when: "a dream is deleted"
+        index.remove(ocean)
+
+        then: "it is gone with its terms"
+        search("desert ").isEmpty()
+        index.size() == 2
+        search("sand ").isEmpty()
+    }
+
+    def "should parse websearch syntax"() {
+        when:
+        def query = SearchQuery.parse('"flying car" or dream -nightmare')
+
+        then:
+        query.terms() == [
+            new SearchQuery.Term("flying", false),
+            new SearchQuery.Term("car", false),
+            new SearchQuery.Term("dream", false)
+        ]
+        query.excluded() == ["nightmare"]
+    }
+
+    def "should not turn a term into a prefix when the query ends with an exclusion"() {
+        expect:
+        SearchQuery.parse("dream -nightmare").terms() == [new SearchQuery.Term("dream", false)]
+        SearchQuery.parse("dream").terms() == [new SearchQuery.Term("dream", true)]
+    }
+
+    private List<UUID> search(String query) {
+        index.search(SearchQuery.parse(query), 100)
+    }
+}
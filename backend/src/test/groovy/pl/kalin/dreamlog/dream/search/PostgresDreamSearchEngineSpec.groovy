@@ -0,0 +1,65 @@
+package pl.kalin.dreamlog.dream.search
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import pl.kalin.dreamlog.dream.repository.DreamEntryRepository
+import spock.lang.Specification
+
+/**
+ * Unit test for the search path metrics of the PostgreSQL engine.
+ */
+class PostgresDreamSearchEngineSpec extends Specification {
+
+    DreamEntryRepository repository = Mock()
+    SimpleMeterRegistry registry = new SimpleMeterRegistry()
+    UUID userId = UUID.randomUUID()
+
+    def "should count full-text hits, fuzzy fallbacks and empty searches in two-step mode"() {
+        given:
+        def engine = new PostgresDreamSearchEngine(repository, DreamSearchMode.TWO_STEP, registry)
+        def found = [UUID.randomUUID(), UUID.randomUUID()]
+        repository.searchIdsByFullText(userId, "ocean") >> found
+        repository.searchIdsByFullText(userId, "oecan") >> []
+        repository.searchIdsByFuzzy(userId, "oecan") >> [found[0]]
+        repository.searchIdsByFullText(userId, "unicorn") >> []
+        repository.searchIdsByFuzzy(userId, "unicorn") >> []
+
+        when:
+        def results = ["ocean", "ocean", "oecan", "unicorn"].collect { engine.searchIds(userId, it) }
+
+        then:
+        results == [found, found, [found[0]], []]
+        outcome("two_step", "fts") == 2
+        outcome("two_step", "fuzzy") == 1
+        outcome("two_step", "empty") == 1
+        outcome("two_step", "hybrid") == 0
+
+        and:
+        def sizes = registry.get("dreamlog.search.results").tag("mode", "two_step").summary()
+        sizes.count() == 4
+        sizes.totalAmount() == 5
+        registry.get("dreamlog.search.query").tag("mode", "two_step").timer().count() == 4
+    }
+
+    def "should count hybrid searches by whether they found anything"() {
+        given:
+        def engine = new PostgresDreamSearchEngine(repository, DreamSearchMode.HYBRID, registry)
+        repository.searchIdsByHybrid(userId, "ocean") >> [UUID.randomUUID()]
+        repository.searchIdsByHybrid(userId, "unicorn") >> []
+
+        when:
+        engine.searchIds(userId, "ocean")
+        engine.searchIds(userId, "unicorn")
+
+        then:
+        outcome("hybrid", "hybrid") == 1
+        outcome("hybrid", "empty") == 1
+        0 * repository.searchIdsByFuzzy(*_)
+    }
+
+    private double outcome(String mode, String outcome) {
+        registry.get("dreamlog.search.outcome")
+            .tags("engine", "postgres", "mode", mode, "outcome", outcome)
+            .counter()
+            .count()
+    }
+}
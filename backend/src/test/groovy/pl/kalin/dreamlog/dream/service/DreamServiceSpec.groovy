@@ -1,14 +1,31 @@
 package pl.kalin.dreamlog.dream.service
 
+import com.fasterxml.jackson.databind.ObjectMapper
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import jakarta.validation.Validation
+import jakarta.validation.Validator
+import org.springframework.context.ApplicationEventPublisher
+import org.springframework.data.domain.Limit
 import org.springframework.security.access.AccessDeniedException
+import pl.kalin.dreamlog.dream.analysis.DreamAnalysisOutbox
 import pl.kalin.dreamlog.dream.dto.DreamCreateRequest
+import pl.kalin.dreamlog.dream.dto.DreamCursor
+import pl.kalin.dreamlog.dream.dto.DreamPatch
+import pl.kalin.dreamlog.dream.dto.DreamSort
 import pl.kalin.dreamlog.dream.dto.DreamUpdateRequest
+import pl.kalin.dreamlog.dream.event.DreamChangedEvent
+import pl.kalin.dreamlog.dream.exception.DreamVersionConflictException
+import pl.kalin.dreamlog.dream.exception.InvalidDreamPatchException
 import pl.kalin.dreamlog.dream.model.DreamEntry
 import pl.kalin.dreamlog.dream.model.Mood
 import pl.kalin.dreamlog.dream.repository.DreamEntryRepository
+import pl.kalin.dreamlog.dream.search.DreamSearchMode
+import pl.kalin.dreamlog.dream.search.PostgresDreamSearchEngine
 import pl.kalin.dreamlog.user.User
+import pl.kalin.dreamlog.user.UserDreamStatsRepository
 import spock.lang.Specification
 
+import java.time.Duration
 import java.time.LocalDate
 
 /**
@@ -18,7 +35,13 @@ import java.time.LocalDate
 class DreamServiceSpec extends Specification {
 
     DreamEntryRepository dreamRepository = Mock()
-    DreamService dreamService = new DreamService(dreamRepository)
+    ApplicationEventPublisher eventPublisher = Mock()
+    UserDreamStatsRepository statsRepository = Stub()
+    DreamSearchCache searchCache = new DreamSearchCache(statsRepository, 100, 10, Duration.ofMinutes(1), new SimpleMeterRegistry())
+    PostgresDreamSearchEngine searchEngine = new PostgresDreamSearchEngine(dreamRepository, DreamSearchMode.TWO_STEP, new SimpleMeterRegistry())
+    DreamAnalysisOutbox analysisOutbox = Mock()
+    Validator validator = Validation.buildDefaultValidatorFactory().validator
+    DreamService dreamService = new DreamService(dreamRepository, eventPublisher, searchCache, searchEngine, analysisOutbox, validator)
 
     User testUser = User.builder()
         .id(UUID.randomUUID())
@@ -49,6 +72,40 @@ class DreamServiceSpec extends Specification {
         result[1].title() == "Dream 2"
     }
 
+    def "getUserDreams with cursor should return slice and cursor for the next one"() {
+        given: "three dreams available after the cursor"
+        def cursor = new DreamCursor(LocalDate.of(2025, 10, 20), UUID.randomUUID())
+        def dreams = (1..3).collect { createDreamEntity(testUser, "Dream ${it}") }
+
+        when: "requesting a slice of two"
+        def result = dreamService.getUserDreams(testUser, cursor, 2, DreamSort.DEFAULT)
+
+        then: "repository seeks after the cursor, asking for one extra row"
+        1 * dreamRepository.findPageAfterDateDesc(testUser.id, cursor.date(), cursor.id(), 3) >> dreams
+        0 * dreamRepository.findByUserId(_, _)
+
+        and: "slice holds two dreams and points at the last one"
+        result.content()*.title() == ["Dream 1", "Dream 2"]
+        result.hasNext()
+        DreamCursor.decode(result.nextCursor()) == DreamCursor.after(dreams[1])
+    }
+
+    def "getUserDreams without cursor should return last slice without next cursor"() {
+        given: "a single dream"
+        def dream = createDreamEntity(testUser, "Only dream")
+
+        when: "requesting the first slice"
+        def result = dreamService.getUserDreams(testUser, null, 20, DreamSort.DEFAULT)
+
+        then: "first page query is used"
+        1 * dreamRepository.findByUserIdOrderByDateDescIdAsc(testUser.id, Limit.of(21)) >> [dream]
+
+        and: "there is nothing more to fetch"
+        result.content().size() == 1
+        !result.hasNext()
+        result.nextCursor() == null
+    }
+
     def "getDreamById should return dream when it belongs to user"() {
         given: "User has a dream"
         def dreamId = UUID.randomUUID()
@@ -108,12 +165,107 @@ class DreamServiceSpec extends Specification {
                 dream.moodAfterDream == request.moodAfterDream() &&
                 dream.vividness == request.vividness() &&
                 dream.lucid == request.lucid() &&
-                dream.tags == request.tags()
+                dream.tags as List == request.tags()
         }) >> savedDream
 
         and: "Returns UUID"
         result == savedDream.id
         result instanceof UUID
+
+        and: "Change is announced for the owner"
+        1 * eventPublisher.publishEvent(new DreamChangedEvent(testUser.id, [savedDream.id], DreamChangedEvent.Type.CREATED))
+
+        and: "Dream is flushed (the outbox row references it) and queued for analysis"
+        1 * dreamRepository.flush()
+        1 * analysisOutbox.enqueue([savedDream.id])
+    }
+
+    def "searchDreams should serve a repeated query from cache and load dreams by ID"() {
+        given: "two dreams matching the query, ranked"
+        def first = createDreamEntity(testUser, "Flying high")
+        def second = createDreamEntity(testUser, "Flying low")
+
+        when: "searching for the first time"
+        def initial = dreamService.searchDreams(testUser, "Flying")
+
+        then: "full-text search runs and dreams are loaded by ID"
+        1 * dreamRepository.searchIdsByFullText(testUser.id, "Flying") >> [first.id, second.id]
+        1 * dreamRepository.findByIdInAndUserId([first.id, second.id], testUser.id) >> [first, second]
+        initial*.title() == ["Flying high", "Flying low"]
+
+        when: "searching again with different case and spacing"
+        def repeated = dreamService.searchDreams(testUser, "  flying ")
+
+        then: "no search query runs, dreams are loaded by ID in ranking order"
+        0 * dreamRepository.searchIdsByFullText(*_)
+        0 * dreamRepository.searchIdsByFuzzy(*_)
+        1 * dreamRepository.findByIdInAndUserId([first.id, second.id], testUser.id) >> [second, first]
+        repeated*.title() == ["Flying high", "Flying low"]
+        searchCache.hitCount() == 1
+        searchCache.missCount() == 1
+    }
+
+    def "searchDreams in hybrid mode should run a single search query"() {
+        given: "a service searching in hybrid mode"
+        def hybridEngine = new PostgresDreamSearchEngine(dreamRepository, DreamSearchMode.HYBRID, new SimpleMeterRegistry())
+        def service = new DreamService(dreamRepository, eventPublisher, searchCache, hybridEngine, analysisOutbox, validator)
+        def dream = createDreamEntity(testUser, "Lucid dream")
+
+        when: "searching with a typo"
+        def results = service.searchDreams(testUser, "lucdi")
+
+        then: "only the hybrid query runs"
+        1 * dreamRepository.searchIdsByHybrid(testUser.id, "lucdi") >> [dream.id]
+        0 * dreamRepository.searchIdsByFullText(*_)
+        0 * dreamRepository.searchIdsByFuzzy(*_)
+        1 * dreamRepository.findByIdInAndUserId([dream.id], testUser.id) >> [dream]
+        results*.title() == ["Lucid dream"]
+    }
+
+    def "searchDreams should search again after the user's dreams change"() {
+        given: "a matching dream"
+        def dream = createDreamEntity(testUser, "Flying")
+
+        when: "searching, committing a change to the user's dreams and searching again"
+        dreamService.searchDreams(testUser, "flying")
+        searchCache.onDreamChanged(DreamChangedEvent.of(testUser.id, dream.id, DreamChangedEvent.Type.UPDATED))
+        dreamService.searchDreams(testUser, "flying")
+
+        then: "both searches hit the database"
+        2 * dreamRepository.searchIdsByFullText(testUser.id, "flying") >> [dream.id]
+        2 * dreamRepository.findByIdInAndUserId([dream.id], testUser.id) >> [dream]
+    }
+
+    def "searchDreams should search again after the user's dreams change on another node"() {
+        given: "a matching dream, and a dreams version bumped by a write this node never heard of"
+        def dream = createDreamEntity(testUser, "Flying")
+        statsRepository.findDreamsVersion(testUser.id) >>> [Optional.of(1L), Optional.of(2L), Optional.of(2L)]
+
+        when:
+        dreamService.searchDreams(testUser, "flying")
+        dreamService.searchDreams(testUser, "flying")
+        dreamService.searchDreams(testUser, "flying")
+
+        then: "the search runs again at the new version only"
+        2 * dreamRepository.searchIdsByFullText(testUser.id, "flying") >> [dream.id]
+        3 * dreamRepository.findByIdInAndUserId([dream.id], testUser.id) >> [dream]
+        searchCache.hitCount() == 1
+    }
+
+    def "searchDreams should neither serve nor replace cached results newer than what it reads"() {
+        given: "results cached at version 2, then a search on a replica still at version 1"
+        def dream = createDreamEntity(testUser, "Flying")
+        statsRepository.findDreamsVersion(testUser.id) >>> [Optional.of(2L), Optional.of(1L), Optional.of(2L)]
+
+        when:
+        dreamService.searchDreams(testUser, "flying")
+        dreamService.searchDreams(testUser, "flying")
+        dreamService.searchDreams(testUser, "flying")
+
+        then: "the lagging search runs on its own, the version 2 entry still serves the last one"
+        2 * dreamRepository.searchIdsByFullText(testUser.id, "flying") >> [dream.id]
+        3 * dreamRepository.findByIdInAndUserId([dream.id], testUser.id) >> [dream]
+        searchCache.hitCount() == 1
     }
 
     def "updateDream should update dream when it belongs to user"() {
@@ -147,11 +299,14 @@ class DreamServiceSpec extends Specification {
         existingDream.moodAfterDream == request.moodAfterDream()
         existingDream.vividness == request.vividness()
         existingDream.lucid == request.lucid()
-        existingDream.tags == request.tags()
+        existingDream.tags as List == request.tags()
 
         and: "Repository saves updated dream"
         1 * dreamRepository.save(existingDream) >> existingDream
 
+        and: "Dream is queued for re-analysis"
+        1 * analysisOutbox.enqueue([dreamId])
+
         and: "Returns void"
         result == null
     }
@@ -179,6 +334,103 @@ class DreamServiceSpec extends Specification {
         0 * dreamRepository.save(_)
     }
 
+    def "patchDream should replace only the patched members"() {
+        given: "Existing dream"
+        def dreamId = UUID.randomUUID()
+        def existingDream = createDreamEntity(testUser, "Old Title", dreamId)
+        existingDream.version = 3
+
+        when: "Patching the mood and clearing the other mood"
+        dreamService.patchDream(testUser, dreamId, patch('{"moodInDream": "POSITIVE", "moodAfterDream": null}'), 3L)
+
+        then:
+        1 * dreamRepository.findByIdAndUserId(dreamId, testUser.id) >> Optional.of(existingDream)
+        1 * dreamRepository.flush()
+
+        and: "Patched members are replaced, the rest is kept"
+        existingDream.moodInDream == Mood.POSITIVE
+        existingDream.moodAfterDream == null
+        existingDream.title == "Old Title"
+        existingDream.content == "Dream content for: Old Title"
+        existingDream.vividness == 5
+
+        and: "Text didn't change, so the dream isn't analysed again"
+        0 * analysisOutbox.enqueue(_)
+        1 * eventPublisher.publishEvent(DreamChangedEvent.of(testUser.id, dreamId, DreamChangedEvent.Type.UPDATED))
+    }
+
+    def "patchDream should queue re-analysis when the content changes"() {
+        given:
+        def dreamId = UUID.randomUUID()
+        def existingDream = createDreamEntity(testUser, "Title", dreamId)
+
+        when:
+        dreamService.patchDream(testUser, dreamId, patch('{"content": "A new ending", "tags": ["owl"]}'), null)
+
+        then:
+        1 * dreamRepository.findByIdAndUserId(dreamId, testUser.id) >> Optional.of(existingDream)
+        existingDream.content == "A new ending"
+        existingDream.tags as List == ["owl"]
+        1 * analysisOutbox.enqueue([dreamId])
+    }
+
+    def "patchDream should reject an edit based on another version"() {
+        given:
+        def dreamId = UUID.randomUUID()
+        def existingDream = createDreamEntity(testUser, "Title", dreamId)
+        existingDream.version = 4
+
+        when:
+        dreamService.patchDream(testUser, dreamId, patch('{"vividness": 9}'), 3L)
+
+        then:
+        1 * dreamRepository.findByIdAndUserId(dreamId, testUser.id) >> Optional.of(existingDream)
+        thrown(DreamVersionConflictException)
+        existingDream.vividness == 5
+        0 * dreamRepository.flush()
+        0 * eventPublisher.publishEvent(_)
+    }
+
+    def "patchDream should reject a patch that leaves the dream invalid"() {
+        given:
+        def dreamId = UUID.randomUUID()
+        def existingDream = createDreamEntity(testUser, "Title", dreamId)
+
+        when:
+        dreamService.patchDream(testUser, dreamId, patch('{"title": null}'), null)
+
+        then:
+        1 * dreamRepository.findByIdAndUserId(dreamId, testUser.id) >> Optional.of(existingDream)
+        def e = thrown(InvalidDreamPatchException)
+        e.message == "Title is required"
+        existingDream.title == "Title"
+    }
+
+    def "patchDream should not write a patch that changes nothing"() {
+        given:
+        def dreamId = UUID.randomUUID()
+        def existingDream = createDreamEntity(testUser, "Title", dreamId)
+        existingDream.version = 2
+
+        when:
+        def version = dreamService.patchDream(testUser, dreamId, patch('{"title": "Title", "vividness": 5}'), 2L)
+
+        then:
+        1 * dreamRepository.findByIdAndUserId(dreamId, testUser.id) >> Optional.of(existingDream)
+        version == 2
+        0 * dreamRepository.flush()
+        0 * eventPublisher.publishEvent(_)
+    }
+
+    def "patchDream should throw AccessDeniedException when dream belongs to other user"() {
+        when:
+        dreamService.patchDream(testUser, UUID.randomUUID(), patch('{"lucid": true}'), null)
+
+        then:
+        1 * dreamRepository.findByIdAndUserId(_, testUser.id) >> Optional.empty()
+        thrown(AccessDeniedException)
+    }
+
     def "deleteDream should delete dream when it belongs to user"() {
         given: "Existing dream"
         def dreamId = UUID.randomUUID()
@@ -192,6 +444,9 @@ class DreamServiceSpec extends Specification {
 
         and: "Repository deletes the dream"
         1 * dreamRepository.delete(existingDream)
+
+        and: "Change is announced for the owner"
+        1 * eventPublisher.publishEvent(DreamChangedEvent.of(testUser.id, dreamId, DreamChangedEvent.Type.DELETED))
     }
 
     def "deleteDream should throw AccessDeniedException when dream belongs to other user"() {
@@ -215,6 +470,10 @@ class DreamServiceSpec extends Specification {
     // Helper methods
     // ============================================================================
 
+    private static DreamPatch patch(String json) {
+        new ObjectMapper().findAndRegisterModules().readValue(json, DreamPatch)
+    }
+
     private static DreamEntry createDreamEntity(User user, String title, UUID id = UUID.randomUUID()) {
         return DreamEntry.builder()
             .id(id)
@@ -226,7 +485,7 @@ class DreamServiceSpec extends Specification {
             .moodAfterDream(Mood.NEUTRAL)
             .vividness(5)
             .lucid(false)
-            .tags([])
+            .tags(new TreeSet<>())
             .build()
     }
 }
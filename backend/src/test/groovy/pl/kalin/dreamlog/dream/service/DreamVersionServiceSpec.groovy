@@ -0,0 +1,77 @@
+package pl.kalin.dreamlog.dream.service
+
+import pl.kalin.dreamlog.dream.event.DreamChangedEvent
+import pl.kalin.dreamlog.dream.repository.DreamEntryRepository
+import pl.kalin.dreamlog.user.User
+import pl.kalin.dreamlog.user.UserDreamStatsRepository
+import spock.lang.Specification
+
+/**
+ * Unit test for dream and dream list versions (ETags).
+ */
+class DreamVersionServiceSpec extends Specification {
+
+    DreamEntryRepository dreamRepository = Mock()
+    UserDreamStatsRepository statsRepository = Mock()
+    DreamVersionService versionService = new DreamVersionService(dreamRepository, statsRepository)
+
+    User user = User.builder().id(UUID.randomUUID()).email("test@example.com").name("Test User").build()
+    UUID dreamId = UUID.randomUUID()
+
+    def "should derive a dream's version from its optimistic lock"() {
+        given:
+        dreamRepository.findVersionByIdAndUserId(dreamId, user.id) >> Optional.of(7L)
+
+        expect:
+        versionService.getDreamVersion(user, dreamId).get() == "d7"
+    }
+
+    def "should have no version for a dream of another user"() {
+        given:
+        dreamRepository.findVersionByIdAndUserId(dreamId, user.id) >> Optional.empty()
+
+        expect:
+        versionService.getDreamVersion(user, dreamId).isEmpty()
+    }
+
+    def "should scope the list version to the user"() {
+        given:
+        def other = User.builder().id(UUID.randomUUID()).email("other@example.com").name("Other").build()
+        statsRepository.findDreamsVersion(_) >> Optional.of(3L)
+
+        expect:
+        versionService.getDreamListVersion(user) != versionService.getDreamListVersion(other)
+    }
+
+    def "should start the list version at zero for a user without dreams"() {
+        when:
+        def version = versionService.getDreamListVersion(user)
+
+        then:
+        1 * statsRepository.findDreamsVersion(user.id) >> Optional.empty()
+        version == "${user.id}.0"
+    }
+
+    def "should increment the list version once per change event"() {
+        when:
+        versionService.onDreamChanged(new DreamChangedEvent(user.id, [dreamId, UUID.randomUUID()], DreamChangedEvent.Type.CREATED))
+
+        then:
+        1 * statsRepository.incrementDreamsVersion(user.id)
+    }
+
+    def "should read the expected version from If-Match"() {
+        expect:
+        DreamVersionService.expectedVersion(ifMatch) == expected
+
+        where:
+        ifMatch                  || expected
+        []                       || null
+        ["*"]                    || null
+        ['"d3"']                 || 3L
+        ['"x1"', '"d12"']        || 12L
+        ['W/"d3"']               || -1L
+        ['"d"']                  || -1L
+        ['"1.3"']                || -1L
+    }
+}
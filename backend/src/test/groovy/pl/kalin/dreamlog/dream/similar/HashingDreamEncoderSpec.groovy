@@ -0,0 +1,51 @@
+package pl.kalin.dreamlog.dream.similar
+
+import spock.lang.Specification
+
+/**
+ * Unit test for the offline dream encoder.
+ */
+class HashingDreamEncoderSpec extends Specification {
+
+    HashingDreamEncoder encoder = new HashingDreamEncoder()
+
+    def "should encode deterministically to a unit vector"() {
+        when:
+        def first = encoder.encode("Flying", "Flying over the sea", ["lucid"])
+        def second = encoder.encode("Flying", "Flying over the sea", ["lucid"])
+
+        then:
+        first == second
+        first.length == HashingDreamEncoder.DIMENSIONS
+        Math.abs(Math.sqrt(first.collect { it * it }.sum() as double) - 1) < 1e-5
+    }
+
+    def "should place dreams about the same things closer than unrelated ones"() {
+        given:
+        def flying = encoder.encode("Flying over the sea", "I was flying over the ocean waves", [])
+        def gliding = encoder.encode("Gliding above the ocean", "Flying above the sea waves", [])
+        def teeth = encoder.encode("Teeth", "My teeth fell out at the dentist", [])
+
+        expect:
+        cosine(flying, gliding) > cosine(flying, teeth)
+    }
+
+    def "should ignore case and diacritics"() {
+        expect:
+        encoder.encodeQuery("Łódź") == encoder.encodeQuery("lodz")
+    }
+
+    def "should encode text without features as a zero vector"() {
+        expect:
+        encoder.encodeQuery("the and a").every { it == 0f }
+    }
+
+    def "should quantize to signed bytes"() {
+        expect:
+        HashingDreamEncoder.quantize([1f, -1f, 0.5f, 0f] as float[]) == [127, -127, 64, 0] as byte[]
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        (0..<a.length).sum { a[it] * b[it] } as double
+    }
+}
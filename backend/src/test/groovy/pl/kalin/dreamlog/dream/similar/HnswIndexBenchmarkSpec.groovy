@@ -0,0 +1,98 @@
+package pl.kalin.dreamlog.dream.similar
+
+import io.micrometer.core.instrument.Timer
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+import spock.lang.Tag
+import spock.lang.TempDir
+
+import java.nio.file.Path
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures similarity search latency and recall on a large single-user index of 256-dimension
+ * vectors, and the time to reopen it. Vectors are drawn around a thousand topic centres, which
+ * resembles real dream embeddings far better than uniformly random ones. Run with
+ * {@code ./gradlew benchmarkTest}.
+ */
+@Tag("benchmark")
+class HnswIndexBenchmarkSpec extends Specification {
+
+    static final int VECTOR_COUNT = 20_000
+    static final int QUERIES = 500
+    static final int EF = 64
+    static final int TOPICS = 1_000
+
+    @TempDir
+    Path directory
+
+    Random random = new Random(7)
+    List<double[]> topics = (0..<TOPICS).collect { gaussian() }
+
+    def "should report search latency percentiles and recall"() {
+        given: "an index of clustered vectors"
+        def user = UUID.randomUUID()
+        def file = directory.resolve("bench.hnsw")
+        def index = new HnswIndex(file, "bench", HashingDreamEncoder.DIMENSIONS)
+        List<byte[]> vectors = []
+        long buildStart = System.nanoTime()
+        VECTOR_COUNT.times {
+            def vector = randomVector()
+            vectors << vector
+            index.put(new UUID(0, it), user, vector)
+        }
+        long buildMillis = (System.nanoTime() - buildStart) / 1_000_000 as long
+        index.close()
+
+        when: "the index is reopened and queried"
+        long openStart = System.nanoTime()
+        index = new HnswIndex(file, "bench", HashingDreamEncoder.DIMENSIONS)
+        long openMillis = (System.nanoTime() - openStart) / 1_000_000 as long
+        def timer = Timer.builder("search").publishPercentiles(0.5, 0.99).register(new SimpleMeterRegistry())
+        double recall = 0
+        QUERIES.times { i ->
+            def query = randomVector()
+            def found = timer.record({ index.search(user, query, 10, EF, null) } as java.util.function.Supplier)
+            if (i < 20) {
+                def exact = (0..<VECTOR_COUNT).toList().sort { -HnswIndex.dot(query, vectors[it]) }.take(10).collect { new UUID(0, it) } as Set
+                recall += (found*.dreamId() as Set).intersect(exact).size() / 10 / 20
+            }
+        }
+
+        then: "percentiles are reported"
+        def percentiles = timer.takeSnapshot().percentileValues().collectEntries {
+            [it.percentile(), it.value(TimeUnit.MILLISECONDS)]
+        }
+        println String.format("hnsw %d vectors: build %d ms, reopen %d ms, search p50 %.2f ms p99 %.2f ms, recall@10 %.2f",
+            VECTOR_COUNT, buildMillis, openMillis, percentiles[0.5d], percentiles[0.99d], recall)
+        index.size() == VECTOR_COUNT
+        recall > 0.8
+
+        cleanup:
+        index.close()
+    }
+
+    private double[] gaussian() {
+        double[] values = new double[HashingDreamEncoder.DIMENSIONS]
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextGaussian()
+        }
+        values
+    }
+
+    private byte[] randomVector() {
+        def vector = new byte[HashingDreamEncoder.DIMENSIONS]
+        double[] topic = topics[random.nextInt(TOPICS)]
+        double[] values = gaussian()
+        double norm = 0
+        for (int i = 0; i < values.length; i++) {
+            values[i] = topic[i] + 0.7 * values[i]
+            norm += values[i] * values[i]
+        }
+        norm = Math.sqrt(norm)
+        for (int i = 0; i < values.length; i++) {
+            vector[i] = (byte) Math.round(values[i] / norm * 127)
+        }
+        vector
+    }
+}
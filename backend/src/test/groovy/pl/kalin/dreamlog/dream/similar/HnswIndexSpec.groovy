@@ -0,0 +1,163 @@
+package pl.kalin.dreamlog.dream.similar
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Path
+
+/**
+ * Unit test for the memory-mapped HNSW index.
+ */
+class HnswIndexSpec extends Specification {
+
+    static final int DIMENSIONS = 32
+
+    @TempDir
+    Path directory
+
+    Random random = new Random(42)
+    UUID user = UUID.randomUUID()
+
+    def "should find nearly the same neighbours as an exhaustive scan"() {
+        given: "an index of random vectors"
+        def index = open()
+        Map<UUID, byte[]> vectors = [:]
+        2000.times {
+            def id = UUID.randomUUID()
+            vectors[id] = randomVector()
+            index.put(id, user, vectors[id])
+        }
+
+        when: "searching for random queries"
+        def recalls = (1..50).collect {
+            def query = randomVector()
+            def exact = vectors.entrySet()
+                .sort { -HnswIndex.dot(query, it.value) }
+                .take(10)*.key as Set
+            def found = index.search(user, query, 10, 64, null)*.dreamId() as Set
+            (found.intersect(exact).size()) / 10
+        }
+
+        then: "recall@10 is high"
+        recalls.sum() / recalls.size() >= 0.9
+
+        cleanup:
+        index.close()
+    }
+
+    def "should return the closest vector first with its cosine similarity"() {
+        given:
+        def index = open()
+        def near = UUID.randomUUID()
+        def far = UUID.randomUUID()
+        index.put(near, user, vector(127, 0))
+        index.put(far, user, vector(0, 127))
+
+        when:
+        def matches = index.search(user, vector(127, 0), 10, 64, null)
+
+        then:
+        matches*.dreamId() == [near, far]
+        matches[0].similarity() == 1f
+        matches[1].similarity() == 0f
+
+        cleanup:
+        index.close()
+    }
+
+    def "should search only the user's own vectors"() {
+        given:
+        def index = open()
+        def other = UUID.randomUUID()
+        def mine = UUID.randomUUID()
+        index.put(mine, user, vector(127, 0))
+        index.put(UUID.randomUUID(), other, vector(127, 0))
+
+        expect:
+        index.search(user, vector(127, 0), 10, 64, null)*.dreamId() == [mine]
+        index.search(UUID.randomUUID(), vector(127, 0), 10, 64, null).isEmpty()
+        index.vector(mine, other) == null
+
+        cleanup:
+        index.close()
+    }
+
+    def "should leave out the excluded, removed and replaced vectors"() {
+        given:
+        def index = open()
+        def a = UUID.randomUUID()
+        def b = UUID.randomUUID()
+        def c = UUID.randomUUID()
+        index.put(a, user, vector(127, 0))
+        index.put(b, user, vector(120, 10))
+        index.put(c, user, vector(100, 30))
+
+        when: "one vector is removed and one moves away"
+        index.remove(b)
+        index.put(c, user, vector(0, 127))
+
+        then:
+        index.search(user, vector(127, 0), 10, 64, a)*.dreamId() == [c]
+        index.size() == 2
+        index.deletedCount() == 2
+
+        cleanup:
+        index.close()
+    }
+
+    def "should reopen with all vectors and the watermark"() {
+        given: "an index that was written and closed"
+        def index = open()
+        def ids = (1..300).collect { UUID.randomUUID() }
+        ids.each { index.put(it, user, randomVector()) }
+        index.setWatermark(123L)
+        def query = randomVector()
+        def before = index.search(user, query, 5, 64, null)
+        index.close()
+
+        when: "opening it again"
+        def reopened = open()
+
+        then: "nothing has to be re-inserted"
+        reopened.size() == 300
+        reopened.watermark() == 123L
+        reopened.search(user, query, 5, 64, null) == before
+
+        cleanup:
+        reopened.close()
+    }
+
+    def "should start empty when the file belongs to another model"() {
+        given:
+        def index = open()
+        index.put(UUID.randomUUID(), user, randomVector())
+        index.close()
+
+        when:
+        def other = new HnswIndex(directory.resolve("index.hnsw"), "another-model", DIMENSIONS)
+
+        then:
+        other.size() == 0
+        other.watermark() == 0
+
+        cleanup:
+        other.close()
+    }
+
+    private HnswIndex open() {
+        new HnswIndex(directory.resolve("index.hnsw"), "test-model", DIMENSIONS)
+    }
+
+    private byte[] randomVector() {
+        List<Double> values = (0..<DIMENSIONS).collect { random.nextGaussian() }
+        double norm = Math.sqrt(values.sum { it * it } as double)
+        values.collect { (byte) Math.round(it / norm * 127) } as byte[]
+    }
+
+    private static byte[] vector(int first, int second) {
+        def vector = new byte[DIMENSIONS]
+        vector[0] = (byte) first
+        vector[1] = (byte) second
+        vector
+    }
+}
@@ -0,0 +1,64 @@
+package pl.kalin.dreamlog.dream.tag
+
+import pl.kalin.dreamlog.dream.dto.TagSuggestion
+import spock.lang.Specification
+
+/**
+ * Unit test for the per-user tag prefix index.
+ */
+class TagIndexSpec extends Specification {
+
+    def "should suggest tags starting with the prefix, most used first"() {
+        given:
+        def index = TagIndex.of([flying: 3, falling: 5, forest: 1, water: 9])
+
+        expect:
+        index.suggest("f", 10) == [
+            new TagSuggestion("falling", 5),
+            new TagSuggestion("flying", 3),
+            new TagSuggestion("forest", 1)
+        ]
+        index.suggest("fl", 10)*.tag() == ["flying"]
+        index.suggest("x", 10).isEmpty()
+    }
+
+    def "should ignore case and accents like unaccent"() {
+        given:
+        def index = TagIndex.of(["Łódź": 2, "Żaba": 1, "zamek": 4])
+
+        expect:
+        index.suggest("lod", 10)*.tag() == ["Łódź"]
+        index.suggest("za", 10)*.tag() == ["zamek", "Żaba"]
+    }
+
+    def "should find every tag with the same normalized key"() {
+        given:
+        def index = TagIndex.of(["Łódź": 2, "lodz": 2, "lodzie": 1])
+
+        expect: "ties in alphabetical order"
+        index.suggest("lodz", 10)*.tag() == ["lodz", "Łódź", "lodzie"]
+    }
+
+    def "should keep only the most used tags up to the limit"() {
+        given:
+        def index = TagIndex.of([a1: 1, a2: 7, a3: 3, a4: 7, a5: 5])
+
+        expect:
+        index.suggest("a", 3)*.tag() == ["a2", "a4", "a5"]
+        index.suggest("a", 1)*.tag() == ["a2"]
+    }
+
+    def "should suggest the most used tags for an empty prefix"() {
+        given:
+        def index = TagIndex.of([owl: 1, moss: 4, fox: 2])
+
+        expect:
+        index.suggest("", 2)*.tag() == ["moss", "fox"]
+    }
+
+    def "should suggest nothing without tags"() {
+        expect:
+        TagIndex.of([:]).is(TagIndex.EMPTY)
+        TagIndex.EMPTY.suggest("", 10).isEmpty()
+    }
+}
@@ -0,0 +1,91 @@
+package pl.kalin.dreamlog.dream.tag
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import pl.kalin.dreamlog.dream.event.DreamChangedEvent
+import pl.kalin.dreamlog.user.User
+import pl.kalin.dreamlog.user.UserDreamStatsRepository
+import spock.lang.Specification
+
+import java.time.Duration
+
+/**
+ * Unit test for lazily loaded, per-user tag suggestions.
+ */
+class TagSuggestionServiceSpec extends Specification {
+
+    TagStatsService tagStatsService = Mock()
+    UserDreamStatsRepository statsRepository = Stub()
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    TagSuggestionService service = new TagSuggestionService(tagStatsService, statsRepository, 100, Duration.ofMinutes(30), meterRegistry)
+
+    User user = User.builder().id(UUID.randomUUID()).email("test@example.com").name("Test User").build()
+
+    def "should load a user's tags once and answer later lookups from memory"() {
+        when:
+        def first = service.suggest(user, "fl", 10)
+        def second = service.suggest(user, " FL ", 10)
+
+        then:
+        1 * tagStatsService.getTagCounts(user.id) >> [flying: 2, forest: 1]
+        first*.tag() == ["flying"]
+        second == first
+        meterRegistry.get("dreamlog.tags.suggest.users").gauge().value() == 1
+    }
+
+    def "should reload a user's tags after their dreams change"() {
+        given:
+        tagStatsService.getTagCounts(user.id) >>> [[owl: 1], [owl: 2]]
+        service.suggest(user, "", 10)
+
+        when:
+        service.onDreamChanged(new DreamChangedEvent(user.id, [UUID.randomUUID()], DreamChangedEvent.Type.UPDATED))
+
+        then:
+        service.suggest(user, "o", 10)*.count() == [2]
+    }
+
+    def "should reload a user's tags after their dreams change on another node"() {
+        given: "the dreams version moves without an event reaching this node"
+        statsRepository.findDreamsVersion(user.id) >>> [Optional.of(1L), Optional.of(2L), Optional.of(2L)]
+
+        when:
+        service.suggest(user, "o", 10)
+        def changed = service.suggest(user, "o", 10)
+        def again = service.suggest(user, "o", 10)
+
+        then:
+        2 * tagStatsService.getTagCounts(user.id) >>> [[owl: 1], [owl: 2]]
+        changed*.count() == [2]
+        again*.count() == [2]
+    }
+
+    def "should not replace a user's tags with older ones read from a lagging replica"() {
+        given: "tags loaded at version 2, then a lookup still reading version 1"
+        statsRepository.findDreamsVersion(user.id) >>> [Optional.of(2L), Optional.of(1L), Optional.of(2L)]
+
+        when:
+        service.suggest(user, "o", 10)
+        def lagging = service.suggest(user, "o", 10)
+        def current = service.suggest(user, "o", 10)
+
+        then:
+        2 * tagStatsService.getTagCounts(user.id) >>> [[owl: 2], [owl: 1]]
+        lagging*.count() == [1]
+        current*.count() == [2]
+    }
+
+    def "should keep other users' tags when one user's dreams change"() {
+        given:
+        def other = User.builder().id(UUID.randomUUID()).email("other@example.com").name("Other").build()
+        tagStatsService.getTagCounts(_) >> [:]
+        service.suggest(user, "", 10)
+        service.suggest(other, "", 10)
+
+        when:
+        service.onDreamChanged(new DreamChangedEvent(other.id, [UUID.randomUUID()], DreamChangedEvent.Type.DELETED))
+        service.suggest(user, "", 10)
+
+        then:
+        0 * tagStatsService.getTagCounts(_)
+    }
+}
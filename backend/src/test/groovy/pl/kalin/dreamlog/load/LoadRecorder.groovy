@@ -0,0 +1,117 @@
+package pl.kalin.dreamlog.load
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.SerializationFeature
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+
+/**
+ * Collects request samples per endpoint and turns them into a report: throughput, latency percentiles
+ * and errors, checked against latency budgets.
+ */
+class LoadRecorder {
+
+    private final Map<String, Queue<Sample>> samples = new ConcurrentHashMap<>()
+
+    /**
+     * One request.
+     *
+     * @param nanos   latency
+     * @param success 2xx response
+     */
+    static record Sample(long nanos, boolean success) {
+    }
+
+    /**
+     * Latency budget of one endpoint (successful requests only).
+     */
+    static record Budget(double p95Millis, double p99Millis) {
+    }
+
+    /**
+     * Summary of one endpoint.
+     */
+    static record EndpointResult(String endpoint, long requests, long errors, double throughput,
+                                 double p50Millis, double p95Millis, double p99Millis, double maxMillis) {
+    }
+
+    /**
+     * Time {@code call} and record it under {@code endpoint}.
+     *
+     * @param endpoint endpoint name used in the report
+     * @param call     request returning the HTTP status
+     */
+    void record(String endpoint, Closure<Integer> call) {
+        long start = System.nanoTime()
+        boolean success
+        try {
+            int status = call()
+            success = status >= 200 && status < 300
+        } catch (Exception ignored) {
+            success = false
+        }
+        samples.computeIfAbsent(endpoint, { new ConcurrentLinkedQueue<Sample>() })
+            .add(new Sample(System.nanoTime() - start, success))
+    }
+
+    void reset() {
+        samples.clear()
+    }
+
+    List<EndpointResult> results(double seconds) {
+        samples.keySet().sort().collect { endpoint ->
+            def all = new ArrayList<Sample>(samples[endpoint])
+            def latencies = all.findAll { it.success() }*.nanos().sort()
+            new EndpointResult(endpoint, all.size(), all.count { !it.success() } as long, all.size() / seconds,
+                percentile(latencies, 0.50), percentile(latencies, 0.95), percentile(latencies, 0.99),
+                latencies ? latencies.last() / 1_000_000d : 0)
+        }
+    }
+
+    /**
+     * Budget and error-rate violations, empty if the run passed.
+     */
+    static List<String> violations(List<EndpointResult> results, Map<String, Budget> budgets, double maxErrorRate) {
+        List<String> violations = []
+        results.each { result ->
+            def budget = budgets[result.endpoint()]
+            if (budget != null && result.p95Millis() > budget.p95Millis()) {
+                violations << String.format("%s p95 %.1f ms > %.1f ms", result.endpoint(), result.p95Millis(), budget.p95Millis())
+            }
+            if (budget != null && result.p99Millis() > budget.p99Millis()) {
+                violations << String.format("%s p99 %.1f ms > %.1f ms", result.endpoint(), result.p99Millis(), budget.p99Millis())
+            }
+            if (result.requests() > 0 && result.errors() / result.requests() > maxErrorRate) {
+                violations << String.format("%s error rate %.2f%% > %.2f%%", result.endpoint(),
+                    100d * result.errors() / result.requests(), 100 * maxErrorRate)
+            }
+        }
+        violations
+    }
+
+    static String format(List<EndpointResult> results) {
+        def lines = [String.format("%-8s %9s %7s %9s %9s %9s %9s %9s",
+            "endpoint", "requests", "errors", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms")]
+        results.each {
+            lines << String.format("%-8s %9d %7d %9.1f %9.1f %9.1f %9.1f %9.1f", it.endpoint(), it.requests(),
+                it.errors(), it.throughput(), it.p50Millis(), it.p95Millis(), it.p99Millis(), it.maxMillis())
+        }
+        lines.join("\n")
+    }
+
+    static void write(Path path, Map<String, Object> report) {
+        Files.createDirectories(path.parent)
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(path.toFile(), report)
+    }
+
+    private static double percentile(List<Long> sortedNanos, double p) {
+        if (!sortedNanos) {
+            return 0
+        }
+        int index = Math.min(sortedNanos.size() - 1, (int) Math.ceil(sortedNanos.size() * p) - 1)
+        sortedNanos[Math.max(0, index)] / 1_000_000d
+    }
+}
@@ -0,0 +1,52 @@
+package pl.kalin.dreamlog.load
+
+import spock.lang.Specification
+
+/**
+ * Unit test for the load test's statistics and budget checks.
+ */
+class LoadRecorderSpec extends Specification {
+
+    def "should compute throughput and percentiles of successful requests"() {
+        given:
+        def recorder = new LoadRecorder()
+        100.times { recorder.record("list") { 200 } }
+        recorder.record("list") { 500 }
+
+        when:
+        def result = recorder.results(10).first()
+
+        then:
+        result.endpoint() == "list"
+        result.requests() == 101
+        result.errors() == 1
+        result.throughput() == 10.1d
+        result.p50Millis() <= result.p95Millis()
+        result.p95Millis() <= result.p99Millis()
+        result.p99Millis() <= result.maxMillis()
+    }
+
+    def "should report budget and error-rate violations"() {
+        given:
+        def results = [
+            new LoadRecorder.EndpointResult("list", 100, 0, 10, 20, 90, 120, 150),
+            new LoadRecorder.EndpointResult("search", 100, 5, 10, 20, 40, 60, 80)
+        ]
+        def budgets = [list: new LoadRecorder.Budget(100, 100), search: new LoadRecorder.Budget(100, 100)]
+
+        expect:
+        LoadRecorder.violations(results, budgets, 0.01) == ["list p99 120.0 ms > 100.0 ms", "search error rate 5.00% > 1.00%"]
+        LoadRecorder.violations(results, budgets, 0.1) == ["list p99 120.0 ms > 100.0 ms"]
+    }
+
+    def "should treat exceptions as errors"() {
+        given:
+        def recorder = new LoadRecorder()
+
+        when:
+        recorder.record("stats") { throw new IOException("connection reset") }
+
+        then:
+        recorder.results(1).first().errors() == 1
+    }
+}
@@ -0,0 +1,217 @@
+package pl.kalin.dreamlog.load
+
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.web.client.TestRestTemplate
+import org.springframework.boot.test.web.server.LocalServerPort
+import org.springframework.http.ResponseEntity
+import org.springframework.jdbc.core.JdbcTemplate
+import pl.kalin.dreamlog.IntegrationSpec
+import pl.kalin.dreamlog.dream.controller.DreamControllerIntegrationSpec.DreamClient
+import pl.kalin.dreamlog.dream.repository.DreamEntryRepository
+import pl.kalin.dreamlog.user.UserRepository
+import spock.lang.Tag
+
+import java.nio.file.Path
+import java.time.Duration
+import java.time.LocalDate
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * End-to-end load test: boots the application against the Testcontainers database, seeds
+ * {@code load.users} users with {@code load.dreams} dreams each and runs a mixed workload (list, detail,
+ * create, update, search, stats) with {@code load.clients-per-user} logged-in clients per user, each with
+ * its own session and CSRF token. Reports throughput and p50/p95/p99 per endpoint
+ * (also to {@code build/reports/load/results.json}) and fails if a latency budget or the error rate is exceeded.
+ *
+ * <p>Run with {@code ./gradlew loadTest}; every {@code load.*} setting can be overridden,
+ * e.g. {@code -Pload.users=50 -Pload.duration=PT2M -Pload.budget.search.p99=400}.
+ * Each client draws its requests from its own seeded random sequence ({@code load.seed}),
+ * so runs issue the same request mix.
+ */
+@Tag("load")
+class LoadTestSpec extends IntegrationSpec {
+
+    static final String PASSWORD = "Password123"
+
+    // Relative weights of the workload
+    static final Map<String, Integer> MIX = [list: 30, detail: 25, search: 15, stats: 10, create: 10, update: 10]
+
+    // Default budgets (ms), override with load.budget.<endpoint>.p95 / .p99
+    static final Map<String, LoadRecorder.Budget> BUDGETS = [
+        list  : new LoadRecorder.Budget(150, 300),
+        detail: new LoadRecorder.Budget(50, 100),
+        search: new LoadRecorder.Budget(250, 500),
+        stats : new LoadRecorder.Budget(50, 100),
+        create: new LoadRecorder.Budget(150, 300),
+        update: new LoadRecorder.Budget(150, 300)
+    ]
+
+    static final List<String> WORDS = ["flying", "ocean", "forest", "castle", "falling", "teeth", "school", "exam",
+                                       "chase", "river", "mountain", "mirror", "stairs", "train", "storm", "garden"]
+
+    @LocalServerPort
+    int port
+
+    @Autowired
+    TestRestTemplate restTemplate
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    DreamEntryRepository dreamRepository
+
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    int users = setting("users", 20)
+    int dreamsPerUser = setting("dreams", 200)
+    int clientsPerUser = setting("clients-per-user", 2)
+    Duration warmup = Duration.parse(setting("warmup", "PT10S"))
+    Duration duration = Duration.parse(setting("duration", "PT30S"))
+    long seed = setting("seed", 42L)
+    double maxErrorRate = setting("max-error-rate", 0.01d)
+
+    def "should serve the mixed workload within the latency budgets"() {
+        given: "seeded users, each with logged-in clients"
+        dreamRepository.deleteAll()
+        userRepository.deleteAll()
+        List<LoadClient> clients = []
+        Map<String, List<String>> dreamIds = [:]
+        (0..<users).each { u ->
+            def email = "load-${u}@example.com".toString()
+            def first = new LoadClient(restTemplate, baseUrl())
+            first.registerAndLogin(email, PASSWORD, "Load ${u}")
+            dreamIds[email] = seedDreams(email)
+            clients << first
+            (1..<clientsPerUser).each {
+                def client = new LoadClient(restTemplate, baseUrl())
+                client.login(email, PASSWORD)
+                clients << client
+            }
+        }
+        def recorder = new LoadRecorder()
+
+        when: "the workload runs after a warm-up"
+        run(clients, dreamIds, recorder, warmup)
+        recorder.reset()
+        run(clients, dreamIds, recorder, duration)
+        def results = recorder.results(duration.toMillis() / 1000d)
+
+        then:
+        def budgets = BUDGETS.collectEntries { endpoint, budget ->
+            [endpoint, new LoadRecorder.Budget(setting("budget.${endpoint}.p95", budget.p95Millis()),
+                setting("budget.${endpoint}.p99", budget.p99Millis()))]
+        } as Map<String, LoadRecorder.Budget>
+        def violations = LoadRecorder.violations(results, budgets, maxErrorRate)
+        println "Load test: ${users} users x ${dreamsPerUser} dreams, ${clients.size()} clients, ${duration.toSeconds()} s"
+        println LoadRecorder.format(results)
+        LoadRecorder.write(Path.of("build/reports/load/results.json"), [
+            users         : users,
+            dreamsPerUser : dreamsPerUser,
+            clients       : clients.size(),
+            durationSeconds: duration.toSeconds(),
+            seed          : seed,
+            budgets       : budgets,
+            results       : results,
+            violations    : violations
+        ])
+        results*.endpoint().toSet() == MIX.keySet()
+        violations.isEmpty()
+    }
+
+    private void run(List<LoadClient> clients, Map<String, List<String>> dreamIds, LoadRecorder recorder, Duration length) {
+        def stop = new AtomicBoolean()
+        def threads = clients.withIndex().collect { client, index ->
+            Thread.startVirtualThread {
+                def random = new Random(seed * 31 + index)
+                def ids = dreamIds[client.email]
+                while (!stop.get()) {
+                    def endpoint = pick(random)
+                    recorder.record(endpoint) { request(client, endpoint, ids, random) }
+                }
+            }
+        }
+        Thread.sleep(length.toMillis())
+        stop.set(true)
+        threads*.join()
+    }
+
+    private static String pick(Random random) {
+        int roll = random.nextInt(MIX.values().sum() as int)
+        MIX.find { endpoint, weight -> (roll -= weight) < 0 }.key
+    }
+
+    private static int request(LoadClient client, String endpoint, List<String> ids, Random random) {
+        ResponseEntity<?> response = switch (endpoint) {
+            case "list" -> client.getDreams(random.nextInt(5), 20)
+            case "detail" -> client.getDreamById(ids[random.nextInt(ids.size())])
+            case "search" -> client.searchDreams(WORDS[random.nextInt(WORDS.size())])
+            case "stats" -> client.getStats()
+            case "create" -> client.createDream(dream(random))
+            case "update" -> client.updateDream(ids[random.nextInt(ids.size())], dream(random))
+            default -> throw new IllegalArgumentException(endpoint)
+        }
+        response.statusCode.value()
+    }
+
+    private static Map dream(Random random) {
+        [date     : LocalDate.now().minusDays(random.nextInt(365)).toString(),
+         title    : "${WORDS[random.nextInt(WORDS.size())]} ${WORDS[random.nextInt(WORDS.size())]}".toString(),
+         content  : (1..40).collect { WORDS[random.nextInt(WORDS.size())] }.join(" "),
+         vividness: random.nextInt(11),
+         lucid    : random.nextBoolean(),
+         tags     : [WORDS[random.nextInt(WORDS.size())]]]
+    }
+
+    private List<String> seedDreams(String email) {
+        jdbcTemplate.update("""
+            INSERT INTO dream_entry (user_id, date, title, content, content_preview, vividness, lucid)
+            SELECT u.id, current_date - (g % 3650),
+                   initcap(v.w[1 + g % 16]) || ' ' || v.w[1 + (g * 7) % 16],
+                   (SELECT string_agg(v.w[1 + (g * k * 31 + k) % 16], ' ') FROM generate_series(1, 60) k),
+                   'generated', g % 11, g % 5 = 0
+            FROM generate_series(1, ?) g, users u, (SELECT ?::text[] AS w) v
+            WHERE u.email = ?
+            """, dreamsPerUser, WORDS as String[], email)
+        jdbcTemplate.update("""
+            INSERT INTO dream_entry_tags (dream_entry_id, tag)
+            SELECT d.id, v.w[1 + abs(hashtext(d.id::text)) % 16]
+            FROM dream_entry d JOIN users u ON u.id = d.user_id, (SELECT ?::text[] AS w) v
+            WHERE u.email = ?
+            """, WORDS as String[], email)
+        jdbcTemplate.queryForList(
+            "SELECT d.id::text FROM dream_entry d JOIN users u ON u.id = d.user_id WHERE u.email = ?", String, email)
+    }
+
+    private String baseUrl() {
+        "http://localhost:${port}"
+    }
+
+    private static <T> T setting(String name, T defaultValue) {
+        def value = System.getProperty("load.${name}")
+        value == null ? defaultValue : value.asType(defaultValue.getClass()) as T
+    }
+
+    /**
+     * {@link DreamClient} of one load user; every instance has its own session.
+     */
+    static class LoadClient extends DreamClient {
+
+        String email
+
+        LoadClient(TestRestTemplate rest, String baseUrl) {
+            super(rest, baseUrl)
+        }
+
+        @Override
+        ResponseEntity<Map> login(String email, String password) {
+            this.email = email
+            return super.login(email, password)
+        }
+
+        ResponseEntity<Map> getStats() {
+            return get("/api/stats/me", Map)
+        }
+    }
+}
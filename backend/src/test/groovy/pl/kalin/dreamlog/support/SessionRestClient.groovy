@@ -18,7 +18,9 @@ import org.springframework.http.client.ClientHttpRequestInterceptor
 import org.springframework.http.client.ClientHttpResponse
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory
 import org.springframework.util.MultiValueMap
+import org.springframework.web.client.ResponseExtractor
 import org.springframework.web.client.RestTemplate
+import pl.kalin.dreamlog.common.sql.SqlStatementBudgetFilter
 
 class SessionRestClient {
 
@@ -26,6 +28,7 @@ class SessionRestClient {
     protected final String baseUrl
 
     private final CookieStore cookieStore
+    private Integer lastSqlStatementCount
 
     SessionRestClient(TestRestTemplate template, String baseUrl) {
         this.baseUrl = baseUrl
@@ -48,6 +51,7 @@ class SessionRestClient {
 
         def interceptors = new ArrayList<>(source.getInterceptors())
         interceptors.add(new CsrfTokenInterceptor())
+        interceptors.add(new SqlStatementCountInterceptor())
         this.rest.setInterceptors(interceptors)
     }
 
@@ -55,6 +59,22 @@ class SessionRestClient {
         return rest.exchange(resolve(path), HttpMethod.GET, HttpEntity.EMPTY, responseType)
     }
 
+    /**
+     * Conditional GET: sends {@code If-None-Match}; a 304 comes back without a body.
+     */
+    protected <T> ResponseEntity<T> getIfNoneMatch(String path, String etag, Class<T> responseType) {
+        HttpHeaders headers = new HttpHeaders()
+        headers.setIfNoneMatch(etag)
+        return rest.exchange(resolve(path), HttpMethod.GET, new HttpEntity<>(headers), responseType)
+    }
+
+    /**
+     * GET without buffering the body - the extractor reads the response stream directly.
+     */
+    protected <T> T stream(String path, ResponseExtractor<T> extractor) {
+        return rest.execute(resolve(path), HttpMethod.GET, null, extractor)
+    }
+
     protected <T> ResponseEntity<T> delete(String path, Class<T> responseType) {
         return rest.exchange(resolve(path), HttpMethod.DELETE, HttpEntity.EMPTY, responseType)
     }
@@ -72,6 +92,35 @@ class SessionRestClient {
         return rest.exchange(resolve(path), method, entity, responseType)
     }
 
+    /**
+     * PATCH with a JSON Merge Patch document; {@code ifMatch} ({@code null} to omit) is sent as {@code If-Match}.
+     */
+    protected <T> ResponseEntity<T> mergePatch(String path, Map patch, String ifMatch, Class<T> responseType) {
+        HttpHeaders headers = new HttpHeaders()
+        headers.setContentType(MediaType.parseMediaType("application/merge-patch+json"))
+        if (ifMatch != null) {
+            headers.setIfMatch(ifMatch)
+        }
+        return rest.exchange(resolve(path), HttpMethod.PATCH, new HttpEntity<>(patch, headers), responseType)
+    }
+
+    /**
+     * POST a raw text body (e.g. an NDJSON or CSV upload) with the given content type.
+     */
+    protected <T> ResponseEntity<T> postText(String path, String body, MediaType contentType, Class<T> responseType) {
+        HttpHeaders headers = new HttpHeaders()
+        headers.setContentType(contentType)
+        return rest.exchange(resolve(path), HttpMethod.POST, new HttpEntity<>(body, headers), responseType)
+    }
+
+    /**
+     * SQL statements the server ran for the last response ({@code X-Sql-Statement-Count}),
+     * {@code null} if the response didn't report them.
+     */
+    Integer lastSqlStatementCount() {
+        return lastSqlStatementCount
+    }
+
     protected CookieStore cookieStore() {
         return cookieStore
     }
@@ -116,4 +165,15 @@ class SessionRestClient {
             return execution.execute(request, body)
         }
     }
+
+    private class SqlStatementCountInterceptor implements ClientHttpRequestInterceptor {
+        @Override
+        ClientHttpResponse intercept(HttpRequest request, byte[] body,
+                                     ClientHttpRequestExecution execution) throws IOException {
+            def response = execution.execute(request, body)
+            def count = response.headers.getFirst(SqlStatementBudgetFilter.STATEMENT_COUNT_HEADER)
+            lastSqlStatementCount = count != null ? Integer.valueOf(count) : null
+            return response
+        }
+    }
 }
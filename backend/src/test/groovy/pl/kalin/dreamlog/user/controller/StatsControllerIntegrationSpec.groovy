@@ -6,14 +6,18 @@ import org.springframework.boot.test.web.server.LocalServerPort
 import org.springframework.http.HttpMethod
 import org.springframework.http.HttpStatus
 import org.springframework.http.ResponseEntity
+import org.springframework.jdbc.core.JdbcTemplate
 import org.springframework.util.LinkedMultiValueMap
 import pl.kalin.dreamlog.IntegrationSpec
+import pl.kalin.dreamlog.dream.tag.TagStatsRebuilder
 import pl.kalin.dreamlog.dream.repository.DreamEntryRepository
 import pl.kalin.dreamlog.support.SessionRestClient
 import pl.kalin.dreamlog.user.UserRepository
 import pl.kalin.dreamlog.user.dto.RegisterRequest
+import pl.kalin.dreamlog.user.service.StatsReconciler
 
 import java.time.LocalDate
+import java.time.YearMonth
 import java.time.format.DateTimeFormatter
 
 /**
@@ -34,6 +38,15 @@ class StatsControllerIntegrationSpec extends IntegrationSpec {
     @Autowired
     DreamEntryRepository dreamRepository
 
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    @Autowired
+    StatsReconciler statsReconciler
+
+    @Autowired
+    TagStatsRebuilder tagStatsRebuilder
+
     String baseUrl() {
         "http://localhost:${port}"
     }
@@ -221,6 +234,196 @@ class StatsControllerIntegrationSpec extends IntegrationSpec {
         user2Stats.body.totalDreams == 1
     }
 
+    def "should keep stats in sync when dreams are updated and deleted"() {
+        given: "a user with two dreams"
+        def client = new StatsClient(restTemplate, baseUrl())
+        client.registerAndLogin("user@example.com", "Password123", "User")
+        def today = LocalDate.now().format(DateTimeFormatter.ISO_LOCAL_DATE)
+        def lucid = client.createDream([date: today, title: "Lucid", content: "Content",
+                                        moodAfterDream: "POSITIVE", vividness: 8, lucid: true])
+        client.createDream([date: today, title: "Plain", content: "Content",
+                            moodInDream: "NEGATIVE", vividness: 2, lucid: false])
+
+        expect: "stats include both dreams"
+        with(client.getMyStats().body) {
+            totalDreams == 2
+            lucidDreams == 1
+            averageVividness == 5.0
+        }
+
+        when: "the lucid dream becomes a non-lucid nightmare"
+        client.updateDream(lucid.body.id as String, [date: today, title: "Lucid", content: "Content",
+                                                      moodAfterDream: "NIGHTMARE", vividness: 6, lucid: false])
+
+        then: "stats follow the update"
+        with(client.getMyStats().body) {
+            totalDreams == 2
+            lucidDreams == 0
+            averageVividness == 4.0
+            mostCommonMood == "NEGATIVE"
+        }
+
+        when: "deleting it"
+        client.deleteDream(lucid.body.id as String)
+
+        then: "only the remaining dream is counted"
+        with(client.getMyStats().body) {
+            totalDreams == 1
+            mostCommonMood == "NEGATIVE"
+            averageVividness == 2.0
+        }
+    }
+
+    def "should repair drifted stats during reconciliation"() {
+        given: "a user with one dream"
+        def client = new StatsClient(restTemplate, baseUrl())
+        client.registerAndLogin("user@example.com", "Password123", "User")
+        client.createDream([date: LocalDate.now().format(DateTimeFormatter.ISO_LOCAL_DATE), title: "Dream",
+                            content: "Content", moodAfterDream: "MIXED", vividness: 3, lucid: true])
+
+        and: "stats that drifted behind the triggers' back"
+        jdbcTemplate.update("UPDATE user_dream_stats SET total_dreams = 42, mood_counts = '{\"POSITIVE\": 42}'")
+
+        when: "reconciliation runs"
+        def repaired = statsReconciler.reconcileAll()
+
+        then: "the drifted row is recomputed from dreams"
+        repaired == 1
+        with(client.getMyStats().body) {
+            totalDreams == 1
+            mostCommonMood == "MIXED"
+            lucidDreams == 1
+        }
+
+        and: "a second run finds nothing to repair"
+        statsReconciler.reconcileAll() == 0
+    }
+
+    def "should serve top tags and tags used together"() {
+        given: "a user with tagged dreams"
+        def client = new StatsClient(restTemplate, baseUrl())
+        client.registerAndLogin("user@example.com", "Password123", "User")
+        createTaggedDream(client, ["flying", "sea", "night"])
+        createTaggedDream(client, ["flying", "sea"])
+        createTaggedDream(client, ["flying", "teeth"])
+
+        expect: "tags by number of dreams, ties alphabetical"
+        client.getTopTags().body == [[tag: "flying", dreams: 3], [tag: "sea", dreams: 2],
+                                     [tag: "night", dreams: 1], [tag: "teeth", dreams: 1]]
+        client.getTopTags(2).body*.tag == ["flying", "sea"]
+
+        and: "pairs by number of dreams having both tags"
+        client.getTopTagPairs(2).body == [[tag: "flying", otherTag: "sea", dreams: 2],
+                                          [tag: "flying", otherTag: "night", dreams: 1]]
+
+        and: "tags used with one tag, whichever side of the pair they are on"
+        client.getRelatedTags("sea").body == [[tag: "flying", dreams: 2], [tag: "night", dreams: 1]]
+        client.getRelatedTags("flying").body*.tag == ["sea", "night", "teeth"]
+        client.getRelatedTags("unknown").body.isEmpty()
+    }
+
+    def "should keep tag stats in sync when dreams are updated, patched and deleted"() {
+        given:
+        def client = new StatsClient(restTemplate, baseUrl())
+        client.registerAndLogin("user@example.com", "Password123", "User")
+        def first = createTaggedDream(client, ["owl", "moss"])
+        createTaggedDream(client, ["owl"])
+
+        when: "a tag is replaced"
+        client.updateDream(first, taggedDream(["owl", "fox"]))
+
+        then:
+        client.getTopTags().body == [[tag: "owl", dreams: 2], [tag: "fox", dreams: 1]]
+        client.getTopTagPairs().body == [[tag: "fox", otherTag: "owl", dreams: 1]]
+
+        when: "the tags are patched away"
+        client.patchDream(first, [tags: []])
+
+        then:
+        client.getTopTags().body == [[tag: "owl", dreams: 1]]
+        client.getTopTagPairs().body.isEmpty()
+
+        when: "the dream with tags is deleted"
+        client.deleteDream(client.getDreamIds().find { it != first })
+
+        then: "no counters are left behind"
+        client.getTopTags().body.isEmpty()
+        jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_tag_stats_dreams", Long) == 0
+    }
+
+    def "should not write tag stats when a dream is saved with the same tags"() {
+        given:
+        def client = new StatsClient(restTemplate, baseUrl())
+        client.registerAndLogin("user@example.com", "Password123", "User")
+        def id = createTaggedDream(client, ["owl", "moss"])
+        def before = tagStatsRows()
+
+        when: "only the title changes"
+        client.updateDream(id, taggedDream(["moss", "owl"]) + [title: "Renamed"])
+
+        then:
+        tagStatsRows() == before
+        client.getTopTagPairs().body == [[tag: "moss", otherTag: "owl", dreams: 1]]
+    }
+
+    def "should count tags per month of the dream date"() {
+        given:
+        def client = new StatsClient(restTemplate, baseUrl())
+        client.registerAndLogin("user@example.com", "Password123", "User")
+        def thisMonth = YearMonth.now()
+        createTaggedDream(client, ["sea"], thisMonth.atDay(1))
+        createTaggedDream(client, ["sea", "owl"], thisMonth.atDay(1))
+        def moved = createTaggedDream(client, ["owl"], thisMonth.minusMonths(2).atDay(1))
+
+        when:
+        def response = client.getMonthlyTopTags(3, 1)
+
+        then: "every month of the range, the most used tags of each"
+        response.statusCode == HttpStatus.OK
+        response.body == [
+            [month: thisMonth.minusMonths(2).toString(), tags: [[tag: "owl", dreams: 1]]],
+            [month: thisMonth.minusMonths(1).toString(), tags: []],
+            [month: thisMonth.toString(), tags: [[tag: "sea", dreams: 2]]]
+        ]
+
+        when: "a dream moves to another month"
+        client.updateDream(moved, taggedDream(["owl"], thisMonth.atDay(1)))
+
+        then:
+        client.getMonthlyTopTags(3, 5).body*.tags == [[], [], [[tag: "owl", dreams: 2], [tag: "sea", dreams: 2]]]
+    }
+
+    def "should rebuild drifted tag stats from dreams"() {
+        given:
+        def client = new StatsClient(restTemplate, baseUrl())
+        client.registerAndLogin("user@example.com", "Password123", "User")
+        createTaggedDream(client, ["owl", "moss"])
+
+        and: "counters that drifted, and a tag written around the application"
+        jdbcTemplate.update("UPDATE user_tag_counts SET dreams = 42")
+        jdbcTemplate.update("DELETE FROM user_tag_pairs")
+        jdbcTemplate.update("INSERT INTO dream_entry_tags (dream_entry_id, tag) SELECT id, 'fox' FROM dream_entry")
+
+        when:
+        def rebuilt = tagStatsRebuilder.rebuildAll()
+
+        then:
+        rebuilt == 1
+        client.getTopTags().body == [[tag: "fox", dreams: 1], [tag: "moss", dreams: 1], [tag: "owl", dreams: 1]]
+        client.getTopTagPairs().body*.dreams == [1, 1, 1]
+    }
+
+    def "should reject tag stats limits out of range"() {
+        given:
+        def client = new StatsClient(restTemplate, baseUrl())
+        client.registerAndLogin("user@example.com", "Password123", "User")
+
+        expect:
+        client.get("/api/stats/tags?limit=0", Map).statusCode == HttpStatus.BAD_REQUEST
+        client.get("/api/stats/tags/pairs?limit=51", Map).statusCode == HttpStatus.BAD_REQUEST
+        client.get("/api/stats/tags/monthly?months=37", Map).statusCode == HttpStatus.BAD_REQUEST
+    }
+
     def "should reject unauthenticated requests"() {
         given: "an unauthenticated client"
         def client = new StatsClient(restTemplate, baseUrl())
@@ -232,6 +435,22 @@ class StatsControllerIntegrationSpec extends IntegrationSpec {
         response.statusCode == HttpStatus.UNAUTHORIZED
     }
 
+    private static String createTaggedDream(StatsClient client, List<String> tags, LocalDate date = LocalDate.now()) {
+        client.createDream(taggedDream(tags, date)).body.id
+    }
+
+    private static Map taggedDream(List<String> tags, LocalDate date = LocalDate.now()) {
+        [date: date.format(DateTimeFormatter.ISO_LOCAL_DATE), title: "Dream", content: "Content",
+         vividness: 5, lucid: false, tags: tags]
+    }
+
+    // Row versions in the tag stats tables: any insert, update or delete changes them
+    private List<String> tagStatsRows() {
+        ["user_tag_counts", "user_tag_monthly_counts", "user_tag_pairs", "user_tag_stats_dreams"].collectMany { table ->
+            jdbcTemplate.queryForList("SELECT '${table}:' || ctid || ':' || xmin FROM ${table} ORDER BY ctid".toString(), String)
+        }
+    }
+
     // ============================================================================
     // Helper Class - StatsClient
     // ============================================================================
@@ -270,5 +489,37 @@ class StatsControllerIntegrationSpec extends IntegrationSpec {
         ResponseEntity<Map> createDream(Map dream) {
             return json(HttpMethod.POST, "/api/dreams", dream, Map)
         }
+
+        ResponseEntity<Map> updateDream(String dreamId, Map dream) {
+            return json(HttpMethod.PUT, "/api/dreams/${dreamId}", dream, Map)
+        }
+
+        ResponseEntity<Void> deleteDream(String dreamId) {
+            return delete("/api/dreams/${dreamId}", Void)
+        }
+
+        ResponseEntity<Map> patchDream(String dreamId, Map patch) {
+            return mergePatch("/api/dreams/${dreamId}", patch, null, Map)
+        }
+
+        List<String> getDreamIds() {
+            return get("/api/dreams?size=100", Map).body.content*.id
+        }
+
+        ResponseEntity<List> getTopTags(int limit = 10) {
+            return get("/api/stats/tags?limit=${limit}", List)
+        }
+
+        ResponseEntity<List> getTopTagPairs(int limit = 10) {
+            return get("/api/stats/tags/pairs?limit=${limit}", List)
+        }
+
+        ResponseEntity<List> getRelatedTags(String tag, int limit = 10) {
+            return get("/api/stats/tags/related?tag=${tag}&limit=${limit}", List)
+        }
+
+        ResponseEntity<List> getMonthlyTopTags(int months, int limit) {
+            return get("/api/stats/tags/monthly?months=${months}&limit=${limit}", List)
+        }
     }
 }
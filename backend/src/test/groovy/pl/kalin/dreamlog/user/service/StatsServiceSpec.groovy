@@ -0,0 +1,56 @@
+package pl.kalin.dreamlog.user.service
+
+import pl.kalin.dreamlog.dream.model.Mood
+import pl.kalin.dreamlog.user.User
+import pl.kalin.dreamlog.user.UserDreamStats
+import pl.kalin.dreamlog.user.UserDreamStatsRepository
+import spock.lang.Specification
+
+/**
+ * Unit test for StatsService.
+ * Stats rows are mocked - their maintenance is covered by StatsControllerIntegrationSpec.
+ */
+class StatsServiceSpec extends Specification {
+
+    UserDreamStatsRepository statsRepository = Mock()
+    StatsService statsService = new StatsService(statsRepository)
+
+    User user = User.builder()
+        .id(UUID.randomUUID())
+        .email("test@example.com")
+        .name("Test User")
+        .build()
+
+    def "should return empty stats when user has no stats row"() {
+        given: "no precomputed stats"
+        statsRepository.findById(user.id) >> Optional.empty()
+
+        when: "getting stats"
+        def stats = statsService.getUserStats(user)
+
+        then: "stats are empty"
+        stats.totalDreams() == 0
+        stats.mostCommonMood() == null
+        stats.averageVividness() == null
+    }
+
+    def "should derive most common mood and averages from the stats row"() {
+        given: "precomputed stats with a tie between two moods"
+        statsRepository.findById(user.id) >> Optional.of(UserDreamStats.builder()
+            .userId(user.id)
+            .totalDreams(5)
+            .lucidDreams(2)
+            .vividnessSum(30)
+            .moodCounts([NEGATIVE: 2L, POSITIVE: 2L, NEUTRAL: 1L])
+            .build())
+
+        when: "getting stats"
+        def stats = statsService.getUserStats(user)
+
+        then: "counts are passed through and the tie goes to the first declared mood"
+        stats.totalDreams() == 5
+        stats.lucidDreams() == 2
+        stats.averageVividness() == 6.0d
+        stats.mostCommonMood() == Mood.POSITIVE
+    }
+}
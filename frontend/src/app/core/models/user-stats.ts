@@ -7,6 +7,8 @@ import { Mood } from './dream';
 export interface UserStats {
   totalDreams: number;
   mostCommonMood: Mood | null;
+  lucidDreams: number;
+  averageVividness: number | null;
   streak?: number; // Day streak (optional for now)
   aiAnalyses?: number; // Number of AI analyses (optional for now)
 }
@@ -77,7 +77,7 @@ export class DashboardPage {
       stats: this.statsService.getMyStats().pipe(
         catchError((err) => {
           console.error('Failed to load stats:', err);
-          return of({totalDreams: 0, mostCommonMood: null});
+          return of({totalDreams: 0, mostCommonMood: null, lucidDreams: 0, averageVividness: null});
         }),
       ),
     }).subscribe({